@@ -0,0 +1,49 @@
+package io.muzoo.ssc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The saved pages under {@code src/test/resources/corpus} that the benchmarks run on,
+ * and the links found on them.
+ */
+final class Corpus {
+    static final String[] PAGES = {"javadoc-package.html", "blog-index.html", "wiki-article.html"};
+
+    private Corpus() {
+    }
+
+    static String pageUrl(String name) {
+        return "https://example.com/corpus/" + name;
+    }
+
+    static byte[] read(String name) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing corpus page: " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the absolute links of all corpus pages, as the crawler would extract them.
+     */
+    static String[] links() {
+        List<String> links = new ArrayList<>();
+        for (String name : PAGES) {
+            try {
+                new JsoupLinkExtractor().extractLinks(new ByteArrayInputStream(read(name)), null, pageUrl(name), links::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return links.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,235 @@
+package io.muzoo.ssc;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Runs {@link CrawlerManager#runCrawler()} against a {@link SyntheticSiteServer} and
+ * reports pages and bytes per second, the 50th and 99th percentile fetch latency, the
+ * peak heap use of the crawl, and how much it allocated and paused for garbage
+ * collection. {@code bufferpool=0} turns off pooling of the body buffers, for a
+ * comparison with the default pool. With {@code recrawl=true} the site is crawled once
+ * with a metadata index and the numbers describe the second, incremental crawl. With
+ * {@code shards=N} the crawl is sharded over N crawlers, run on threads of this process.
+ * With {@code cache=true} responses go through a response cache, which a recrawl then
+ * answers from, without the network with {@code replay=true}; {@code maxage=N} lets
+ * the server mark its responses fresh for N seconds.
+ *
+ * Options are given as {@code key=value} pairs; see {@link #USAGE}. Run with
+ * {@code mvn -Pjmh test-compile exec:exec@crawl -Dcrawl.args="pages=5000 concurrency=16"}.
+ */
+public class CrawlBenchmark {
+    static final String USAGE = "Options: pages=1000 fanout=8 depth=N pagesize=16384 css=1 js=1 img=2 assets=64"
+            + " assetsize=8192 latency=0 p99=0 errors=0.0 seed=42 concurrency=1 visited=FINGERPRINT"
+            + " extractor=STREAMING exact=false metrics=<snapshot.json>"
+            + " recrawl=false connections=0 perroute=0 nodelay=true"
+            + " async=false polite=false rate=10 ratelimit=0 retryafter=0 crawldelay=0"
+            + " writers=2 durability=NONE aliases=0.0 dedup=false neardup=0 frontier=LIFO maxdepth=N"
+            + " maxpages=N maxbytes=N maxseconds=N pipeline=false parsers=N stagequeue=64"
+            + " linkfilter=false expectedlinks=1000000 shards=1 partition=URL cache=false cachememory=67108864"
+            + " replay=false maxage=0 bufferpool=33554432";
+
+    public static void main(String[] args) throws IOException {
+        SyntheticSiteServer.Builder site = SyntheticSiteServer.builder();
+        CrawlerConfig.Builder crawl = CrawlerConfig.builder();
+        int css = 1, js = 1, img = 2, assets = 64;
+        long latency = 0, p99 = -1;
+        boolean recrawl = false;
+        int rateLimit = 0, retryAfter = 0;
+        int shards = 1;
+        boolean cache = false, replay = false;
+
+        for (String arg : String.join(" ", args).trim().split("\\s+")) {
+            if (arg.isEmpty()) {
+                continue;
+            }
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                System.err.println(USAGE);
+                return;
+            }
+            String value = option[1];
+            switch (option[0]) {
+                case "pages": site.pages(Integer.parseInt(value)); break;
+                case "fanout": site.fanOut(Integer.parseInt(value)); break;
+                case "depth": site.depth(Integer.parseInt(value)); break;
+                case "pagesize": site.pageSize(Integer.parseInt(value)); break;
+                case "css": css = Integer.parseInt(value); break;
+                case "js": js = Integer.parseInt(value); break;
+                case "img": img = Integer.parseInt(value); break;
+                case "assets": assets = Integer.parseInt(value); break;
+                case "assetsize": site.assetSize(Integer.parseInt(value)); break;
+                case "latency": latency = Long.parseLong(value); break;
+                case "p99": p99 = Long.parseLong(value); break;
+                case "errors": site.errorRate(Double.parseDouble(value)); break;
+                case "seed": site.seed(Long.parseLong(value)); break;
+                case "concurrency": crawl.concurrency(Integer.parseInt(value)); break;
+                case "visited": crawl.visitedSetType(VisitedSet.Type.valueOf(value)); break;
+                case "extractor": crawl.linkExtractorType(LinkExtractor.Type.valueOf(value)); break;
+                case "exact": crawl.exactTotal(Boolean.parseBoolean(value)); break;
+                case "metrics": crawl.metricsFile(Path.of(value)); break;
+                case "recrawl": recrawl = Boolean.parseBoolean(value); break;
+                case "connections": crawl.maxConnections(Integer.parseInt(value)); break;
+                case "perroute": crawl.maxConnectionsPerRoute(Integer.parseInt(value)); break;
+                case "nodelay": crawl.tcpNoDelay(Boolean.parseBoolean(value)); break;
+                case "async": crawl.asyncFetch(Boolean.parseBoolean(value)); break;
+                case "polite": crawl.politeness(Boolean.parseBoolean(value)); break;
+                case "rate": crawl.hostRequestsPerSecond(Double.parseDouble(value)); break;
+                case "ratelimit": rateLimit = Integer.parseInt(value); break;
+                case "retryafter": retryAfter = Integer.parseInt(value); break;
+                case "crawldelay": site.crawlDelay(Double.parseDouble(value)); break;
+                case "writers": crawl.storageWriterThreads(Integer.parseInt(value)); break;
+                case "durability": crawl.durability(StorageWriter.Durability.valueOf(value)); break;
+                case "aliases": site.aliasRate(Double.parseDouble(value)); break;
+                case "dedup": crawl.deduplicate(Boolean.parseBoolean(value)); break;
+                case "neardup": crawl.nearDuplicateClusterSize(Integer.parseInt(value)); break;
+                case "frontier": crawl.frontierType(Frontier.Type.valueOf(value)); break;
+                case "maxdepth": crawl.maxDepth(Integer.parseInt(value)); break;
+                case "maxpages": crawl.maxPages(Long.parseLong(value)); break;
+                case "maxbytes": crawl.maxBytes(Long.parseLong(value)); break;
+                case "maxseconds": crawl.maxDuration(Duration.ofSeconds(Long.parseLong(value))); break;
+                case "pipeline": crawl.pipelined(Boolean.parseBoolean(value)); break;
+                case "parsers": crawl.parseThreads(Integer.parseInt(value)); break;
+                case "stagequeue": crawl.stageQueueCapacity(Integer.parseInt(value)); break;
+                case "linkfilter": crawl.linkFilter(Boolean.parseBoolean(value)); break;
+                case "expectedlinks": crawl.expectedLinks(Long.parseLong(value)); break;
+                case "shards": shards = Integer.parseInt(value); break;
+                case "partition": crawl.partition(ShardExchange.Partition.valueOf(value)); break;
+                case "cache": cache = Boolean.parseBoolean(value); break;
+                case "cachememory": crawl.responseCacheMemory(Long.parseLong(value)); break;
+                case "replay": replay = Boolean.parseBoolean(value); break;
+                case "maxage": site.maxAge(Long.parseLong(value)); break;
+                case "bufferpool": crawl.bufferPoolSize(Long.parseLong(value)); break;
+                default:
+                    System.err.println("Unknown option: " + option[0]);
+                    System.err.println(USAGE);
+                    return;
+            }
+        }
+        site.assets(css, js, img, assets).latency(latency, p99 < 0 ? latency * 4 : p99).rateLimit(rateLimit, retryAfter);
+
+        Path outputDir = Files.createTempDirectory("crawl-benchmark");
+        if (cache) {
+            crawl.responseCacheDir(outputDir.resolve("cache"));
+        }
+        try (SyntheticSiteServer server = site.build()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            String siteDir = outputDir.resolve("site").toString();
+            long requestsBefore = 0, pagesBefore = 0, errorsBefore = 0, bytesBefore = 0;
+            if (recrawl) {
+                crawl.metadataIndexFile(outputDir.resolve("metadata.idx"));
+                crawl(crawl, baseUrl, siteDir, shards, outputDir.resolve("exchange-first"));
+                requestsBefore = server.getRequests();
+                pagesBefore = server.getPageResponses();
+                errorsBefore = server.getErrorResponses();
+                bytesBefore = server.getBytesSent();
+            }
+
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            crawl.replayOnly(replay); // Only the measured crawl, so that a recrawl replays the first one
+            long allocatedBefore = allocatedBytes();
+            long[] gcBefore = gcPauses();
+            long start = System.nanoTime();
+            crawl(crawl, baseUrl, siteDir, shards, outputDir.resolve("exchange"));
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            long allocated = allocatedBytes() - allocatedBefore;
+            long[] gc = gcPauses();
+            long requests = server.getRequests() - requestsBefore;
+            long bytes = server.getBytesSent() - bytesBefore;
+
+            System.out.printf("%nURLs requested:  %d of %d reachable (%d errors, %d not modified)%n", requests, reachable,
+                    server.getErrorResponses() - errorsBefore, server.getNotModifiedResponses());
+            System.out.printf("Duration:        %.3f s%n", seconds);
+            System.out.printf("Pages/s:         %.1f%n", (server.getPageResponses() - pagesBefore) / seconds);
+            System.out.printf("Requests/s:      %.1f%n", requests / seconds);
+            System.out.printf("MB sent:         %.2f%n", bytes / (1024.0 * 1024));
+            System.out.printf("MB/s:            %.2f%n", bytes / seconds / (1024 * 1024));
+            System.out.printf("Fetch p50/p99:   %.2f / %.2f ms%n", server.getLatencyPercentileMillis(50),
+                    server.getLatencyPercentileMillis(99));
+            System.out.printf("Peak heap:       %d MB%n", peakHeapBytes() / (1024 * 1024));
+            System.out.printf("Allocated:       %.1f MB (%.1f MB/s)%n", allocated / (1024.0 * 1024),
+                    allocated / seconds / (1024 * 1024));
+            System.out.printf("GC pauses:       %d collections, %d ms%n", gc[0] - gcBefore[0], gc[1] - gcBefore[1]);
+            System.out.printf("Server peak:     %d concurrent requests, %d throttled%n",
+                    server.getPeakActiveRequests(), server.getThrottledResponses());
+        } finally {
+            try (Stream<Path> files = Files.walk(outputDir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Runs the crawl, or one crawler per shard on its own thread, and waits for all of them.
+     */
+    private static void crawl(CrawlerConfig.Builder crawl, String baseUrl, String siteDir, int shards,
+                              Path exchangeDir) {
+        if (shards == 1) {
+            new CrawlerManager(baseUrl, siteDir, crawl.build()).runCrawler();
+            return;
+        }
+        Thread[] crawlers = new Thread[shards];
+        for (int i = 0; i < shards; i++) {
+            CrawlerConfig config = crawl.shard(i, shards).exchangeDir(exchangeDir).build();
+            crawlers[i] = Thread.ofPlatform().name("shard-" + i)
+                    .start(() -> new CrawlerManager(baseUrl, siteDir, config).runCrawler());
+        }
+        try {
+            for (Thread crawler : crawlers) {
+                crawler.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        crawl.shard(0, 1);
+    }
+
+    /**
+     * Returns the bytes allocated on the heap by all threads so far, including those of
+     * virtual threads, which are counted on their carriers.
+     */
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getTotalThreadAllocatedBytes();
+    }
+
+    /**
+     * Returns the number of collections so far and the milliseconds they took, leaving out
+     * the collectors that run concurrently with the application rather than pausing it.
+     */
+    private static long[] gcPauses() {
+        long[] pauses = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!collector.getName().contains("Concurrent")) {
+                pauses[0] += collector.getCollectionCount();
+                pauses[1] += collector.getCollectionTime();
+            }
+        }
+        return pauses;
+    }
+
+    /**
+     * Sums the peak usage of the heap pools. The pools peak at different moments, so this
+     * is an upper bound of the actual peak.
+     */
+    private static long peakHeapBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,54 @@
+package io.muzoo.ssc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to extract the links of one corpus page with each {@link LinkExtractor}.
+ * The page is read from memory, so the numbers exclude disk access.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkExtractionBenchmark {
+
+    @Param({"JSOUP", "STREAMING"})
+    public LinkExtractor.Type extractor;
+
+    @Param({"javadoc-package.html", "blog-index.html", "wiki-article.html"})
+    public String page;
+
+    private LinkExtractor linkExtractor;
+    private byte[] html;
+    private String pageUrl;
+
+    @Setup
+    public void setUp() {
+        linkExtractor = LinkExtractor.create(extractor);
+        html = Corpus.read(page);
+        pageUrl = Corpus.pageUrl(page);
+    }
+
+    @Benchmark
+    public void extractLinks(Blackhole blackhole) throws IOException {
+        linkExtractor.extractLinks(new ByteArrayInputStream(html), StandardCharsets.UTF_8, pageUrl, blackhole::consume);
+    }
+}
@@ -0,0 +1,85 @@
+package io.muzoo.ssc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-link cost of deciding whether an extracted link is new, on the links
+ * of a template-heavy site: every page repeats the same navigation and footer links and
+ * adds a few links of its own. {@link #cleanAndClaim} cleans every link and claims it in
+ * the visited set, as the crawler does without a link filter; {@link #filterFirst} checks
+ * the {@link LinkFilter} first. With no template links every link is new, which shows
+ * what the filter costs when it cannot help. The sets start empty in every iteration.
+ * Each operation handles one link.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkFilterBenchmark {
+    private static final String BASE = "https://example.com/";
+
+    @Param({"60", "0"})
+    public int templateLinks;
+
+    @Param({"5"})
+    public int ownLinks;
+
+    private final UrlHandler urlHandler = new UrlHandler();
+    private String[] template;
+    private int position;
+    private long article;
+    private VisitedSet visitedUrls;
+    private LinkFilter linkFilter;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        template = new String[templateLinks];
+        for (int i = 0; i < templateLinks; i++) {
+            template[i] = BASE + "section/" + (i % 12) + "/topic-" + i + ".html" + (i % 5 == 0 ? "#top" : "");
+        }
+        visitedUrls = VisitedSet.create(VisitedSet.Type.FINGERPRINT);
+        linkFilter = new LinkFilter(1_000_000, 0.01, visitedUrls, VisitedSet.Type.FINGERPRINT);
+    }
+
+    /**
+     * Returns the links of one page after another: the template links, then links to new articles.
+     */
+    private String nextLink() {
+        int index = position;
+        position = index + 1 == templateLinks + ownLinks ? 0 : index + 1;
+        return index < templateLinks ? template[index] : BASE + "articles/" + article++ + ".html";
+    }
+
+    @Benchmark
+    public boolean cleanAndClaim() {
+        String cleanUrl = urlHandler.cleanUrl(nextLink());
+        return !cleanUrl.isEmpty() && cleanUrl.startsWith(BASE) && visitedUrls.add(cleanUrl);
+    }
+
+    @Benchmark
+    public boolean filterFirst() {
+        String link = nextLink();
+        if (linkFilter.seen(link)) {
+            return false;
+        }
+        String cleanUrl = urlHandler.cleanUrl(link);
+        boolean added = !cleanUrl.isEmpty() && cleanUrl.startsWith(BASE) && visitedUrls.add(cleanUrl);
+        linkFilter.record(link, link.equals(cleanUrl));
+        return added;
+    }
+}
@@ -0,0 +1,72 @@
+package io.muzoo.ssc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures {@link HttpDownloader#saveToFile} throughput for page-sized contents. Each
+ * operation writes one file into a rotating set of directories under a temporary
+ * directory; multiply the score by {@code size} for bytes per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageBenchmark {
+    private static final int FILES = 1024;
+
+    @Param({"4096", "65536", "1048576"})
+    public int size;
+
+    private final HttpDownloader downloader = new HttpDownloader(null);
+    private Path directory;
+    private String content;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("storage-benchmark");
+        // Repeat a corpus page up to the requested size, so the content looks like real HTML
+        String page = new String(Corpus.read(Corpus.PAGES[0]), StandardCharsets.UTF_8);
+        content = page.repeat(size / page.length() + 1).substring(0, size);
+        paths = new String[FILES];
+        for (int i = 0; i < FILES; i++) {
+            paths[i] = directory.resolve("section" + (i % 32)).resolve("page" + i + ".html").toString();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void saveToFile() throws IOException {
+        int index = next;
+        next = (index + 1) % FILES;
+        downloader.saveToFile(content, paths[index]);
+    }
+}
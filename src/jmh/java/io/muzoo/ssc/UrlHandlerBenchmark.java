@@ -0,0 +1,82 @@
+package io.muzoo.ssc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the per-link cost of cleaning, validating and mapping the links of the
+ * corpus pages. {@link #uriBaseline} is the {@code URI}-based cleaning and validation
+ * the crawler used before {@link UrlNormalizer}. Each operation handles one link.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlHandlerBenchmark {
+    private final UrlHandler urlHandler = new UrlHandler();
+    private WebCrawler crawler;
+    private String[] links;
+    private String[] cleanLinks;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        crawler = new WebCrawler("https://example.com/", "output", null, new ProgressTracker(), urlHandler);
+        links = Corpus.links();
+        cleanLinks = new String[links.length];
+        for (int i = 0; i < links.length; i++) {
+            cleanLinks[i] = urlHandler.cleanUrl(links[i]);
+        }
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = index + 1 == links.length ? 0 : index + 1;
+        return index;
+    }
+
+    @Benchmark
+    public String cleanUrl() {
+        return urlHandler.cleanUrl(links[nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean isValidUrl() {
+        return crawler.isValidUrl(links[nextIndex()]);
+    }
+
+    @Benchmark
+    public String getFilePath() {
+        return urlHandler.getFilePath(cleanLinks[nextIndex()], "output");
+    }
+
+    @Benchmark
+    public void uriBaseline(Blackhole blackhole) {
+        String url = links[nextIndex()];
+        try {
+            new URI(url).parseServerAuthority();
+            if (!url.startsWith("http") || url.toLowerCase().startsWith("javascript:")) {
+                return;
+            }
+            URI uri = new URI(url.split("#")[0].split("\\?")[0]);
+            blackhole.consume(uri.getScheme() + "://" + uri.getHost() + uri.getPath());
+        } catch (URISyntaxException e) {
+            blackhole.consume(e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.muzoo.ssc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the visited-set implementations at different sizes.
+ *
+ * {@link #insertAll} times filling an empty set with {@code size} distinct URLs, including
+ * the cost of building each URL string; divide the score by {@code size} for the time per insert. {@link #contains}
+ * looks up URLs in a full set, alternating between visited and unvisited ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class VisitedSetBenchmark {
+    private static final String PREFIX = "https://cs.muic.mahidol.ac.th/courses/ssc/docs/api/section";
+    private static final int LOOKUPS = 1 << 16;
+
+    static String url(int i) {
+        return PREFIX + (i % 97) + "/page" + i + ".html";
+    }
+
+    @State(Scope.Thread)
+    public static class Fill {
+        @Param({"100000", "1000000", "10000000"})
+        public int size;
+
+        @Param({"HASH", "FINGERPRINT", "FINGERPRINT_VERIFIED"})
+        public VisitedSet.Type type;
+
+        VisitedSet set;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            set = null; // Let the previous set be collected before the next one is built
+            System.gc();
+            set = VisitedSet.create(type);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Lookup {
+        @Param({"100000", "1000000", "10000000"})
+        public int size;
+
+        @Param({"HASH", "FINGERPRINT", "FINGERPRINT_VERIFIED"})
+        public VisitedSet.Type type;
+
+        VisitedSet set;
+        String[] probes;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            set = VisitedSet.create(type);
+            for (int i = 0; i < size; i++) {
+                set.add(url(i));
+            }
+            // Every other probe is a URL that was never added
+            probes = new String[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                int index = (int) ((i * 2654435761L) % size);
+                probes[i] = url(i % 2 == 0 ? index : size + index);
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public VisitedSet insertAll(Fill state) {
+        for (int i = 0; i < state.size; i++) {
+            state.set.add(url(i));
+        }
+        return state.set;
+    }
+
+    @Benchmark
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public boolean contains(Lookup state) {
+        int index = state.next;
+        state.next = (index + 1) & (LOOKUPS - 1);
+        return state.set.contains(state.probes[index]);
+    }
+}
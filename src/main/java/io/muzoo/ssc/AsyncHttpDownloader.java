@@ -0,0 +1,301 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.config.H2Config;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+/**
+ * The AsyncHttpDownloader class downloads pages on the non-blocking client of Apache
+ * HttpClient. Requests do not hold a thread while they wait for the server: the body
+ * of each response is streamed by the I/O reactor straight into its file, and the
+ * returned future completes once the last byte is written.
+ *
+ * Over HTTP/1.1 the requests share a pool of keep-alive connections with the limits
+ * of {@link CrawlerConfig}; over HTTP/2 they are multiplexed as concurrent streams on
+ * a single connection per host. The responses are described exactly like those of
+ * {@link HttpDownloader}, including conditional requests and the body size limit.
+ */
+public class AsyncHttpDownloader {
+    private final CloseableHttpAsyncClient httpClient;
+    private final long maxBodySize;
+
+    /**
+     * Constructor to initialize the AsyncHttpDownloader with a started async client and
+     * a limit on the size of the response bodies.
+     *
+     * @param httpClient the started async client used for making requests
+     * @param maxBodySize the maximum number of body bytes to accept per response
+     */
+    public AsyncHttpDownloader(CloseableHttpAsyncClient httpClient, long maxBodySize) {
+        this.httpClient = httpClient;
+        this.maxBodySize = maxBodySize;
+    }
+
+    /**
+     * Creates and starts an async client with the connection limits and timeouts of the
+     * given options. With {@link CrawlerConfig#isHttp2()}, requests to a host are
+     * multiplexed over one HTTP/2 connection, negotiated through ALPN over TLS and
+     * assumed with prior knowledge over plain HTTP.
+     *
+     * @param config the crawl options that give the limits and timeouts
+     * @return the started client; the caller closes it
+     */
+    public static CloseableHttpAsyncClient createClient(CrawlerConfig config) {
+        IOReactorConfig reactorConfig = IOReactorConfig.custom()
+                .setSoTimeout(Timeout.ofMilliseconds(config.getSocketTimeout().toMillis()))
+                .setTcpNoDelay(config.isTcpNoDelay())
+                .setSoKeepAlive(true)
+                .build();
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeout().toMillis()))
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(config.getConnectTimeout().toMillis()))
+                .setResponseTimeout(Timeout.ofMilliseconds(config.getResponseTimeout().toMillis()))
+                .setDefaultKeepAlive(config.getIdleConnectionTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        TimeValue idleTimeout = TimeValue.ofMilliseconds(config.getIdleConnectionTimeout().toMillis());
+
+        CloseableHttpAsyncClient client;
+        if (config.isHttp2()) {
+            client = HttpAsyncClients.customHttp2()
+                    .setH2Config(H2Config.custom()
+                            .setPushEnabled(false)
+                            .setMaxConcurrentStreams(config.getConcurrency())
+                            .build())
+                    .setIOReactorConfig(reactorConfig)
+                    .setDefaultRequestConfig(requestConfig)
+                    .evictIdleConnections(idleTimeout)
+                    .build();
+        } else {
+            client = HttpAsyncClients.custom()
+                    .setVersionPolicy(HttpVersionPolicy.FORCE_HTTP_1)
+                    .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                            .setMaxConnTotal(config.getMaxConnections())
+                            .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                            .setValidateAfterInactivity(
+                                    TimeValue.ofMilliseconds(config.getValidateAfterInactivity().toMillis()))
+                            .build())
+                    .setIOReactorConfig(reactorConfig)
+                    .setDefaultRequestConfig(requestConfig)
+                    .evictExpiredConnections()
+                    .evictIdleConnections(idleTimeout)
+                    .build();
+        }
+        client.start();
+        return client;
+    }
+
+    /**
+     * Starts downloading the specified URL into the given file, creating parent
+     * directories if they do not exist. With the metadata of a previous download whose
+     * copy still exists, the request is conditional, as in
+     * {@link HttpDownloader#download(String, Path, PageMetadata)}.
+     *
+     * The future fails with {@link BodyTooLargeException} if the body exceeds the maximum
+     * size, and with an {@link IOException} if the request or the write fails.
+     *
+     * @param url the URL to download content from
+     * @param target the file to write the response body to
+     * @param previous the metadata of the previous download, or null to download unconditionally
+     * @return the future description of the downloaded response
+     */
+    public CompletableFuture<DownloadResult> download(String url, Path target, PageMetadata previous) {
+        AsyncRequestBuilder request = AsyncRequestBuilder.get(url);
+        boolean conditional = previous != null && previous.hasValidators() && Files.exists(target);
+        if (conditional) {
+            if (previous.getEtag() != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, previous.getEtag());
+            }
+            if (previous.getLastModified() != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, previous.getLastModified());
+            }
+        }
+        AsyncRequestProducer producer = request.build();
+
+        CompletableFuture<DownloadResult> future = new CompletableFuture<>();
+        httpClient.execute(producer, new FileResponseConsumer(url, target, conditional ? previous : null),
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(DownloadResult result) {
+                        future.complete(result);
+                    }
+
+                    @Override
+                    public void failed(Exception e) {
+                        future.completeExceptionally(e);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        future.cancel(false);
+                    }
+                });
+        return future;
+    }
+
+    /**
+     * Streams one response body into its file as the I/O reactor receives it. Every
+     * chunk is written before the next is accepted, so the data buffered per response
+     * is bounded by what the reactor reads at once.
+     */
+    private class FileResponseConsumer implements AsyncResponseConsumer<DownloadResult> {
+        private final String url;
+        private final Path target;
+        private final PageMetadata previous;
+        private final long startTime = System.nanoTime();
+        private final CRC32C checksum = new CRC32C();
+        private FutureCallback<DownloadResult> resultCallback;
+        private FileChannel sink;
+        private int statusCode;
+        private String mimeType;
+        private Charset charset;
+        private String etag;
+        private String lastModified;
+        private String retryAfter;
+        private long written;
+        private long storeNanos;
+
+        FileResponseConsumer(String url, Path target, PageMetadata previous) {
+            this.url = url;
+            this.target = target;
+            this.previous = previous;
+        }
+
+        @Override
+        public void consumeResponse(HttpResponse response, EntityDetails entityDetails, HttpContext context,
+                                    FutureCallback<DownloadResult> resultCallback) throws IOException {
+            this.resultCallback = resultCallback;
+            this.statusCode = response.getCode();
+            this.etag = HttpDownloader.headerValue(response, HttpHeaders.ETAG);
+            this.lastModified = HttpDownloader.headerValue(response, HttpHeaders.LAST_MODIFIED);
+            this.retryAfter = HttpDownloader.headerValue(response, HttpHeaders.RETRY_AFTER);
+            if (previous != null && statusCode == HttpStatus.SC_NOT_MODIFIED) {
+                resultCallback.completed(HttpDownloader.notModified(url, target, previous, etag, lastModified,
+                        System.nanoTime() - startTime));
+                this.resultCallback = null; // A body, if any, is discarded
+                return;
+            }
+            if (DownloadResult.isThrottled(statusCode)) {
+                resultCallback.completed(HttpDownloader.throttled(url, statusCode, target, retryAfter,
+                        System.nanoTime() - startTime));
+                this.resultCallback = null; // The error page never replaces a stored copy
+                return;
+            }
+
+            ContentType contentType = HttpDownloader.parseContentType(
+                    entityDetails != null ? entityDetails.getContentType() : null);
+            this.mimeType = contentType != null ? contentType.getMimeType() : null;
+            this.charset = contentType != null ? contentType.getCharset() : null;
+            if (entityDetails != null && entityDetails.getContentLength() > maxBodySize) {
+                throw new BodyTooLargeException(url, maxBodySize); // Fails the exchange and drops the connection
+            }
+
+            long storeStart = System.nanoTime();
+            Files.createDirectories(target.getParent());
+            Files.deleteIfExists(target); // May be a hard link to an identical page; never write through it
+            sink = FileChannel.open(target, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            storeNanos += System.nanoTime() - storeStart;
+            if (entityDetails == null) {
+                streamEnd(null);
+            }
+        }
+
+        @Override
+        public void informationResponse(HttpResponse response, HttpContext context) {
+            // 1xx responses carry no body
+        }
+
+        @Override
+        public void updateCapacity(CapacityChannel capacityChannel) throws IOException {
+            // Chunks are written synchronously in consume, so nothing accumulates here
+            capacityChannel.update(Integer.MAX_VALUE);
+        }
+
+        @Override
+        public void consume(ByteBuffer src) throws IOException {
+            if (sink == null) {
+                src.position(src.limit());
+                return;
+            }
+            if (written + src.remaining() > maxBodySize) {
+                throw new BodyTooLargeException(url, maxBodySize);
+            }
+            checksum.update(src.duplicate());
+            long storeStart = System.nanoTime();
+            while (src.hasRemaining()) {
+                written += sink.write(src);
+            }
+            storeNanos += System.nanoTime() - storeStart;
+        }
+
+        @Override
+        public void streamEnd(List<? extends Header> trailers) throws IOException {
+            if (resultCallback == null) {
+                return;
+            }
+            closeSink();
+            resultCallback.completed(new DownloadResult(url, statusCode, mimeType, charset, target, written,
+                    System.nanoTime() - startTime, storeNanos, etag, lastModified, checksum.getValue(), retryAfter));
+            resultCallback = null;
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            releaseResources();
+            if (cause instanceof BodyTooLargeException) {
+                try {
+                    Files.deleteIfExists(target);
+                } catch (IOException e) {
+                    cause.addSuppressed(e);
+                }
+            }
+        }
+
+        @Override
+        public void releaseResources() {
+            try {
+                closeSink();
+            } catch (IOException e) {
+                // The download is failing anyway; the original cause is reported
+            }
+        }
+
+        private void closeSink() throws IOException {
+            if (sink != null) {
+                FileChannel channel = sink;
+                sink = null;
+                channel.close();
+            }
+        }
+    }
+}
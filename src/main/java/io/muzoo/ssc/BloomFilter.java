@@ -0,0 +1,119 @@
+package io.muzoo.ssc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The BloomFilter class is a concurrent, blocked Bloom filter over 64-bit hashes. Every
+ * hash sets and tests its bits inside one 512-bit block, the size of a cache line, so a
+ * lookup touches a single line of memory however many bits it checks.
+ *
+ * The filter is sized for an expected number of items and a target false-positive rate.
+ * Confining the bits to a block raises the false-positive rate a little over that of a
+ * classic Bloom filter with the same bits, so the filter is given a quarter more bits than
+ * the classic formula asks for. Past the expected number of items the rate grows.
+ *
+ * Bits are set with atomic updates and never cleared, so {@link #put(long)} and
+ * {@link #mightContain(long)} may be called from any thread without a lock. A lookup
+ * that races with the put of the same hash may miss it, which only makes an item look new.
+ */
+public class BloomFilter {
+    private static final int BLOCK_WORDS = 8;
+    private static final int BLOCK_BITS = BLOCK_WORDS * Long.SIZE;
+    private static final double BLOCK_OVERHEAD = 1.25;
+    private static final int MAX_HASHES = 16;
+    private static final long MAX_BLOCKS = Integer.MAX_VALUE / BLOCK_WORDS;
+
+    private final AtomicLongArray words;
+    private final long blocks;
+    private final int hashCount;
+
+    /**
+     * Creates a filter sized for the expected number of items.
+     *
+     * @param expectedItems the number of items the filter is expected to hold
+     * @param falsePositiveRate the target chance that an item never added is reported as present
+     */
+    public BloomFilter(long expectedItems, double falsePositiveRate) {
+        if (expectedItems < 1) {
+            throw new IllegalArgumentException("Expected items must be at least 1: " + expectedItems);
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False-positive rate must be between 0 and 1: " + falsePositiveRate);
+        }
+        double bitsPerItem = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        double bits = expectedItems * bitsPerItem * BLOCK_OVERHEAD;
+        this.blocks = Math.min(MAX_BLOCKS, Math.max(1, (long) Math.ceil(bits / BLOCK_BITS)));
+        this.words = new AtomicLongArray((int) (blocks * BLOCK_WORDS));
+        this.hashCount = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerItem * Math.log(2))));
+    }
+
+    /**
+     * Adds a hash to the filter.
+     *
+     * @param hash a well-mixed 64-bit hash of the item
+     * @return true if a bit changed, which means the hash was not in the filter before
+     */
+    public boolean put(long hash) {
+        int base = blockOf(hash);
+        long position = hash;
+        long step = UrlFingerprint.mix(hash) | 1;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            position += step;
+            int bit = (int) (position >>> 55); // 9 bits: a position in the 512-bit block
+            int index = base + (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words.get(index) & mask) == 0) {
+                words.getAndAccumulate(index, mask, (word, set) -> word | set);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Checks whether a hash may have been added. A false answer is certain; a true one
+     * is wrong with about the false-positive rate the filter was sized for.
+     *
+     * @param hash a well-mixed 64-bit hash of the item
+     * @return false if the hash was definitely never added
+     */
+    public boolean mightContain(long hash) {
+        int base = blockOf(hash);
+        long position = hash;
+        long step = UrlFingerprint.mix(hash) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            position += step;
+            int bit = (int) (position >>> 55);
+            if ((words.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of bits tested for each item.
+     *
+     * @return the hash count
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Returns the size of the bit array.
+     *
+     * @return the memory footprint in bytes
+     */
+    public long memoryBytes() {
+        return (long) words.length() * Long.BYTES;
+    }
+
+    /**
+     * Picks the block from the low half of the hash; the bit positions come from the high bits.
+     */
+    private int blockOf(long hash) {
+        return (int) (((hash & 0xffffffffL) * blocks) >>> 32) * BLOCK_WORDS;
+    }
+}
@@ -0,0 +1,16 @@
+package io.muzoo.ssc;
+
+import java.io.IOException;
+
+/**
+ * Thrown by {@link HttpDownloader} when a response body exceeds the configured
+ * maximum size. The download is aborted as soon as the limit is known to be
+ * exceeded and the partially written file is removed.
+ */
+public class BodyTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public BodyTooLargeException(String url, long limit) {
+        super("Response body of " + url + " exceeds " + limit + " bytes");
+    }
+}
@@ -0,0 +1,349 @@
+package io.muzoo.ssc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The BufferPool class hands out direct byte buffers for response bodies and takes them
+ * back once the body was stored and parsed, so that downloads do not allocate a large
+ * short-lived array each. Buffers come in power-of-two size classes from 4 KB to 256 KB,
+ * with a free list per class; a request is served from the smallest class that fits it.
+ * The pool keeps at most the given number of bytes in its free lists and lets the
+ * buffers beyond that be collected. A pool that keeps nothing hands out heap buffers
+ * instead, since allocating a direct buffer costs more than it saves when it is not reused.
+ *
+ * A {@link Buffer} is reference counted: whoever hands it on to another owner, such as
+ * the storage writer, retains it first, and every owner releases it when done. With leak
+ * detection, which is meant for tests, the pool also remembers where each buffer was
+ * acquired, and counts and logs every buffer that became unreachable without being released.
+ */
+public class BufferPool {
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * The size of the smallest class.
+     */
+    public static final int MIN_SIZE = 4 * 1024;
+
+    /**
+     * The size of the largest class; larger buffers are allocated for one use only.
+     */
+    public static final int MAX_SIZE = 256 * 1024;
+
+    private static final int MIN_SHIFT = Integer.numberOfTrailingZeros(MIN_SIZE);
+
+    private final long maxPooledBytes;
+    private final boolean leakDetection;
+    private final List<Queue<ByteBuffer>> free; // One free list per size class
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder leaks = new LongAdder();
+
+    /**
+     * A buffer taken from the pool. Its content is what lies between position 0 and the
+     * limit once the owner who filled it flipped it.
+     */
+    public static class Buffer implements AutoCloseable {
+        private final BufferPool pool;
+        private final ByteBuffer buffer;
+        private final AtomicInteger references = new AtomicInteger(1);
+        private final Leak leak;
+        private final Cleaner.Cleanable cleanable;
+
+        private Buffer(BufferPool pool, ByteBuffer buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+            if (pool.leakDetection) {
+                this.leak = new Leak(pool, buffer.capacity());
+                this.cleanable = CLEANER.register(this, leak);
+            } else {
+                this.leak = null;
+                this.cleanable = null;
+            }
+        }
+
+        /**
+         * Returns the buffer itself, for the owner who fills it.
+         *
+         * @return the buffer
+         */
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        /**
+         * Returns a view of the content, with a position of its own. Readers must not write to it.
+         *
+         * @return the content from position 0 to the limit
+         */
+        public ByteBuffer contents() {
+            return buffer.duplicate().position(0);
+        }
+
+        /**
+         * Opens a stream over the content, with a position of its own.
+         *
+         * @return the stream of the content
+         */
+        public InputStream newInputStream() {
+            ByteBuffer contents = contents();
+            return new InputStream() {
+                @Override
+                public int read() {
+                    return contents.hasRemaining() ? contents.get() & 0xFF : -1;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    if (len == 0) {
+                        return 0;
+                    }
+                    if (!contents.hasRemaining()) {
+                        return -1;
+                    }
+                    int n = Math.min(len, contents.remaining());
+                    contents.get(b, off, n);
+                    return n;
+                }
+
+                @Override
+                public long skip(long n) {
+                    int skipped = (int) Math.max(0, Math.min(n, contents.remaining()));
+                    contents.position(contents.position() + skipped);
+                    return skipped;
+                }
+
+                @Override
+                public int available() {
+                    return contents.remaining();
+                }
+            };
+        }
+
+        /**
+         * Adds an owner, who must release the buffer in turn.
+         *
+         * @return this buffer
+         * @throws IllegalStateException if the buffer was already returned to the pool
+         */
+        public Buffer retain() {
+            if (references.getAndUpdate(n -> n > 0 ? n + 1 : n) <= 0) {
+                throw new IllegalStateException("Buffer was already released");
+            }
+            return this;
+        }
+
+        /**
+         * Gives up one owner's reference, and returns the buffer to the pool once no owner is left.
+         *
+         * @throws IllegalStateException if the buffer was already returned to the pool
+         */
+        public void release() {
+            int left = references.decrementAndGet();
+            if (left < 0) {
+                references.incrementAndGet();
+                throw new IllegalStateException("Buffer was already released");
+            }
+            if (left == 0) {
+                if (leak != null) {
+                    leak.released = true;
+                    cleanable.clean();
+                }
+                pool.recycle(buffer);
+            }
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+    }
+
+    /**
+     * The state the cleaner needs to report a leaked buffer. It must not refer to the buffer.
+     */
+    private static class Leak implements Runnable {
+        private final BufferPool pool;
+        private final int capacity;
+        private final Throwable acquiredAt = new Throwable("Acquired here");
+        private volatile boolean released;
+
+        Leak(BufferPool pool, int capacity) {
+            this.pool = pool;
+            this.capacity = capacity;
+        }
+
+        @Override
+        public void run() {
+            if (!released) {
+                pool.leaks.increment();
+                logger.warn("A {} byte buffer was not released before it became unreachable", capacity, acquiredAt);
+            }
+        }
+    }
+
+    /**
+     * Constructor to initialize the BufferPool.
+     *
+     * @param maxPooledBytes the total size of the free buffers the pool keeps, or 0 to keep none
+     * @param leakDetection whether to track where each buffer was acquired and report leaks
+     */
+    public BufferPool(long maxPooledBytes, boolean leakDetection) {
+        if (maxPooledBytes < 0) {
+            throw new IllegalArgumentException("Pooled bytes must not be negative: " + maxPooledBytes);
+        }
+        this.maxPooledBytes = maxPooledBytes;
+        this.leakDetection = leakDetection;
+        int sizeClasses = Integer.numberOfTrailingZeros(MAX_SIZE) - MIN_SHIFT + 1;
+        this.free = new ArrayList<>(sizeClasses);
+        for (int i = 0; i < sizeClasses; i++) {
+            free.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Creates a BufferPool from the buffer options of a crawl.
+     *
+     * @param config the crawl options
+     * @return the pool
+     */
+    public static BufferPool create(CrawlerConfig config) {
+        return new BufferPool(config.getBufferPoolSize(), config.isBufferLeakDetection());
+    }
+
+    /**
+     * Takes a cleared buffer of at least the given capacity, whose limit is the requested size.
+     *
+     * @param size the number of bytes the buffer must hold
+     * @return the buffer, owned by the caller
+     */
+    public Buffer acquire(int size) {
+        acquired.increment();
+        ByteBuffer buffer = null;
+        int sizeClass = sizeClass(size);
+        if (maxPooledBytes == 0 || sizeClass < 0) {
+            allocated.increment();
+            buffer = ByteBuffer.allocate(size);
+        } else {
+            buffer = free.get(sizeClass).poll();
+            if (buffer != null) {
+                pooledBytes.addAndGet(-buffer.capacity());
+            } else {
+                allocated.increment();
+                buffer = ByteBuffer.allocateDirect(MIN_SIZE << sizeClass);
+            }
+            buffer.limit(size);
+        }
+        return new Buffer(this, buffer);
+    }
+
+    /**
+     * Replaces a buffer with one of at least the given capacity that holds the same
+     * content, and releases the old one. The content is what lies before the position of
+     * the old buffer; the new buffer is positioned after it, with its limit at its capacity.
+     *
+     * @param buffer the buffer, which the caller must own alone
+     * @param size the number of bytes the new buffer must hold
+     * @return the new buffer, owned by the caller
+     */
+    public Buffer grow(Buffer buffer, int size) {
+        Buffer grown = acquire(size);
+        grown.buffer().limit(grown.buffer().capacity());
+        grown.buffer().put(buffer.buffer().flip());
+        buffer.release();
+        return grown;
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        released.increment();
+        if (!buffer.isDirect() || sizeClass(buffer.capacity()) < 0) {
+            return;
+        }
+        if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+            pooledBytes.addAndGet(-buffer.capacity()); // The pool is full; let the buffer be collected
+            return;
+        }
+        free.get(sizeClass(buffer.capacity())).offer(buffer.clear());
+    }
+
+    /**
+     * Returns the index of the smallest class that holds the given size, or -1 if none does.
+     */
+    private static int sizeClass(int size) {
+        if (size > MAX_SIZE) {
+            return -1;
+        }
+        int classSize = Math.max(MIN_SIZE, Integer.highestOneBit(Math.max(size - 1, 1)) << 1);
+        return Integer.numberOfTrailingZeros(classSize) - MIN_SHIFT;
+    }
+
+    /**
+     * Returns the number of buffers handed out.
+     *
+     * @return the number of acquisitions
+     */
+    public long getAcquired() {
+        return acquired.sum();
+    }
+
+    /**
+     * Returns the number of buffers that had to be allocated because none of the class was free.
+     *
+     * @return the number of allocations
+     */
+    public long getAllocated() {
+        return allocated.sum();
+    }
+
+    /**
+     * Returns the share of the acquisitions served with a buffer that was reused.
+     *
+     * @return the reuse ratio between 0 and 1
+     */
+    public double getReuseRatio() {
+        long total = acquired.sum();
+        return total == 0 ? 0 : (double) (total - allocated.sum()) / total;
+    }
+
+    /**
+     * Returns the number of buffers handed out and not released yet.
+     *
+     * @return the number of outstanding buffers
+     */
+    public long getOutstanding() {
+        return acquired.sum() - released.sum();
+    }
+
+    /**
+     * Returns the total size of the free buffers the pool keeps.
+     *
+     * @return the pooled bytes
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Returns the number of buffers that became unreachable without being released. Only
+     * counted with leak detection, and only once the garbage collector found them.
+     *
+     * @return the number of leaked buffers
+     */
+    public long getLeaks() {
+        return leaks.sum();
+    }
+}
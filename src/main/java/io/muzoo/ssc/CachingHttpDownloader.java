@@ -0,0 +1,125 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.core5.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The CachingHttpDownloader class puts a {@link ResponseCache} in front of another
+ * {@link Downloader}. A fresh cached response is written to the target file without
+ * a request. A stale one is revalidated with a conditional request, and its body is
+ * reused if the server answers 304 Not Modified. Every other request goes to the
+ * downloader, and the successful responses it may store are added to the cache.
+ *
+ * In replay-only mode the network is never used: a cached response is served however
+ * stale it is, and a URL that is not cached fails to download.
+ *
+ * A cached body that the crawler already stored in the previous crawl is reported as
+ * 304 Not Modified, as the server would have, so that the stored file is kept and the
+ * links recorded for it are reused.
+ */
+public class CachingHttpDownloader implements Downloader {
+    private static final Logger logger = LoggerFactory.getLogger(CachingHttpDownloader.class);
+
+    private final Downloader downloader;
+    private final ResponseCache cache;
+    private final boolean replayOnly;
+
+    /**
+     * Constructor to initialize the CachingHttpDownloader.
+     *
+     * @param downloader the downloader that makes the requests the cache cannot answer
+     * @param cache the response cache
+     * @param replayOnly whether to serve from the cache only, without any request
+     */
+    public CachingHttpDownloader(Downloader downloader, ResponseCache cache, boolean replayOnly) {
+        this.downloader = downloader;
+        this.cache = cache;
+        this.replayOnly = replayOnly;
+    }
+
+    @Override
+    public DownloadResult download(String url, Path target, PageMetadata previous) throws IOException {
+        long startTime = System.nanoTime();
+        ResponseCache.Entry entry = cache.get(url);
+        if (entry != null && (replayOnly || entry.isFresh(System.currentTimeMillis()))) {
+            cache.recordHit(entry);
+            return serve(entry, target, previous, startTime);
+        }
+        if (replayOnly) {
+            cache.recordMiss();
+            throw new IOException("Not in the response cache: " + url);
+        }
+        DownloadResult result;
+        if (entry != null && (entry.getEtag() != null || entry.getLastModified() != null)) {
+            result = downloader.revalidate(url, target, entry.toMetadata());
+            if (result.isNotModified()) {
+                try {
+                    cache.refresh(entry, result.getFreshUntil());
+                } catch (IOException e) {
+                    logger.warn("Failed to refresh the cached copy of {}: {}", url, e.getMessage());
+                }
+                cache.recordRevalidated(entry);
+                return serve(entry, target, previous, startTime);
+            }
+        } else {
+            result = downloader.download(url, target, previous);
+        }
+        cache.recordMiss();
+        if (result.getStatusCode() == HttpStatus.SC_OK && result.getFreshUntil() != DownloadResult.NOT_STORABLE) {
+            try {
+                cache.put(result);
+            } catch (IOException e) {
+                logger.warn("Failed to cache {}: {}", url, e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public DownloadResult revalidate(String url, Path target, PageMetadata stored) throws IOException {
+        return downloader.revalidate(url, target, stored);
+    }
+
+    @Override
+    public StorageWriter getStorageWriter() {
+        return downloader.getStorageWriter();
+    }
+
+    /**
+     * Writes a cached body to the target file, unless it is the body the crawler stored
+     * there in the previous crawl.
+     */
+    private DownloadResult serve(ResponseCache.Entry entry, Path target, PageMetadata previous, long startTime)
+            throws IOException {
+        if (previous != null && previous.getContentHash() == entry.getContentHash() && Files.exists(target)) {
+            return HttpDownloader.notModified(entry.getUrl(), target, previous, entry.getEtag(), entry.getLastModified(),
+                    System.nanoTime() - startTime).withFreshUntil(entry.getFreshUntil());
+        }
+        long storeStart = System.nanoTime();
+        Files.createDirectories(target.getParent());
+        Files.deleteIfExists(target); // May be a hard link to an identical page; never write through it
+        try (InputStream body = cache.openBody(entry)) {
+            Files.copy(body, target);
+        }
+        long now = System.nanoTime();
+        DownloadResult result = new DownloadResult(entry.getUrl(), HttpStatus.SC_OK, entry.getMimeType(),
+                HttpDownloader.charsetOf(entry.getCharset()), target, entry.getLength(), now - startTime, now - storeStart,
+                entry.getEtag(), entry.getLastModified(), entry.getContentHash()).withFreshUntil(entry.getFreshUntil());
+        return entry.getBody() != null ? result.withBody(entry.getBody()) : result;
+    }
+
+    /**
+     * Returns the cache this downloader serves from.
+     *
+     * @return the response cache
+     */
+    public ResponseCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,163 @@
+package io.muzoo.ssc;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * The CdxEntry class is one line of the CDX index that {@link WarcWriter} keeps next to
+ * its segments. It locates the response record of a URL: the segment file, the offset of
+ * the record's gzip member and its compressed length, so that the record can be read
+ * without scanning the segment.
+ *
+ * Lines have the fields {@code N b a m s k S V g}: the SURT form of the URL, the 14-digit
+ * capture time, the URL, the media type, the status code, the payload digest, the
+ * compressed length, the offset and the segment file name.
+ */
+public class CdxEntry {
+    static final String HEADER = " CDX N b a m s k S V g";
+
+    private final String urlKey;
+    private final String timestamp;
+    private final String url;
+    private final String mimeType;
+    private final int statusCode;
+    private final String digest;
+    private final long length;
+    private final long offset;
+    private final String fileName;
+
+    /**
+     * Constructor to initialize the CdxEntry.
+     *
+     * @param timestamp the capture time as {@code yyyyMMddHHmmss} in UTC
+     * @param url the captured URL
+     * @param mimeType the media type of the response, or null if none was declared
+     * @param statusCode the HTTP status code of the response
+     * @param digest the payload digest as {@code sha1:BASE32}
+     * @param length the compressed length of the record
+     * @param offset the offset of the record in its segment
+     * @param fileName the name of the segment file
+     */
+    public CdxEntry(String timestamp, String url, String mimeType, int statusCode, String digest,
+                    long length, long offset, String fileName) {
+        this(surt(url), timestamp, url, mimeType, statusCode, digest, length, offset, fileName);
+    }
+
+    private CdxEntry(String urlKey, String timestamp, String url, String mimeType, int statusCode, String digest,
+                     long length, long offset, String fileName) {
+        this.urlKey = urlKey;
+        this.timestamp = timestamp;
+        this.url = url;
+        this.mimeType = mimeType;
+        this.statusCode = statusCode;
+        this.digest = digest;
+        this.length = length;
+        this.offset = offset;
+        this.fileName = fileName;
+    }
+
+    /**
+     * Parses a line of the index.
+     *
+     * @param line the line, without the line break
+     * @return the entry
+     * @throws IllegalArgumentException if the line does not have the nine fields
+     */
+    public static CdxEntry parse(String line) {
+        String[] fields = line.split(" ");
+        if (fields.length != 9) {
+            throw new IllegalArgumentException("Not a CDX line: " + line);
+        }
+        return new CdxEntry(fields[0], fields[1], fields[2], "-".equals(fields[3]) ? null : fields[3],
+                Integer.parseInt(fields[4]), fields[5], Long.parseLong(fields[6]), Long.parseLong(fields[7]),
+                fields[8]);
+    }
+
+    /**
+     * Formats the entry as a line of the index.
+     *
+     * @return the line, without the line break
+     */
+    public String toLine() {
+        return String.join(" ", urlKey, timestamp, url, mimeType != null ? mimeType : "-",
+                String.valueOf(statusCode), digest, String.valueOf(length), String.valueOf(offset), fileName);
+    }
+
+    /**
+     * Converts a URL to its Sort-friendly URI Reordering Transform, which puts the URLs of
+     * a domain next to each other in a sorted index: {@code http://www.Example.com/a?b}
+     * becomes {@code com,example)/a?b}.
+     *
+     * @param url the URL
+     * @return the SURT form, or the lower-cased URL if it cannot be parsed
+     */
+    static String surt(String url) {
+        try {
+            URI uri = new URI(url);
+            String host = uri.getHost();
+            if (host == null) {
+                return url.toLowerCase(Locale.ROOT);
+            }
+            host = host.toLowerCase(Locale.ROOT);
+            if (host.startsWith("www.")) {
+                host = host.substring(4);
+            }
+            String[] labels = host.split("\\.");
+            StringBuilder key = new StringBuilder(url.length());
+            for (int i = labels.length - 1; i >= 0; i--) {
+                key.append(labels[i]);
+                if (i > 0) {
+                    key.append(',');
+                }
+            }
+            if (uri.getPort() != -1) {
+                key.append(':').append(uri.getPort());
+            }
+            key.append(')');
+            key.append(uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+            if (uri.getRawQuery() != null) {
+                key.append('?').append(uri.getRawQuery());
+            }
+            return key.toString().toLowerCase(Locale.ROOT);
+        } catch (URISyntaxException e) {
+            return url.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public String getUrlKey() {
+        return urlKey;
+    }
+
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,108 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.ManagedHttpClientConnectionFactory;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.io.ManagedHttpClientConnection;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ConnectionPool class builds the HTTP client of a crawl on a pooling connection
+ * manager configured from {@link CrawlerConfig}: the total and per-route connection
+ * limits, the connect, response and socket timeouts, TCP_NODELAY, how long idle
+ * connections are kept alive, and after how much inactivity a pooled connection is
+ * validated before it is reused.
+ *
+ * It counts the connections it opens, so that comparing them with the number of
+ * requests shows how well keep-alive connections are reused.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final LongAdder connectionsOpened = new LongAdder();
+
+    /**
+     * Constructor to initialize the ConnectionPool and its client.
+     *
+     * @param config the crawl options that give the pool limits and timeouts
+     */
+    public ConnectionPool(CrawlerConfig config) {
+        SocketConfig socketConfig = SocketConfig.custom()
+                .setTcpNoDelay(config.isTcpNoDelay())
+                .setSoKeepAlive(true)
+                .setSoTimeout(timeout(config.getSocketTimeout()))
+                .build();
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(config.getMaxConnections())
+                .setMaxConnPerRoute(config.getMaxConnectionsPerRoute())
+                .setDefaultSocketConfig(socketConfig)
+                .setValidateAfterInactivity(timeValue(config.getValidateAfterInactivity()))
+                .setConnectionFactory(socket -> {
+                    ManagedHttpClientConnection connection = ManagedHttpClientConnectionFactory.INSTANCE
+                            .createConnection(socket);
+                    connectionsOpened.increment();
+                    return connection;
+                })
+                .build();
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(timeout(config.getConnectTimeout()))
+                .setConnectionRequestTimeout(timeout(config.getConnectTimeout()))
+                .setResponseTimeout(timeout(config.getResponseTimeout()))
+                .setDefaultKeepAlive(config.getIdleConnectionTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(timeValue(config.getIdleConnectionTimeout()))
+                .build();
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Returns the number of connections opened so far, including ones already closed.
+     *
+     * @return the number of opened connections
+     */
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    /**
+     * Returns the current totals of the pool: leased, available and pending connections
+     * and the maximum.
+     *
+     * @return the pool statistics
+     */
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close(); // Also shuts down the connection manager and the eviction thread
+    }
+
+    private static Timeout timeout(Duration duration) {
+        return Timeout.ofMilliseconds(duration.toMillis());
+    }
+
+    private static TimeValue timeValue(Duration duration) {
+        return TimeValue.ofMilliseconds(duration.toMillis());
+    }
+}
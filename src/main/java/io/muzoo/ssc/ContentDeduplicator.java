@@ -0,0 +1,193 @@
+package io.muzoo.ssc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ContentDeduplicator class recognizes bodies that were already crawled under
+ * another URL, such as {@code /docs/} and {@code /docs/index.html}. Bodies are keyed by
+ * the CRC-32C that the downloaders compute while streaming, together with their length;
+ * when a key repeats, the body is compared byte by byte with the first copy, so a
+ * checksum collision never merges two different pages. The file of a duplicate can then
+ * be replaced with a hard link to the first copy. When the bodies are written by a
+ * {@link StorageWriter}, a first copy that is still queued is waited for before the comparison.
+ *
+ * Pages can also be grouped into clusters of near-duplicates by the {@link SimHash} of
+ * their text. Two pages are near-duplicates when their fingerprints differ in at most
+ * {@value #NEAR_DUPLICATE_DISTANCE} bits; as in Manku et al., the fingerprints are
+ * indexed by each of their four 16-bit blocks, since two fingerprints that close agree
+ * exactly on at least one block. All methods are safe to call from concurrent crawler threads.
+ */
+public class ContentDeduplicator {
+    static final int NEAR_DUPLICATE_DISTANCE = 3;
+    private static final int BLOCKS = 4;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final StorageWriter storage;
+    private final Map<Long, Path> firstCopies = new ConcurrentHashMap<>();
+    // Clusters by the value of each 16-bit block of their first fingerprint
+    private final List<Map<Integer, List<Cluster>>> clusterBlocks = new ArrayList<>(BLOCKS);
+    private final ReentrantLock clusterLock = new ReentrantLock();
+
+    /**
+     * A group of near-duplicate pages, represented by the fingerprint of its first page.
+     */
+    private static class Cluster {
+        final long simHash;
+        int pages = 1;
+
+        Cluster(long simHash) {
+            this.simHash = simHash;
+        }
+    }
+
+    /**
+     * Constructor to initialize an empty ContentDeduplicator for bodies written inline.
+     */
+    public ContentDeduplicator() {
+        this(null);
+    }
+
+    /**
+     * Constructor to initialize an empty ContentDeduplicator.
+     *
+     * @param storage the writer that stores the bodies, or null if they are written inline
+     */
+    public ContentDeduplicator(StorageWriter storage) {
+        this.storage = storage;
+        for (int block = 0; block < BLOCKS; block++) {
+            clusterBlocks.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Returns the file of an identical body stored earlier under another URL. If there is
+     * none, the body of this response becomes the first copy that later ones are
+     * compared with. Empty bodies are not deduplicated.
+     *
+     * @param result the downloaded response, whose body is stored in its file
+     * @return the file of the first copy, or null if the body was not seen before
+     */
+    public Path firstCopyOf(DownloadResult result) {
+        long length = result.getContentLength();
+        if (length <= 0 || length > 0xffffffffL || result.getPath() == null) {
+            return null;
+        }
+        long key = length << 32 | (result.getContentHash() & 0xffffffffL);
+        Path first = firstCopies.putIfAbsent(key, result.getPath());
+        if (first == null || first.equals(result.getPath())) {
+            return null;
+        }
+        if (storage != null) {
+            try {
+                storage.awaitWritten(first);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return sameContent(result, first) ? first : null;
+    }
+
+    /**
+     * Replaces a file with a hard link to an identical one. The link is created beside
+     * the file and moved over it, so the file is never missing. A file that is missing or
+     * incomplete because its queued write has not happened yet is left alone, and so is
+     * the file on file systems without hard links.
+     *
+     * @param copy the file to replace
+     * @param original the file to link to
+     * @return true if the file was replaced with a link
+     */
+    public boolean link(Path copy, Path original) {
+        Path temp = copy.resolveSibling(copy.getFileName() + ".link");
+        try {
+            if (Files.size(copy) != Files.size(original)) {
+                return false;
+            }
+            Files.deleteIfExists(temp);
+            Files.createLink(temp, original);
+            try {
+                Files.move(temp, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, copy, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+                // Nothing left to clean up
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Adds a page to the cluster of its near-duplicates, or starts a new cluster.
+     *
+     * @param simHash the fingerprint of the page's text
+     * @return the number of pages the cluster had before this one
+     */
+    public int addToCluster(long simHash) {
+        clusterLock.lock();
+        try {
+            for (int block = 0; block < BLOCKS; block++) {
+                List<Cluster> candidates = clusterBlocks.get(block).get(blockOf(simHash, block));
+                if (candidates == null) {
+                    continue;
+                }
+                for (Cluster cluster : candidates) {
+                    if (SimHash.distance(cluster.simHash, simHash) <= NEAR_DUPLICATE_DISTANCE) {
+                        return cluster.pages++;
+                    }
+                }
+            }
+            Cluster cluster = new Cluster(simHash);
+            for (int block = 0; block < BLOCKS; block++) {
+                clusterBlocks.get(block).computeIfAbsent(blockOf(simHash, block), value -> new ArrayList<>(1))
+                        .add(cluster);
+            }
+            return 0;
+        } finally {
+            clusterLock.unlock();
+        }
+    }
+
+    private static int blockOf(long simHash, int block) {
+        return (int) (simHash >>> (block * 16)) & 0xffff;
+    }
+
+    /**
+     * Compares the body of a response with a stored file. A file that cannot be read,
+     * for example because its queued write has not happened yet, does not match.
+     */
+    private static boolean sameContent(DownloadResult result, Path first) {
+        try (InputStream a = result.openBody(); InputStream b = Files.newInputStream(first)) {
+            byte[] bufferA = new byte[BUFFER_SIZE];
+            byte[] bufferB = new byte[BUFFER_SIZE];
+            while (true) {
+                int n = a.readNBytes(bufferA, 0, BUFFER_SIZE);
+                int m = b.readNBytes(bufferB, 0, BUFFER_SIZE);
+                if (n != m || !Arrays.equals(bufferA, 0, n, bufferB, 0, m)) {
+                    return false;
+                }
+                if (n < BUFFER_SIZE) {
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package io.muzoo.ssc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The CrawlJournal class makes a crawl resumable. Every URL the crawler claims and every
+ * URL it finishes is appended to a journal file as one line, so the journal is both the
+ * checkpoint of the visited set and the source of the frontier: on resume, the URLs
+ * that were claimed but never finished are queued again, and finished URLs are not
+ * fetched a second time.
+ *
+ * Appends go through a buffer. A checkpoint forces the journal to disk and then
+ * replaces a small properties file that records the durable journal length and the
+ * progress counters, so its cost depends only on what was appended since the last
+ * checkpoint, never on the size of the crawl.
+ *
+ * A queued URL is journaled with its depth, so that a resumed crawl keeps to the depth
+ * limit and the priority frontier orders it as before.
+ *
+ * A page is marked finished only after the links found on it were journaled, and all
+ * lines are written by one sequential writer, so any prefix of the journal describes
+ * a consistent crawl. A line torn by a crash is dropped when the journal is reopened.
+ */
+public class CrawlJournal implements AutoCloseable {
+    static final String JOURNAL_FILE = "journal.log";
+    static final String CHECKPOINT_FILE = "checkpoint.properties";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The kinds of journal lines.
+     */
+    public enum Entry {
+        /** The URL was claimed and added to the frontier. */
+        QUEUED('Q'),
+        /** The URL was downloaded and its links were journaled. */
+        DOWNLOADED('D'),
+        /** The URL could not be downloaded. */
+        FAILED('F');
+
+        private final char code;
+
+        Entry(char code) {
+            this.code = code;
+        }
+
+        static Entry of(int code) {
+            for (Entry entry : values()) {
+                if (entry.code == code) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Receives the lines of the journal when it is replayed.
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        /**
+         * Visits one line of the journal.
+         *
+         * @param entry the kind of line
+         * @param url the URL it is about
+         * @param depth the depth of a queued URL, or 0 for the other lines
+         */
+        void visit(Entry entry, String url, int depth);
+    }
+
+    private final Path directory;
+    private final Path journalFile;
+    private final FileChannel channel;
+    private final OutputStream out;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final long intervalNanos;
+    private final AtomicLong nextCheckpoint;
+    private final Properties lastCheckpoint;
+
+    private CrawlJournal(Path directory, FileChannel channel, Duration checkpointInterval, Properties lastCheckpoint) {
+        this.directory = directory;
+        this.journalFile = directory.resolve(JOURNAL_FILE);
+        this.channel = channel;
+        this.out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        this.intervalNanos = checkpointInterval.toNanos();
+        this.nextCheckpoint = new AtomicLong(System.nanoTime() + intervalNanos);
+        this.lastCheckpoint = lastCheckpoint;
+    }
+
+    /**
+     * Opens the journal in the given directory.
+     *
+     * @param directory the directory holding the journal and the checkpoint
+     * @param resume whether to keep the existing journal; otherwise it is cleared
+     * @param checkpointInterval the minimum time between two checkpoints
+     * @return the opened journal
+     * @throws IOException if the journal cannot be opened or repaired
+     */
+    public static CrawlJournal open(Path directory, boolean resume, Duration checkpointInterval) throws IOException {
+        Files.createDirectories(directory);
+        Path journalFile = directory.resolve(JOURNAL_FILE);
+        Path checkpointFile = directory.resolve(CHECKPOINT_FILE);
+        FileChannel channel = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Properties lastCheckpoint = null;
+        try {
+            if (resume) {
+                lastCheckpoint = readCheckpoint(checkpointFile);
+                channel.truncate(validLength(journalFile)); // Drop a line torn by a crash
+            } else {
+                channel.truncate(0);
+                Files.deleteIfExists(checkpointFile);
+            }
+            channel.position(channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new CrawlJournal(directory, channel, checkpointInterval, lastCheckpoint);
+    }
+
+    /**
+     * Returns the counters saved by the last checkpoint of the journal that was resumed.
+     *
+     * @return the last checkpoint, or null if the journal was cleared or never checkpointed
+     */
+    public Properties getLastCheckpoint() {
+        return lastCheckpoint;
+    }
+
+    /**
+     * Reads the journal from the start and passes every line to the visitor. Call this
+     * before appending.
+     *
+     * @param visitor receives the kind, the URL and the depth of each line, in journal order
+     * @throws IOException if the journal cannot be read
+     */
+    public void replay(Visitor visitor) throws IOException {
+        lock.lock();
+        try {
+            out.flush();
+            try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int end = line.indexOf(' ', 2);
+                    if (end < 0) {
+                        visitor.visit(Entry.of(line.charAt(0)), line.substring(2), 0);
+                    } else {
+                        visitor.visit(Entry.of(line.charAt(0)), line.substring(2, end),
+                                Integer.parseInt(line, end + 1, line.length(), 10));
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a line to the journal.
+     *
+     * @param entry the kind of line
+     * @param url the URL it is about
+     * @throws UncheckedIOException if the journal cannot be written
+     */
+    public void append(Entry entry, String url) {
+        write(entry, url, null);
+    }
+
+    /**
+     * Appends the line of a queued URL to the journal.
+     *
+     * @param url the URL that was claimed and added to the frontier
+     * @param depth the number of links between the base URL and this one
+     * @throws UncheckedIOException if the journal cannot be written
+     */
+    public void appendQueued(String url, int depth) {
+        write(Entry.QUEUED, url, Integer.toString(depth).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void write(Entry entry, String url, byte[] depth) {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            out.write(entry.code);
+            out.write(' ');
+            out.write(bytes);
+            if (depth != null) {
+                out.write(' ');
+                out.write(depth);
+            }
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the crawl journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a checkpoint if the checkpoint interval has passed since the last one.
+     * Only the thread that claims the next time slot writes it.
+     *
+     * @param progressTracker the counters to save
+     * @return true if a checkpoint was written
+     */
+    public boolean checkpointIfDue(ProgressTracker progressTracker) {
+        long now = System.nanoTime();
+        long next = nextCheckpoint.get();
+        if (now - next < 0 || !nextCheckpoint.compareAndSet(next, now + intervalNanos)) {
+            return false;
+        }
+        checkpoint(progressTracker);
+        return true;
+    }
+
+    /**
+     * Forces the journal to disk and saves the progress counters next to it.
+     *
+     * @param progressTracker the counters to save
+     * @throws UncheckedIOException if the journal or the checkpoint cannot be written
+     */
+    public void checkpoint(ProgressTracker progressTracker) {
+        long length;
+        lock.lock();
+        try {
+            out.flush();
+            channel.force(false);
+            length = channel.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to force the crawl journal to disk", e);
+        } finally {
+            lock.unlock();
+        }
+
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("journalBytes", Long.toString(length));
+        checkpoint.setProperty("discovered", Long.toString(progressTracker.getTotalUrls()));
+        checkpoint.setProperty("downloaded", Long.toString(progressTracker.getDownloadedUrls()));
+        checkpoint.setProperty("failed", Long.toString(progressTracker.getFailedUrls()));
+        checkpoint.setProperty("timestamp", Long.toString(System.currentTimeMillis()));
+        try {
+            writeCheckpoint(checkpoint);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the crawl checkpoint", e);
+        }
+    }
+
+    private void writeCheckpoint(Properties checkpoint) throws IOException {
+        Path target = directory.resolve(CHECKPOINT_FILE);
+        Path temp = Files.createTempFile(directory, CHECKPOINT_FILE, ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            checkpoint.store(writer, "Crawl checkpoint");
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Properties readCheckpoint(Path checkpointFile) throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return null;
+        }
+        Properties checkpoint = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpointFile, StandardCharsets.UTF_8)) {
+            checkpoint.load(reader);
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Returns the length of the longest prefix of the journal made of complete, well-formed
+     * lines. Anything after it was torn by a crash or never reached the disk.
+     */
+    static long validLength(Path journalFile) throws IOException {
+        long valid = 0;
+        long position = 0;
+        int lineLength = 0;
+        int depthStart = 0; // Where the depth of a queued URL starts, after the second space
+        boolean queued = false;
+        boolean wellFormed = true;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(journalFile), BUFFER_SIZE)) {
+            int b;
+            while ((b = in.read()) != -1) {
+                position++;
+                if (b == '\n') {
+                    if (!wellFormed || lineLength < 3 || depthStart == lineLength) {
+                        break;
+                    }
+                    valid = position;
+                    lineLength = 0;
+                    depthStart = 0;
+                    continue;
+                }
+                if (lineLength == 0) {
+                    wellFormed = Entry.of(b) != null;
+                    queued = b == Entry.QUEUED.code;
+                } else if (lineLength == 1) {
+                    wellFormed &= b == ' ';
+                } else if (depthStart > 0) {
+                    wellFormed = b >= '0' && b <= '9' && lineLength - depthStart < 9;
+                } else if (b == ' ' && lineLength > 2) {
+                    depthStart = lineLength + 1; // Only a queued URL carries a depth
+                    wellFormed = queued;
+                } else if (b <= ' ') {
+                    wellFormed = false; // Normalized URLs never contain control characters or spaces
+                }
+                lineLength++;
+                if (!wellFormed) {
+                    break;
+                }
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Forces the buffered lines to disk and closes the journal. No checkpoint is written.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            out.flush();
+            channel.force(false);
+            out.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package io.muzoo.ssc;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CrawlMetrics class collects the performance counters of a crawl: response and
+ * failure counts, bytes received and stored, the status code distribution, the number
+ * of URLs waiting in the frontier, a rolling rate of responses per second, and
+ * latency histograms for fetching, parsing and storing. When a {@link ConnectionPool}
+ * is attached, its statistics are reported as well, and so are the queue depth and write
+ * latency of an attached {@link StorageWriter}. With deduplication, the duplicates found
+ * are counted along with the bytes and parses they saved. A pipelined crawl attaches its
+ * fetch and parse stages, whose queues and utilization are reported next to the writer's.
+ *
+ * Every counter is a {@link LongAdder} or a {@link LatencyHistogram}, so recording from
+ * many crawler threads does not contend on a single memory location.
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+    private static final int RATE_WINDOW_SECONDS = 10;
+
+    private final LongAdder responses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder frontierDepth = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder duplicateBytesSaved = new LongAdder();
+    private final LongAdder parsesSaved = new LongAdder();
+    private final LongAdder nearDuplicates = new LongAdder();
+    private final LongAdder deferredLinks = new LongAdder();
+    private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram storeLatency = new LatencyHistogram();
+
+    // Responses per second over the last seconds; slot i counts the second recorded in seconds[i]
+    private final AtomicLongArray rateCounts = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+    private final AtomicLongArray rateSeconds = new AtomicLongArray(RATE_WINDOW_SECONDS + 1);
+    private final long startTime = System.nanoTime();
+    private volatile ConnectionPool connectionPool;
+    private volatile StorageWriter storageWriter;
+    private volatile StageStats fetchStage;
+    private volatile StageStats parseStage;
+    private volatile LinkFilter linkFilter;
+    private volatile ResponseCache responseCache;
+    private volatile BufferPool bufferPool;
+
+    /**
+     * Records a downloaded response: its status, its size and the time spent receiving
+     * and storing it. A 304 Not Modified response transferred and stored no body.
+     *
+     * @param result the downloaded response
+     */
+    public void recordResponse(DownloadResult result) {
+        responses.increment();
+        if (result.isNotModified()) {
+            notModified.increment();
+        } else {
+            bytesIn.add(result.getContentLength());
+            bytesOut.add(result.getContentLength());
+        }
+        statusCodes.computeIfAbsent(result.getStatusCode(), code -> new LongAdder()).increment();
+        fetchLatency.record(result.getFetchNanos());
+        storeLatency.record(result.getStoreNanos());
+        recordRate();
+    }
+
+    /**
+     * Records a download that failed before a response was stored.
+     */
+    public void recordFailure() {
+        failures.increment();
+    }
+
+    /**
+     * Records the time spent extracting the links of a response.
+     *
+     * @param nanos the parse time in nanoseconds
+     */
+    public void recordParse(long nanos) {
+        parseLatency.record(nanos);
+    }
+
+    /**
+     * Records a response whose body was already crawled under another URL.
+     *
+     * @param parseSaved whether the response would have been parsed
+     */
+    public void recordDuplicate(boolean parseSaved) {
+        duplicates.increment();
+        if (parseSaved) {
+            parsesSaved.increment();
+        }
+    }
+
+    /**
+     * Records the file of a duplicate that was replaced with a hard link to the first copy.
+     *
+     * @param bytesSaved the bytes no longer stored
+     */
+    public void recordDuplicateLinked(long bytesSaved) {
+        duplicateBytesSaved.add(bytesSaved);
+    }
+
+    /**
+     * Records a page that joined a cluster of near-duplicates.
+     */
+    public void recordNearDuplicate() {
+        nearDuplicates.increment();
+    }
+
+    /**
+     * Records a link that was queued with the lowest priority because it was found on a
+     * page of a large near-duplicate cluster.
+     */
+    public void recordDeferredLink() {
+        deferredLinks.increment();
+    }
+
+    /**
+     * Reports the statistics of the given pool along with the crawl metrics.
+     *
+     * @param connectionPool the pool the crawl downloads through
+     */
+    public void attachConnectionPool(ConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * Reports the queue and latency of the given writer along with the crawl metrics.
+     * The store latency then measures how long downloads waited to queue their bodies.
+     *
+     * @param storageWriter the writer the crawl stores its bodies through, or null
+     */
+    public void attachStorageWriter(StorageWriter storageWriter) {
+        this.storageWriter = storageWriter;
+    }
+
+    /**
+     * Reports the queues and utilization of the stages of a pipelined crawl along with the
+     * crawl metrics; the storage writer is reported as the store stage.
+     *
+     * @param fetchStage the stage that downloads the pages
+     * @param parseStage the stage that extracts their links
+     */
+    public void attachStages(StageStats fetchStage, StageStats parseStage) {
+        this.fetchStage = fetchStage;
+        this.parseStage = parseStage;
+    }
+
+    /**
+     * Reports the hits and false positives of the crawl's link filter along with the crawl metrics.
+     *
+     * @param linkFilter the filter that drops repeated links
+     */
+    public void attachLinkFilter(LinkFilter linkFilter) {
+        this.linkFilter = linkFilter;
+    }
+
+    /**
+     * Reports the hits and savings of the response cache along with the crawl metrics.
+     *
+     * @param responseCache the cache in front of the downloader, or null if there is none
+     */
+    public void attachResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Reports how often the body buffers were reused, and how many are outstanding, along with the crawl metrics.
+     *
+     * @param bufferPool the pool the downloader takes its body buffers from
+     */
+    public void attachBufferPool(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    public void frontierPushed() {
+        frontierDepth.increment();
+    }
+
+    public void frontierPopped() {
+        frontierDepth.decrement();
+    }
+
+    private void recordRate() {
+        long second = currentSecond();
+        int slot = (int) (second % rateCounts.length());
+        long slotSecond = rateSeconds.get(slot);
+        if (slotSecond != second && rateSeconds.compareAndSet(slot, slotSecond, second)) {
+            rateCounts.set(slot, 0); // The slot last counted an older second
+        }
+        rateCounts.incrementAndGet(slot);
+    }
+
+    private long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime) + 1;
+    }
+
+    @Override
+    public long getResponses() {
+        return responses.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getNotModified() {
+        return notModified.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getFrontierDepth() {
+        return Math.max(0, frontierDepth.sum());
+    }
+
+    @Override
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public long getDuplicateBytesSaved() {
+        return duplicateBytesSaved.sum();
+    }
+
+    @Override
+    public long getParsesSaved() {
+        return parsesSaved.sum();
+    }
+
+    @Override
+    public long getNearDuplicates() {
+        return nearDuplicates.sum();
+    }
+
+    @Override
+    public long getDeferredLinks() {
+        return deferredLinks.sum();
+    }
+
+    @Override
+    public long getConnectionsOpened() {
+        ConnectionPool pool = connectionPool;
+        return pool != null ? pool.getConnectionsOpened() : 0;
+    }
+
+    @Override
+    public int getConnectionsLeased() {
+        ConnectionPool pool = connectionPool;
+        return pool != null ? pool.getStats().getLeased() : 0;
+    }
+
+    @Override
+    public int getConnectionsAvailable() {
+        ConnectionPool pool = connectionPool;
+        return pool != null ? pool.getStats().getAvailable() : 0;
+    }
+
+    @Override
+    public int getConnectionsPending() {
+        ConnectionPool pool = connectionPool;
+        return pool != null ? pool.getStats().getPending() : 0;
+    }
+
+    /**
+     * Returns the average number of requests sent over each opened connection.
+     */
+    @Override
+    public double getRequestsPerConnection() {
+        long opened = getConnectionsOpened();
+        return opened == 0 ? 0 : (double) (getResponses() + getFailures()) / opened;
+    }
+
+    /**
+     * Returns the average number of responses per second over the last complete seconds,
+     * up to ten; the second in progress is not counted.
+     */
+    @Override
+    public double getPagesPerSecond() {
+        long now = currentSecond();
+        long window = Math.min(RATE_WINDOW_SECONDS, now - 1);
+        if (window <= 0) {
+            return 0;
+        }
+        long count = 0;
+        for (int slot = 0; slot < rateCounts.length(); slot++) {
+            long second = rateSeconds.get(slot);
+            if (second < now && second >= now - window) {
+                count += rateCounts.get(slot);
+            }
+        }
+        return (double) count / window;
+    }
+
+    @Override
+    public int getStorageQueueDepth() {
+        StorageWriter writer = storageWriter;
+        return writer != null ? writer.getQueueDepth() : 0;
+    }
+
+    @Override
+    public long getStorageWriteFailures() {
+        StorageWriter writer = storageWriter;
+        return writer != null ? writer.getWriteFailures() : 0;
+    }
+
+    @Override
+    public double getWriteP99Millis() {
+        StorageWriter writer = storageWriter;
+        return writer != null ? writer.getWriteLatency().getPercentileMillis(99) : 0;
+    }
+
+    @Override
+    public int getFetchQueueDepth() {
+        StageStats stage = fetchStage;
+        return stage != null ? stage.getQueueDepth() : 0;
+    }
+
+    @Override
+    public int getParseQueueDepth() {
+        StageStats stage = parseStage;
+        return stage != null ? stage.getQueueDepth() : 0;
+    }
+
+    @Override
+    public double getFetchUtilization() {
+        StageStats stage = fetchStage;
+        return stage != null ? stage.getUtilization() : 0;
+    }
+
+    @Override
+    public double getParseUtilization() {
+        StageStats stage = parseStage;
+        return stage != null ? stage.getUtilization() : 0;
+    }
+
+    @Override
+    public double getStoreUtilization() {
+        StageStats stage = storageWriter;
+        return stage != null ? stage.getUtilization() : 0;
+    }
+
+    @Override
+    public double getLinkFilterHitRate() {
+        LinkFilter filter = linkFilter;
+        return filter != null ? filter.getHitRate() : 0;
+    }
+
+    @Override
+    public double getResponseCacheHitRatio() {
+        ResponseCache cache = responseCache;
+        return cache != null ? cache.getHitRatio() : 0;
+    }
+
+    @Override
+    public double getBufferReuseRatio() {
+        BufferPool pool = bufferPool;
+        return pool != null ? pool.getReuseRatio() : 0;
+    }
+
+    @Override
+    public long getBuffersOutstanding() {
+        BufferPool pool = bufferPool;
+        return pool != null ? pool.getOutstanding() : 0;
+    }
+
+    @Override
+    public Map<String, Long> getStatusCodes() {
+        Map<String, Long> codes = new TreeMap<>();
+        statusCodes.forEach((code, count) -> codes.put(String.valueOf(code), count.sum()));
+        return codes;
+    }
+
+    public LatencyHistogram getFetchLatency() {
+        return fetchLatency;
+    }
+
+    public LatencyHistogram getParseLatency() {
+        return parseLatency;
+    }
+
+    public LatencyHistogram getStoreLatency() {
+        return storeLatency;
+    }
+
+    @Override
+    public double getFetchP50Millis() {
+        return fetchLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getFetchP99Millis() {
+        return fetchLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getParseP50Millis() {
+        return parseLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getParseP99Millis() {
+        return parseLatency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getStoreP50Millis() {
+        return storeLatency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getStoreP99Millis() {
+        return storeLatency.getPercentileMillis(99);
+    }
+
+    /**
+     * Formats the latency percentiles as a single line, for example
+     * {@code fetch p50=12.0 p99=80.0 ms, parse p50=0.9 p99=4.0 ms, store p50=0.1 p99=0.5 ms}.
+     *
+     * @return the summary
+     */
+    public String latencySummary() {
+        return String.format(Locale.ROOT, "fetch p50=%.1f p99=%.1f ms, parse p50=%.1f p99=%.1f ms, store p50=%.1f p99=%.1f ms",
+                getFetchP50Millis(), getFetchP99Millis(), getParseP50Millis(), getParseP99Millis(),
+                getStoreP50Millis(), getStoreP99Millis());
+    }
+
+    /**
+     * Formats the load of the attached stages as a single line, for example
+     * {@code fetch 16 workers 97% busy, queue 64/64, waited 1.2 s; parse 1 workers 35% busy, queue 0/64, waited 0.0 s}.
+     *
+     * @return the summary, or an empty string if no stage is attached
+     */
+    public String stageSummary() {
+        StringBuilder summary = new StringBuilder();
+        appendStageSummary(summary, "fetch", fetchStage);
+        appendStageSummary(summary, "parse", parseStage);
+        appendStageSummary(summary, "store", storageWriter);
+        return summary.toString();
+    }
+
+    private static void appendStageSummary(StringBuilder summary, String name, StageStats stage) {
+        if (stage == null) {
+            return;
+        }
+        if (summary.length() > 0) {
+            summary.append("; ");
+        }
+        summary.append(String.format(Locale.ROOT, "%s %d workers %.0f%% busy, queue %d/%d, waited %.1f s", name,
+                stage.getWorkers(), stage.getUtilization() * 100, stage.getQueueDepth(), stage.getQueueCapacity(),
+                stage.getBlockedNanos() / 1e9));
+    }
+
+    /**
+     * Formats the metrics and the progress counters as a JSON object.
+     *
+     * @param progressTracker the progress of the same crawl
+     * @return the snapshot as JSON
+     */
+    public String toJson(ProgressTracker progressTracker) {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n");
+        appendField(json, "timestamp", System.currentTimeMillis());
+        appendField(json, "elapsedSeconds", (System.nanoTime() - startTime) / 1_000_000_000.0);
+        appendField(json, "discovered", progressTracker.getTotalUrls());
+        appendField(json, "downloaded", progressTracker.getDownloadedUrls());
+        appendField(json, "failed", progressTracker.getFailedUrls());
+        appendField(json, "pending", progressTracker.getPendingUrls());
+        appendField(json, "responses", getResponses());
+        appendField(json, "failures", getFailures());
+        appendField(json, "notModified", getNotModified());
+        appendField(json, "bytesIn", getBytesIn());
+        appendField(json, "bytesOut", getBytesOut());
+        appendField(json, "frontierDepth", getFrontierDepth());
+        appendField(json, "pagesPerSecond", getPagesPerSecond());
+        json.append(String.format(Locale.ROOT, "  \"connections\": {\"opened\": %d, \"leased\": %d, \"available\": %d,"
+                        + " \"pending\": %d, \"requestsPerConnection\": %.2f},%n", getConnectionsOpened(),
+                getConnectionsLeased(), getConnectionsAvailable(), getConnectionsPending(), getRequestsPerConnection()));
+        json.append(String.format(Locale.ROOT, "  \"storage\": {\"queueDepth\": %d, \"writeFailures\": %d},%n",
+                getStorageQueueDepth(), getStorageWriteFailures()));
+        json.append(String.format(Locale.ROOT, "  \"dedup\": {\"duplicates\": %d, \"bytesSaved\": %d, \"parsesSaved\": %d,"
+                        + " \"nearDuplicates\": %d, \"deferredLinks\": %d},%n", getDuplicates(), getDuplicateBytesSaved(),
+                getParsesSaved(), getNearDuplicates(), getDeferredLinks()));
+        LinkFilter filter = linkFilter;
+        json.append(String.format(Locale.ROOT, "  \"linkFilter\": {\"hits\": %d, \"misses\": %d, \"falsePositives\": %d,"
+                        + " \"hitRate\": %.3f, \"falsePositiveRate\": %.4f, \"memoryBytes\": %d},%n",
+                filter != null ? filter.getHits() : 0, filter != null ? filter.getMisses() : 0,
+                filter != null ? filter.getFalsePositives() : 0, filter != null ? filter.getHitRate() : 0,
+                filter != null ? filter.getFalsePositiveRate() : 0, filter != null ? filter.memoryBytes() : 0));
+        ResponseCache cache = responseCache;
+        json.append(String.format(Locale.ROOT, "  \"responseCache\": {\"hits\": %d, \"revalidated\": %d, \"misses\": %d,"
+                        + " \"hitRatio\": %.3f, \"bytesSaved\": %d, \"memoryHits\": %d, \"diskHits\": %d},%n",
+                cache != null ? cache.getHits() : 0, cache != null ? cache.getRevalidated() : 0,
+                cache != null ? cache.getMisses() : 0, cache != null ? cache.getHitRatio() : 0,
+                cache != null ? cache.getBytesSaved() : 0, cache != null ? cache.getMemoryHits() : 0,
+                cache != null ? cache.getDiskHits() : 0));
+        BufferPool pool = bufferPool;
+        json.append(String.format(Locale.ROOT, "  \"buffers\": {\"acquired\": %d, \"allocated\": %d, \"reuseRatio\": %.3f,"
+                        + " \"outstanding\": %d, \"pooledBytes\": %d, \"leaks\": %d},%n",
+                pool != null ? pool.getAcquired() : 0, pool != null ? pool.getAllocated() : 0,
+                pool != null ? pool.getReuseRatio() : 0, pool != null ? pool.getOutstanding() : 0,
+                pool != null ? pool.getPooledBytes() : 0, pool != null ? pool.getLeaks() : 0));
+        json.append("  \"stages\": {");
+        appendStage(json, "fetch", fetchStage, ", ");
+        appendStage(json, "parse", parseStage, ", ");
+        appendStage(json, "store", storageWriter, "");
+        json.append("},\n");
+        json.append("  \"statusCodes\": {");
+        String separator = "";
+        for (Map.Entry<String, Long> code : getStatusCodes().entrySet()) {
+            json.append(separator).append('"').append(code.getKey()).append("\": ").append(code.getValue());
+            separator = ", ";
+        }
+        json.append("},\n");
+        appendHistogram(json, "fetch", fetchLatency, ",");
+        appendHistogram(json, "parse", parseLatency, ",");
+        StorageWriter writer = storageWriter;
+        appendHistogram(json, "store", storeLatency, writer != null ? "," : "");
+        if (writer != null) {
+            appendHistogram(json, "write", writer.getWriteLatency(), "");
+        }
+        return json.append("}\n").toString();
+    }
+
+    private static void appendField(StringBuilder json, String name, Object value) {
+        json.append("  \"").append(name).append("\": ");
+        if (value instanceof Double) {
+            json.append(String.format(Locale.ROOT, "%.3f", (Double) value));
+        } else {
+            json.append(value);
+        }
+        json.append(",\n");
+    }
+
+    private static void appendStage(StringBuilder json, String name, StageStats stage, String separator) {
+        json.append(String.format(Locale.ROOT, "\"%s\": {\"workers\": %d, \"queueDepth\": %d, \"queueCapacity\": %d,"
+                        + " \"processed\": %d, \"utilization\": %.3f, \"blockedMillis\": %.3f}%s", name,
+                stage != null ? stage.getWorkers() : 0, stage != null ? stage.getQueueDepth() : 0,
+                stage != null ? stage.getQueueCapacity() : 0, stage != null ? stage.getProcessed() : 0,
+                stage != null ? stage.getUtilization() : 0, stage != null ? stage.getBlockedNanos() / 1e6 : 0,
+                separator));
+    }
+
+    private static void appendHistogram(StringBuilder json, String name, LatencyHistogram histogram, String separator) {
+        json.append(String.format(Locale.ROOT,
+                "  \"%s\": {\"count\": %d, \"meanMillis\": %.3f, \"p50Millis\": %.3f, \"p90Millis\": %.3f,"
+                        + " \"p99Millis\": %.3f, \"maxMillis\": %.3f}%s%n",
+                name, histogram.getCount(), histogram.getMeanMillis(), histogram.getPercentileMillis(50),
+                histogram.getPercentileMillis(90), histogram.getPercentileMillis(99), histogram.getMaxMillis(), separator));
+    }
+}
@@ -0,0 +1,83 @@
+package io.muzoo.ssc;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link CrawlMetrics}, registered with the platform MBean
+ * server as {@code io.muzoo.ssc:type=CrawlMetrics} while a crawl runs. Durations are
+ * in milliseconds.
+ */
+public interface CrawlMetricsMXBean {
+
+    long getResponses();
+
+    long getFailures();
+
+    long getNotModified();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getFrontierDepth();
+
+    double getPagesPerSecond();
+
+    long getDuplicates();
+
+    long getDuplicateBytesSaved();
+
+    long getParsesSaved();
+
+    long getNearDuplicates();
+
+    long getDeferredLinks();
+
+    long getConnectionsOpened();
+
+    int getConnectionsLeased();
+
+    int getConnectionsAvailable();
+
+    int getConnectionsPending();
+
+    double getRequestsPerConnection();
+
+    int getStorageQueueDepth();
+
+    long getStorageWriteFailures();
+
+    int getFetchQueueDepth();
+
+    int getParseQueueDepth();
+
+    double getFetchUtilization();
+
+    double getParseUtilization();
+
+    double getStoreUtilization();
+
+    double getLinkFilterHitRate();
+
+    double getResponseCacheHitRatio();
+
+    double getBufferReuseRatio();
+
+    long getBuffersOutstanding();
+
+    Map<String, Long> getStatusCodes();
+
+    double getFetchP50Millis();
+
+    double getFetchP99Millis();
+
+    double getParseP50Millis();
+
+    double getParseP99Millis();
+
+    double getStoreP50Millis();
+
+    double getStoreP99Millis();
+
+    double getWriteP99Millis();
+}
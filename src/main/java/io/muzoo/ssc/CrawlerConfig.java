@@ -0,0 +1,1092 @@
+package io.muzoo.ssc;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CrawlerConfig class holds the tunable options of a crawl. Instances are
+ * immutable and are created through {@link #builder()}; {@link #defaults()}
+ * returns the configuration used when no options are given.
+ */
+public class CrawlerConfig {
+    private static final int DEFAULT_MAX_CONNECTIONS = 5;
+
+    private final boolean exactTotal;
+    private final int concurrency;
+    private final VisitedSet.Type visitedSetType;
+    private final long maxBodySize;
+    private final LinkExtractor.Type linkExtractorType;
+    private final Duration progressInterval;
+    private final Path metricsFile;
+    private final Path checkpointDir;
+    private final Duration checkpointInterval;
+    private final boolean resume;
+    private final int frontierMemoryLimit;
+    private final Path metadataIndexFile;
+    private final int maxConnections;
+    private final int maxConnectionsPerRoute;
+    private final Duration connectTimeout;
+    private final Duration responseTimeout;
+    private final Duration socketTimeout;
+    private final Duration idleConnectionTimeout;
+    private final Duration validateAfterInactivity;
+    private final boolean tcpNoDelay;
+    private final boolean asyncFetch;
+    private final boolean http2;
+    private final boolean politeness;
+    private final double hostRequestsPerSecond;
+    private final int maxHostConcurrency;
+    private final int storageWriterThreads;
+    private final int storageQueueCapacity;
+    private final StorageWriter.Durability durability;
+    private final Duration syncInterval;
+    private final Path archiveDir;
+    private final long maxSegmentSize;
+    private final Path packDir;
+    private final long maxPackSize;
+    private final boolean deduplicate;
+    private final int nearDuplicateClusterSize;
+    private final Frontier.Type frontierType;
+    private final int maxDepth;
+    private final List<PriorityFrontier.Boost> priorityBoosts;
+    private final long maxPages;
+    private final long maxBytes;
+    private final Duration maxDuration;
+    private final boolean pipelined;
+    private final int parseThreads;
+    private final int stageQueueCapacity;
+    private final boolean linkFilter;
+    private final long expectedLinks;
+    private final double linkFilterFalsePositiveRate;
+    private final int shardIndex;
+    private final int shardCount;
+    private final Path exchangeDir;
+    private final ShardExchange.Partition partition;
+    private final int exchangeBatchSize;
+    private final Path responseCacheDir;
+    private final long responseCacheMemory;
+    private final boolean replayOnly;
+    private final long bufferPoolSize;
+    private final boolean bufferLeakDetection;
+
+    private CrawlerConfig(Builder builder) {
+        this.exactTotal = builder.exactTotal;
+        this.concurrency = builder.concurrency;
+        this.visitedSetType = builder.visitedSetType;
+        this.maxBodySize = builder.maxBodySize;
+        this.linkExtractorType = builder.linkExtractorType;
+        this.progressInterval = builder.progressInterval;
+        this.metricsFile = builder.metricsFile;
+        this.checkpointDir = builder.checkpointDir;
+        this.checkpointInterval = builder.checkpointInterval;
+        this.resume = builder.resume;
+        this.frontierMemoryLimit = builder.frontierMemoryLimit;
+        this.metadataIndexFile = builder.metadataIndexFile;
+        this.maxConnections = builder.maxConnections;
+        this.maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+        this.connectTimeout = builder.connectTimeout;
+        this.responseTimeout = builder.responseTimeout;
+        this.socketTimeout = builder.socketTimeout;
+        this.idleConnectionTimeout = builder.idleConnectionTimeout;
+        this.validateAfterInactivity = builder.validateAfterInactivity;
+        this.tcpNoDelay = builder.tcpNoDelay;
+        this.asyncFetch = builder.asyncFetch;
+        this.http2 = builder.http2;
+        this.politeness = builder.politeness;
+        this.hostRequestsPerSecond = builder.hostRequestsPerSecond;
+        this.maxHostConcurrency = builder.maxHostConcurrency;
+        this.storageWriterThreads = builder.storageWriterThreads;
+        this.storageQueueCapacity = builder.storageQueueCapacity;
+        this.durability = builder.durability;
+        this.syncInterval = builder.syncInterval;
+        this.archiveDir = builder.archiveDir;
+        this.maxSegmentSize = builder.maxSegmentSize;
+        this.packDir = builder.packDir;
+        this.maxPackSize = builder.maxPackSize;
+        this.deduplicate = builder.deduplicate;
+        this.nearDuplicateClusterSize = builder.nearDuplicateClusterSize;
+        this.frontierType = builder.frontierType;
+        this.maxDepth = builder.maxDepth;
+        this.priorityBoosts = List.copyOf(builder.priorityBoosts);
+        this.maxPages = builder.maxPages;
+        this.maxBytes = builder.maxBytes;
+        this.maxDuration = builder.maxDuration;
+        this.pipelined = builder.pipelined;
+        this.parseThreads = builder.parseThreads;
+        this.stageQueueCapacity = builder.stageQueueCapacity;
+        this.linkFilter = builder.linkFilter;
+        this.expectedLinks = builder.expectedLinks;
+        this.linkFilterFalsePositiveRate = builder.linkFilterFalsePositiveRate;
+        this.shardIndex = builder.shardIndex;
+        this.shardCount = builder.shardCount;
+        this.exchangeDir = builder.exchangeDir;
+        this.partition = builder.partition;
+        this.exchangeBatchSize = builder.exchangeBatchSize;
+        this.responseCacheDir = builder.responseCacheDir;
+        this.responseCacheMemory = builder.responseCacheMemory;
+        this.replayOnly = builder.replayOnly;
+        this.bufferPoolSize = builder.bufferPoolSize;
+        this.bufferLeakDetection = builder.bufferLeakDetection;
+    }
+
+    /**
+     * Returns the default configuration: a single-pass crawl whose total grows
+     * as new links are discovered.
+     *
+     * @return the default configuration
+     */
+    public static CrawlerConfig defaults() {
+        return builder().build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Whether the crawler should discover every link up front so that the
+     * progress percentage is exact. The pages saved during discovery are parsed
+     * again by the crawl instead of being downloaded twice.
+     */
+    public boolean isExactTotal() {
+        return exactTotal;
+    }
+
+    /**
+     * The maximum number of requests in flight. A value of one crawls sequentially
+     * on the calling thread; larger values crawl on virtual threads.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * The implementation used to remember visited URLs. The default keeps the full URLs,
+     * so no URL is ever skipped. {@link VisitedSet.Type#FINGERPRINT} takes a fraction of
+     * the memory on large crawls, but two URLs whose 64-bit fingerprints collide count as
+     * one and the second is never crawled; {@link VisitedSet.Type#FINGERPRINT_VERIFIED}
+     * rules that out at the cost of keeping the URLs as well.
+     */
+    public VisitedSet.Type getVisitedSetType() {
+        return visitedSetType;
+    }
+
+    /**
+     * The largest response body, in bytes, that the crawler downloads. Larger
+     * downloads are aborted and counted as oversized.
+     */
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * The implementation used to find links in HTML pages. The streaming tokenizer is
+     * the default; {@link LinkExtractor.Type#JSOUP} builds a full document per page.
+     */
+    public LinkExtractor.Type getLinkExtractorType() {
+        return linkExtractorType;
+    }
+
+    /**
+     * How often the progress line is printed and the metrics snapshot is written.
+     */
+    public Duration getProgressInterval() {
+        return progressInterval;
+    }
+
+    /**
+     * The file the metrics snapshot is written to as JSON while the crawl runs, or null
+     * if no snapshot should be written.
+     */
+    public Path getMetricsFile() {
+        return metricsFile;
+    }
+
+    /**
+     * The directory holding the crawl journal, its checkpoints and the spilled frontier,
+     * or null if the crawl should not be resumable.
+     */
+    public Path getCheckpointDir() {
+        return checkpointDir;
+    }
+
+    /**
+     * The minimum time between two checkpoints of the crawl journal.
+     */
+    public Duration getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Whether to continue the crawl recorded in the checkpoint directory instead of
+     * starting over. URLs that were already downloaded or failed are not fetched again.
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * The number of frontier URLs kept on the heap; further URLs are spilled to disk.
+     */
+    public int getFrontierMemoryLimit() {
+        return frontierMemoryLimit;
+    }
+
+    /**
+     * The file that remembers the validators, hashes and links of the downloaded pages,
+     * or null to download every page unconditionally. With an index, unchanged pages are
+     * neither transferred, written nor parsed again.
+     */
+    public Path getMetadataIndexFile() {
+        return metadataIndexFile;
+    }
+
+    /**
+     * The maximum number of pooled HTTP connections. Unless set explicitly, it is the
+     * concurrency, but at least five.
+     */
+    public int getMaxConnections() {
+        return maxConnections > 0 ? maxConnections : Math.max(DEFAULT_MAX_CONNECTIONS, concurrency);
+    }
+
+    /**
+     * The maximum number of pooled HTTP connections to a single host. Unless set
+     * explicitly, it is the same as {@link #getMaxConnections()}.
+     */
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute > 0 ? maxConnectionsPerRoute : getMaxConnections();
+    }
+
+    /**
+     * How long to wait for a connection to be established, or for a pooled one to become free.
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * How long to wait for the response once the request was sent.
+     */
+    public Duration getResponseTimeout() {
+        return responseTimeout;
+    }
+
+    /**
+     * How long a read on an open connection may block.
+     */
+    public Duration getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    /**
+     * How long an idle connection is kept in the pool when the server does not say how
+     * long it keeps connections alive.
+     */
+    public Duration getIdleConnectionTimeout() {
+        return idleConnectionTimeout;
+    }
+
+    /**
+     * How long a pooled connection may be idle before it is checked for a server-side
+     * close before being reused.
+     */
+    public Duration getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * Whether Nagle's algorithm is disabled on the connections, so that small requests
+     * are sent without delay.
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    /**
+     * Whether pages are fetched with the non-blocking client, which keeps up to
+     * {@link #getConcurrency()} requests in flight without a thread per request.
+     */
+    public boolean isAsyncFetch() {
+        return asyncFetch;
+    }
+
+    /**
+     * Whether the non-blocking client multiplexes the requests to a host over one HTTP/2
+     * connection instead of a pool of HTTP/1.1 connections. The server must support
+     * HTTP/2; over plain HTTP it is assumed with prior knowledge.
+     */
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    /**
+     * Whether requests go through a {@link HostScheduler}, which limits the request rate
+     * and adapts the concurrency of every host, honors its {@code Crawl-delay} and backs
+     * off when it answers 429 or 503. The counting pass of exact totals is sequential and
+     * not scheduled.
+     */
+    public boolean isPoliteness() {
+        return politeness;
+    }
+
+    /**
+     * The maximum request rate per host when politeness is enabled, or zero for no limit
+     * other than the host's {@code Crawl-delay}.
+     */
+    public double getHostRequestsPerSecond() {
+        return hostRequestsPerSecond;
+    }
+
+    /**
+     * The maximum number of requests in flight per host when politeness is enabled. Unless
+     * set explicitly, it is the concurrency.
+     */
+    public int getMaxHostConcurrency() {
+        return maxHostConcurrency > 0 ? maxHostConcurrency : concurrency;
+    }
+
+    /**
+     * The number of threads of the {@link StorageWriter} that writes small bodies, or zero
+     * to write every body on the thread that downloads it.
+     */
+    public int getStorageWriterThreads() {
+        return storageWriterThreads;
+    }
+
+    /**
+     * The number of bodies that may wait for the storage writer before downloads block.
+     */
+    public int getStorageQueueCapacity() {
+        return storageQueueCapacity;
+    }
+
+    /**
+     * How the stored files are made durable when a storage writer is used.
+     */
+    public StorageWriter.Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * How often stored files are forced to disk with {@link StorageWriter.Durability#PERIODIC}.
+     */
+    public Duration getSyncInterval() {
+        return syncInterval;
+    }
+
+    /**
+     * The directory of the WARC archive the responses are written to, or null to write
+     * a file per URL under the output directory. With an archive, pages are fetched with
+     * blocking requests and without conditional requests, and the file tree can be
+     * exported from the archive with {@link WarcReader#export(String)}.
+     */
+    public Path getArchiveDir() {
+        return archiveDir;
+    }
+
+    /**
+     * The size in bytes after which the archive starts a new segment file.
+     */
+    public long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    /**
+     * The directory of the {@link PackStore} the bodies are written to, or null to write a
+     * file per URL under the output directory. Like an archive, it is written by blocking
+     * fetches without conditional requests.
+     */
+    public Path getPackDir() {
+        return packDir;
+    }
+
+    /**
+     * The size in bytes after which the pack store starts a new pack file.
+     */
+    public long getMaxPackSize() {
+        return maxPackSize;
+    }
+
+    /**
+     * Whether pages whose body is identical to one already crawled under another URL are
+     * not parsed again, and their files replaced with hard links to the first copy.
+     */
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * The number of near-duplicate pages, by the SimHash of their text, after which the
+     * links found on further pages of the same cluster are crawled last, or zero to not
+     * look for near-duplicates.
+     */
+    public int getNearDuplicateClusterSize() {
+        return nearDuplicateClusterSize;
+    }
+
+    /**
+     * The order in which waiting URLs are crawled: depth first, breadth first or by score.
+     */
+    public Frontier.Type getFrontierType() {
+        return frontierType;
+    }
+
+    /**
+     * The largest number of links between the base URL and a crawled page. Links found
+     * on pages at this depth are not followed.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * The patterns that move matching URLs up or down in a priority frontier.
+     */
+    public List<PriorityFrontier.Boost> getPriorityBoosts() {
+        return priorityBoosts;
+    }
+
+    /**
+     * The number of pages after which no further request is started.
+     */
+    public long getMaxPages() {
+        return maxPages;
+    }
+
+    /**
+     * The number of bytes received after which no further request is started.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * The crawl time after which no further request is started, or null for no limit.
+     */
+    public Duration getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * Whether fetching, parsing and storing run as separate stages connected by bounded
+     * queues, so that pages are parsed while others are fetched. The fetch stage has
+     * {@link #getConcurrency()} workers on virtual threads.
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * The number of platform threads that parse pages in a pipelined crawl.
+     */
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    /**
+     * The number of items the queue in front of each stage of a pipelined crawl holds
+     * before the stage feeding it has to wait.
+     */
+    public int getStageQueueCapacity() {
+        return stageQueueCapacity;
+    }
+
+    /**
+     * Whether links already dealt with are dropped before they are normalized, by a
+     * {@link LinkFilter} checked on the links as extracted.
+     */
+    public boolean isLinkFilter() {
+        return linkFilter;
+    }
+
+    /**
+     * The number of distinct links, as extracted, the link filter is sized for.
+     */
+    public long getExpectedLinks() {
+        return expectedLinks;
+    }
+
+    /**
+     * The false-positive rate the Bloom filter of the link filter is sized for.
+     */
+    public double getLinkFilterFalsePositiveRate() {
+        return linkFilterFalsePositiveRate;
+    }
+
+    /**
+     * The index of this process among the shards of a sharded crawl, from 0.
+     */
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    /**
+     * The number of crawler processes that share the crawl, each owning a partition of the URLs.
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Whether the crawl is shared with other processes.
+     */
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    /**
+     * The directory, shared by all shards, through which they hand each other URLs.
+     */
+    public Path getExchangeDir() {
+        return exchangeDir;
+    }
+
+    /**
+     * How URLs are assigned to the shards.
+     */
+    public ShardExchange.Partition getPartition() {
+        return partition;
+    }
+
+    /**
+     * The number of URLs for another shard after which they are handed over.
+     */
+    public int getExchangeBatchSize() {
+        return exchangeBatchSize;
+    }
+
+    /**
+     * The directory of the {@link ResponseCache} that answers repeated requests, or null
+     * to send every request to the server.
+     */
+    public Path getResponseCacheDir() {
+        return responseCacheDir;
+    }
+
+    /**
+     * The total size of the bodies the response cache keeps in memory, in bytes.
+     */
+    public long getResponseCacheMemory() {
+        return responseCacheMemory;
+    }
+
+    /**
+     * Whether the crawl is served from the response cache only, without any request to the server.
+     */
+    public boolean isReplayOnly() {
+        return replayOnly;
+    }
+
+    /**
+     * The total size of the free body buffers the {@link BufferPool} keeps for reuse, in
+     * bytes, or 0 to allocate a heap buffer for every body.
+     */
+    public long getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    /**
+     * Whether the buffer pool reports body buffers that were never released, at some cost per buffer.
+     */
+    public boolean isBufferLeakDetection() {
+        return bufferLeakDetection;
+    }
+
+    /**
+     * Whether the crawl may stop before the frontier is empty, because of its depth limit or a budget.
+     */
+    public boolean isBounded() {
+        return maxDepth < Integer.MAX_VALUE || maxPages < Long.MAX_VALUE || maxBytes < Long.MAX_VALUE
+                || maxDuration != null;
+    }
+
+    /**
+     * Builder for {@link CrawlerConfig}.
+     */
+    public static class Builder {
+        private boolean exactTotal = false;
+        private int concurrency = 1;
+        private VisitedSet.Type visitedSetType = VisitedSet.Type.HASH;
+        private long maxBodySize = 64L * 1024 * 1024;
+        private LinkExtractor.Type linkExtractorType = LinkExtractor.Type.STREAMING;
+        private Duration progressInterval = Duration.ofSeconds(1);
+        private Path metricsFile = null;
+        private Path checkpointDir = null;
+        private Duration checkpointInterval = Duration.ofSeconds(30);
+        private boolean resume = false;
+        private int frontierMemoryLimit = 100_000;
+        private Path metadataIndexFile = null;
+        private int maxConnections = 0;
+        private int maxConnectionsPerRoute = 0;
+        private Duration connectTimeout = Duration.ofSeconds(10);
+        private Duration responseTimeout = Duration.ofSeconds(30);
+        private Duration socketTimeout = Duration.ofSeconds(30);
+        private Duration idleConnectionTimeout = Duration.ofSeconds(30);
+        private Duration validateAfterInactivity = Duration.ofSeconds(2);
+        private boolean tcpNoDelay = true;
+        private boolean asyncFetch = false;
+        private boolean http2 = false;
+        private boolean politeness = false;
+        private double hostRequestsPerSecond = 10;
+        private int maxHostConcurrency = 0;
+        private int storageWriterThreads = 2;
+        private int storageQueueCapacity = 256;
+        private StorageWriter.Durability durability = StorageWriter.Durability.NONE;
+        private Duration syncInterval = Duration.ofSeconds(5);
+        private Path archiveDir = null;
+        private long maxSegmentSize = 1024L * 1024 * 1024;
+        private Path packDir = null;
+        private long maxPackSize = 1024L * 1024 * 1024;
+        private boolean deduplicate = false;
+        private int nearDuplicateClusterSize = 0;
+        private Frontier.Type frontierType = Frontier.Type.LIFO;
+        private int maxDepth = Integer.MAX_VALUE;
+        private final List<PriorityFrontier.Boost> priorityBoosts = new ArrayList<>();
+        private long maxPages = Long.MAX_VALUE;
+        private long maxBytes = Long.MAX_VALUE;
+        private Duration maxDuration = null;
+        private boolean pipelined = false;
+        private int parseThreads = Runtime.getRuntime().availableProcessors();
+        private int stageQueueCapacity = 64;
+        private boolean linkFilter = false;
+        private long expectedLinks = 1_000_000;
+        private double linkFilterFalsePositiveRate = 0.01;
+        private int shardIndex = 0;
+        private int shardCount = 1;
+        private Path exchangeDir = null;
+        private ShardExchange.Partition partition = ShardExchange.Partition.URL;
+        private int exchangeBatchSize = 256;
+        private Path responseCacheDir = null;
+        private long responseCacheMemory = 64L * 1024 * 1024;
+        private boolean replayOnly = false;
+        private long bufferPoolSize = 32L * 1024 * 1024;
+        private boolean bufferLeakDetection = false;
+
+        private Builder() {
+        }
+
+        public Builder exactTotal(boolean exactTotal) {
+            this.exactTotal = exactTotal;
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            if (concurrency < 1) {
+                throw new IllegalArgumentException("Concurrency must be at least 1: " + concurrency);
+            }
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public Builder visitedSetType(VisitedSet.Type visitedSetType) {
+            this.visitedSetType = visitedSetType;
+            return this;
+        }
+
+        public Builder maxBodySize(long maxBodySize) {
+            if (maxBodySize < 0) {
+                throw new IllegalArgumentException("Maximum body size must not be negative: " + maxBodySize);
+            }
+            this.maxBodySize = maxBodySize;
+            return this;
+        }
+
+        public Builder linkExtractorType(LinkExtractor.Type linkExtractorType) {
+            this.linkExtractorType = linkExtractorType;
+            return this;
+        }
+
+        public Builder progressInterval(Duration progressInterval) {
+            if (progressInterval.isNegative() || progressInterval.isZero()) {
+                throw new IllegalArgumentException("Progress interval must be positive: " + progressInterval);
+            }
+            this.progressInterval = progressInterval;
+            return this;
+        }
+
+        public Builder metricsFile(Path metricsFile) {
+            this.metricsFile = metricsFile;
+            return this;
+        }
+
+        public Builder checkpointDir(Path checkpointDir) {
+            this.checkpointDir = checkpointDir;
+            return this;
+        }
+
+        public Builder checkpointInterval(Duration checkpointInterval) {
+            if (checkpointInterval.isNegative()) {
+                throw new IllegalArgumentException("Checkpoint interval must not be negative: " + checkpointInterval);
+            }
+            this.checkpointInterval = checkpointInterval;
+            return this;
+        }
+
+        public Builder resume(boolean resume) {
+            this.resume = resume;
+            return this;
+        }
+
+        public Builder frontierMemoryLimit(int frontierMemoryLimit) {
+            if (frontierMemoryLimit < 1) {
+                throw new IllegalArgumentException("Frontier memory limit must be at least 1: " + frontierMemoryLimit);
+            }
+            this.frontierMemoryLimit = frontierMemoryLimit;
+            return this;
+        }
+
+        public Builder metadataIndexFile(Path metadataIndexFile) {
+            this.metadataIndexFile = metadataIndexFile;
+            return this;
+        }
+
+        public Builder maxConnections(int maxConnections) {
+            if (maxConnections < 1) {
+                throw new IllegalArgumentException("Maximum connections must be at least 1: " + maxConnections);
+            }
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            if (maxConnectionsPerRoute < 1) {
+                throw new IllegalArgumentException("Maximum connections per route must be at least 1: "
+                        + maxConnectionsPerRoute);
+            }
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        public Builder connectTimeout(Duration connectTimeout) {
+            this.connectTimeout = positive(connectTimeout, "Connect timeout");
+            return this;
+        }
+
+        public Builder responseTimeout(Duration responseTimeout) {
+            this.responseTimeout = positive(responseTimeout, "Response timeout");
+            return this;
+        }
+
+        public Builder socketTimeout(Duration socketTimeout) {
+            this.socketTimeout = positive(socketTimeout, "Socket timeout");
+            return this;
+        }
+
+        public Builder idleConnectionTimeout(Duration idleConnectionTimeout) {
+            this.idleConnectionTimeout = positive(idleConnectionTimeout, "Idle connection timeout");
+            return this;
+        }
+
+        public Builder validateAfterInactivity(Duration validateAfterInactivity) {
+            this.validateAfterInactivity = positive(validateAfterInactivity, "Validation interval");
+            return this;
+        }
+
+        public Builder tcpNoDelay(boolean tcpNoDelay) {
+            this.tcpNoDelay = tcpNoDelay;
+            return this;
+        }
+
+        public Builder asyncFetch(boolean asyncFetch) {
+            this.asyncFetch = asyncFetch;
+            return this;
+        }
+
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        public Builder politeness(boolean politeness) {
+            this.politeness = politeness;
+            return this;
+        }
+
+        public Builder hostRequestsPerSecond(double hostRequestsPerSecond) {
+            if (hostRequestsPerSecond < 0 || Double.isNaN(hostRequestsPerSecond)) {
+                throw new IllegalArgumentException("Host request rate must not be negative: " + hostRequestsPerSecond);
+            }
+            this.hostRequestsPerSecond = hostRequestsPerSecond;
+            return this;
+        }
+
+        public Builder maxHostConcurrency(int maxHostConcurrency) {
+            if (maxHostConcurrency < 1) {
+                throw new IllegalArgumentException("Maximum host concurrency must be at least 1: " + maxHostConcurrency);
+            }
+            this.maxHostConcurrency = maxHostConcurrency;
+            return this;
+        }
+
+        public Builder storageWriterThreads(int storageWriterThreads) {
+            if (storageWriterThreads < 0) {
+                throw new IllegalArgumentException("Storage writer threads must not be negative: " + storageWriterThreads);
+            }
+            this.storageWriterThreads = storageWriterThreads;
+            return this;
+        }
+
+        public Builder storageQueueCapacity(int storageQueueCapacity) {
+            if (storageQueueCapacity < 1) {
+                throw new IllegalArgumentException("Storage queue capacity must be at least 1: " + storageQueueCapacity);
+            }
+            this.storageQueueCapacity = storageQueueCapacity;
+            return this;
+        }
+
+        public Builder durability(StorageWriter.Durability durability) {
+            this.durability = durability;
+            return this;
+        }
+
+        public Builder syncInterval(Duration syncInterval) {
+            this.syncInterval = positive(syncInterval, "Sync interval");
+            return this;
+        }
+
+        public Builder archiveDir(Path archiveDir) {
+            this.archiveDir = archiveDir;
+            return this;
+        }
+
+        public Builder maxSegmentSize(long maxSegmentSize) {
+            if (maxSegmentSize < 1) {
+                throw new IllegalArgumentException("Maximum segment size must be at least 1: " + maxSegmentSize);
+            }
+            this.maxSegmentSize = maxSegmentSize;
+            return this;
+        }
+
+        public Builder packDir(Path packDir) {
+            this.packDir = packDir;
+            return this;
+        }
+
+        public Builder maxPackSize(long maxPackSize) {
+            if (maxPackSize < 1 || maxPackSize > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Maximum pack size must be between 1 and 2 GiB: " + maxPackSize);
+            }
+            this.maxPackSize = maxPackSize;
+            return this;
+        }
+
+        public Builder deduplicate(boolean deduplicate) {
+            this.deduplicate = deduplicate;
+            return this;
+        }
+
+        public Builder nearDuplicateClusterSize(int nearDuplicateClusterSize) {
+            if (nearDuplicateClusterSize < 0) {
+                throw new IllegalArgumentException("Near-duplicate cluster size must not be negative: "
+                        + nearDuplicateClusterSize);
+            }
+            this.nearDuplicateClusterSize = nearDuplicateClusterSize;
+            return this;
+        }
+
+        public Builder frontierType(Frontier.Type frontierType) {
+            this.frontierType = frontierType;
+            return this;
+        }
+
+        public Builder maxDepth(int maxDepth) {
+            if (maxDepth < 0) {
+                throw new IllegalArgumentException("Maximum depth must not be negative: " + maxDepth);
+            }
+            this.maxDepth = maxDepth;
+            return this;
+        }
+
+        public Builder priorityBoost(String regex, int levels) {
+            this.priorityBoosts.add(new PriorityFrontier.Boost(regex, levels));
+            return this;
+        }
+
+        public Builder maxPages(long maxPages) {
+            if (maxPages < 1) {
+                throw new IllegalArgumentException("Maximum pages must be at least 1: " + maxPages);
+            }
+            this.maxPages = maxPages;
+            return this;
+        }
+
+        public Builder maxBytes(long maxBytes) {
+            if (maxBytes < 1) {
+                throw new IllegalArgumentException("Maximum bytes must be at least 1: " + maxBytes);
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        public Builder maxDuration(Duration maxDuration) {
+            this.maxDuration = positive(maxDuration, "Maximum duration");
+            return this;
+        }
+
+        public Builder pipelined(boolean pipelined) {
+            this.pipelined = pipelined;
+            return this;
+        }
+
+        public Builder parseThreads(int parseThreads) {
+            if (parseThreads < 1) {
+                throw new IllegalArgumentException("Parse threads must be at least 1: " + parseThreads);
+            }
+            this.parseThreads = parseThreads;
+            return this;
+        }
+
+        public Builder stageQueueCapacity(int stageQueueCapacity) {
+            if (stageQueueCapacity < 1) {
+                throw new IllegalArgumentException("Stage queue capacity must be at least 1: " + stageQueueCapacity);
+            }
+            this.stageQueueCapacity = stageQueueCapacity;
+            return this;
+        }
+
+        public Builder linkFilter(boolean linkFilter) {
+            this.linkFilter = linkFilter;
+            return this;
+        }
+
+        public Builder expectedLinks(long expectedLinks) {
+            if (expectedLinks < 1) {
+                throw new IllegalArgumentException("Expected links must be at least 1: " + expectedLinks);
+            }
+            this.expectedLinks = expectedLinks;
+            return this;
+        }
+
+        public Builder linkFilterFalsePositiveRate(double linkFilterFalsePositiveRate) {
+            if (!(linkFilterFalsePositiveRate > 0 && linkFilterFalsePositiveRate < 1)) {
+                throw new IllegalArgumentException("Link filter false-positive rate must be between 0 and 1: "
+                        + linkFilterFalsePositiveRate);
+            }
+            this.linkFilterFalsePositiveRate = linkFilterFalsePositiveRate;
+            return this;
+        }
+
+        public Builder shard(int shardIndex, int shardCount) {
+            if (shardCount < 1) {
+                throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+            }
+            if (shardIndex < 0 || shardIndex >= shardCount) {
+                throw new IllegalArgumentException("Shard index must be between 0 and " + (shardCount - 1) + ": "
+                        + shardIndex);
+            }
+            this.shardIndex = shardIndex;
+            this.shardCount = shardCount;
+            return this;
+        }
+
+        public Builder exchangeDir(Path exchangeDir) {
+            this.exchangeDir = exchangeDir;
+            return this;
+        }
+
+        public Builder partition(ShardExchange.Partition partition) {
+            this.partition = partition;
+            return this;
+        }
+
+        public Builder exchangeBatchSize(int exchangeBatchSize) {
+            if (exchangeBatchSize < 1) {
+                throw new IllegalArgumentException("Exchange batch size must be at least 1: " + exchangeBatchSize);
+            }
+            this.exchangeBatchSize = exchangeBatchSize;
+            return this;
+        }
+
+        public Builder responseCacheDir(Path responseCacheDir) {
+            this.responseCacheDir = responseCacheDir;
+            return this;
+        }
+
+        public Builder responseCacheMemory(long responseCacheMemory) {
+            if (responseCacheMemory < 0) {
+                throw new IllegalArgumentException("Response cache memory must not be negative: "
+                        + responseCacheMemory);
+            }
+            this.responseCacheMemory = responseCacheMemory;
+            return this;
+        }
+
+        public Builder replayOnly(boolean replayOnly) {
+            this.replayOnly = replayOnly;
+            return this;
+        }
+
+        public Builder bufferPoolSize(long bufferPoolSize) {
+            if (bufferPoolSize < 0) {
+                throw new IllegalArgumentException("Buffer pool size must not be negative: " + bufferPoolSize);
+            }
+            this.bufferPoolSize = bufferPoolSize;
+            return this;
+        }
+
+        public Builder bufferLeakDetection(boolean bufferLeakDetection) {
+            this.bufferLeakDetection = bufferLeakDetection;
+            return this;
+        }
+
+        private static Duration positive(Duration duration, String name) {
+            if (duration.isNegative() || duration.isZero()) {
+                throw new IllegalArgumentException(name + " must be positive: " + duration);
+            }
+            return duration;
+        }
+
+        public CrawlerConfig build() {
+            if (archiveDir != null && packDir != null) {
+                throw new IllegalArgumentException("Responses go to either an archive or a pack store, not both");
+            }
+            if (deduplicate && (archiveDir != null || packDir != null)) {
+                throw new IllegalArgumentException("Deduplication links the files of the output directory,"
+                        + " which are not written with an archive or a pack store");
+            }
+            if (pipelined && asyncFetch) {
+                throw new IllegalArgumentException("The non-blocking client already fetches apart from parsing;"
+                        + " the pipeline needs the blocking downloader");
+            }
+            if (!priorityBoosts.isEmpty() && frontierType != Frontier.Type.PRIORITY) {
+                throw new IllegalArgumentException("Priority boosts need a priority frontier");
+            }
+            if (linkFilter && frontierType == Frontier.Type.PRIORITY) {
+                throw new IllegalArgumentException("A priority frontier counts every link to a URL,"
+                        + " which the link filter would drop");
+            }
+            if (shardCount > 1) {
+                if (exchangeDir == null) {
+                    throw new IllegalArgumentException("A sharded crawl needs an exchange directory");
+                }
+                if (asyncFetch || pipelined) {
+                    throw new IllegalArgumentException("A sharded crawl fetches with the blocking downloader,"
+                            + " without the pipeline");
+                }
+                if (exactTotal || resume) {
+                    throw new IllegalArgumentException("A shard cannot count the whole site up front,"
+                            + " nor resume, since the URLs handed between shards are not journaled");
+                }
+                if (maxPages < Long.MAX_VALUE || maxBytes < Long.MAX_VALUE || maxDuration != null) {
+                    throw new IllegalArgumentException("Budgets would stop one shard while the others"
+                            + " still hand it URLs");
+                }
+            }
+            if (replayOnly && responseCacheDir == null) {
+                throw new IllegalArgumentException("Replaying a crawl needs a response cache directory");
+            }
+            if (responseCacheDir != null && (asyncFetch || archiveDir != null || packDir != null)) {
+                throw new IllegalArgumentException("The response cache writes the files of the output directory"
+                        + " with the blocking downloader, not to an archive or a pack store");
+            }
+            CrawlerConfig config = new CrawlerConfig(this);
+            if (exactTotal && config.isBounded()) {
+                throw new IllegalArgumentException("Exact totals count every reachable page,"
+                        + " which a depth limit or a budget would not crawl");
+            }
+            return config;
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package io.muzoo.ssc;
 
-import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -12,12 +11,14 @@ import java.io.IOException;
  * The CrawlerManager class is responsible for managing the setup and execution
  * of the web crawling process. It creates the necessary dependencies, handles
  * initialization, and logs the performance statistics of the crawling operation.
+ * While the crawl runs, its metrics are published by a {@link MetricsReporter}.
  */
 public class CrawlerManager {
 
     private static final Logger logger = LoggerFactory.getLogger(CrawlerManager.class);
     private final String baseUrl;
     private final String outputDir;
+    private final CrawlerConfig config;
 
     /**
      * Constructor to initialize the CrawlerManager with the base URL and output directory.
@@ -26,8 +27,20 @@ public class CrawlerManager {
      * @param outputDir the directory where downloaded content will be saved
      */
     public CrawlerManager(String baseUrl, String outputDir) {
+        this(baseUrl, outputDir, CrawlerConfig.defaults());
+    }
+
+    /**
+     * Constructor to initialize the CrawlerManager with the base URL, output directory and crawl options.
+     *
+     * @param baseUrl the starting URL for the web crawler
+     * @param outputDir the directory where downloaded content will be saved
+     * @param config the crawl options
+     */
+    public CrawlerManager(String baseUrl, String outputDir, CrawlerConfig config) {
         this.baseUrl = baseUrl;
         this.outputDir = outputDir;
+        this.config = config;
     }
 
     /**
@@ -42,23 +55,107 @@ public class CrawlerManager {
             System.exit(1);
         }
 
+        if (config.isResume()) {
+            if (config.getCheckpointDir() == null) {
+                logger.warn("Cannot resume without a checkpoint directory; starting a new crawl");
+            } else {
+                logger.info("Resuming the crawl recorded in {}", config.getCheckpointDir());
+            }
+        }
         logger.info("Starting the web crawler...");
         long startTime = System.nanoTime();
 
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpDownloader downloader = new HttpDownloader(httpClient);
-            ProgressTracker progressTracker = new ProgressTracker();
+        // The pool is sized from the concurrency by default, so that concurrent fetches do not queue for a connection
+        // The non-blocking client replaces the pool when async fetching is enabled
+        // Small bodies of blocking fetches are written by the storage writer threads
+        // An archive or a pack store replaces the storage writer, and is written by blocking fetches only
+        boolean wholeBodies = config.getArchiveDir() != null || config.getPackDir() != null;
+        boolean async = config.isAsyncFetch() && !wholeBodies;
+        if (config.isAsyncFetch() && !async) {
+            logger.warn("Fetching with blocking requests, because responses are written to an archive or pack store");
+        }
+        try (ConnectionPool connectionPool = async ? null : new ConnectionPool(config);
+             CloseableHttpAsyncClient asyncClient = async ? AsyncHttpDownloader.createClient(config) : null;
+             WarcWriter archive = config.getArchiveDir() != null ? WarcWriter.create(config) : null;
+             PackStore packStore = config.getPackDir() != null ? PackStore.create(config) : null;
+             StorageWriter storage = async || wholeBodies || config.getStorageWriterThreads() == 0
+                     ? null : StorageWriter.create(config)) {
+            ResponseCache responseCache = config.getResponseCacheDir() != null ? ResponseCache.create(config) : null;
+            BufferPool bufferPool = BufferPool.create(config);
+            ProgressTracker progressTracker = new ProgressTracker(config.getProgressInterval());
             UrlHandler urlHandler = new UrlHandler();
-            WebCrawler crawler = new WebCrawler(
-                    baseUrl,
-                    outputDir,
-                    downloader,
-                    progressTracker,
-                    urlHandler
-            );
+            WebCrawler crawler;
+            if (asyncClient != null) {
+                logger.info("Fetching with the non-blocking client over {}", config.isHttp2() ? "HTTP/2" : "HTTP/1.1");
+                AsyncHttpDownloader downloader = new AsyncHttpDownloader(asyncClient, config.getMaxBodySize());
+                crawler = new WebCrawler(baseUrl, outputDir, downloader, progressTracker, urlHandler, config);
+            } else {
+                Downloader downloader = new HttpDownloader(connectionPool.getHttpClient(), config.getMaxBodySize(),
+                        storage, archive, packStore, bufferPool);
+                if (responseCache != null) {
+                    downloader = new CachingHttpDownloader(downloader, responseCache, config.isReplayOnly());
+                }
+                crawler = new WebCrawler(
+                        baseUrl,
+                        outputDir,
+                        downloader,
+                        progressTracker,
+                        urlHandler,
+                        config
+                );
+                crawler.getMetrics().attachConnectionPool(connectionPool);
+                crawler.getMetrics().attachStorageWriter(storage);
+                crawler.getMetrics().attachResponseCache(responseCache);
+                crawler.getMetrics().attachBufferPool(bufferPool);
+            }
 
-            crawler.startCrawling();
+            MetricsReporter reporter = new MetricsReporter(crawler.getMetrics(), progressTracker, config);
+            reporter.start();
+            try {
+                crawler.startCrawling();
+                if (storage != null) {
+                    storage.awaitWritten();
+                }
+            } finally {
+                reporter.close();
+            }
             logger.info("Crawling completed successfully.");
+            logger.info("Latency: {}", crawler.getMetrics().latencySummary());
+            if (connectionPool != null) {
+                logger.info("Connections: {} opened, {} requests per connection",
+                        crawler.getMetrics().getConnectionsOpened(),
+                        String.format("%.1f", crawler.getMetrics().getRequestsPerConnection()));
+            }
+            if (config.isDeduplicate() || config.getNearDuplicateClusterSize() > 0) {
+                CrawlMetrics metrics = crawler.getMetrics();
+                logger.info("Dedup: {} duplicates, {} KB and {} parses saved, {} near-duplicates, {} links deferred",
+                        metrics.getDuplicates(), metrics.getDuplicateBytesSaved() / 1024, metrics.getParsesSaved(),
+                        metrics.getNearDuplicates(), metrics.getDeferredLinks());
+            }
+            if (responseCache != null) {
+                logger.info("Response cache: {} hits ({}%), {} revalidated, {} misses, {} KB saved;"
+                        + " {} lookups answered from memory, {} from disk", responseCache.getHits(),
+                        String.format("%.1f", responseCache.getHitRatio() * 100), responseCache.getRevalidated(),
+                        responseCache.getMisses(), responseCache.getBytesSaved() / 1024,
+                        responseCache.getMemoryHits(), responseCache.getDiskHits());
+            }
+            if (archive != null) {
+                logger.info("Archived {} responses in {}", archive.getRecords(), archive.getArchiveDir());
+            }
+            if (packStore != null) {
+                logger.info("Packed {} pages in {} packs, {} MB live of {} MB", packStore.size(),
+                        packStore.getPackCount(), packStore.getLiveBytes() / (1024 * 1024),
+                        packStore.getPackedBytes() / (1024 * 1024));
+            }
+            if (!async) {
+                logger.info("Buffers: {} acquired, {}% reused, {} KB pooled, {} outstanding", bufferPool.getAcquired(),
+                        String.format("%.1f", bufferPool.getReuseRatio() * 100), bufferPool.getPooledBytes() / 1024,
+                        bufferPool.getOutstanding());
+            }
+            if (storage != null) {
+                logger.info("Storage: {} files written, {} failed, write p99 {} ms", storage.getFilesWritten(),
+                        storage.getWriteFailures(), String.format("%.1f", storage.getWriteLatency().getPercentileMillis(99)));
+            }
         } catch (IOException e) {
             logger.error("An error occurred during crawling: {}", e.getMessage(), e);
         } finally {
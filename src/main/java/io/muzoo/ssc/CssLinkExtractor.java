@@ -0,0 +1,52 @@
+package io.muzoo.ssc;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The CssLinkExtractor class finds the resources a style sheet refers to, through
+ * {@code url(...)} values and {@code @import} rules, without parsing the CSS itself.
+ * Inline {@code data:} URIs are skipped.
+ */
+public class CssLinkExtractor {
+    private static final Pattern URL_PATTERN = Pattern.compile("url\\(\\s*(['\"]?)([^'\")]+?)\\1\\s*\\)");
+    private static final Pattern IMPORT_PATTERN = Pattern.compile("@import\\s+(['\"])([^'\"]+)\\1");
+
+    /**
+     * Extracts the absolute URLs referenced by a style sheet.
+     *
+     * @param css the style sheet content
+     * @param baseUrl the URL of the style sheet, used to resolve relative references
+     * @return the absolute URLs in the order they appear
+     */
+    public List<String> extractLinks(CharSequence css, String baseUrl) {
+        List<String> links = new ArrayList<>();
+        URI base;
+        try {
+            base = new URI(baseUrl);
+        } catch (URISyntaxException e) {
+            return links;
+        }
+        collect(URL_PATTERN.matcher(css), base, links);
+        collect(IMPORT_PATTERN.matcher(css), base, links);
+        return links;
+    }
+
+    private static void collect(Matcher matcher, URI base, List<String> links) {
+        while (matcher.find()) {
+            String reference = matcher.group(2).trim();
+            if (reference.isEmpty() || reference.regionMatches(true, 0, "data:", 0, 5)) {
+                continue;
+            }
+            try {
+                links.add(base.resolve(reference).toString());
+            } catch (IllegalArgumentException e) {
+                // Not a valid URI reference; ignore it like a browser would
+            }
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package io.muzoo.ssc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The DiskBackedFrontier class holds the URLs waiting to be crawled. Up to a fixed
+ * number of URLs are kept on the heap, as a stack so the crawl goes depth first as
+ * before, or as a queue so it goes breadth first; URLs pushed beyond that limit are
+ * appended to segment files on disk instead. When the heap part runs empty, the oldest
+ * segment is read back into it and deleted. A queue keeps its order across the disk:
+ * while any URL waits on disk, new URLs are appended behind it rather than kept on the heap.
+ *
+ * The heap used by the frontier is therefore bounded no matter how wide the site is.
+ * Segment files are scratch space: they are deleted on {@link #close()}, and a crawl
+ * resumed after a crash rebuilds its frontier from the {@link CrawlJournal} instead.
+ * All methods are safe to call from concurrent crawler threads.
+ */
+public class DiskBackedFrontier implements Frontier {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".txt";
+
+    private final int memoryLimit;
+    private final boolean fifo;
+    private final Path configuredDirectory;
+    private final Deque<String> memory = new ArrayDeque<>();
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private Path directory;
+    private BufferedWriter spillWriter;
+    private Path spillPath;
+    private int spillCount;
+    private int segmentSequence;
+    private long size;
+    private long spilledUrls;
+
+    /**
+     * Constructor to initialize a depth-first frontier.
+     *
+     * @param directory the directory for segment files, or null to use a temporary directory
+     * @param memoryLimit the number of URLs kept on the heap before new ones are spilled to disk
+     * @throws IOException if stale segment files of an earlier run cannot be deleted
+     */
+    public DiskBackedFrontier(Path directory, int memoryLimit) throws IOException {
+        this(directory, memoryLimit, false);
+    }
+
+    /**
+     * Constructor to initialize the frontier.
+     *
+     * @param directory the directory for segment files, or null to use a temporary directory
+     * @param memoryLimit the number of URLs kept on the heap before new ones are spilled to disk
+     * @param fifo whether the oldest URL is taken first, rather than the newest
+     * @throws IOException if stale segment files of an earlier run cannot be deleted
+     */
+    public DiskBackedFrontier(Path directory, int memoryLimit, boolean fifo) throws IOException {
+        if (memoryLimit < 1) {
+            throw new IllegalArgumentException("Memory limit must be at least 1: " + memoryLimit);
+        }
+        this.memoryLimit = memoryLimit;
+        this.fifo = fifo;
+        this.configuredDirectory = directory;
+        if (directory != null && Files.isDirectory(directory)) {
+            deleteSegments(directory);
+        }
+    }
+
+    /**
+     * Adds a URL to the frontier.
+     *
+     * @param url the URL to add
+     * @throws UncheckedIOException if the URL has to be spilled and the segment cannot be written
+     */
+    @Override
+    public void push(String url) {
+        lock.lock();
+        try {
+            if (!fifo && memory.size() < memoryLimit) {
+                memory.push(url);
+            } else if (fifo && memory.size() < memoryLimit && memory.size() == size) {
+                memory.addLast(url); // Nothing waits on disk, so the URL can stay on the heap
+            } else {
+                spill(url);
+            }
+            size++;
+            notEmpty.signal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill the frontier to disk", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a URL to the frontier with the lowest priority: it is taken after the URLs
+     * already held on the heap, and in a stack after those pushed later.
+     *
+     * @param url the URL to add
+     * @throws UncheckedIOException if the URL has to be spilled and the segment cannot be written
+     */
+    @Override
+    public void defer(String url) {
+        lock.lock();
+        try {
+            if (memory.size() < memoryLimit && (!fifo || memory.size() == size)) {
+                memory.addLast(url);
+            } else {
+                spill(url);
+            }
+            size++;
+            notEmpty.signal();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill the frontier to disk", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the next URL to crawl, without waiting.
+     *
+     * @return the next URL, or null if the frontier is empty
+     * @throws UncheckedIOException if a spilled segment cannot be read back
+     */
+    @Override
+    public String poll() {
+        lock.lock();
+        try {
+            return take();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes and returns the next URL to crawl, waiting up to the given time for one
+     * to be pushed if the frontier is empty.
+     *
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     * @return the next URL, or null if the frontier stayed empty
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    @Override
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return take();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of URLs in the frontier, on the heap and on disk.
+     *
+     * @return the number of waiting URLs
+     */
+    @Override
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how many URLs have been written to disk because the heap part was full.
+     *
+     * @return the number of spilled URLs
+     */
+    @Override
+    public long getSpilledUrls() {
+        lock.lock();
+        try {
+            return spilledUrls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String take() {
+        if (memory.isEmpty() && size > 0) {
+            try {
+                refill();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the frontier back from disk", e);
+            }
+        }
+        String url = memory.poll();
+        if (url != null) {
+            size--;
+        }
+        return url;
+    }
+
+    private void spill(String url) throws IOException {
+        if (spillWriter == null) {
+            if (directory == null) {
+                directory = configuredDirectory != null
+                        ? Files.createDirectories(configuredDirectory)
+                        : Files.createTempDirectory("frontier");
+            }
+            spillPath = directory.resolve(SEGMENT_PREFIX + segmentSequence++ + SEGMENT_SUFFIX);
+            spillWriter = Files.newBufferedWriter(spillPath, StandardCharsets.UTF_8);
+        }
+        spillWriter.write(url);
+        spillWriter.write('\n');
+        spilledUrls++;
+        if (++spillCount >= memoryLimit) {
+            closeSpillSegment(); // A segment never holds more than fits on the heap
+        }
+    }
+
+    private void closeSpillSegment() throws IOException {
+        spillWriter.close();
+        segments.add(spillPath);
+        spillWriter = null;
+        spillPath = null;
+        spillCount = 0;
+    }
+
+    /**
+     * Reads the oldest segment back onto the heap. The segment that is still being
+     * written is closed first if no completed one is left.
+     */
+    private void refill() throws IOException {
+        if (segments.isEmpty() && spillWriter != null) {
+            closeSpillSegment();
+        }
+        Path segment = segments.poll();
+        if (segment == null) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String url;
+            while ((url = reader.readLine()) != null) {
+                if (fifo) {
+                    memory.addLast(url);
+                } else {
+                    memory.push(url);
+                }
+            }
+        }
+        Files.delete(segment);
+    }
+
+    /**
+     * Deletes the segment files. URLs still on disk are dropped; the journal keeps track
+     * of them if the crawl has to be resumed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (spillWriter != null) {
+                closeSpillSegment();
+            }
+            if (directory != null) {
+                deleteSegments(directory);
+                if (configuredDirectory == null) {
+                    Files.deleteIfExists(directory);
+                }
+            }
+            segments.clear();
+            memory.clear();
+            size = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void deleteSegments(Path directory) throws IOException {
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stale) {
+                Files.delete(segment);
+            }
+        }
+    }
+}
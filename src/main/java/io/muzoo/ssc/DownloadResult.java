@@ -0,0 +1,330 @@
+package io.muzoo.ssc;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The DownloadResult class describes a response that {@link HttpDownloader} streamed
+ * to disk: where the body was written, how large it is, and the media type and
+ * charset the server declared for it.
+ *
+ * When the body was handed to a {@link StorageWriter}, the result also holds the body
+ * itself, because the file may not have been written yet, and when it was written to a
+ * WARC archive, the result knows where to read it back; {@link #openBody()} reads
+ * whichever is available. A body held in a pooled buffer belongs to the result until
+ * {@link #release()} is called, once the crawler is done with it.
+ *
+ * The result also says for how long the response may be reused without asking the
+ * server again, as its {@code Cache-Control} and {@code Expires} headers allow, so that
+ * a {@link ResponseCache} can keep it.
+ */
+public class DownloadResult {
+    /**
+     * The freshness of a response that must not be stored at all.
+     */
+    public static final long NOT_STORABLE = -1;
+
+    private final String url;
+    private final int statusCode;
+    private final String mimeType;
+    private final Charset charset;
+    private final Path path;
+    private final long contentLength;
+    private final long fetchNanos;
+    private final long storeNanos;
+    private final String etag;
+    private final String lastModified;
+    private final long contentHash;
+    private final String retryAfter;
+    private final Body body;
+    private final BufferPool.Buffer pooledBody;
+    private final long freshUntil;
+
+    /**
+     * Opens a body that is not read from {@link #getPath()}.
+     */
+    @FunctionalInterface
+    public interface Body {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Constructor to initialize the DownloadResult.
+     *
+     * @param url the URL that was downloaded
+     * @param statusCode the HTTP status code of the response
+     * @param mimeType the declared media type without parameters, or null if none was sent
+     * @param charset the declared charset, or null if none was sent
+     * @param path the file the body was written to
+     * @param contentLength the number of body bytes written
+     */
+    public DownloadResult(String url, int statusCode, String mimeType, Charset charset, Path path, long contentLength) {
+        this(url, statusCode, mimeType, charset, path, contentLength, 0, 0);
+    }
+
+    /**
+     * Constructor to initialize the DownloadResult with the time the download took.
+     *
+     * @param url the URL that was downloaded
+     * @param statusCode the HTTP status code of the response
+     * @param mimeType the declared media type without parameters, or null if none was sent
+     * @param charset the declared charset, or null if none was sent
+     * @param path the file the body was written to
+     * @param contentLength the number of body bytes written
+     * @param fetchNanos the time from sending the request to the end of the body, in nanoseconds
+     * @param storeNanos the part of the fetch time spent writing the body to disk, in nanoseconds
+     */
+    public DownloadResult(String url, int statusCode, String mimeType, Charset charset, Path path, long contentLength,
+                          long fetchNanos, long storeNanos) {
+        this(url, statusCode, mimeType, charset, path, contentLength, fetchNanos, storeNanos, null, null, 0);
+    }
+
+    /**
+     * Constructor to initialize the DownloadResult with the validators of the response.
+     *
+     * @param url the URL that was downloaded
+     * @param statusCode the HTTP status code of the response
+     * @param mimeType the declared media type without parameters, or null if none was sent
+     * @param charset the declared charset, or null if none was sent
+     * @param path the file the body was written to
+     * @param contentLength the number of body bytes written
+     * @param fetchNanos the time from sending the request to the end of the body, in nanoseconds
+     * @param storeNanos the part of the fetch time spent writing the body to disk, in nanoseconds
+     * @param etag the ETag header of the response, or null if none was sent
+     * @param lastModified the Last-Modified header of the response, or null if none was sent
+     * @param contentHash the CRC-32C of the body
+     */
+    public DownloadResult(String url, int statusCode, String mimeType, Charset charset, Path path, long contentLength,
+                          long fetchNanos, long storeNanos, String etag, String lastModified, long contentHash) {
+        this(url, statusCode, mimeType, charset, path, contentLength, fetchNanos, storeNanos, etag, lastModified,
+                contentHash, null);
+    }
+
+    /**
+     * Constructor to initialize the DownloadResult with the validators of the response and
+     * the time the server asked the client to wait before its next request.
+     *
+     * @param url the URL that was downloaded
+     * @param statusCode the HTTP status code of the response
+     * @param mimeType the declared media type without parameters, or null if none was sent
+     * @param charset the declared charset, or null if none was sent
+     * @param path the file the body was written to
+     * @param contentLength the number of body bytes written
+     * @param fetchNanos the time from sending the request to the end of the body, in nanoseconds
+     * @param storeNanos the part of the fetch time spent writing the body to disk, in nanoseconds
+     * @param etag the ETag header of the response, or null if none was sent
+     * @param lastModified the Last-Modified header of the response, or null if none was sent
+     * @param contentHash the CRC-32C of the body
+     * @param retryAfter the Retry-After header of the response, or null if none was sent
+     */
+    public DownloadResult(String url, int statusCode, String mimeType, Charset charset, Path path, long contentLength,
+                          long fetchNanos, long storeNanos, String etag, String lastModified, long contentHash,
+                          String retryAfter) {
+        this(url, statusCode, mimeType, charset, path, contentLength, fetchNanos, storeNanos, etag, lastModified,
+                contentHash, retryAfter, null, null, 0);
+    }
+
+    private DownloadResult(String url, int statusCode, String mimeType, Charset charset, Path path, long contentLength,
+                           long fetchNanos, long storeNanos, String etag, String lastModified, long contentHash,
+                           String retryAfter, Body body, BufferPool.Buffer pooledBody, long freshUntil) {
+        this.url = url;
+        this.statusCode = statusCode;
+        this.mimeType = mimeType;
+        this.charset = charset;
+        this.path = path;
+        this.contentLength = contentLength;
+        this.fetchNanos = fetchNanos;
+        this.storeNanos = storeNanos;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.retryAfter = retryAfter;
+        this.body = body;
+        this.pooledBody = pooledBody;
+        this.freshUntil = freshUntil;
+    }
+
+    /**
+     * Returns a copy of this result that also holds the body, for a body that is queued
+     * to be written to {@link #getPath()} but may not be there yet.
+     *
+     * @param body the body; it must not be modified afterwards
+     * @return the result with the body
+     */
+    public DownloadResult withBody(byte[] body) {
+        return withBody(() -> new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Returns a copy of this result whose body is read from the given source instead of
+     * {@link #getPath()}.
+     *
+     * @param body the source of the body
+     * @return the result with the body
+     */
+    public DownloadResult withBody(Body body) {
+        return new DownloadResult(url, statusCode, mimeType, charset, path, contentLength, fetchNanos, storeNanos,
+                etag, lastModified, contentHash, retryAfter, body, null, freshUntil);
+    }
+
+    /**
+     * Returns a copy of this result that holds the body in a pooled buffer. The result
+     * takes over the caller's reference to the buffer, which {@link #release()} gives up;
+     * a copy of the result shares the reference and must not be released as well.
+     *
+     * @param body the body, from position 0 to its limit; it must not be modified afterwards
+     * @return the result with the body
+     */
+    public DownloadResult withBody(BufferPool.Buffer body) {
+        return new DownloadResult(url, statusCode, mimeType, charset, path, contentLength, fetchNanos, storeNanos,
+                etag, lastModified, contentHash, retryAfter, body::newInputStream, body, freshUntil);
+    }
+
+    /**
+     * Returns a copy of this result whose body is read from {@link #getPath()}, for keeping
+     * the description of a response after its body was released.
+     *
+     * @return the result without the body
+     */
+    public DownloadResult withoutBody() {
+        return new DownloadResult(url, statusCode, mimeType, charset, path, contentLength, fetchNanos, storeNanos,
+                etag, lastModified, contentHash, retryAfter, null, null, freshUntil);
+    }
+
+    /**
+     * Returns a copy of this result with the given freshness.
+     *
+     * @param freshUntil the time, in milliseconds since the epoch, until which the response is fresh
+     * @return the result with the freshness
+     */
+    public DownloadResult withFreshUntil(long freshUntil) {
+        return new DownloadResult(url, statusCode, mimeType, charset, path, contentLength, fetchNanos, storeNanos,
+                etag, lastModified, contentHash, retryAfter, body, pooledBody, freshUntil);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public long getFetchNanos() {
+        return fetchNanos;
+    }
+
+    public long getStoreNanos() {
+        return storeNanos;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public String getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Returns the time until which the response may be reused without asking the server.
+     * A response that carried no freshness, or must always be revalidated, is stale at
+     * once, which is 0.
+     *
+     * @return the time in milliseconds since the epoch, or {@link #NOT_STORABLE} if the response must not be stored
+     */
+    public long getFreshUntil() {
+        return freshUntil;
+    }
+
+    /**
+     * Opens the body, from its source if this result has one and from the file otherwise.
+     *
+     * @return the stream of the body; the caller closes it
+     * @throws IOException if the file cannot be opened
+     */
+    public InputStream openBody() throws IOException {
+        return body != null ? body.open() : Files.newInputStream(path);
+    }
+
+    /**
+     * Returns the pooled buffer of the body to its pool. The body cannot be opened from
+     * memory afterwards. Does nothing if the body is not held in a pooled buffer.
+     */
+    public void release() {
+        if (pooledBody != null) {
+            pooledBody.release();
+        }
+    }
+
+    /**
+     * Checks whether the server refused the request because it is overloaded or the
+     * client sends too many requests.
+     *
+     * @return true if the response was 429 Too Many Requests or 503 Service Unavailable
+     */
+    public boolean isThrottled() {
+        return isThrottled(statusCode);
+    }
+
+    static boolean isThrottled(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    /**
+     * Checks whether the server confirmed that the stored copy is still current. The
+     * file at {@link #getPath()} was then left untouched, and the media type, size and
+     * hash describe the stored copy.
+     *
+     * @return true if the response was 304 Not Modified
+     */
+    public boolean isNotModified() {
+        return statusCode == 304;
+    }
+
+    /**
+     * Classifies the response by its declared media type, or by the URL if none was declared.
+     *
+     * @return the resource type of the body
+     */
+    public ResourceType getResourceType() {
+        return ResourceType.of(mimeType, url);
+    }
+
+    /**
+     * Checks whether the body is an HTML page that may contain links.
+     *
+     * @return true if the body should be handed to the link extractor
+     */
+    public boolean isHtml() {
+        return getResourceType() == ResourceType.HTML;
+    }
+}
@@ -0,0 +1,64 @@
+package io.muzoo.ssc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The Downloader interface fetches a URL and stores its body in a file, which is what the
+ * crawler needs from the network. {@link HttpDownloader} makes the requests itself, and
+ * {@link CachingHttpDownloader} answers what it can from a response cache and passes the
+ * rest on to another downloader.
+ */
+public interface Downloader {
+
+    /**
+     * Downloads the content from the specified URL into the given file.
+     *
+     * @param url the URL to download content from
+     * @param target the file to write the response body to
+     * @return the description of the downloaded response
+     * @throws BodyTooLargeException if the body exceeds the maximum size
+     * @throws IOException if an error occurs during the HTTP request or while writing the file
+     */
+    default DownloadResult download(String url, Path target) throws IOException {
+        return download(url, target, null);
+    }
+
+    /**
+     * Downloads the content from the specified URL into the given file, asking the server
+     * to send the body only if it changed since the previous download. On a 304 Not
+     * Modified response the target file is not touched, and neither is it on a 429 or
+     * 503 response, whose error page is discarded.
+     *
+     * @param url the URL to download content from
+     * @param target the file to write the response body to
+     * @param previous the metadata of the previous download, or null to download unconditionally
+     * @return the description of the downloaded response
+     * @throws BodyTooLargeException if the body exceeds the maximum size
+     * @throws IOException if an error occurs during the HTTP request or while writing the file
+     */
+    DownloadResult download(String url, Path target, PageMetadata previous) throws IOException;
+
+    /**
+     * Asks the server whether a copy stored elsewhere is still current, sending its
+     * validators whether or not the target file exists. On a 304 Not Modified response
+     * the target file is not touched; otherwise the new body is downloaded as usual.
+     *
+     * @param url the URL to download content from
+     * @param target the file to write the response body to
+     * @param stored the metadata of the stored copy, which has validators
+     * @return the description of the downloaded response
+     * @throws IOException if an error occurs during the HTTP request or while writing the file
+     */
+    DownloadResult revalidate(String url, Path target, PageMetadata stored) throws IOException;
+
+    /**
+     * Returns the writer that stores the small bodies, whose writes may still be queued
+     * when a download returns.
+     *
+     * @return the storage writer, or null if every body is written before the download returns
+     */
+    default StorageWriter getStorageWriter() {
+        return null;
+    }
+}
@@ -0,0 +1,317 @@
+package io.muzoo.ssc;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * The FingerprintVisitedSet class stores 64-bit URL fingerprints in a lock-free,
+ * open-addressing hash table backed by a primitive {@code long} array, so each URL
+ * costs 11 to 23 bytes, depending on how full the table is, instead of the hundred
+ * or more a {@code HashSet<String>} needs.
+ *
+ * Inserts claim an empty slot with a compare-and-set and never take a lock. When the
+ * table passes its load factor it is replaced by one twice the size: every thread that
+ * notices the resize helps copy chunks of the old table, and a copied slot is marked
+ * so that threads probing the old table know to retry on the new one.
+ *
+ * Two different URLs with the same fingerprint are treated as one, so a crawl may
+ * miss a page with a probability of roughly n^2 / 2^65 for n URLs. In verified mode
+ * the full URL strings are kept as well and decide every claim, trading the memory
+ * savings for exact answers.
+ */
+public class FingerprintVisitedSet implements VisitedSet {
+    private static final long EMPTY = 0L;
+    private static final long MOVED = Long.MIN_VALUE;
+    private static final long REMAPPED = 1L; // Stands in for fingerprints that clash with the markers above
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int MIGRATION_CHUNK = 1024;
+    private static final double LOAD_FACTOR = 0.7;
+    private static final ToLongFunction<String> URL_FINGERPRINT = UrlFingerprint::of;
+
+    private static final int ADDED = 0;
+    private static final int PRESENT = 1;
+    private static final int ABSENT = 2;
+    private static final int RETRY = 3;
+
+    private final AtomicReference<Table> current;
+    private final int maxCapacity;
+    private final ToLongFunction<String> fingerprinter;
+    private final HashVisitedSet verifiedUrls;
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Creates an unverified set with the default initial capacity.
+     */
+    public FingerprintVisitedSet() {
+        this(DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * Creates a set with the default initial capacity.
+     *
+     * @param verified whether to keep the full URLs so that fingerprint collisions are resolved exactly
+     */
+    public FingerprintVisitedSet(boolean verified) {
+        this(DEFAULT_CAPACITY, verified);
+    }
+
+    /**
+     * Creates a set sized for the expected number of URLs.
+     *
+     * @param initialCapacity the number of slots to start with; rounded up to a power of two
+     * @param verified whether to keep the full URLs so that fingerprint collisions are resolved exactly
+     */
+    public FingerprintVisitedSet(int initialCapacity, boolean verified) {
+        this(initialCapacity, verified, URL_FINGERPRINT);
+    }
+
+    FingerprintVisitedSet(int initialCapacity, boolean verified, ToLongFunction<String> fingerprinter) {
+        this(initialCapacity, verified, fingerprinter, MAX_CAPACITY);
+    }
+
+    FingerprintVisitedSet(int initialCapacity, boolean verified, ToLongFunction<String> fingerprinter,
+                          int maxCapacity) {
+        this.maxCapacity = tableSizeFor(maxCapacity);
+        this.current = new AtomicReference<>(new Table(Math.min(tableSizeFor(initialCapacity), this.maxCapacity)));
+        this.fingerprinter = fingerprinter;
+        this.verifiedUrls = verified ? new HashVisitedSet() : null;
+    }
+
+    @Override
+    public boolean add(String url) {
+        long fingerprint = fingerprintOf(url);
+        boolean added = insert(fingerprint);
+        if (verifiedUrls != null) {
+            // The fingerprint may belong to a different URL, so the exact set decides
+            return verifiedUrls.add(url);
+        }
+        if (added) {
+            size.increment();
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        long fingerprint = fingerprintOf(url);
+        boolean found = find(fingerprint);
+        if (verifiedUrls != null) {
+            return found && verifiedUrls.contains(url);
+        }
+        return found;
+    }
+
+    @Override
+    public boolean add(String url, long fingerprint) {
+        if (fingerprinter != URL_FINGERPRINT) {
+            return add(url);
+        }
+        boolean added = insert(remap(fingerprint));
+        if (verifiedUrls != null) {
+            return verifiedUrls.add(url);
+        }
+        if (added) {
+            size.increment();
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(String url, long fingerprint) {
+        if (fingerprinter != URL_FINGERPRINT) {
+            return contains(url);
+        }
+        boolean found = find(remap(fingerprint));
+        if (verifiedUrls != null) {
+            return found && verifiedUrls.contains(url);
+        }
+        return found;
+    }
+
+    @Override
+    public long size() {
+        return verifiedUrls != null ? verifiedUrls.size() : size.sum();
+    }
+
+    @Override
+    public long memoryBytes() {
+        long tableBytes = (long) current.get().slots.length() * Long.BYTES;
+        return verifiedUrls != null ? tableBytes + verifiedUrls.memoryBytes() : tableBytes;
+    }
+
+    /**
+     * Returns the number of slots in the current table.
+     *
+     * @return the table capacity
+     */
+    public int capacity() {
+        return current.get().slots.length();
+    }
+
+    private long fingerprintOf(String url) {
+        return remap(fingerprinter.applyAsLong(url));
+    }
+
+    private static long remap(long fingerprint) {
+        return fingerprint == EMPTY || fingerprint == MOVED ? REMAPPED : fingerprint;
+    }
+
+    private boolean insert(long fingerprint) {
+        while (true) {
+            Table table = current.get();
+            int result = tryInsert(table, fingerprint);
+            if (result != RETRY) {
+                return result == ADDED;
+            }
+            resize(table);
+        }
+    }
+
+    private boolean find(long fingerprint) {
+        while (true) {
+            Table table = current.get();
+            int result = tryFind(table, fingerprint);
+            if (result != RETRY) {
+                return result == PRESENT;
+            }
+            resize(table);
+        }
+    }
+
+    /**
+     * Probes the table for the fingerprint and claims the first empty slot if it is absent.
+     * Slots only ever change from empty to a fingerprint or from anything to moved, so the
+     * first empty slot on the probe path proves the fingerprint is not further along it.
+     */
+    private int tryInsert(Table table, long fingerprint) {
+        int index = indexOf(fingerprint, table.mask);
+        for (int probes = 0; probes <= table.mask; probes++) {
+            long slot = table.slots.get(index);
+            while (slot == EMPTY) {
+                if (table.slots.compareAndSet(index, EMPTY, fingerprint)) {
+                    // A table at the maximum capacity fills up instead, and only an insert
+                    // that finds no slot at all fails, before it claims anything
+                    if (table.used.incrementAndGet() > table.threshold && table.slots.length() < maxCapacity) {
+                        resize(table);
+                    }
+                    return ADDED;
+                }
+                slot = table.slots.get(index);
+            }
+            if (slot == fingerprint) {
+                return PRESENT;
+            }
+            if (slot == MOVED) {
+                return RETRY;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return RETRY; // Full; only possible at the maximum capacity
+    }
+
+    private int tryFind(Table table, long fingerprint) {
+        int index = indexOf(fingerprint, table.mask);
+        for (int probes = 0; probes <= table.mask; probes++) {
+            long slot = table.slots.get(index);
+            if (slot == fingerprint) {
+                return PRESENT;
+            }
+            if (slot == EMPTY) {
+                return ABSENT;
+            }
+            if (slot == MOVED) {
+                return RETRY;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Moves the contents of the table into one twice its size. The first thread to get
+     * here allocates the new table; every thread then claims and copies chunks until none
+     * are left, and waits for the chunks claimed by others before returning.
+     *
+     * @throws IllegalStateException if the table is full at the maximum capacity
+     */
+    private void resize(Table table) {
+        if (table.slots.length() >= maxCapacity) {
+            throw new IllegalStateException("Visited set is full: " + table.slots.length() + " slots");
+        }
+        if (table.resizing.compareAndSet(false, true)) {
+            table.next.set(new Table(table.slots.length() * 2));
+        }
+        Table next;
+        while ((next = table.next.get()) == null) {
+            Thread.yield();
+        }
+
+        int chunk;
+        while ((chunk = table.claimedChunks.getAndIncrement()) < table.chunkCount) {
+            migrate(table, next, chunk);
+            if (table.migratedChunks.incrementAndGet() == table.chunkCount) {
+                current.compareAndSet(table, next);
+            }
+        }
+        while (current.get() == table) {
+            Thread.yield();
+        }
+    }
+
+    private void migrate(Table table, Table next, int chunk) {
+        int from = chunk * MIGRATION_CHUNK;
+        int to = Math.min(from + MIGRATION_CHUNK, table.slots.length());
+        for (int i = from; i < to; i++) {
+            long slot = table.slots.get(i);
+            // Seal empty slots so that no insert can land behind the migration
+            while (slot == EMPTY && !table.slots.compareAndSet(i, EMPTY, MOVED)) {
+                slot = table.slots.get(i);
+            }
+            if (slot != EMPTY) {
+                copy(next, slot);
+                table.slots.set(i, MOVED);
+            }
+        }
+    }
+
+    private void copy(Table table, long fingerprint) {
+        int index = indexOf(fingerprint, table.mask);
+        while (!table.slots.compareAndSet(index, EMPTY, fingerprint)) {
+            index = (index + 1) & table.mask;
+        }
+        table.used.incrementAndGet();
+    }
+
+    private static int indexOf(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    private static int tableSizeFor(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, Math.min(capacity, MAX_CAPACITY)) - 1) << 1;
+        return Math.min(size, MAX_CAPACITY);
+    }
+
+    private static final class Table {
+        final AtomicLongArray slots;
+        final int mask;
+        final int threshold;
+        final int chunkCount;
+        final AtomicInteger used = new AtomicInteger();
+        final AtomicBoolean resizing = new AtomicBoolean();
+        final AtomicReference<Table> next = new AtomicReference<>();
+        final AtomicInteger claimedChunks = new AtomicInteger();
+        final AtomicInteger migratedChunks = new AtomicInteger();
+
+        Table(int capacity) {
+            this.slots = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+            this.threshold = (int) (capacity * LOAD_FACTOR);
+            this.chunkCount = (capacity + MIGRATION_CHUNK - 1) / MIGRATION_CHUNK;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package io.muzoo.ssc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Frontier interface holds the URLs waiting to be crawled and decides the order in
+ * which they are taken. Implementations must be safe to share between crawler threads.
+ */
+public interface Frontier extends AutoCloseable {
+
+    /**
+     * The available crawl orders.
+     */
+    enum Type {
+        /** Newest URL first, so the crawl goes depth first. */
+        LIFO,
+        /** Oldest URL first, so the crawl goes breadth first. */
+        FIFO,
+        /** Best score first: shallow, often linked and boosted URLs before the others. */
+        PRIORITY
+    }
+
+    /**
+     * Adds a URL to the frontier.
+     *
+     * @param url the URL to add
+     * @throws UncheckedIOException if the URL has to be spilled and the segment cannot be written
+     */
+    void push(String url);
+
+    /**
+     * Adds a URL to the frontier with the lowest priority.
+     *
+     * @param url the URL to add
+     * @throws UncheckedIOException if the URL has to be spilled and the segment cannot be written
+     */
+    void defer(String url);
+
+    /**
+     * Records another link to a URL that was already discovered. Frontiers that do not
+     * rank URLs by their in-links ignore it.
+     *
+     * @param url the URL that was linked again
+     */
+    default void linkedAgain(String url) {
+    }
+
+    /**
+     * Removes and returns the next URL to crawl, without waiting.
+     *
+     * @return the next URL, or null if the frontier is empty
+     * @throws UncheckedIOException if a spilled segment cannot be read back
+     */
+    String poll();
+
+    /**
+     * Removes and returns the next URL to crawl, waiting up to the given time for one
+     * to be pushed if the frontier is empty.
+     *
+     * @param timeout how long to wait
+     * @param unit the unit of the timeout
+     * @return the next URL, or null if the frontier stayed empty
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    String poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Returns the number of URLs in the frontier, on the heap and on disk.
+     *
+     * @return the number of waiting URLs
+     */
+    long size();
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns how many URLs have been written to disk because the heap part was full.
+     *
+     * @return the number of spilled URLs
+     */
+    long getSpilledUrls();
+
+    @Override
+    void close() throws IOException;
+
+    /**
+     * Creates an empty frontier of the type the configuration asks for.
+     *
+     * @param config the crawl options, which give the type, the memory limit and the priority boosts
+     * @param directory the directory for segment files, or null to use a temporary directory
+     * @param pendingUrls the depths and in-link counts of the waiting URLs; required by a priority frontier
+     * @return a new frontier
+     * @throws IOException if stale segment files of an earlier run cannot be deleted
+     */
+    static Frontier create(CrawlerConfig config, Path directory, PendingUrls pendingUrls) throws IOException {
+        switch (config.getFrontierType()) {
+            case FIFO:
+                return new DiskBackedFrontier(directory, config.getFrontierMemoryLimit(), true);
+            case PRIORITY:
+                return new PriorityFrontier(directory, config.getFrontierMemoryLimit(), pendingUrls,
+                        config.getPriorityBoosts());
+            case LIFO:
+            default:
+                return new DiskBackedFrontier(directory, config.getFrontierMemoryLimit(), false);
+        }
+    }
+}
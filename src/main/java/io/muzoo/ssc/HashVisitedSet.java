@@ -0,0 +1,43 @@
+package io.muzoo.ssc;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The HashVisitedSet class stores the full URL strings in a concurrent hash set.
+ * It is exact and simple, but every entry costs a hash node, a String and its
+ * backing array in addition to the URL bytes themselves.
+ */
+public class HashVisitedSet implements VisitedSet {
+    // Approximate per-entry cost on a 64-bit JVM with compressed oops:
+    // map node (32) + table slot (4) + String (24) + byte[] header (16)
+    private static final int ENTRY_OVERHEAD_BYTES = 76;
+
+    private final Set<String> urls = ConcurrentHashMap.newKeySet();
+    private final AtomicLong urlBytes = new AtomicLong();
+
+    @Override
+    public boolean add(String url) {
+        if (!urls.add(url)) {
+            return false;
+        }
+        urlBytes.addAndGet(url.length());
+        return true;
+    }
+
+    @Override
+    public boolean contains(String url) {
+        return urls.contains(url);
+    }
+
+    @Override
+    public long size() {
+        return urls.size();
+    }
+
+    @Override
+    public long memoryBytes() {
+        return size() * ENTRY_OVERHEAD_BYTES + urlBytes.get();
+    }
+}
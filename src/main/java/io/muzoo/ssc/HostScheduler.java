@@ -0,0 +1,441 @@
+package io.muzoo.ssc;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The HostScheduler class sits between the frontier and the downloader and decides
+ * when each URL may be fetched, so that no host receives more than it can take.
+ *
+ * Every host has its own queue, a token bucket limiting its request rate, and a
+ * concurrency limit adjusted with additive increase and multiplicative decrease: each
+ * response that arrives without a latency spike raises the limit by one over the
+ * current limit, while a 429 or 503 response, a failed request or a latency spike
+ * halves it, at most once per round trip. A host that sends {@code Retry-After} is not fetched before that time,
+ * and the refused URL is queued again to be retried. {@link #poll(long, TimeUnit)}
+ * returns a URL of any host that may be fetched now, so the other hosts keep being
+ * crawled while one backs off.
+ *
+ * All state is guarded by one lock; the number of hosts of a crawl is small.
+ */
+public class HostScheduler {
+    static final int MAX_ATTEMPTS = 4;
+    private static final Duration DEFAULT_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+    private static final double LATENCY_SPIKE_FACTOR = 2.0;
+    private static final long LATENCY_SPIKE_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final double requestsPerSecond;
+    private final int maxConcurrency;
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final Deque<Host> waitingHosts = new ArrayDeque<>(); // Hosts with queued URLs, in round-robin order
+    private final Map<String, Host> leased = new HashMap<>();
+    private final Map<String, Integer> attempts = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private int size;
+    private long throttledResponses;
+    private long retriedUrls;
+
+    /**
+     * Constructor to initialize the HostScheduler.
+     *
+     * @param requestsPerSecond the maximum request rate per host, or zero for no limit
+     * @param maxConcurrency the maximum number of requests in flight per host
+     */
+    public HostScheduler(double requestsPerSecond, int maxConcurrency) {
+        if (requestsPerSecond < 0) {
+            throw new IllegalArgumentException("Request rate must not be negative: " + requestsPerSecond);
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1: " + maxConcurrency);
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Makes the host wait at least the given delay between two requests, as asked by the
+     * {@code Crawl-delay} of its robots.txt. A delay slower than the configured rate
+     * replaces it, and requests are no longer sent in bursts.
+     *
+     * @param host the host, as returned by {@link #hostOf(String)}
+     * @param delay the delay between two requests
+     */
+    public void setCrawlDelay(String host, Duration delay) {
+        lock.lock();
+        try {
+            double rate = 1_000_000_000.0 / Math.max(1, delay.toNanos());
+            Host state = host(host);
+            if (state.rate == 0 || rate < state.rate) {
+                state.rate = rate;
+                state.burst = 1;
+                state.tokens = Math.min(state.tokens, 1);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a URL behind the other URLs of its host.
+     *
+     * @param url the cleaned URL
+     */
+    public void add(String url) {
+        lock.lock();
+        try {
+            Host host = host(hostOf(url));
+            if (host.queue.isEmpty()) {
+                waitingHosts.addLast(host);
+            }
+            host.queue.addLast(url);
+            size++;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a URL whose host may be fetched now, waiting up to the given time for one.
+     * The URL holds one of its host's concurrency slots and one of its tokens until it
+     * is passed to {@link #complete(String, DownloadResult)}.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the URL, or null if no host became ready in time
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                long readyAt = Long.MAX_VALUE;
+                for (int i = waitingHosts.size(); i > 0; i--) {
+                    Host host = waitingHosts.pollFirst();
+                    long hostReadyAt = host.readyAt(now);
+                    if (hostReadyAt <= now) {
+                        String url = host.queue.pollFirst();
+                        if (!host.queue.isEmpty()) {
+                            waitingHosts.addLast(host); // Round robin: the other hosts go first next time
+                        }
+                        host.acquire(now);
+                        leased.put(url, host);
+                        size--;
+                        return url;
+                    }
+                    waitingHosts.addLast(host);
+                    readyAt = Math.min(readyAt, hostReadyAt);
+                }
+
+                if (deadline - now <= 0) {
+                    return null;
+                }
+                changed.awaitNanos(Math.max(Math.min(deadline, readyAt) - now, 1));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the slot of a fetched URL and adapts its host to the response. A 429 or
+     * 503 response halves the host's concurrency, keeps the host waiting for the
+     * {@code Retry-After} time or an exponential backoff, and queues the URL again at the
+     * front of its host's queue, unless it was refused {@link #MAX_ATTEMPTS} times; the
+     * crawler then counts the URL as failed.
+     *
+     * @param url the URL returned by {@link #poll(long, TimeUnit)}
+     * @param result the response, or null if the request failed
+     * @return true if the URL was queued again and must not be processed now
+     */
+    public boolean complete(String url, DownloadResult result) {
+        lock.lock();
+        try {
+            Host host = leased.remove(url);
+            if (host == null) {
+                return false; // Not leased from this scheduler
+            }
+            long now = System.nanoTime();
+            host.inFlight--;
+            changed.signalAll();
+
+            if (result == null) {
+                host.decrease(now);
+            } else if (result.isThrottled()) {
+                throttledResponses++;
+                host.decrease(now);
+                int attempt = attempts.merge(url, 1, Integer::sum);
+                Duration backoff = retryAfter(result.getRetryAfter());
+                if (backoff == null) {
+                    backoff = DEFAULT_BACKOFF.multipliedBy(1L << Math.min(attempt - 1, 8));
+                }
+                if (backoff.compareTo(MAX_BACKOFF) > 0) {
+                    backoff = MAX_BACKOFF;
+                }
+                host.notBefore = Math.max(host.notBefore, now + backoff.toNanos());
+                if (attempt < MAX_ATTEMPTS) {
+                    if (host.queue.isEmpty()) {
+                        waitingHosts.addLast(host);
+                    }
+                    host.queue.addFirst(url);
+                    size++;
+                    retriedUrls++;
+                    return true;
+                }
+            } else {
+                host.observe(result.getFetchNanos(), now);
+            }
+            attempts.remove(url);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of queued URLs, not counting those being fetched.
+     *
+     * @return the number of queued URLs
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the current concurrency limit of a host.
+     *
+     * @param host the host, as returned by {@link #hostOf(String)}
+     * @return the number of requests the host may have in flight
+     */
+    public int getConcurrencyLimit(String host) {
+        lock.lock();
+        try {
+            Host state = hosts.get(host);
+            return state != null ? state.limit() : Math.min(maxConcurrency, Host.INITIAL_LIMIT);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getThrottledResponses() {
+        lock.lock();
+        try {
+            return throttledResponses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRetriedUrls() {
+        lock.lock();
+        try {
+            return retriedUrls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the host and port of a URL, which identify the server its requests go to.
+     *
+     * @param url an absolute URL
+     * @return the authority of the URL, in lower case
+     */
+    public static String hostOf(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length() && "/?#".indexOf(url.charAt(end)) < 0) {
+            end++;
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Reads the {@code Crawl-delay} that a robots.txt asks of every crawler, from the
+     * group for {@code User-agent: *}.
+     *
+     * @param robotsTxt the content of the robots.txt
+     * @return the delay, or null if none is given
+     */
+    public static Duration parseCrawlDelay(String robotsTxt) {
+        boolean inGroup = false;
+        boolean groupHasRules = false;
+        for (String line : robotsTxt.split("\r?\n|\r")) {
+            int comment = line.indexOf('#');
+            String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            int colon = content.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = content.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = content.substring(colon + 1).trim();
+            if (field.equals("user-agent")) {
+                if (groupHasRules) {
+                    inGroup = false; // A user-agent line after rules starts a new group
+                    groupHasRules = false;
+                }
+                inGroup |= value.equals("*");
+            } else {
+                groupHasRules = true;
+                if (inGroup && field.equals("crawl-delay")) {
+                    try {
+                        double seconds = Double.parseDouble(value);
+                        if (seconds > 0 && seconds < Double.POSITIVE_INFINITY) {
+                            return Duration.ofNanos(Math.round(seconds * 1_000_000_000));
+                        }
+                    } catch (NumberFormatException e) {
+                        // Ignore a malformed delay, as crawlers commonly do
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header given in seconds or as an HTTP date.
+     *
+     * @return the time to wait, or null if the header is missing or malformed
+     */
+    static Duration retryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime date = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration wait = Duration.between(ZonedDateTime.now(date.getZone()), date);
+                return wait.isNegative() ? Duration.ZERO : wait;
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+
+    private Host host(String name) {
+        return hosts.computeIfAbsent(name, key -> new Host(requestsPerSecond, maxConcurrency));
+    }
+
+    /**
+     * The state of one host; only accessed while holding the lock.
+     */
+    private static class Host {
+        static final int INITIAL_LIMIT = 4;
+        private static final double SMOOTHING = 0.125;
+        private static final double BASELINE_SMOOTHING = 1.0 / 64;
+
+        final Deque<String> queue = new ArrayDeque<>();
+        final int maxConcurrency;
+        double rate;
+        double burst;
+        double tokens;
+        long lastRefill = System.nanoTime();
+        long notBefore;
+        double concurrencyLimit;
+        int inFlight;
+        long smoothedNanos;
+        long baselineNanos;
+        long lastDecrease;
+
+        Host(double rate, int maxConcurrency) {
+            this.rate = rate;
+            this.burst = Math.max(1, rate); // One second of requests may be sent at once
+            this.tokens = burst;
+            this.maxConcurrency = maxConcurrency;
+            this.concurrencyLimit = Math.min(maxConcurrency, INITIAL_LIMIT);
+            this.notBefore = lastRefill;
+        }
+
+        int limit() {
+            return (int) concurrencyLimit;
+        }
+
+        /**
+         * Returns when the next request may be sent: once a concurrency slot is free, a
+         * token is available and any Retry-After time has passed. A host without a free
+         * slot is ready only after a completion, so it reports no time.
+         */
+        long readyAt(long now) {
+            if (inFlight >= limit()) {
+                return Long.MAX_VALUE;
+            }
+            refill(now);
+            long tokenAt = tokens >= 1 || rate == 0 ? now : now + (long) ((1 - tokens) / rate * 1_000_000_000);
+            return Math.max(tokenAt, notBefore);
+        }
+
+        void acquire(long now) {
+            refill(now);
+            if (rate > 0) {
+                tokens -= 1;
+            }
+            inFlight++;
+        }
+
+        private void refill(long now) {
+            if (rate > 0) {
+                tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1_000_000_000);
+            }
+            lastRefill = now;
+        }
+
+        /**
+         * Raises the limit by one per window of responses, unless the recent latency
+         * spiked well above the long-term latency of the host. The long-term average
+         * follows slowly, so a host that is merely slow is not penalized forever.
+         */
+        void observe(long latencyNanos, long now) {
+            if (smoothedNanos == 0) {
+                smoothedNanos = latencyNanos;
+                baselineNanos = latencyNanos;
+            }
+            smoothedNanos += (long) ((latencyNanos - smoothedNanos) * SMOOTHING);
+            baselineNanos += (long) ((latencyNanos - baselineNanos) * BASELINE_SMOOTHING);
+            long threshold = Math.max((long) (baselineNanos * LATENCY_SPIKE_FACTOR),
+                    baselineNanos + LATENCY_SPIKE_SLACK_NANOS);
+            if (smoothedNanos > threshold) {
+                decrease(now);
+            } else {
+                concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+            }
+        }
+
+        /**
+         * Halves the limit, at most once per smoothed round trip, so that the responses
+         * to requests sent before the last decrease do not shrink it again.
+         */
+        void decrease(long now) {
+            if (lastDecrease != 0 && now - lastDecrease < smoothedNanos) {
+                return;
+            }
+            concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+            lastDecrease = now;
+        }
+    }
+}
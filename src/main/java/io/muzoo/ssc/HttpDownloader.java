@@ -3,22 +3,70 @@ package io.muzoo.ssc;
 import org.apache.hc.client5.http.classic.methods.HttpGet;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpResponse;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.MessageHeaders;
 import org.apache.hc.core5.http.ParseException;
+import org.apache.hc.core5.http.ProtocolVersion;
 import org.apache.hc.core5.http.io.entity.EntityUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
 
 
 /**
  * The HttpDownloader class provides functionality to download content
  * from a specified URL and save it to a file. It uses Apache HttpClient
  * for making HTTP requests and handling responses.
+ *
+ * The crawler uses {@link #download(String, Path)}, which streams the response
+ * body straight to disk through a file channel, so memory use does not depend on
+ * the size of the response and binary content is written byte for byte. With a
+ * {@link StorageWriter}, small bodies whose length the server declared are read into
+ * memory instead and queued for the writer threads, so that the download does not
+ * wait for the disk. With a {@link WarcWriter}, every response is appended to the WARC
+ * archive instead of a file of its own, and with a {@link PackStore}, every body is
+ * appended to a pack file.
+ *
+ * Bodies held in memory are read into direct buffers from a {@link BufferPool}, as is
+ * the copy buffer of streamed bodies, so that concurrent downloads reuse the same few
+ * buffers instead of allocating a large array per response. A result whose body is in
+ * a pooled buffer must be released once it was parsed; see {@link DownloadResult#release()}.
  */
-public class HttpDownloader  {
+public class HttpDownloader implements Downloader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_QUEUED_BODY = BufferPool.MAX_SIZE;
+    private static final int INITIAL_BODY_SIZE = 16 * 1024;
+
     private final CloseableHttpClient httpClient;
+    private final long maxBodySize;
+    private final StorageWriter storage;
+    private final WarcWriter archive;
+    private final PackStore packStore;
+    private final BufferPool buffers;
 
     /**
      * Constructor to initialize the HttpDownloader with a given HTTP client.
@@ -26,11 +74,89 @@ public class HttpDownloader  {
      * @param httpClient the HTTP client used for making requests
      */
     public HttpDownloader(CloseableHttpClient httpClient) {
+        this(httpClient, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructor to initialize the HttpDownloader with a given HTTP client and a limit
+     * on the size of the response bodies streamed by {@link #download(String, Path)}.
+     *
+     * @param httpClient the HTTP client used for making requests
+     * @param maxBodySize the maximum number of body bytes to accept per response
+     */
+    public HttpDownloader(CloseableHttpClient httpClient, long maxBodySize) {
+        this(httpClient, maxBodySize, (StorageWriter) null);
+    }
+
+    /**
+     * Constructor to initialize the HttpDownloader with a given HTTP client, a limit on
+     * the size of the response bodies and a writer that stores them.
+     *
+     * @param httpClient the HTTP client used for making requests
+     * @param maxBodySize the maximum number of body bytes to accept per response
+     * @param storage the writer that stores small bodies, or null to write every body inline
+     */
+    public HttpDownloader(CloseableHttpClient httpClient, long maxBodySize, StorageWriter storage) {
+        this(httpClient, maxBodySize, storage, null, null);
+    }
+
+    /**
+     * Constructor to initialize the HttpDownloader with a given HTTP client, a limit on
+     * the size of the response bodies and the WARC archive the responses are written to.
+     * The target files passed to {@link #download(String, Path, PageMetadata)} are then
+     * not written; the results still name them as the files an export would write.
+     *
+     * @param httpClient the HTTP client used for making requests
+     * @param maxBodySize the maximum number of body bytes to accept per response
+     * @param archive the archive the responses are written to
+     */
+    public HttpDownloader(CloseableHttpClient httpClient, long maxBodySize, WarcWriter archive) {
+        this(httpClient, maxBodySize, null, archive, null);
+    }
+
+    /**
+     * Constructor to initialize the HttpDownloader with a given HTTP client, a limit on
+     * the size of the response bodies and the pack store the bodies are written to. The
+     * target files are then not written, as with an archive.
+     *
+     * @param httpClient the HTTP client used for making requests
+     * @param maxBodySize the maximum number of body bytes to accept per response
+     * @param packStore the store the bodies are written to
+     */
+    public HttpDownloader(CloseableHttpClient httpClient, long maxBodySize, PackStore packStore) {
+        this(httpClient, maxBodySize, null, null, packStore);
+    }
+
+    private HttpDownloader(CloseableHttpClient httpClient, long maxBodySize, StorageWriter storage,
+                           WarcWriter archive, PackStore packStore) {
+        this(httpClient, maxBodySize, storage, archive, packStore, BufferPool.create(CrawlerConfig.defaults()));
+    }
+
+    /**
+     * Constructor to initialize the HttpDownloader with all its collaborators. At most one
+     * of the storage writer, the archive and the pack store may be given.
+     *
+     * @param httpClient the HTTP client used for making requests
+     * @param maxBodySize the maximum number of body bytes to accept per response
+     * @param storage the writer that stores small bodies, or null
+     * @param archive the archive the responses are written to, or null
+     * @param packStore the store the bodies are written to, or null
+     * @param buffers the pool the body buffers are taken from
+     */
+    HttpDownloader(CloseableHttpClient httpClient, long maxBodySize, StorageWriter storage, WarcWriter archive,
+                   PackStore packStore, BufferPool buffers) {
         this.httpClient = httpClient;
+        this.maxBodySize = maxBodySize;
+        this.storage = storage;
+        this.archive = archive;
+        this.packStore = packStore;
+        this.buffers = buffers;
     }
 
     /**
-     * Downloads the content from the specified URL and returns it as a string.
+     * Downloads the content from the specified URL and returns it as a string,
+     * decoded with the charset declared by the server (UTF-8 if none is declared).
+     * The whole body is held in memory; prefer {@link #download(String, Path)}.
      *
      * @param url the URL to download content from
      * @return the content of the URL as a string
@@ -39,14 +165,312 @@ public class HttpDownloader  {
     public String download(String url) throws IOException {
         HttpGet request = new HttpGet(url);
         try (CloseableHttpResponse response = httpClient.execute(request)) {
-            return EntityUtils.toString(response.getEntity());
+            return EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
         } catch (ParseException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Saves the given content to a specified file path.
+     * Downloads the content from the specified URL and streams it into the given file,
+     * creating parent directories if they do not exist. The body is copied through a
+     * pooled buffer and never held in memory as a whole.
+     *
+     * Bodies larger than the configured maximum are rejected before the first byte is
+     * read when the server declares the length, and as soon as the limit is crossed
+     * otherwise; closing the response early drops the connection instead of draining it.
+     *
+     * @param url the URL to download content from
+     * @param target the file to write the response body to
+     * @return the description of the downloaded response
+     * @throws BodyTooLargeException if the body exceeds the maximum size
+     * @throws IOException if an error occurs during the HTTP request or while writing the file
+     */
+    @Override
+    public DownloadResult download(String url, Path target) throws IOException {
+        return download(url, target, null);
+    }
+
+    /**
+     * Downloads the content from the specified URL like {@link #download(String, Path)},
+     * but asks the server to send the body only if it changed since the previous download.
+     * The validators of the previous download are sent as {@code If-None-Match} and
+     * {@code If-Modified-Since} when the stored copy still exists.
+     *
+     * On a 304 Not Modified response the target file is not touched, and the result
+     * describes the stored copy as recorded in the previous metadata. A 429 or 503
+     * response leaves the target file untouched as well; its error page is discarded.
+     *
+     * @param url the URL to download content from
+     * @param target the file to write the response body to
+     * @param previous the metadata of the previous download, or null to download unconditionally
+     * @return the description of the downloaded response
+     * @throws BodyTooLargeException if the body exceeds the maximum size
+     * @throws IOException if an error occurs during the HTTP request or while writing the file
+     */
+    @Override
+    public DownloadResult download(String url, Path target, PageMetadata previous) throws IOException {
+        return download(url, target, previous, previous != null && previous.hasValidators() && Files.exists(target));
+    }
+
+    /**
+     * Asks the server whether a copy stored elsewhere is still current, sending its
+     * validators whether or not the target file exists. On a 304 Not Modified response
+     * the target file is not touched; otherwise the new body is downloaded as usual.
+     *
+     * @param url the URL to download content from
+     * @param target the file to write the response body to
+     * @param stored the metadata of the stored copy, which has validators
+     * @return the description of the downloaded response
+     * @throws IOException if an error occurs during the HTTP request or while writing the file
+     */
+    @Override
+    public DownloadResult revalidate(String url, Path target, PageMetadata stored) throws IOException {
+        return download(url, target, stored, true);
+    }
+
+    private DownloadResult download(String url, Path target, PageMetadata previous, boolean conditional)
+            throws IOException {
+        long startTime = System.nanoTime();
+        HttpGet request = new HttpGet(url);
+        if (conditional) {
+            if (previous.getEtag() != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, previous.getEtag());
+            }
+            if (previous.getLastModified() != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, previous.getLastModified());
+            }
+        }
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            String etag = headerValue(response, HttpHeaders.ETAG);
+            String lastModified = headerValue(response, HttpHeaders.LAST_MODIFIED);
+            long freshUntil = freshUntil(response, System.currentTimeMillis());
+            if (conditional && response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+                EntityUtils.consume(response.getEntity());
+                return notModified(url, target, previous, etag, lastModified, System.nanoTime() - startTime)
+                        .withFreshUntil(freshUntil);
+            }
+            if (DownloadResult.isThrottled(response.getCode())) {
+                EntityUtils.consume(response.getEntity()); // The error page never replaces a stored copy
+                return throttled(url, response.getCode(), target, headerValue(response, HttpHeaders.RETRY_AFTER),
+                        System.nanoTime() - startTime);
+            }
+
+            HttpEntity entity = response.getEntity();
+            ContentType contentType = parseContentType(entity != null ? entity.getContentType() : null);
+            String mimeType = contentType != null ? contentType.getMimeType() : null;
+            Charset charset = contentType != null ? contentType.getCharset() : null;
+
+            if (entity != null && entity.getContentLength() > maxBodySize) {
+                request.cancel(); // Drops the connection instead of reading the body to reuse it
+                throw new BodyTooLargeException(url, maxBodySize);
+            }
+
+            InputStream body = entity != null ? entity.getContent() : InputStream.nullInputStream();
+            long declaredLength = entity != null ? entity.getContentLength() : -1;
+            if (archive != null || packStore != null) {
+                return storeWhole(url, target, request, response, body, declaredLength, mimeType, charset, startTime)
+                        .withFreshUntil(freshUntil);
+            }
+            long[] storeNanos = new long[1];
+            CRC32C checksum = new CRC32C();
+            if (storage != null && declaredLength >= 0 && declaredLength <= MAX_QUEUED_BODY) {
+                BufferPool.Buffer bytes = readFully(body, (int) declaredLength);
+                try {
+                    body.close();
+                    checksum.update(bytes.contents());
+                    long storeStart = System.nanoTime();
+                    storage.write(target, bytes.retain()); // Blocks while the writers are behind
+                    return new DownloadResult(url, response.getCode(), mimeType, charset, target,
+                            bytes.buffer().limit(), System.nanoTime() - startTime, System.nanoTime() - storeStart,
+                            etag, lastModified, checksum.getValue(), headerValue(response, HttpHeaders.RETRY_AFTER))
+                            .withBody(bytes).withFreshUntil(freshUntil);
+                } catch (IOException | RuntimeException e) {
+                    bytes.release();
+                    throw e;
+                }
+            }
+            long written;
+            try {
+                written = copy(body, target, storeNanos, checksum);
+            } catch (BodyTooLargeException e) {
+                request.cancel();
+                throw new BodyTooLargeException(url, maxBodySize);
+            }
+            body.close();
+            return new DownloadResult(url, response.getCode(), mimeType, charset, target, written,
+                    System.nanoTime() - startTime, storeNanos[0], etag, lastModified, checksum.getValue(),
+                    headerValue(response, HttpHeaders.RETRY_AFTER)).withFreshUntil(freshUntil);
+        }
+    }
+
+    /**
+     * Reads the body and appends the exchange to the archive, or the body to the pack
+     * store. Small bodies are read into a pooled buffer, which grows through the size
+     * classes as needed; larger ones are spooled to a temporary file, because the record
+     * must declare its length before the body. The result reads the body back from the
+     * buffer or from where it was stored.
+     */
+    private DownloadResult storeWhole(String url, Path target, HttpGet request, CloseableHttpResponse response,
+                                      InputStream body, long declaredLength, String mimeType, Charset charset,
+                                      long startTime) throws IOException {
+        CRC32C checksum = new CRC32C();
+        MessageDigest sha1 = archive != null ? sha1() : null;
+        // One byte more than declared, so that the end of the body is read without growing the buffer
+        BufferPool.Buffer memory = buffers.acquire(declaredLength >= 0
+                ? (int) Math.min(declaredLength + 1, MAX_QUEUED_BODY) : INITIAL_BODY_SIZE);
+        memory.buffer().limit(memory.buffer().capacity());
+        Path spool = null;
+        FileChannel sink = null;
+        try {
+            ReadableByteChannel source = Channels.newChannel(body);
+            long length = 0;
+            while (true) {
+                ByteBuffer buffer = memory.buffer();
+                if (!buffer.hasRemaining()) {
+                    if (sink == null && buffer.capacity() < MAX_QUEUED_BODY) {
+                        memory = buffers.grow(memory, buffer.capacity() * 2);
+                    } else {
+                        if (sink == null) {
+                            spool = Files.createTempFile("warc-body", ".tmp");
+                            sink = FileChannel.open(spool, StandardOpenOption.WRITE);
+                        }
+                        writeFully(sink, buffer.flip());
+                        buffer.clear();
+                    }
+                    buffer = memory.buffer();
+                }
+                int start = buffer.position();
+                int n = source.read(buffer);
+                if (n == -1) {
+                    break;
+                }
+                length += n;
+                if (length > maxBodySize) {
+                    request.cancel();
+                    throw new BodyTooLargeException(url, maxBodySize);
+                }
+                ByteBuffer read = buffer.duplicate().limit(buffer.position()).position(start);
+                if (sha1 != null) {
+                    sha1.update(read.duplicate());
+                }
+                checksum.update(read);
+            }
+            memory.buffer().flip();
+            if (sink != null) {
+                writeFully(sink, memory.buffer());
+                sink.close();
+                memory.release();
+                memory = null;
+            }
+            body.close();
+
+            long storeStart = System.nanoTime();
+            DownloadResult.Body stored;
+            try (InputStream payload = memory != null ? memory.newInputStream() : Files.newInputStream(spool)) {
+                if (archive != null) {
+                    CdxEntry entry = archive.writeResponse(url, requestHead(url, request), responseHead(response),
+                            response.getCode(), mimeType, "sha1:" + WarcWriter.base32(sha1.digest()), payload, length);
+                    stored = () -> archive.openPayload(entry);
+                } else {
+                    packStore.put(url, payload, length);
+                    stored = () -> packStore.open(url);
+                }
+            }
+            long now = System.nanoTime();
+            DownloadResult result = new DownloadResult(url, response.getCode(), mimeType, charset, target, length,
+                    now - startTime, now - storeStart, headerValue(response, HttpHeaders.ETAG),
+                    headerValue(response, HttpHeaders.LAST_MODIFIED), checksum.getValue(),
+                    headerValue(response, HttpHeaders.RETRY_AFTER));
+            if (memory == null) {
+                return result.withBody(stored);
+            }
+            BufferPool.Buffer bytes = memory;
+            memory = null; // The result owns it now
+            return result.withBody(bytes);
+        } finally {
+            if (memory != null) {
+                memory.release();
+            }
+            if (sink != null) {
+                sink.close();
+            }
+            if (spool != null) {
+                Files.deleteIfExists(spool);
+            }
+        }
+    }
+
+    /**
+     * Reads a body of the declared length into a pooled buffer, flipped for reading. A
+     * body that ends early is kept as far as it was sent.
+     */
+    private BufferPool.Buffer readFully(InputStream body, int length) throws IOException {
+        BufferPool.Buffer bytes = buffers.acquire(length);
+        try {
+            ReadableByteChannel source = Channels.newChannel(body);
+            ByteBuffer buffer = bytes.buffer();
+            while (buffer.hasRemaining() && source.read(buffer) != -1) {
+                // Keep reading until the declared length arrived
+            }
+            buffer.flip();
+            return bytes;
+        } catch (IOException | RuntimeException e) {
+            bytes.release();
+            throw e;
+        }
+    }
+
+    private static void writeFully(FileChannel sink, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            sink.write(buffer);
+        }
+    }
+
+    /**
+     * Formats the request line and the headers set on the request. Headers that the client
+     * adds while sending, such as {@code User-Agent}, are not known here.
+     */
+    private static byte[] requestHead(String url, HttpGet request) {
+        StringBuilder head = new StringBuilder(256);
+        head.append("GET ").append(request.getRequestUri()).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(URI.create(url).getRawAuthority()).append("\r\n");
+        for (Header header : request.getHeaders()) {
+            head.append(header.getName()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        return head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Formats the status line and the headers of the response. The body is archived as the
+     * client decoded it, so {@code Transfer-Encoding} no longer applies and is left out.
+     */
+    private static byte[] responseHead(CloseableHttpResponse response) {
+        StringBuilder head = new StringBuilder(512);
+        ProtocolVersion version = response.getVersion() != null ? response.getVersion() : HttpVersion.HTTP_1_1;
+        head.append(version).append(' ').append(response.getCode());
+        if (response.getReasonPhrase() != null) {
+            head.append(' ').append(response.getReasonPhrase());
+        }
+        head.append("\r\n");
+        for (Header header : response.getHeaders()) {
+            if (!HttpHeaders.TRANSFER_ENCODING.equalsIgnoreCase(header.getName())) {
+                head.append(header.getName()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+        return head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e); // Every JDK must provide it
+        }
+    }
+
+    /**
+     * Saves the given content to a specified file path as UTF-8.
      * Creates parent directories if they do not exist.
      *
      * @param content the content to save to the file
@@ -56,6 +480,185 @@ public class HttpDownloader  {
     public void saveToFile(String content, String filePath) throws IOException {
         Path path = Paths.get(filePath);
         Files.createDirectories(path.getParent());
-        Files.write(path, content.getBytes());
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copies the body into the target file, and deletes the file again if the copy fails.
+     * The body stream is left open so that the caller can decide whether to finish the
+     * response or abort it. The time spent opening and writing the file is added to
+     * {@code storeNanos[0]}, and the bytes are added to the checksum on the way. With a
+     * {@link StorageWriter}, its directory cache and durability apply to the file as well.
+     */
+    private long copy(InputStream body, Path target, long[] storeNanos, Checksum checksum) throws IOException {
+        long storeStart = System.nanoTime();
+        if (storage != null) {
+            storage.createDirectories(target.getParent());
+        } else {
+            Files.createDirectories(target.getParent());
+        }
+        Files.deleteIfExists(target); // May be a hard link to an identical page; never write through it
+        BufferPool.Buffer pooled = buffers.acquire(BUFFER_SIZE);
+        ByteBuffer buffer = pooled.buffer();
+        ReadableByteChannel source = Channels.newChannel(body);
+        try (FileChannel sink = FileChannel.open(target, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            storeNanos[0] += System.nanoTime() - storeStart;
+            long written = 0;
+            while (source.read(buffer) != -1) {
+                if (written + buffer.position() > maxBodySize) {
+                    throw new BodyTooLargeException(target.toString(), maxBodySize);
+                }
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.rewind();
+                storeStart = System.nanoTime();
+                while (buffer.hasRemaining()) {
+                    written += sink.write(buffer);
+                }
+                storeNanos[0] += System.nanoTime() - storeStart;
+                buffer.clear();
+            }
+            if (storage != null) {
+                storeStart = System.nanoTime();
+                storage.written(sink, target);
+                storeNanos[0] += System.nanoTime() - storeStart;
+            }
+            return written;
+        } catch (IOException | RuntimeException e) {
+            // Never leave a truncated file behind, whichever way the copy failed
+            try {
+                Files.deleteIfExists(target);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            pooled.release();
+        }
+    }
+
+    /**
+     * Returns the writer that stores the small bodies of this downloader.
+     *
+     * @return the storage writer, or null if every body is written inline
+     */
+    @Override
+    public StorageWriter getStorageWriter() {
+        return storage;
+    }
+
+    /**
+     * Returns the pool the body buffers of this downloader are taken from.
+     *
+     * @return the buffer pool
+     */
+    public BufferPool getBufferPool() {
+        return buffers;
+    }
+
+    /**
+     * Describes the stored copy of a page that the server reported as not modified, as
+     * recorded in the metadata of the previous download. Validators sent with the 304
+     * response replace the previous ones.
+     */
+    static DownloadResult notModified(String url, Path target, PageMetadata previous, String etag,
+                                      String lastModified, long fetchNanos) {
+        return new DownloadResult(url, HttpStatus.SC_NOT_MODIFIED, previous.getMimeType(),
+                charsetOf(previous.getCharset()), target, previous.getSize(), fetchNanos, 0,
+                etag != null ? etag : previous.getEtag(),
+                lastModified != null ? lastModified : previous.getLastModified(), previous.getContentHash());
+    }
+
+    /**
+     * Describes a 429 or 503 response, whose body was discarded without touching the
+     * target file.
+     */
+    static DownloadResult throttled(String url, int statusCode, Path target, String retryAfter, long fetchNanos) {
+        return new DownloadResult(url, statusCode, null, null, target, 0, fetchNanos, 0, null, null, 0, retryAfter);
+    }
+
+    /**
+     * Works out until when a response may be reused without asking the server, from its
+     * {@code Cache-Control}, {@code Expires}, {@code Date} and {@code Age} headers, as a
+     * private cache may: {@code no-store} forbids storing the response, {@code no-cache}
+     * makes it stale at once, and {@code max-age} takes precedence over {@code Expires}.
+     * A response without any of them is stale at once, and so is one whose dates cannot
+     * be parsed; it may still be revalidated.
+     *
+     * @param response the response headers
+     * @param now the current time in milliseconds since the epoch
+     * @return the time until which the response is fresh, 0 if it is stale, or
+     *         {@link DownloadResult#NOT_STORABLE} if it must not be stored
+     */
+    static long freshUntil(MessageHeaders response, long now) {
+        long maxAge = -1;
+        for (Header header : response.getHeaders(HttpHeaders.CACHE_CONTROL)) {
+            for (String directive : header.getValue().split(",")) {
+                String name = directive.trim().toLowerCase(Locale.ROOT);
+                if (name.equals("no-store")) {
+                    return DownloadResult.NOT_STORABLE;
+                } else if (name.equals("no-cache")) {
+                    maxAge = 0;
+                } else if (name.startsWith("max-age=") && maxAge != 0) {
+                    maxAge = parseSeconds(name.substring("max-age=".length()));
+                }
+            }
+        }
+        long age = Math.max(0, parseSeconds(headerValue(response, HttpHeaders.AGE)));
+        if (maxAge >= 0) {
+            return maxAge > age ? now + (maxAge - age) * 1000 : 0;
+        }
+        String expires = headerValue(response, HttpHeaders.EXPIRES);
+        if (expires == null) {
+            return 0;
+        }
+        Date expiresAt = DateUtils.parseDate(expires);
+        if (expiresAt == null) {
+            return 0; // An invalid date, such as "0", means already expired
+        }
+        // Measured against the server's clock, so that the two clocks need not agree
+        Date date = DateUtils.parseDate(response, HttpHeaders.DATE);
+        long lifetime = expiresAt.getTime() - (date != null ? date.getTime() : now);
+        return lifetime > age * 1000 ? now + lifetime - age * 1000 : 0;
+    }
+
+    private static long parseSeconds(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.replace("\"", "").trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static String headerValue(MessageHeaders response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    static Charset charsetOf(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static ContentType parseContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        try {
+            return ContentType.parseLenient(contentType);
+        } catch (UnsupportedCharsetException e) {
+            // Keep the media type so that the page is still routed correctly
+            return ContentType.parseLenient(contentType.split(";")[0]);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,33 @@
+package io.muzoo.ssc;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+/**
+ * The JsoupLinkExtractor class parses the whole document with Jsoup and selects the
+ * link elements with a CSS selector. It is the reference the other extractors are
+ * checked against.
+ */
+public class JsoupLinkExtractor implements LinkExtractor {
+    private static final String LINK_SELECTOR = "a[href], img[src], link[href], script[src], iframe[src]";
+
+    @Override
+    public void extractLinks(InputStream html, Charset charset, String pageUrl, Consumer<String> sink) throws IOException {
+        Document doc = Jsoup.parse(html, charset != null ? charset.name() : null, pageUrl);
+        for (Element link : doc.select(LINK_SELECTOR)) {
+            String nextUrl = link.absUrl("href");
+            if (nextUrl.isEmpty()) {
+                nextUrl = link.absUrl("src");
+            }
+            if (!nextUrl.isEmpty()) {
+                sink.accept(nextUrl);
+            }
+        }
+    }
+}
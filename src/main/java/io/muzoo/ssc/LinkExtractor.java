@@ -0,0 +1,52 @@
+package io.muzoo.ssc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.function.Consumer;
+
+/**
+ * The LinkExtractor interface pulls the URLs of linked pages and resources out of an
+ * HTML document: the {@code href} of {@code a} and {@code link} elements and the
+ * {@code src} of {@code img}, {@code script} and {@code iframe} elements, resolved to
+ * absolute URLs against the page URL or the document's {@code <base href>}.
+ */
+public interface LinkExtractor {
+
+    /**
+     * The available implementations.
+     */
+    enum Type {
+        /** Builds a full Jsoup document and selects the link elements. The reference implementation. */
+        JSOUP,
+        /** Tokenizes the HTML stream and emits links as it goes, without building a tree. */
+        STREAMING
+    }
+
+    /**
+     * Extracts the links of an HTML document.
+     *
+     * @param html the document bytes; not closed by this method
+     * @param charset the declared charset, or null to detect it from the document
+     * @param pageUrl the URL the document was downloaded from
+     * @param sink receives every non-empty absolute URL, in document order
+     * @throws IOException if the document cannot be read
+     */
+    void extractLinks(InputStream html, Charset charset, String pageUrl, Consumer<String> sink) throws IOException;
+
+    /**
+     * Creates a link extractor of the given type.
+     *
+     * @param type the implementation to create
+     * @return a new link extractor
+     */
+    static LinkExtractor create(Type type) {
+        switch (type) {
+            case JSOUP:
+                return new JsoupLinkExtractor();
+            case STREAMING:
+            default:
+                return new StreamingLinkExtractor();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.muzoo.ssc;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LinkFilter class remembers the links, exactly as extracted, that the crawler has
+ * already dealt with, so that another copy of the same link can be dropped before it is
+ * normalized and looked up in the visited set. On template-heavy sites most links of a
+ * page are the navigation and footer links every page repeats, and each copy used to
+ * cost a full normalization.
+ *
+ * A {@link BloomFilter} answers first. A link it has never seen is new for certain and
+ * takes the full path; a link it may have seen is confirmed exactly, so a false positive
+ * of the filter only costs that lookup. A link already in normal form is confirmed by
+ * the crawler's visited set, which holds it once it is claimed; only the other links are
+ * kept in a set of their own. Links are recorded only once the crawler's decision about
+ * them is final.
+ *
+ * The link is hashed once for the filter, and sets of fingerprints reuse that hash.
+ *
+ * Hits (repeated links dropped), misses (links the filter knew to be new) and false
+ * positives are counted, so the effect of the filter and its sizing can be checked.
+ */
+public class LinkFilter {
+    private final BloomFilter filter;
+    private final VisitedSet visitedUrls;
+    private final VisitedSet recordedLinks;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Creates a filter sized for the expected number of distinct links.
+     *
+     * @param expectedLinks the number of distinct links the crawl is expected to find
+     * @param falsePositiveRate the target false-positive rate of the Bloom filter
+     * @param visitedUrls the crawler's visited set, which confirms links in normal form
+     * @param type the kind of set that holds the other recorded links for the exact check
+     */
+    public LinkFilter(long expectedLinks, double falsePositiveRate, VisitedSet visitedUrls, VisitedSet.Type type) {
+        this.filter = new BloomFilter(expectedLinks, falsePositiveRate);
+        this.visitedUrls = visitedUrls;
+        this.recordedLinks = VisitedSet.create(type);
+    }
+
+    /**
+     * Checks whether the link was recorded before.
+     *
+     * @param link the link as extracted from a page
+     * @return true if the link was recorded, false if it has to take the full path
+     */
+    public boolean seen(String link) {
+        long fingerprint = UrlFingerprint.of(link);
+        if (!filter.mightContain(fingerprint)) {
+            misses.increment();
+            return false;
+        }
+        if (visitedUrls.contains(link, fingerprint) || recordedLinks.contains(link, fingerprint)) {
+            hits.increment();
+            return true;
+        }
+        falsePositives.increment();
+        return false;
+    }
+
+    /**
+     * Records a link whose fate is settled: it was claimed, it is already claimed, or it
+     * can never be crawled. The exact answer is in place before the filter is updated,
+     * so that a link the filter reports is always confirmed.
+     *
+     * @param link the link as extracted from a page
+     * @param visited whether the link itself, being in normal form, is in the visited set
+     */
+    public void record(String link, boolean visited) {
+        long fingerprint = UrlFingerprint.of(link);
+        if (!visited) {
+            recordedLinks.add(link, fingerprint);
+        }
+        filter.put(fingerprint);
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Returns the fraction of the links checked that were dropped as repeats.
+     *
+     * @return the hit rate, from 0 to 1
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long checked = hits + getMisses() + getFalsePositives();
+        return checked == 0 ? 0 : (double) hits / checked;
+    }
+
+    /**
+     * Returns the fraction of the links not recorded before that the Bloom filter reported
+     * as possibly seen, to compare with the rate it was sized for.
+     *
+     * @return the observed false-positive rate, from 0 to 1
+     */
+    public double getFalsePositiveRate() {
+        long falsePositives = getFalsePositives();
+        long unseen = falsePositives + getMisses();
+        return unseen == 0 ? 0 : (double) falsePositives / unseen;
+    }
+
+    /**
+     * Returns the number of distinct links recorded apart from the visited set.
+     *
+     * @return the count of recorded links that are not in normal form or not claimed
+     */
+    public long size() {
+        return recordedLinks.size();
+    }
+
+    /**
+     * Returns an estimate of the heap used by the Bloom filter and the exact set.
+     *
+     * @return the estimated memory footprint in bytes
+     */
+    public long memoryBytes() {
+        return filter.memoryBytes() + recordedLinks.memoryBytes();
+    }
+}
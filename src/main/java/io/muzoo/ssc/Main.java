@@ -4,14 +4,72 @@ import io.muzoo.ssc.assignment.tracker.SscAssignment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
 public class Main extends SscAssignment {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
 
     public static void main(String[] args) {
         String baseUrl = "https://cs.muic.mahidol.ac.th/courses/ssc/docs/";
         String outputDir = "output";
+        Path archiveDir = Paths.get("crawl-state", "archive");
+        Path packDir = Paths.get("crawl-state", "packs");
+        List<String> options = Arrays.asList(args);
+        if (options.contains("--compact")) {
+            // Drop the bodies that re-crawls with --pack superseded
+            try (PackStore packStore = new PackStore(packDir, 1024L * 1024 * 1024, StorageWriter.Durability.PERIODIC)) {
+                long before = packStore.getPackedBytes();
+                packStore.compact();
+                logger.info("Compacted {}: {} MB to {} MB", packDir, before / (1024 * 1024),
+                        packStore.getPackedBytes() / (1024 * 1024));
+            } catch (IOException e) {
+                logger.error("Failed to compact {}: {}", packDir, e.getMessage(), e);
+            }
+            return;
+        }
+        if (options.contains("--export")) {
+            // Rebuild the file tree from an archive written with --archive
+            try {
+                int exported = new WarcReader(archiveDir).export(outputDir);
+                logger.info("Exported {} files from {} to {}", exported, archiveDir, outputDir);
+            } catch (IOException e) {
+                logger.error("Failed to export {}: {}", archiveDir, e.getMessage(), e);
+            }
+            return;
+        }
+        // Journal the crawl so that an interrupted run can be continued with --resume,
+        // and pace the requests so that the course server is not overloaded
+        CrawlerConfig.Builder builder = CrawlerConfig.builder();
+        Path stateDir = Paths.get("crawl-state");
+        for (String option : options) {
+            if (option.startsWith("--shard=")) {
+                // One of several processes started with --shard=0/N to --shard=N-1/N in the same directory
+                String[] shard = option.substring("--shard=".length()).split("/");
+                int shardIndex = Integer.parseInt(shard[0]);
+                builder.shard(shardIndex, Integer.parseInt(shard[1])).exchangeDir(stateDir.resolve("exchange"));
+                stateDir = stateDir.resolve("shard-" + shardIndex);
+            }
+        }
+        CrawlerConfig config = builder
+                .politeness(true)
+                .checkpointDir(stateDir)
+                .metadataIndexFile(stateDir.resolve("metadata.idx"))
+                .resume(options.contains("--resume"))
+                .archiveDir(options.contains("--archive") ? archiveDir : null)
+                .packDir(options.contains("--pack") ? packDir : null)
+                .deduplicate(options.contains("--dedup"))
+                .frontierType(options.contains("--priority") ? Frontier.Type.PRIORITY : Frontier.Type.LIFO)
+                // --cache keeps the responses for the next runs; --replay crawls from them offline
+                .responseCacheDir(options.contains("--cache") || options.contains("--replay")
+                        ? Paths.get("crawl-state", "cache") : null)
+                .replayOnly(options.contains("--replay"))
+                .build();
 
-        CrawlerManager crawlerManager = new CrawlerManager(baseUrl, outputDir);
+        CrawlerManager crawlerManager = new CrawlerManager(baseUrl, outputDir, config);
         crawlerManager.runCrawler();
     }
 }
\ No newline at end of file
@@ -0,0 +1,197 @@
+package io.muzoo.ssc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The MetadataIndex class remembers, per URL, what the previous crawl downloaded, so
+ * that the next crawl can send conditional requests and skip unchanged pages.
+ *
+ * The index is loaded when a crawl starts. Entries written during the crawl are kept
+ * apart from the loaded ones, and {@link #save()} writes only those, so pages that
+ * were not reached again drop out of the index. A crawl that did not reach every page
+ * carries loaded entries over: a resumed crawl keeps those of the pages an earlier run
+ * finished, and a crawl cut short by a budget keeps all those it did not replace.
+ *
+ * The file is a gzipped sequence of records whose links are stored as suffixes of the
+ * base URL, and it is replaced atomically, so an interrupted crawl leaves the previous
+ * index intact.
+ */
+public class MetadataIndex {
+    private static final int MAGIC = 0x4d494458; // "MIDX"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final String baseUrl;
+    private final Map<String, PageMetadata> previous;
+    private final Map<String, PageMetadata> current = new ConcurrentHashMap<>();
+
+    private MetadataIndex(Path file, String baseUrl, Map<String, PageMetadata> previous) {
+        this.file = file;
+        this.baseUrl = baseUrl;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads the index from the given file. A missing file yields an empty index.
+     *
+     * @param file the index file
+     * @param baseUrl the base URL of the crawl, used to shorten the stored links
+     * @return the loaded index
+     * @throws IOException if the file exists but cannot be read
+     */
+    public static MetadataIndex load(Path file, String baseUrl) throws IOException {
+        Map<String, PageMetadata> entries = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), BUFFER_SIZE), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a metadata index: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = in.readUTF();
+                String etag = readNullable(in);
+                String lastModified = readNullable(in);
+                long contentHash = in.readLong();
+                long size = in.readLong();
+                String mimeType = readNullable(in);
+                String charset = readNullable(in);
+                int linkCount = in.readInt();
+                List<String> outlinks = new ArrayList<>(linkCount);
+                for (int j = 0; j < linkCount; j++) {
+                    outlinks.add(baseUrl + in.readUTF());
+                }
+                entries.put(url, new PageMetadata(etag, lastModified, contentHash, size, mimeType, charset, outlinks));
+            }
+        } catch (NoSuchFileException e) {
+            entries.clear();
+        }
+        return new MetadataIndex(file, baseUrl, entries);
+    }
+
+    /**
+     * Returns the entry the previous crawl stored for the URL.
+     *
+     * @param url the cleaned URL
+     * @return the previous entry, or null if the URL was not downloaded by the previous crawl
+     */
+    public PageMetadata getPrevious(String url) {
+        return previous.get(url);
+    }
+
+    /**
+     * Stores the entry for a URL downloaded, or confirmed unchanged, by this crawl.
+     *
+     * @param url the cleaned URL
+     * @param metadata the entry to store
+     */
+    public void put(String url, PageMetadata metadata) {
+        current.put(url, metadata);
+    }
+
+    /**
+     * Carries the loaded entry of a URL over to the index of this crawl, unless this crawl
+     * stored one. Used for pages that an earlier run of a resumed crawl finished.
+     *
+     * @param url the cleaned URL
+     */
+    public void keepPrevious(String url) {
+        PageMetadata metadata = previous.get(url);
+        if (metadata != null) {
+            current.putIfAbsent(url, metadata);
+        }
+    }
+
+    /**
+     * Carries every loaded entry that this crawl did not replace over to its index. Used
+     * when the crawl stopped before reaching every page, so that the pages it did not get
+     * to keep their validators.
+     */
+    public void keepAllPrevious() {
+        previous.forEach(current::putIfAbsent);
+    }
+
+    /**
+     * Returns the number of entries loaded from the previous crawl.
+     *
+     * @return the size of the previous index
+     */
+    public int previousSize() {
+        return previous.size();
+    }
+
+    /**
+     * Returns the number of entries stored by this crawl.
+     *
+     * @return the size of the index that {@link #save()} writes
+     */
+    public int size() {
+        return current.size();
+    }
+
+    /**
+     * Writes the entries stored by this crawl, replacing the index file.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    public void save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(temp), BUFFER_SIZE), BUFFER_SIZE))) {
+            Map<String, PageMetadata> entries = Map.copyOf(current);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, PageMetadata> entry : entries.entrySet()) {
+                PageMetadata metadata = entry.getValue();
+                out.writeUTF(entry.getKey());
+                writeNullable(out, metadata.getEtag());
+                writeNullable(out, metadata.getLastModified());
+                out.writeLong(metadata.getContentHash());
+                out.writeLong(metadata.getSize());
+                writeNullable(out, metadata.getMimeType());
+                writeNullable(out, metadata.getCharset());
+                out.writeInt(metadata.getOutlinks().size());
+                for (String link : metadata.getOutlinks()) {
+                    out.writeUTF(link.substring(baseUrl.length())); // Every stored link is in scope
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.muzoo.ssc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The MetricsReporter class publishes the metrics of a running crawl. It registers
+ * the {@link CrawlMetrics} with the platform MBean server, so that they can be watched
+ * with JConsole or any other JMX client, and, if a metrics file is configured, rewrites
+ * a JSON snapshot of them at every progress interval.
+ *
+ * The snapshot is written to a temporary file that then replaces the previous one, so a
+ * reader never sees a partly written file. Closing the reporter writes a final snapshot,
+ * prints the final progress line and unregisters the MBean.
+ */
+public class MetricsReporter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsReporter.class);
+    static final String OBJECT_NAME = "io.muzoo.ssc:type=CrawlMetrics";
+
+    private final CrawlMetrics metrics;
+    private final ProgressTracker progressTracker;
+    private final Path metricsFile;
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler;
+    private ObjectName registeredName;
+
+    /**
+     * Constructor to initialize the MetricsReporter. Reporting begins with {@link #start()}.
+     *
+     * @param metrics the metrics of the crawl
+     * @param progressTracker the progress of the same crawl
+     * @param config the crawl options that give the interval and the metrics file
+     */
+    public MetricsReporter(CrawlMetrics metrics, ProgressTracker progressTracker, CrawlerConfig config) {
+        this.metrics = metrics;
+        this.progressTracker = progressTracker;
+        this.metricsFile = config.getMetricsFile();
+        this.intervalMillis = config.getProgressInterval().toMillis();
+        if (metricsFile != null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Registers the MBean and, if a metrics file is configured, starts rewriting the snapshot.
+     */
+    public void start() {
+        registerMBean();
+        if (scheduler != null) {
+            scheduler.scheduleAtFixedRate(this::writeSnapshot, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes the current snapshot to the metrics file, replacing the previous one.
+     * Failures are logged and do not stop the crawl.
+     */
+    void writeSnapshot() {
+        try {
+            Path parent = metricsFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = Files.createTempFile(parent, metricsFile.getFileName().toString(), ".tmp");
+            Files.writeString(temp, metrics.toJson(progressTracker), StandardCharsets.UTF_8);
+            try {
+                Files.move(temp, metricsFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, metricsFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write metrics snapshot to {}: {}", metricsFile, e.getMessage());
+        }
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                logger.warn("Crawl metrics are not published over JMX: {} is already registered", OBJECT_NAME);
+                return;
+            }
+            server.registerMBean(metrics, name);
+            registeredName = name;
+        } catch (JMException e) {
+            logger.warn("Failed to register crawl metrics over JMX: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            writeSnapshot();
+        }
+        progressTracker.printProgress();
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                logger.warn("Failed to unregister crawl metrics: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,696 @@
+package io.muzoo.ssc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * The PackStore class keeps downloaded bodies in a few large pack files instead of a
+ * file per URL. Bodies are appended to the current pack, which is closed once it
+ * reaches the maximum size. Every record starts with the URL fingerprint, the lengths
+ * of the URL and the body, and the URL itself, so the packs describe themselves.
+ *
+ * A compact in-memory index maps the fingerprint of every URL to the pack, offset and
+ * length of its latest body. Reads map the pack into memory and return a slice of the
+ * mapping, so a body is neither copied nor read through a file handle of its own. When
+ * a URL is stored again, the previous body stays in its pack until {@link #compact()}
+ * copies the live bodies to new packs and deletes the old ones.
+ *
+ * The index is saved to {@value #INDEX_FILE} when the store is closed. When it is
+ * opened, records appended after the last save are found by scanning the packs from
+ * where the saved index ends, and a record torn by a crash is cut off. As with
+ * {@link FingerprintVisitedSet}, two URLs with the same fingerprint share an index slot;
+ * the URL stored in the record is checked on every read, so a collision loses the older
+ * body but never returns the wrong one.
+ */
+public class PackStore implements AutoCloseable {
+    static final String INDEX_FILE = "packs.idx";
+    private static final String PACK_PREFIX = "pack-";
+    private static final String PACK_SUFFIX = ".pack";
+    private static final int MAGIC = 0x50434b58; // "PCKX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; // Fingerprint, URL length, body length
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long EMPTY = 0;
+    private static final long REMAPPED = 1; // Stands in for the fingerprint that clashes with EMPTY
+
+    private final Path directory;
+    private final long maxPackSize;
+    private final StorageWriter.Durability durability;
+    // Appends and compaction are serialized; lookups only wait while the index changes
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, Pack> packs = new TreeMap<>();
+    private Table table = new Table(1024);
+    private Pack active;
+    private FileChannel activeChannel;
+    private long packedBytes;
+
+    /**
+     * One pack file and its current read-only mapping, which is replaced by a larger one
+     * when a read reaches past it.
+     */
+    private static class Pack {
+        final int number;
+        final Path path;
+        private final ReentrantLock mapLock = new ReentrantLock();
+        private volatile MappedByteBuffer mapping;
+
+        Pack(int number, Path path) {
+            this.number = number;
+            this.path = path;
+        }
+
+        ByteBuffer map(long end) throws IOException {
+            MappedByteBuffer current = mapping;
+            if (current != null && current.capacity() >= end) {
+                return current;
+            }
+            mapLock.lock();
+            try {
+                current = mapping;
+                if (current == null || current.capacity() < end) {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        current = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    }
+                    if (current.capacity() < end) {
+                        throw new IOException("Record ends at " + end + " beyond the end of " + path);
+                    }
+                    mapping = current;
+                }
+                return current;
+            } finally {
+                mapLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Open-addressing table from fingerprints to locations; a location holds the pack
+     * number in the upper half and the record offset in the lower half.
+     */
+    private static class Table {
+        final long[] keys;
+        final long[] locations;
+        final int[] lengths;
+        int size;
+        long liveBytes;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            locations = new long[capacity];
+            lengths = new int[capacity];
+        }
+
+        int slotOf(long fingerprint) {
+            int mask = keys.length - 1;
+            int slot = (int) UrlFingerprint.mix(fingerprint) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != fingerprint) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        void put(long fingerprint, long location, int length) {
+            int slot = slotOf(fingerprint);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = fingerprint;
+                size++;
+            } else {
+                liveBytes -= lengths[slot]; // The previous body is superseded
+            }
+            locations[slot] = location;
+            lengths[slot] = length;
+            liveBytes += length;
+        }
+
+        Table grown() {
+            Table grown = new Table(keys.length * 2);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    grown.put(keys[slot], locations[slot], lengths[slot]);
+                }
+            }
+            return grown;
+        }
+    }
+
+    /**
+     * Opens the store in the given directory, creating it if it does not exist.
+     *
+     * @param directory the directory of the packs and the index
+     * @param maxPackSize the size in bytes after which a new pack is started; at most 2 GiB
+     * @param durability {@link StorageWriter.Durability#PER_FILE} forces every body to
+     *                   disk; otherwise packs are forced when they are completed
+     * @throws IOException if the packs or the index cannot be read
+     */
+    public PackStore(Path directory, long maxPackSize, StorageWriter.Durability durability) throws IOException {
+        if (maxPackSize < 1 || maxPackSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Maximum pack size must be between 1 and 2 GiB: " + maxPackSize);
+        }
+        this.directory = directory;
+        this.maxPackSize = maxPackSize;
+        this.durability = durability;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Opens the store configured for a crawl.
+     *
+     * @param config the crawl options
+     * @return the store
+     * @throws IOException if the packs or the index cannot be read
+     */
+    public static PackStore create(CrawlerConfig config) throws IOException {
+        return new PackStore(config.getPackDir(), config.getMaxPackSize(), config.getDurability());
+    }
+
+    /**
+     * Appends a body to the store. A body stored earlier for the same URL is superseded.
+     *
+     * @param url the URL of the body
+     * @param body the body; exactly {@code length} bytes are read from it
+     * @param length the length of the body
+     * @throws IOException if the body cannot be written or is shorter than declared
+     */
+    public void put(String url, InputStream body, long length) throws IOException {
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        long recordSize = HEADER_SIZE + urlBytes.length + length;
+        if (recordSize > Integer.MAX_VALUE) {
+            throw new IOException("Body of " + url + " is too large for a pack: " + length + " bytes");
+        }
+        long fingerprint = fingerprintOf(url);
+        appendLock.lock();
+        try {
+            long offset = activeChannel != null ? activeChannel.size() : 0;
+            if (activeChannel == null || (offset > 0 && offset + recordSize > maxPackSize)) {
+                startPack();
+                offset = 0;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + urlBytes.length);
+            header.putLong(fingerprint).putInt(urlBytes.length).putInt((int) length).put(urlBytes).flip();
+            activeChannel.position(offset);
+            try {
+                while (header.hasRemaining()) {
+                    activeChannel.write(header);
+                }
+                long copied = body.transferTo(Channels.newOutputStream(activeChannel));
+                if (copied != length) {
+                    throw new IOException("Body of " + url + " has " + copied + " bytes instead of " + length);
+                }
+            } catch (IOException e) {
+                activeChannel.truncate(offset); // Keep the pack a sequence of complete records
+                throw e;
+            }
+            if (durability == StorageWriter.Durability.PER_FILE) {
+                activeChannel.force(false);
+            }
+            index(fingerprint, location(active.number, offset), (int) length, recordSize);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Appends a body to the store.
+     *
+     * @param url the URL of the body
+     * @param body the body
+     * @throws IOException if the body cannot be written
+     */
+    public void put(String url, byte[] body) throws IOException {
+        put(url, new ByteArrayInputStream(body), body.length);
+    }
+
+    /**
+     * Returns the latest body stored for a URL as a read-only slice of the mapped pack.
+     *
+     * @param url the URL
+     * @return the body, or null if the store has none for the URL
+     * @throws IOException if the pack cannot be mapped
+     */
+    public ByteBuffer get(String url) throws IOException {
+        long fingerprint = fingerprintOf(url);
+        long location;
+        Pack pack;
+        indexLock.readLock().lock();
+        try {
+            int slot = table.slotOf(fingerprint);
+            if (table.keys[slot] == EMPTY) {
+                return null;
+            }
+            location = table.locations[slot];
+            pack = packs.get(packOf(location));
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        ByteBuffer record = record(pack, offsetOf(location));
+        byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+        int urlLength = record.getInt(8);
+        if (urlLength != urlBytes.length || !record.slice(HEADER_SIZE, urlLength).equals(ByteBuffer.wrap(urlBytes))) {
+            return null; // The slot belongs to another URL with the same fingerprint
+        }
+        return record.slice(HEADER_SIZE + urlLength, record.getInt(12));
+    }
+
+    /**
+     * Opens the latest body stored for a URL.
+     *
+     * @param url the URL
+     * @return the stream of the body
+     * @throws IOException if the store has no body for the URL or the pack cannot be mapped
+     */
+    public InputStream open(String url) throws IOException {
+        ByteBuffer body = get(url);
+        if (body == null) {
+            throw new NoSuchFileException(url, null, "not in the pack store");
+        }
+        return new ByteBufferInputStream(body);
+    }
+
+    /**
+     * Calls the consumer with the URL and the latest body of every URL in the store, in
+     * the order the bodies were stored.
+     *
+     * @param consumer the consumer of the URLs and the read-only bodies
+     * @throws IOException if a pack cannot be mapped
+     */
+    public void forEach(BiConsumer<String, ByteBuffer> consumer) throws IOException {
+        long[] live = liveLocations();
+        for (long location : live) {
+            Pack pack;
+            indexLock.readLock().lock();
+            try {
+                pack = packs.get(packOf(location));
+            } finally {
+                indexLock.readLock().unlock();
+            }
+            ByteBuffer record = record(pack, offsetOf(location));
+            int urlLength = record.getInt(8);
+            byte[] url = new byte[urlLength];
+            record.get(HEADER_SIZE, url);
+            consumer.accept(new String(url, StandardCharsets.UTF_8), record.slice(HEADER_SIZE + urlLength, record.getInt(12)));
+        }
+    }
+
+    /**
+     * Rewrites the live bodies into new packs and deletes the old ones, so that bodies
+     * superseded by later crawls no longer take space. Bodies can be read while the store
+     * is compacted; storing new ones waits until it is done.
+     *
+     * @throws IOException if the packs cannot be rewritten
+     */
+    public void compact() throws IOException {
+        appendLock.lock();
+        try {
+            closeActive();
+            long[] live = liveLocations();
+            Map<Integer, Pack> oldPacks;
+            indexLock.readLock().lock();
+            try {
+                oldPacks = new TreeMap<>(packs);
+            } finally {
+                indexLock.readLock().unlock();
+            }
+
+            // Append to new packs; the old ones stay readable until the index is swapped
+            Map<Integer, Pack> newPacks = new TreeMap<>();
+            Table newTable = new Table(Math.max(1024, Integer.highestOneBit(Math.max(1, live.length)) * 4));
+            long newBytes = 0;
+            Pack target = null;
+            FileChannel channel = null;
+            int nextNumber = nextPackNumber();
+            try {
+                for (long location : live) {
+                    ByteBuffer record = record(oldPacks.get(packOf(location)), offsetOf(location));
+                    int size = HEADER_SIZE + record.getInt(8) + record.getInt(12);
+                    if (channel == null || (channel.size() > 0 && channel.size() + size > maxPackSize)) {
+                        if (channel != null) {
+                            channel.force(false);
+                            channel.close();
+                        }
+                        target = new Pack(nextNumber, packPath(nextNumber++));
+                        newPacks.put(target.number, target);
+                        channel = FileChannel.open(target.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                    }
+                    long offset = channel.size();
+                    ByteBuffer copy = record.slice(0, size);
+                    while (copy.hasRemaining()) {
+                        channel.write(copy, offset + copy.position());
+                    }
+                    newTable.put(record.getLong(0), location(target.number, offset), record.getInt(12));
+                    newBytes += size;
+                }
+                if (channel != null) {
+                    channel.force(false);
+                }
+            } finally {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+
+            indexLock.writeLock().lock();
+            try {
+                packs.clear();
+                packs.putAll(newPacks);
+                table = newTable;
+                packedBytes = newBytes;
+            } finally {
+                indexLock.writeLock().unlock();
+            }
+            saveIndex();
+            for (Pack pack : oldPacks.values()) {
+                Files.deleteIfExists(pack.path); // Mapped for the copy, so lookups in flight can still read them
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public int size() {
+        indexLock.readLock().lock();
+        try {
+            return table.size;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the latest bodies, without the record headers.
+     *
+     * @return the live body bytes
+     */
+    public long getLiveBytes() {
+        indexLock.readLock().lock();
+        try {
+            return table.liveBytes;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the packs, including superseded bodies and headers.
+     *
+     * @return the packed bytes
+     */
+    public long getPackedBytes() {
+        indexLock.readLock().lock();
+        try {
+            return packedBytes;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    public int getPackCount() {
+        indexLock.readLock().lock();
+        try {
+            return packs.size();
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Completes the current pack and saves the index.
+     */
+    @Override
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            closeActive();
+            saveIndex();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        Map<Integer, Path> onDisk = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(PACK_PREFIX) && name.endsWith(PACK_SUFFIX)) {
+                    onDisk.put(Integer.parseInt(name.substring(PACK_PREFIX.length(),
+                            name.length() - PACK_SUFFIX.length())), file);
+                }
+            });
+        }
+        TreeMap<Integer, Long> covered = loadIndex(onDisk);
+        for (Map.Entry<Integer, Path> file : onDisk.entrySet()) {
+            int number = file.getKey();
+            if (!covered.isEmpty() && number < covered.firstKey()) {
+                Files.delete(file.getValue()); // Left behind by a compaction that saved its index
+                continue;
+            }
+            Pack pack = new Pack(number, file.getValue());
+            packs.put(number, pack);
+            scan(pack, covered.getOrDefault(number, 0L));
+        }
+    }
+
+    /**
+     * Loads the saved index and returns how far it covers each pack. An index that names
+     * a missing pack is discarded, and the packs are scanned from the start instead.
+     */
+    private TreeMap<Integer, Long> loadIndex(Map<Integer, Path> onDisk) throws IOException {
+        TreeMap<Integer, Long> covered = new TreeMap<>();
+        Path file = directory.resolve(INDEX_FILE);
+        if (!Files.exists(file)) {
+            return covered;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a pack index: " + file);
+            }
+            int packCount = in.readInt();
+            for (int i = 0; i < packCount; i++) {
+                covered.put(in.readInt(), in.readLong());
+            }
+            if (!onDisk.keySet().containsAll(covered.keySet())) {
+                covered.clear();
+                return covered;
+            }
+            packedBytes = in.readLong();
+            int entries = in.readInt();
+            table = new Table(Math.max(1024, Integer.highestOneBit(Math.max(1, entries)) * 4));
+            for (int i = 0; i < entries; i++) {
+                table.put(in.readLong(), in.readLong(), in.readInt());
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Indexes the records of a pack from the given offset on, and cuts off a torn record
+     * at its end.
+     */
+    private void scan(Pack pack, long from) throws IOException {
+        try (FileChannel channel = FileChannel.open(pack.path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long offset = from;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (offset + HEADER_SIZE <= size) {
+                header.clear();
+                while (header.hasRemaining() && channel.read(header, offset + header.position()) > 0) {
+                    // Read the whole header
+                }
+                long fingerprint = header.getLong(0);
+                int urlLength = header.getInt(8);
+                int bodyLength = header.getInt(12);
+                long recordSize = (long) HEADER_SIZE + urlLength + bodyLength;
+                if (urlLength < 0 || bodyLength < 0 || offset + recordSize > size) {
+                    break;
+                }
+                index(fingerprint, location(pack.number, offset), bodyLength, recordSize);
+                offset += recordSize;
+            }
+            if (offset < size) {
+                channel.truncate(offset);
+            }
+        }
+    }
+
+    private void saveIndex() throws IOException {
+        Path file = directory.resolve(INDEX_FILE);
+        Path temp = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+        indexLock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(packs.size());
+            for (Pack pack : packs.values()) {
+                out.writeInt(pack.number);
+                out.writeLong(Files.size(pack.path));
+            }
+            out.writeLong(packedBytes);
+            out.writeInt(table.size);
+            for (int slot = 0; slot < table.keys.length; slot++) {
+                if (table.keys[slot] != EMPTY) {
+                    out.writeLong(table.keys[slot]);
+                    out.writeLong(table.locations[slot]);
+                    out.writeInt(table.lengths[slot]);
+                }
+            }
+        } finally {
+            indexLock.readLock().unlock();
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void index(long fingerprint, long location, int length, long recordSize) {
+        indexLock.writeLock().lock();
+        try {
+            if (table.size + 1 > table.keys.length * 3 / 4) {
+                table = table.grown();
+            }
+            table.put(fingerprint, location, length);
+            packedBytes += recordSize;
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private long[] liveLocations() {
+        indexLock.readLock().lock();
+        try {
+            long[] live = new long[table.size];
+            int count = 0;
+            for (int slot = 0; slot < table.keys.length; slot++) {
+                if (table.keys[slot] != EMPTY) {
+                    live[count++] = table.locations[slot];
+                }
+            }
+            Arrays.sort(live); // By pack, then by offset
+            return live;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the mapped record at the given offset of a pack, positioned at its start.
+     */
+    private static ByteBuffer record(Pack pack, long offset) throws IOException {
+        ByteBuffer mapping = pack.map(offset + HEADER_SIZE);
+        long end = offset + HEADER_SIZE + mapping.getInt((int) offset + 8) + mapping.getInt((int) offset + 12);
+        mapping = pack.map(end);
+        return mapping.slice((int) offset, (int) (end - offset));
+    }
+
+    private void startPack() throws IOException {
+        closeActive();
+        int number = nextPackNumber();
+        Pack pack = new Pack(number, packPath(number));
+        activeChannel = FileChannel.open(pack.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        active = pack;
+        indexLock.writeLock().lock();
+        try {
+            packs.put(number, pack);
+        } finally {
+            indexLock.writeLock().unlock();
+        }
+    }
+
+    private void closeActive() throws IOException {
+        if (activeChannel != null) {
+            if (durability != StorageWriter.Durability.NONE) {
+                activeChannel.force(false);
+            }
+            activeChannel.close();
+            activeChannel = null;
+            active = null;
+        }
+    }
+
+    private int nextPackNumber() {
+        indexLock.readLock().lock();
+        try {
+            return packs.isEmpty() ? 0 : packs.lastKey() + 1;
+        } finally {
+            indexLock.readLock().unlock();
+        }
+    }
+
+    private Path packPath(int number) {
+        return directory.resolve(String.format("%s%05d%s", PACK_PREFIX, number, PACK_SUFFIX));
+    }
+
+    private static long fingerprintOf(String url) {
+        long fingerprint = UrlFingerprint.of(url);
+        return fingerprint == EMPTY ? REMAPPED : fingerprint;
+    }
+
+    private static long location(int pack, long offset) {
+        return ((long) pack << 32) | offset;
+    }
+
+    private static int packOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static long offsetOf(long location) {
+        return location & 0xffffffffL;
+    }
+
+    /**
+     * Reads a buffer without copying it first.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buffer.hasRemaining()) {
+                return len == 0 ? 0 : -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
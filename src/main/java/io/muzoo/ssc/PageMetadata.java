@@ -0,0 +1,78 @@
+package io.muzoo.ssc;
+
+import java.util.List;
+
+/**
+ * The PageMetadata class is the entry {@link MetadataIndex} keeps for a downloaded URL:
+ * the validators the server sent with it, the hash, size and media type of the stored
+ * body, and the in-scope links found in it. When the server answers a conditional
+ * request with 304 Not Modified, this is all the crawler needs to continue.
+ */
+public class PageMetadata {
+    private final String etag;
+    private final String lastModified;
+    private final long contentHash;
+    private final long size;
+    private final String mimeType;
+    private final String charset;
+    private final List<String> outlinks;
+
+    /**
+     * Constructor to initialize the PageMetadata.
+     *
+     * @param etag the ETag header of the response, or null if none was sent
+     * @param lastModified the Last-Modified header of the response, or null if none was sent
+     * @param contentHash the CRC-32C of the body
+     * @param size the number of body bytes
+     * @param mimeType the declared media type, or null if none was sent
+     * @param charset the name of the declared charset, or null if none was sent
+     * @param outlinks the cleaned, in-scope links found in the body
+     */
+    public PageMetadata(String etag, String lastModified, long contentHash, long size, String mimeType, String charset,
+                        List<String> outlinks) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.contentHash = contentHash;
+        this.size = size;
+        this.mimeType = mimeType;
+        this.charset = charset;
+        this.outlinks = List.copyOf(outlinks);
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public long getContentHash() {
+        return contentHash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getCharset() {
+        return charset;
+    }
+
+    public List<String> getOutlinks() {
+        return outlinks;
+    }
+
+    /**
+     * Checks whether a conditional request can be made for the page.
+     *
+     * @return true if the server sent an ETag or a Last-Modified date
+     */
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+}
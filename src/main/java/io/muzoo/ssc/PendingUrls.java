@@ -0,0 +1,270 @@
+package io.muzoo.ssc;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The PendingUrls class keeps the link depth and in-link count of every URL between its
+ * discovery and the end of its processing, for crawls limited by depth and for the
+ * {@link PriorityFrontier}. URLs are keyed by their {@link UrlFingerprint} in an
+ * open-addressing table of primitive arrays, and each entry packs its fields into a
+ * single {@code int}, so a waiting URL costs 24 to 48 bytes however long it is. Entries
+ * are removed once the page is finished, so the table is only as large as the frontier.
+ *
+ * An entry also records the priority level at which the URL was last queued, or that
+ * it was taken from the frontier, so that the priority frontier can recognize the stale
+ * copies a promotion leaves behind. As in {@link FingerprintVisitedSet}, two URLs with
+ * the same fingerprint share an entry. All methods are safe to call from concurrent
+ * crawler threads.
+ */
+public class PendingUrls {
+    static final int MAX_DEPTH = (1 << 10) - 1;
+    static final int MAX_LEVEL = (1 << 6) - 2;
+    private static final int MAX_IN_LINKS = (1 << 16) - 1;
+    private static final int TAKEN = (1 << 6) - 1;
+    private static final long EMPTY = 0L;
+    private static final long REMAPPED = 1L; // Stands in for the fingerprint that clashes with EMPTY
+    private static final int DEFAULT_CAPACITY = 1 << 12;
+    private static final double LOAD_FACTOR = 0.5;
+
+    // An entry holds the in-link count in bits 0-15, the depth in bits 16-25 and the level in bits 26-31
+    private long[] keys = new long[DEFAULT_CAPACITY];
+    private int[] entries = new int[DEFAULT_CAPACITY];
+    private int size;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Adds a newly discovered URL with one in-link. Depths beyond {@value #MAX_DEPTH} are
+     * stored as {@value #MAX_DEPTH}.
+     *
+     * @param url the URL
+     * @param depth the number of links between the base URL and this one
+     */
+    public void add(String url, int depth) {
+        long key = keyOf(url);
+        lock.lock();
+        try {
+            if (size + 1 > keys.length * LOAD_FACTOR) {
+                resize();
+            }
+            int slot = find(key);
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                size++;
+            }
+            entries[slot] = pack(1, Math.min(depth, MAX_DEPTH), 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the depth of a waiting URL.
+     *
+     * @param url the URL
+     * @return the depth, or -1 if the URL is not in the table
+     */
+    public int depthOf(String url) {
+        lock.lock();
+        try {
+            int slot = find(keyOf(url));
+            return keys[slot] == EMPTY ? -1 : (entries[slot] >>> 16) & MAX_DEPTH;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of links found to a waiting URL.
+     *
+     * @param url the URL
+     * @return the in-link count, or -1 if the URL is not in the table
+     */
+    public int inLinksOf(String url) {
+        lock.lock();
+        try {
+            int slot = find(keyOf(url));
+            return keys[slot] == EMPTY ? -1 : entries[slot] & MAX_IN_LINKS;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Counts another link to a URL that has not been taken from the frontier yet.
+     * The count saturates at 65535.
+     *
+     * @param url the URL
+     * @return the new in-link count, or -1 if the URL is not waiting in the frontier
+     */
+    public int addInLink(String url) {
+        lock.lock();
+        try {
+            int slot = find(keyOf(url));
+            if (keys[slot] == EMPTY || level(entries[slot]) == TAKEN) {
+                return -1;
+            }
+            int inLinks = Math.min((entries[slot] & MAX_IN_LINKS) + 1, MAX_IN_LINKS);
+            entries[slot] = (entries[slot] & ~MAX_IN_LINKS) | inLinks;
+            return inLinks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the priority level at which a URL was queued.
+     *
+     * @param url the URL
+     * @param level the level, from 0 to {@value #MAX_LEVEL}
+     */
+    public void setLevel(String url, int level) {
+        lock.lock();
+        try {
+            int slot = find(keyOf(url));
+            if (keys[slot] != EMPTY) {
+                entries[slot] = (entries[slot] & 0x03ff_ffff) | level << 26;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the priority level at which a URL was last queued.
+     *
+     * @param url the URL
+     * @return the level, or -1 if the URL is not in the table or was already taken
+     */
+    public int levelOf(String url) {
+        lock.lock();
+        try {
+            int slot = find(keyOf(url));
+            if (keys[slot] == EMPTY || level(entries[slot]) == TAKEN) {
+                return -1;
+            }
+            return level(entries[slot]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks a URL as taken from the frontier, if it was last queued at the given level.
+     * A copy found at any other level was left behind by a promotion and is stale.
+     *
+     * @param url the URL taken from the frontier
+     * @param level the level it was taken from
+     * @return true if the URL was waiting at that level and is now marked as taken
+     */
+    public boolean take(String url, int level) {
+        lock.lock();
+        try {
+            int slot = find(keyOf(url));
+            if (keys[slot] == EMPTY || level(entries[slot]) != level) {
+                return false;
+            }
+            entries[slot] |= TAKEN << 26;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a finished URL.
+     *
+     * @param url the URL
+     */
+    public void remove(String url) {
+        lock.lock();
+        try {
+            int slot = find(keyOf(url));
+            if (keys[slot] == EMPTY) {
+                return;
+            }
+            // Backward-shift deletion: move later entries of the probe sequence into the gap
+            int mask = keys.length - 1;
+            int gap = slot;
+            for (int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = (int) keys[next] & mask;
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    entries[gap] = entries[next];
+                    gap = next;
+                }
+            }
+            keys[gap] = EMPTY;
+            entries[gap] = 0;
+            size--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of URLs in the table.
+     *
+     * @return the number of waiting and in-flight URLs
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the heap used by the table.
+     *
+     * @return the memory footprint in bytes
+     */
+    public long memoryBytes() {
+        lock.lock();
+        try {
+            return (long) keys.length * (Long.BYTES + Integer.BYTES);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long keyOf(String url) {
+        long fingerprint = UrlFingerprint.of(url);
+        return fingerprint == EMPTY ? REMAPPED : fingerprint;
+    }
+
+    private static int pack(int inLinks, int depth, int level) {
+        return level << 26 | depth << 16 | inLinks;
+    }
+
+    private static int level(int entry) {
+        return entry >>> 26;
+    }
+
+    /**
+     * Returns the slot holding the key, or the empty slot where it would be inserted.
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) key & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldEntries = entries;
+        keys = new long[oldKeys.length * 2];
+        entries = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                entries[slot] = oldEntries[i];
+            }
+        }
+    }
+}
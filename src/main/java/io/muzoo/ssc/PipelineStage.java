@@ -0,0 +1,211 @@
+package io.muzoo.ssc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The PipelineStage class runs one stage of the crawl pipeline: a fixed number of
+ * workers take items from a bounded queue and hand each to the stage's handler. When the
+ * queue is full, {@link #submit(Object)} blocks, so a slow stage holds back the stages
+ * that feed it instead of letting work pile up in memory.
+ *
+ * Workers are virtual threads for stages that wait on I/O, and platform threads for
+ * stages that keep a CPU busy, so that their number can be matched to the cores. The time
+ * spent in the handler and the time producers waited for room are measured, and reported
+ * as {@link StageStats}.
+ *
+ * @param <T> the type of the items
+ */
+public class PipelineStage<T> implements StageStats, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineStage.class);
+    private static final long POLL_MILLIS = 100;
+
+    private final String name;
+    private final BlockingQueue<T> queue;
+    private final int queueCapacity;
+    private final Handler<T> handler;
+    private final int workerCount;
+    private final boolean virtualThreads;
+    private final List<Thread> workers = new ArrayList<>();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private volatile long startTime;
+    private volatile long stopTime;
+    private volatile boolean closed;
+
+    /**
+     * The work a stage does on each item.
+     *
+     * @param <T> the type of the items
+     */
+    @FunctionalInterface
+    public interface Handler<T> {
+        /**
+         * Processes one item. A runtime exception is logged and the worker goes on with the next item.
+         *
+         * @param item the item
+         * @throws InterruptedException if the worker is interrupted, for example while handing the item on
+         */
+        void handle(T item) throws InterruptedException;
+    }
+
+    /**
+     * Constructor to initialize the stage. Its workers run from {@link #start()}.
+     *
+     * @param name the name of the stage, used for the worker threads
+     * @param workerCount the number of workers
+     * @param queueCapacity the number of items that may wait for a worker
+     * @param virtualThreads whether the workers are virtual threads rather than platform threads
+     * @param handler the work done on each item
+     */
+    public PipelineStage(String name, int workerCount, int queueCapacity, boolean virtualThreads, Handler<T> handler) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("Workers must be at least 1: " + workerCount);
+        }
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.handler = handler;
+        this.workerCount = workerCount;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Starts the workers.
+     *
+     * @return this stage
+     * @throws IllegalStateException if the stage was already started
+     */
+    public PipelineStage<T> start() {
+        if (!workers.isEmpty()) {
+            throw new IllegalStateException("The " + name + " stage is already started");
+        }
+        startTime = System.nanoTime();
+        Thread.Builder builder = virtualThreads
+                ? Thread.ofVirtual().name(name + "-", 0)
+                : Thread.ofPlatform().name(name + "-", 0).daemon(true);
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(builder.start(this::work));
+        }
+        return this;
+    }
+
+    /**
+     * Queues an item for the workers, waiting while the queue is full.
+     *
+     * @param item the item
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     * @throws IllegalStateException if the stage is closed
+     */
+    public void submit(T item) throws InterruptedException {
+        if (closed) {
+            throw new IllegalStateException("The " + name + " stage is closed");
+        }
+        if (!queue.offer(item)) {
+            long start = System.nanoTime();
+            queue.put(item);
+            blockedNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getWorkers() {
+        return workerCount;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    @Override
+    public double getUtilization() {
+        if (startTime == 0) {
+            return 0;
+        }
+        long end = stopTime != 0 ? stopTime : System.nanoTime();
+        long elapsed = (end - startTime) * workerCount;
+        return elapsed <= 0 ? 0 : Math.min(1, (double) busyNanos.sum() / elapsed);
+    }
+
+    @Override
+    public long getBlockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    /**
+     * Stops taking items, lets the workers finish every queued item, and waits for them to stop.
+     *
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the workers
+     */
+    public void awaitTermination() throws InterruptedException {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (stopTime == 0) {
+            stopTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Stops taking items and waits for the workers to finish the queued ones, like
+     * {@link #awaitTermination()}. If the calling thread is interrupted, it stops waiting
+     * and keeps the interrupt flag set; the workers still finish the queued items.
+     */
+    @Override
+    public void close() {
+        try {
+            awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void work() {
+        while (!closed || !queue.isEmpty()) {
+            T item;
+            try {
+                item = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return; // Only happens if the thread is interrupted from outside
+            }
+            if (item == null) {
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                handler.handle(item);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Unexpected error in the {} stage: {}", name, item, e);
+            } finally {
+                busyNanos.add(System.nanoTime() - start);
+                processed.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package io.muzoo.ssc;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * The PriorityFrontier class takes the best-scoring URLs first. A URL's level starts at
+ * its link depth, rises by one each time its in-link count doubles, and moves by the
+ * configured {@link Boost} of every pattern its URL matches; lower levels are taken
+ * first, and URLs of the same level in the order they were queued. Without boosts and
+ * repeated links, the crawl is therefore breadth first.
+ *
+ * Each level is a first-in first-out {@link DiskBackedFrontier}, so the heap stays
+ * bounded at millions of waiting URLs, and the score of each URL lives in the
+ * {@link PendingUrls} table instead of an object per entry. When more links to a waiting
+ * URL raise its level, it is queued again at the new level; the copy left at the old
+ * level is recognized as stale by its recorded level and skipped when it comes up.
+ * Deferred URLs wait on a level of their own, after all others. All methods are safe to
+ * call from concurrent crawler threads.
+ */
+public class PriorityFrontier implements Frontier {
+    static final int LEVELS = 32;
+    private static final int DEFERRED_LEVEL = LEVELS - 1;
+
+    private final DiskBackedFrontier[] levels = new DiskBackedFrontier[LEVELS];
+    private final PendingUrls pendingUrls;
+    private final List<Boost> boosts;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private long size;
+    private long promotions;
+
+    /**
+     * A change of level for the URLs that match a pattern.
+     */
+    public static final class Boost {
+        private final Pattern pattern;
+        private final int levels;
+
+        /**
+         * Constructor to initialize a boost.
+         *
+         * @param regex the pattern, which has to be found somewhere in the URL
+         * @param levels how many levels matching URLs move up; negative values move them down
+         */
+        public Boost(String regex, int levels) {
+            this.pattern = Pattern.compile(regex);
+            this.levels = levels;
+        }
+
+        boolean matches(String url) {
+            return pattern.matcher(url).find();
+        }
+
+        @Override
+        public String toString() {
+            return pattern + " " + (levels >= 0 ? "+" : "") + levels;
+        }
+    }
+
+    /**
+     * Constructor to initialize the frontier.
+     *
+     * @param directory the directory for the segment files of the levels, or null to use temporary directories
+     * @param memoryLimit the number of URLs kept on the heap across all levels before new ones are spilled to disk
+     * @param pendingUrls the table holding the depth and in-link count of every queued URL
+     * @param boosts the patterns that change the level of the URLs matching them
+     * @throws IOException if stale segment files of an earlier run cannot be deleted
+     */
+    public PriorityFrontier(Path directory, int memoryLimit, PendingUrls pendingUrls, List<Boost> boosts)
+            throws IOException {
+        if (pendingUrls == null) {
+            throw new IllegalArgumentException("A priority frontier needs the table of pending URLs");
+        }
+        this.pendingUrls = pendingUrls;
+        this.boosts = List.copyOf(boosts);
+        int levelLimit = Math.max(1, memoryLimit / LEVELS);
+        for (int level = 0; level < LEVELS; level++) {
+            levels[level] = new DiskBackedFrontier(directory != null ? directory.resolve("level-" + level) : null,
+                    levelLimit, true);
+        }
+    }
+
+    /**
+     * Adds a URL at the level of its score. A URL missing from the table of pending URLs,
+     * such as one queued again by a resumed crawl, is added to it at the depth of the base URL.
+     *
+     * @param url the URL to add
+     */
+    @Override
+    public void push(String url) {
+        int depth = pendingUrls.depthOf(url);
+        if (depth < 0) {
+            pendingUrls.add(url, 0);
+            depth = 0;
+        }
+        int inLinks = Math.max(pendingUrls.inLinksOf(url), 1);
+        enqueue(url, levelOf(url, depth, inLinks));
+    }
+
+    @Override
+    public void defer(String url) {
+        if (pendingUrls.depthOf(url) < 0) {
+            pendingUrls.add(url, 0);
+        }
+        enqueue(url, DEFERRED_LEVEL);
+    }
+
+    /**
+     * Counts the link and, if the URL is still waiting and its level rose, queues it again
+     * at the new level.
+     *
+     * @param url the URL that was linked again
+     */
+    @Override
+    public void linkedAgain(String url) {
+        lock.lock();
+        try {
+            int inLinks = pendingUrls.addInLink(url);
+            if (inLinks < 0 || Integer.bitCount(inLinks) != 1) {
+                return; // Taken already, or the doubling that raises the level has not been reached
+            }
+            int current = pendingUrls.levelOf(url);
+            if (current < 0 || current == DEFERRED_LEVEL) {
+                return;
+            }
+            int level = levelOf(url, pendingUrls.depthOf(url), inLinks);
+            if (level < current) {
+                pendingUrls.setLevel(url, level);
+                levels[level].push(url);
+                promotions++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String poll() {
+        lock.lock();
+        try {
+            return take();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+            return take();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of URLs waiting in the frontier, not counting stale copies.
+     *
+     * @return the number of waiting URLs
+     */
+    @Override
+    public long size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getSpilledUrls() {
+        long spilled = 0;
+        for (DiskBackedFrontier level : levels) {
+            spilled += level.getSpilledUrls();
+        }
+        return spilled;
+    }
+
+    /**
+     * Returns how many waiting URLs were queued again at a better level because more links to them were found.
+     *
+     * @return the number of promotions
+     */
+    public long getPromotions() {
+        lock.lock();
+        try {
+            return promotions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Computes the level of a URL: its depth, minus one for each doubling of its in-links,
+     * minus the boosts of the patterns it matches, kept between 0 and the level before
+     * the deferred one.
+     *
+     * @param url the URL
+     * @param depth the number of links between the base URL and this one
+     * @param inLinks the number of links found to the URL, at least one
+     * @return the level, where 0 is taken first
+     */
+    int levelOf(String url, int depth, int inLinks) {
+        int level = depth - (31 - Integer.numberOfLeadingZeros(inLinks));
+        for (Boost boost : boosts) {
+            if (boost.matches(url)) {
+                level -= boost.levels;
+            }
+        }
+        return Math.max(0, Math.min(level, DEFERRED_LEVEL - 1));
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            IOException failure = null;
+            for (DiskBackedFrontier level : levels) {
+                try {
+                    level.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            size = 0;
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(String url, int level) {
+        lock.lock();
+        try {
+            pendingUrls.setLevel(url, level);
+            levels[level].push(url);
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the first URL of the lowest non-empty level, skipping stale copies.
+     */
+    private String take() {
+        for (int level = 0; level < LEVELS; level++) {
+            String url;
+            while ((url = levels[level].poll()) != null) {
+                if (pendingUrls.take(url, level)) {
+                    size--;
+                    return url;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -1,23 +1,119 @@
 package io.muzoo.ssc;
 
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * The ProgressTracker class is responsible for tracking and displaying
  * the progress of a web crawler. It keeps track of the total number of URLs,
  * the number of downloaded URLs, and the current URL being processed.
+ *
+ * The total is either set once up front (exact mode) or grows as the crawler
+ * discovers new links (single-pass mode), in which case the percentage and the
+ * ETA only describe the part of the site discovered so far. The counters are
+ * striped so that concurrent crawler threads do not contend on them, and the
+ * progress line is printed at most once per refresh interval rather than once
+ * per download.
  */
 public class ProgressTracker  {
-    protected int totalUrls = 0;
-    protected int downloadedUrls = 0;
-    protected String currentUrl = "";
+    private final LongAdder totalUrls = new LongAdder();
+    private final LongAdder downloadedUrls = new LongAdder();
+    private final LongAdder failedUrls = new LongAdder();
+    private volatile String currentUrl = "";
+    private final long startTime = System.nanoTime();
+    private final long refreshNanos;
+    private final AtomicLong nextPrintTime = new AtomicLong(startTime);
+
+    /**
+     * Constructor to initialize the ProgressTracker with a refresh interval of one second.
+     */
+    public ProgressTracker() {
+        this(Duration.ofSeconds(1));
+    }
+
+    /**
+     * Constructor to initialize the ProgressTracker with the given refresh interval.
+     *
+     * @param refreshInterval the minimum time between two progress lines printed while downloading
+     */
+    public ProgressTracker(Duration refreshInterval) {
+        this.refreshNanos = refreshInterval.toNanos();
+    }
 
     public void setTotalUrls(int total) {
-        this.totalUrls = total;
+        totalUrls.reset();
+        totalUrls.add(total);
+    }
+
+    /**
+     * Sets the counters to the values of a resumed crawl.
+     *
+     * @param total the number of URLs discovered so far
+     * @param downloaded the number of URLs downloaded so far
+     * @param failed the number of URLs that failed so far
+     */
+    public void restore(long total, long downloaded, long failed) {
+        totalUrls.reset();
+        totalUrls.add(total);
+        downloadedUrls.reset();
+        downloadedUrls.add(downloaded);
+        failedUrls.reset();
+        failedUrls.add(failed);
+    }
+
+    public void incrementDiscoveredUrls() {
+        totalUrls.increment();
     }
 
     public void incrementDownloadedUrls(String url) {
-        downloadedUrls++;
+        downloadedUrls.increment();
         currentUrl = url;
-        printProgress();
+        printProgressThrottled();
+    }
+
+    public void incrementFailedUrls(String url) {
+        failedUrls.increment();
+        currentUrl = url;
+    }
+
+    public long getTotalUrls() {
+        return totalUrls.sum();
+    }
+
+    public long getDownloadedUrls() {
+        return downloadedUrls.sum();
+    }
+
+    public long getFailedUrls() {
+        return failedUrls.sum();
+    }
+
+    public String getCurrentUrl() {
+        return currentUrl;
+    }
+
+    /**
+     * Returns the number of URLs that are known but not yet downloaded or failed.
+     *
+     * @return the number of pending URLs
+     */
+    public long getPendingUrls() {
+        return Math.max(0, getTotalUrls() - getDownloadedUrls() - getFailedUrls());
+    }
+
+    /**
+     * Estimates the remaining time from the average rate observed so far.
+     *
+     * @return the estimated remaining time in seconds, or -1 if no URL has completed yet
+     */
+    public long getEtaSeconds() {
+        long completed = getDownloadedUrls() + getFailedUrls();
+        if (completed == 0) {
+            return -1;
+        }
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        return Math.round(elapsedSeconds / completed * getPendingUrls());
     }
 
     /**
@@ -25,12 +121,34 @@ public class ProgressTracker  {
      * If the total number of URLs is not set, a message indicating this is displayed instead.
      */
     public void printProgress() {
-        if (totalUrls == 0) {
+        long total = getTotalUrls();
+        if (total == 0) {
             System.out.println("Total URLs not set yet.");
             return;
         }
-        double progressPercentage = (double) downloadedUrls / totalUrls * 100;
-        System.out.printf("%.2f%% (%d/%d URLs are downloaded) - %s%n",
-                progressPercentage, downloadedUrls, totalUrls, currentUrl);
+        long downloaded = getDownloadedUrls();
+        double progressPercentage = (double) downloaded / total * 100;
+        System.out.printf("%.2f%% (%d/%d URLs are downloaded, %d pending, ETA %s) - %s%n",
+                progressPercentage, downloaded, total, getPendingUrls(), formatEta(), currentUrl);
+    }
+
+    /**
+     * Prints the progress if the refresh interval has passed since the last line; only the
+     * thread that claims the next time slot prints.
+     */
+    private void printProgressThrottled() {
+        long now = System.nanoTime();
+        long next = nextPrintTime.get();
+        if (now - next >= 0 && nextPrintTime.compareAndSet(next, now + refreshNanos)) {
+            printProgress();
+        }
+    }
+
+    private String formatEta() {
+        long eta = getEtaSeconds();
+        if (eta < 0) {
+            return "--:--";
+        }
+        return String.format("%02d:%02d", eta / 60, eta % 60);
     }
-}
\ No newline at end of file
+}
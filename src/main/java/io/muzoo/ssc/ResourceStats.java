@@ -0,0 +1,101 @@
+package io.muzoo.ssc;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ResourceStats class counts downloaded responses and bytes per {@link ResourceType},
+ * together with the downloads aborted for exceeding the size limit. It shows how much
+ * parse work the content-type routing avoided. All counters are safe to update from
+ * concurrent crawler threads.
+ */
+public class ResourceStats {
+    private final Map<ResourceType, LongAdder> responses = new EnumMap<>(ResourceType.class);
+    private final Map<ResourceType, LongAdder> bytes = new EnumMap<>(ResourceType.class);
+    private final LongAdder oversized = new LongAdder();
+
+    public ResourceStats() {
+        for (ResourceType type : ResourceType.values()) {
+            responses.put(type, new LongAdder());
+            bytes.put(type, new LongAdder());
+        }
+    }
+
+    /**
+     * Records a downloaded response.
+     *
+     * @param result the downloaded response
+     */
+    public void record(DownloadResult result) {
+        responses.get(result.getResourceType()).increment();
+        bytes.get(result.getResourceType()).add(result.getContentLength());
+    }
+
+    /**
+     * Records a download that was aborted because its body exceeded the size limit.
+     */
+    public void recordOversized() {
+        oversized.increment();
+    }
+
+    public long getResponses(ResourceType type) {
+        return responses.get(type).sum();
+    }
+
+    public long getBytes(ResourceType type) {
+        return bytes.get(type).sum();
+    }
+
+    public long getOversized() {
+        return oversized.sum();
+    }
+
+    /**
+     * Returns the number of responses that were stored without being parsed.
+     *
+     * @return the count of responses whose type is not parsed
+     */
+    public long getUnparsedResponses() {
+        long total = 0;
+        for (ResourceType type : ResourceType.values()) {
+            if (!type.isParsed()) {
+                total += getResponses(type);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of bytes that were stored without being parsed.
+     *
+     * @return the byte count of responses whose type is not parsed
+     */
+    public long getUnparsedBytes() {
+        long total = 0;
+        for (ResourceType type : ResourceType.values()) {
+            if (!type.isParsed()) {
+                total += getBytes(type);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Formats the counters as a single line, for example
+     * {@code HTML=12 (340 KB), CSS=2 (18 KB), IMAGE=40 (2100 KB), oversized=0}.
+     *
+     * @return the summary
+     */
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        for (ResourceType type : ResourceType.values()) {
+            long count = getResponses(type);
+            if (count > 0) {
+                summary.append(type).append('=').append(count)
+                        .append(" (").append(getBytes(type) / 1024).append(" KB), ");
+            }
+        }
+        return summary.append("oversized=").append(getOversized()).toString();
+    }
+}
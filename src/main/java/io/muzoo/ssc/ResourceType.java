@@ -0,0 +1,113 @@
+package io.muzoo.ssc;
+
+import java.util.Locale;
+
+/**
+ * The ResourceType enum classifies downloaded responses so that the crawler only
+ * parses what can contain links: HTML pages go through the link extractor, style
+ * sheets through the lightweight {@code url(...)} scanner, and everything else is
+ * stored as is.
+ */
+public enum ResourceType {
+    HTML,
+    CSS,
+    SCRIPT,
+    IMAGE,
+    FONT,
+    OTHER;
+
+    /**
+     * Classifies a response by its declared media type. When the server sends no
+     * media type, or only the generic {@code application/octet-stream}, the file
+     * extension of the URL decides; URLs without an extension are treated as pages.
+     *
+     * @param mimeType the declared media type without parameters, or null
+     * @param url the URL of the response
+     * @return the resource type
+     */
+    public static ResourceType of(String mimeType, String url) {
+        if (mimeType == null || mimeType.equalsIgnoreCase("application/octet-stream")) {
+            return fromExtension(url);
+        }
+        String type = mimeType.toLowerCase(Locale.ROOT);
+        if (type.equals("text/html") || type.equals("application/xhtml+xml")) {
+            return HTML;
+        }
+        if (type.equals("text/css")) {
+            return CSS;
+        }
+        if (type.endsWith("javascript") || type.equals("application/ecmascript")) {
+            return SCRIPT;
+        }
+        if (type.startsWith("image/")) {
+            return IMAGE;
+        }
+        if (type.startsWith("font/") || type.startsWith("application/font") || type.equals("application/vnd.ms-fontobject")) {
+            return FONT;
+        }
+        return OTHER;
+    }
+
+    /**
+     * Checks whether responses of this type are scanned for links.
+     *
+     * @return true for HTML and CSS
+     */
+    public boolean isParsed() {
+        return this == HTML || this == CSS;
+    }
+
+    private static ResourceType fromExtension(String url) {
+        String path = path(url).toLowerCase(Locale.ROOT);
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        if (dot <= slash || path.endsWith(".html") || path.endsWith(".htm")) {
+            return HTML;
+        }
+        switch (path.substring(dot + 1)) {
+            case "css":
+                return CSS;
+            case "js":
+            case "mjs":
+                return SCRIPT;
+            case "png":
+            case "jpg":
+            case "jpeg":
+            case "gif":
+            case "svg":
+            case "webp":
+            case "ico":
+                return IMAGE;
+            case "woff":
+            case "woff2":
+            case "ttf":
+            case "otf":
+            case "eot":
+                return FONT;
+            default:
+                return OTHER;
+        }
+    }
+
+    /**
+     * Returns the path of the URL without the query and fragment, so that neither the
+     * host name of a bare host nor a dot in the query is taken for a file extension.
+     */
+    private static String path(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if (fragment >= 0 && fragment < end) {
+            end = fragment;
+        }
+        int scheme = url.indexOf("://");
+        int start = scheme >= 0 && scheme < end ? url.indexOf('/', scheme + 3) : 0;
+        if (start < 0 || start >= end) {
+            return "/";
+        }
+        return url.substring(start, end);
+    }
+}
@@ -0,0 +1,533 @@
+package io.muzoo.ssc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ResponseCache class keeps downloaded responses so that repeated crawls of the same
+ * site need not fetch them again. It has two tiers: an in-memory tier of recently used
+ * bodies, bounded by their total size and evicted least recently used first, and an
+ * on-disk tier that holds every stored response in a file named after the fingerprint
+ * of its URL. Bodies larger than an eighth of the memory tier are kept on disk only.
+ *
+ * An entry remembers until when it is fresh, as the headers of its response allowed,
+ * and the validators needed to revalidate it once it is stale. Files are written under
+ * a temporary name and moved into place, so that a reader never sees half an entry and
+ * several crawlers can share the directory.
+ *
+ * Besides the lookups each tier answered, the cache counts what {@link CachingHttpDownloader}
+ * made of them: responses served from the cache, revalidated with the server, or missed.
+ */
+public class ResponseCache {
+    private static final int MAGIC = 0x52434348; // "RCCH"
+    private static final int VERSION = 1;
+    private static final long FRESH_UNTIL_OFFSET = 8; // After the magic number and the version
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long memoryLimit;
+    private final long maxMemoryBody;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Long, Entry> memory = new LinkedHashMap<>(16, 0.75f, true); // Guarded by lock
+    private long memoryBytes; // Guarded by lock
+    private final LongAdder memoryHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder stored = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * A cached response: its description, its freshness and, if it is small enough for
+     * the memory tier, its body.
+     */
+    public static class Entry {
+        private final String url;
+        private final String mimeType;
+        private final String charset;
+        private final String etag;
+        private final String lastModified;
+        private final long contentHash;
+        private final long length;
+        private final byte[] body;
+        private volatile long freshUntil;
+
+        Entry(String url, String mimeType, String charset, String etag, String lastModified, long contentHash,
+              long length, long freshUntil, byte[] body) {
+            this.url = url;
+            this.mimeType = mimeType;
+            this.charset = charset;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+            this.length = length;
+            this.freshUntil = freshUntil;
+            this.body = body;
+        }
+
+        /**
+         * Returns the URL the response was downloaded from.
+         *
+         * @return the URL
+         */
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Returns the MIME type the server declared.
+         *
+         * @return the MIME type, or null if none was declared
+         */
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * Returns the name of the charset the server declared.
+         *
+         * @return the charset name, or null if none was declared
+         */
+        public String getCharset() {
+            return charset;
+        }
+
+        /**
+         * Returns the {@code ETag} validator of the response.
+         *
+         * @return the entity tag, or null if the server sent none
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * Returns the {@code Last-Modified} validator of the response.
+         *
+         * @return the last modification date, or null if the server sent none
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Returns the CRC-32C of the body.
+         *
+         * @return the checksum of the body
+         */
+        public long getContentHash() {
+            return contentHash;
+        }
+
+        /**
+         * Returns the length of the body.
+         *
+         * @return the body length in bytes
+         */
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * Returns the time until which the response may be served without asking the server.
+         *
+         * @return the time in milliseconds since the epoch, or 0 if the response is stale at once
+         */
+        public long getFreshUntil() {
+            return freshUntil;
+        }
+
+        /**
+         * Returns the body if the entry is held in memory.
+         *
+         * @return the body, which must not be modified, or null if it is only on disk
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Checks whether the entry may be served without asking the server.
+         *
+         * @param now the current time in milliseconds since the epoch
+         * @return true if the entry is fresh
+         */
+        public boolean isFresh(long now) {
+            return now < freshUntil;
+        }
+
+        /**
+         * Describes the entry as a stored copy that a conditional request can revalidate.
+         *
+         * @return the metadata with the validators of the entry
+         */
+        public PageMetadata toMetadata() {
+            return new PageMetadata(etag, lastModified, contentHash, length, mimeType, charset, List.of());
+        }
+    }
+
+    /**
+     * Constructor to initialize the ResponseCache in the given directory.
+     *
+     * @param directory the directory of the on-disk tier, created if it does not exist
+     * @param memoryLimit the total size of the bodies the in-memory tier holds, in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    public ResponseCache(Path directory, long memoryLimit) throws IOException {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException("Memory limit must not be negative: " + memoryLimit);
+        }
+        this.directory = directory;
+        this.memoryLimit = memoryLimit;
+        this.maxMemoryBody = memoryLimit / 8;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Creates the cache configured for a crawl.
+     *
+     * @param config the crawler configuration
+     * @return the response cache
+     * @throws IOException if the directory cannot be created
+     */
+    public static ResponseCache create(CrawlerConfig config) throws IOException {
+        return new ResponseCache(config.getResponseCacheDir(), config.getResponseCacheMemory());
+    }
+
+    /**
+     * Looks up the response cached for a URL, in memory first and then on disk. A body
+     * read from disk that is small enough is kept in memory from then on.
+     *
+     * @param url the URL of the response
+     * @return the cached entry, fresh or not, or null if none is cached
+     */
+    public Entry get(String url) {
+        long fingerprint = UrlFingerprint.of(url);
+        lock.lock();
+        try {
+            Entry entry = memory.get(fingerprint);
+            if (entry != null && entry.url.equals(url)) {
+                memoryHits.increment();
+                return entry;
+            }
+        } finally {
+            lock.unlock();
+        }
+        Entry entry = read(url, fileOf(fingerprint));
+        if (entry != null) {
+            diskHits.increment();
+            if (entry.body != null) {
+                remember(fingerprint, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a downloaded response, replacing the entry cached for its URL. The body is
+     * read back from the result.
+     *
+     * @param result the response, with status 200
+     * @return the new entry
+     * @throws IOException if the body cannot be read or the entry cannot be written
+     */
+    public Entry put(DownloadResult result) throws IOException {
+        long fingerprint = UrlFingerprint.of(result.getUrl());
+        byte[] body = null;
+        if (result.getContentLength() <= maxMemoryBody) {
+            try (InputStream in = result.openBody()) {
+                body = in.readAllBytes();
+            }
+        }
+        Entry entry = new Entry(result.getUrl(), result.getMimeType(),
+                result.getCharset() != null ? result.getCharset().name() : null, result.getEtag(),
+                result.getLastModified(), result.getContentHash(), body != null ? body.length : result.getContentLength(),
+                result.getFreshUntil(), body);
+
+        Path file = fileOf(fingerprint);
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(entry.freshUntil);
+            out.writeUTF(entry.url);
+            writeNullable(out, entry.mimeType);
+            writeNullable(out, entry.charset);
+            writeNullable(out, entry.etag);
+            writeNullable(out, entry.lastModified);
+            out.writeLong(entry.contentHash);
+            out.writeLong(entry.length);
+            if (body != null) {
+                out.write(body);
+            } else {
+                try (InputStream in = result.openBody()) {
+                    if (in.transferTo(out) != entry.length) {
+                        throw new IOException("The body of " + entry.url + " changed while it was cached");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        stored.increment();
+        if (body != null) {
+            remember(fingerprint, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Extends the freshness of an entry that the server confirmed to be current.
+     *
+     * @param entry the entry
+     * @param freshUntil the new freshness, from the headers of the 304 response
+     * @throws IOException if the file of the entry cannot be updated
+     */
+    public void refresh(Entry entry, long freshUntil) throws IOException {
+        entry.freshUntil = Math.max(0, freshUntil);
+        try (FileChannel channel = FileChannel.open(fileOf(UrlFingerprint.of(entry.url)), StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(Long.BYTES).putLong(0, entry.freshUntil);
+            channel.write(value, FRESH_UNTIL_OFFSET);
+        } catch (NoSuchFileException e) {
+            // Replaced or removed meanwhile; the entry in memory still holds the freshness
+        }
+    }
+
+    /**
+     * Opens the body of an entry, from memory if it is held there and from its file otherwise.
+     *
+     * @param entry the entry
+     * @return the stream of the body; the caller closes it
+     * @throws IOException if the file cannot be read
+     */
+    public InputStream openBody(Entry entry) throws IOException {
+        if (entry.body != null) {
+            return new ByteArrayInputStream(entry.body);
+        }
+        Path file = fileOf(UrlFingerprint.of(entry.url));
+        InputStream in = Files.newInputStream(file);
+        try {
+            in.skipNBytes(Files.size(file) - entry.length); // The body ends the file
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the entry of a URL from its file. A missing file, or one written for another
+     * URL with the same fingerprint or by another version, is a miss.
+     */
+    private Entry read(String url, Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long freshUntil = in.readLong();
+            if (!in.readUTF().equals(url)) {
+                return null;
+            }
+            String mimeType = readNullable(in);
+            String charset = readNullable(in);
+            String etag = readNullable(in);
+            String lastModified = readNullable(in);
+            long contentHash = in.readLong();
+            long length = in.readLong();
+            byte[] body = length <= maxMemoryBody ? in.readNBytes((int) length) : null;
+            if (body != null && body.length != length) {
+                return null;
+            }
+            return new Entry(url, mimeType, charset, etag, lastModified, contentHash, length, freshUntil, body);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds an entry to the memory tier and evicts the least recently used entries past its limit.
+     */
+    private void remember(long fingerprint, Entry entry) {
+        lock.lock();
+        try {
+            Entry previous = memory.put(fingerprint, entry);
+            memoryBytes += entry.length - (previous != null ? previous.length : 0);
+            Iterator<Map.Entry<Long, Entry>> eldest = memory.entrySet().iterator();
+            while (memoryBytes > memoryLimit && eldest.hasNext()) {
+                memoryBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Path fileOf(long fingerprint) {
+        String name = String.format("%016x", fingerprint);
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    /**
+     * Counts a response served from the cache without a request.
+     *
+     * @param entry the entry served
+     */
+    public void recordHit(Entry entry) {
+        hits.increment();
+        bytesSaved.add(entry.length);
+    }
+
+    /**
+     * Counts a response whose body was reused after the server confirmed it.
+     *
+     * @param entry the entry served
+     */
+    public void recordRevalidated(Entry entry) {
+        revalidated.increment();
+        bytesSaved.add(entry.length);
+    }
+
+    /**
+     * Counts a response that had to be downloaded, or that could not be served in replay-only mode.
+     */
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * Returns the number of responses served from the cache without a request.
+     *
+     * @return the number of fresh hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of responses whose cached body was reused after a 304 Not Modified.
+     *
+     * @return the number of revalidated entries
+     */
+    public long getRevalidated() {
+        return revalidated.sum();
+    }
+
+    /**
+     * Returns the number of responses that had to be downloaded, or could not be served in replay-only mode.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of body bytes that did not have to be downloaded.
+     *
+     * @return the bytes served from the cache, fresh or revalidated
+     */
+    public long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    /**
+     * Returns the number of lookups answered from the memory tier.
+     *
+     * @return the number of memory hits
+     */
+    public long getMemoryHits() {
+        return memoryHits.sum();
+    }
+
+    /**
+     * Returns the number of lookups answered from the disk tier.
+     *
+     * @return the number of disk hits
+     */
+    public long getDiskHits() {
+        return diskHits.sum();
+    }
+
+    /**
+     * Returns the number of responses written to the cache.
+     *
+     * @return the count of stored entries
+     */
+    public long getStored() {
+        return stored.sum();
+    }
+
+    /**
+     * Returns the fraction of the requests served without any request to the server.
+     *
+     * @return the hit ratio, from 0 to 1
+     */
+    public double getHitRatio() {
+        long hits = getHits();
+        long requests = hits + getRevalidated() + getMisses();
+        return requests == 0 ? 0 : (double) hits / requests;
+    }
+
+    /**
+     * Returns the total size of the bodies held in memory.
+     *
+     * @return the size of the memory tier in bytes
+     */
+    public long getMemoryBytes() {
+        lock.lock();
+        try {
+            return memoryBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the directory the disk tier is kept in.
+     *
+     * @return the cache directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
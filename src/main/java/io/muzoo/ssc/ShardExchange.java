@@ -0,0 +1,478 @@
+package io.muzoo.ssc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The ShardExchange class connects the crawler processes of a sharded crawl through a
+ * directory they all can reach. Each of the N shards owns a hash partition of the URL
+ * space; the links a shard finds that another shard owns are buffered per owner and
+ * handed over in batches, one file per batch, in the owner's inbox directory. A batch is
+ * written under a temporary name and renamed, so the owner never reads a partial one.
+ *
+ * Termination is detected without a coordinator. Every shard keeps a status file with
+ * the number of batches it sent and received and whether it is idle. A shard marks itself
+ * busy before it takes a batch from its inbox, and flushes its buffers before it marks
+ * itself idle, so it can only become busy again by receiving. The crawl is over when
+ * every status file says idle, as many batches were received as were sent, and a second
+ * reading of all the files finds them unchanged: the files then described every shard at
+ * one instant, with no batch in flight.
+ *
+ * When a shard stops, it leaves a report of its counters. The first shard waits for all
+ * of them and writes the merged report of the crawl.
+ */
+public class ShardExchange implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShardExchange.class);
+    static final String REPORT_FILE = "crawl-report.json";
+    private static final String BATCH_SUFFIX = ".batch";
+    private static final long REPORT_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+    private static final long REPORT_POLL_MILLIS = 50;
+    private static final List<String> REPORT_KEYS = List.of("downloaded", "failed", "responses", "bytesIn",
+            "forwarded", "received", "elapsedMillis");
+
+    /**
+     * How URLs are assigned to shards.
+     */
+    public enum Partition {
+        /** By the fingerprint of the whole URL, which spreads the pages of one site over every shard. */
+        URL,
+        /** By host, so that each host is fetched, and paced, by a single shard. */
+        HOST;
+
+        /**
+         * Returns the shard that owns the URL.
+         *
+         * @param cleanUrl the cleaned URL
+         * @param shards the number of shards
+         * @return the owning shard, from 0 to {@code shards - 1}
+         */
+        public int shardOf(String cleanUrl, int shards) {
+            String key = this == HOST ? HostScheduler.hostOf(cleanUrl) : cleanUrl;
+            // Multiply-shift over the high half of the fingerprint, which is evenly spread
+            return (int) (((UrlFingerprint.of(key) >>> 32) * shards) >>> 32);
+        }
+    }
+
+    private final Path directory;
+    private final int shard;
+    private final int shards;
+    private final Partition partition;
+    private final int batchSize;
+    private final Outbox[] outboxes;
+    private final Path inbox;
+    private final ReentrantLock statusLock = new ReentrantLock();
+    private final AtomicLong sentBatches = new AtomicLong();
+    private final AtomicLong receivedBatches = new AtomicLong();
+    private final LongAdder forwardedUrls = new LongAdder();
+    private final LongAdder receivedUrls = new LongAdder();
+    private long statusVersion;
+    private boolean idle;
+
+    /**
+     * Opens the exchange of one shard and marks the shard busy.
+     *
+     * @param directory the directory shared by all shards; it must not hold files of an earlier crawl
+     * @param shard the index of this shard, from 0 to {@code shards - 1}
+     * @param shards the number of shards
+     * @param partition how URLs are assigned to shards
+     * @param batchSize the number of URLs after which a batch is handed over
+     * @throws IOException if the directory cannot be prepared
+     */
+    public ShardExchange(Path directory, int shard, int shards, Partition partition, int batchSize) throws IOException {
+        if (shard < 0 || shard >= shards) {
+            throw new IllegalArgumentException("Shard must be between 0 and " + (shards - 1) + ": " + shard);
+        }
+        this.directory = directory;
+        this.shard = shard;
+        this.shards = shards;
+        this.partition = partition;
+        this.batchSize = batchSize;
+        this.outboxes = new Outbox[shards];
+        for (int i = 0; i < shards; i++) {
+            Files.createDirectories(inboxOf(i));
+            outboxes[i] = new Outbox(i);
+        }
+        this.inbox = inboxOf(shard);
+        if (Files.exists(statusFile(shard))) {
+            throw new IllegalStateException("Shard " + shard + " already ran in " + directory
+                    + "; every crawl needs an empty exchange directory");
+        }
+        writeStatus(false);
+    }
+
+    /**
+     * Opens the exchange configured for the crawl.
+     *
+     * @param config the crawl options
+     * @return the exchange of the configured shard
+     * @throws IOException if the directory cannot be prepared
+     */
+    public static ShardExchange create(CrawlerConfig config) throws IOException {
+        return new ShardExchange(config.getExchangeDir(), config.getShardIndex(), config.getShardCount(),
+                config.getPartition(), config.getExchangeBatchSize());
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public Partition getPartition() {
+        return partition;
+    }
+
+    /**
+     * Checks whether this shard owns the URL.
+     *
+     * @param cleanUrl the cleaned URL
+     * @return true if this shard crawls the URL
+     */
+    public boolean owns(String cleanUrl) {
+        return partition.shardOf(cleanUrl, shards) == shard;
+    }
+
+    /**
+     * Buffers a URL for the shard that owns it, and hands the buffer over once it holds a batch.
+     *
+     * @param cleanUrl the cleaned URL, owned by another shard
+     * @param depth the number of links between the base URL and this one
+     * @throws UncheckedIOException if a full batch cannot be written
+     */
+    public void forward(String cleanUrl, int depth) {
+        forwardedUrls.increment();
+        outboxes[partition.shardOf(cleanUrl, shards)].add(cleanUrl, depth);
+    }
+
+    /**
+     * Hands over every buffered URL, in batches smaller than the batch size if need be.
+     *
+     * @throws UncheckedIOException if a batch cannot be written
+     */
+    public void flush() {
+        for (Outbox outbox : outboxes) {
+            outbox.flush();
+        }
+    }
+
+    /**
+     * Takes the batches waiting in this shard's inbox. The shard is marked busy first if it was idle.
+     *
+     * @param receiver called with each URL and its depth
+     * @return the number of URLs received
+     * @throws IOException if the inbox cannot be read
+     */
+    public int receive(ObjIntConsumer<String> receiver) throws IOException {
+        List<Path> batches = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox, "*" + BATCH_SUFFIX)) {
+            files.forEach(batches::add);
+        }
+        if (batches.isEmpty()) {
+            return 0;
+        }
+        setIdle(false);
+        int received = 0;
+        for (Path batch : batches) {
+            try (BufferedReader reader = Files.newBufferedReader(batch, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int space = line.indexOf(' ');
+                    receiver.accept(line.substring(space + 1), Integer.parseInt(line, 0, space, 10));
+                    received++;
+                }
+            }
+            Files.delete(batch);
+            receivedBatches.incrementAndGet();
+        }
+        receivedUrls.add(received);
+        return received;
+    }
+
+    /**
+     * Hands over the buffered URLs and marks the shard idle, which it stays until it receives a batch.
+     *
+     * @throws IOException if a batch or the status file cannot be written
+     */
+    public void idle() throws IOException {
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        setIdle(true);
+    }
+
+    /**
+     * Checks whether every shard is idle with no batch in flight. Only an idle shard can tell.
+     *
+     * @return true if the crawl is over
+     * @throws IOException if a status file cannot be read
+     */
+    public boolean isFinished() throws IOException {
+        statusLock.lock();
+        try {
+            if (!idle) {
+                return false;
+            }
+        } finally {
+            statusLock.unlock();
+        }
+        String[] first = readStatuses();
+        if (first == null) {
+            return false;
+        }
+        long sent = 0;
+        long received = 0;
+        for (String status : first) {
+            String[] fields = status.split(" ");
+            if (!fields[1].equals("idle")) {
+                return false;
+            }
+            sent += Long.parseLong(fields[2]);
+            received += Long.parseLong(fields[3]);
+        }
+        return sent == received && Arrays.equals(first, readStatuses());
+    }
+
+    /**
+     * Leaves the report of this shard. The first shard then waits for the reports of the
+     * others and writes the merged report of the crawl to {@value #REPORT_FILE}.
+     *
+     * @param report the counters of this shard, by name; the forwarded and received URLs are added
+     * @return the merged report file, or null if this is not the first shard or a report did not arrive
+     * @throws IOException if a report cannot be written or read
+     * @throws InterruptedException if the thread is interrupted while waiting for the other reports
+     */
+    public Path finish(Properties report) throws IOException, InterruptedException {
+        report.setProperty("forwarded", String.valueOf(getForwardedUrls()));
+        report.setProperty("received", String.valueOf(getReceivedUrls()));
+        Path temp = Files.createTempFile(directory, "report-" + shard, ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            report.store(writer, "Report of shard " + shard);
+        }
+        move(temp, reportFile(shard));
+        if (shard != 0) {
+            return null;
+        }
+
+        long deadline = System.currentTimeMillis() + REPORT_WAIT_MILLIS;
+        Properties[] reports = new Properties[shards];
+        for (int i = 0; i < shards; i++) {
+            while (!Files.exists(reportFile(i))) {
+                if (System.currentTimeMillis() > deadline) {
+                    logger.warn("Shard {} left no report in {}; the crawl report is not written", i, directory);
+                    return null;
+                }
+                Thread.sleep(REPORT_POLL_MILLIS);
+            }
+            reports[i] = new Properties();
+            try (Reader reader = Files.newBufferedReader(reportFile(i), StandardCharsets.UTF_8)) {
+                reports[i].load(reader);
+            }
+        }
+        Path merged = directory.resolve(REPORT_FILE);
+        Files.writeString(merged, mergeReports(reports), StandardCharsets.UTF_8);
+        return merged;
+    }
+
+    /**
+     * Formats the reports of all shards as one JSON object: the totals, with the time of the
+     * slowest shard, followed by the report of each shard.
+     *
+     * @param reports the report of each shard, in shard order
+     * @return the merged report as JSON
+     */
+    static String mergeReports(Properties[] reports) {
+        StringBuilder json = new StringBuilder(256 + reports.length * 160);
+        json.append("{\n  \"shards\": ").append(reports.length).append(",\n");
+        for (String key : REPORT_KEYS) {
+            long total = 0;
+            for (Properties report : reports) {
+                long value = Long.parseLong(report.getProperty(key, "0"));
+                total = key.equals("elapsedMillis") ? Math.max(total, value) : total + value;
+            }
+            json.append("  \"").append(key).append("\": ").append(total).append(",\n");
+        }
+        json.append("  \"perShard\": [");
+        for (int i = 0; i < reports.length; i++) {
+            json.append(i == 0 ? "\n    {" : ",\n    {").append("\"shard\": ").append(i);
+            for (String key : REPORT_KEYS) {
+                json.append(String.format(Locale.ROOT, ", \"%s\": %s", key, reports[i].getProperty(key, "0")));
+            }
+            json.append('}');
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    public long getSentBatches() {
+        return sentBatches.get();
+    }
+
+    public long getReceivedBatches() {
+        return receivedBatches.get();
+    }
+
+    public long getForwardedUrls() {
+        return forwardedUrls.sum();
+    }
+
+    public long getReceivedUrls() {
+        return receivedUrls.sum();
+    }
+
+    /**
+     * Hands over the buffered URLs. The files in the exchange directory are kept, since
+     * other shards may still read them.
+     */
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void setIdle(boolean idle) throws IOException {
+        statusLock.lock();
+        try {
+            if (this.idle != idle) {
+                writeStatus(idle);
+            }
+        } finally {
+            statusLock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the status file. The version makes every write distinct, so that a second
+     * reading can tell whether anything changed in between.
+     */
+    private void writeStatus(boolean idle) throws IOException {
+        statusLock.lock();
+        try {
+            statusVersion++;
+            Path temp = Files.createTempFile(directory, "status-" + shard, ".tmp");
+            Files.writeString(temp, statusVersion + " " + (idle ? "idle" : "busy") + " " + sentBatches.get() + " "
+                    + receivedBatches.get(), StandardCharsets.UTF_8);
+            move(temp, statusFile(shard));
+            this.idle = idle;
+        } finally {
+            statusLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the status files of all shards.
+     *
+     * @return the statuses, or null if a shard has not started yet
+     */
+    private String[] readStatuses() throws IOException {
+        String[] statuses = new String[shards];
+        for (int i = 0; i < shards; i++) {
+            try {
+                statuses[i] = Files.readString(statusFile(i), StandardCharsets.UTF_8);
+            } catch (NoSuchFileException e) {
+                return null;
+            }
+        }
+        return statuses;
+    }
+
+    private Path inboxOf(int shard) {
+        return directory.resolve("inbox-" + shard);
+    }
+
+    private Path statusFile(int shard) {
+        return directory.resolve("status-" + shard);
+    }
+
+    private Path reportFile(int shard) {
+        return directory.resolve("report-" + shard + ".properties");
+    }
+
+    private static void move(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The URLs waiting to be handed to one shard.
+     */
+    private final class Outbox {
+        private final int target;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final StringBuilder lines = new StringBuilder();
+        private int size;
+        private long nextBatch;
+
+        Outbox(int target) {
+            this.target = target;
+        }
+
+        void add(String cleanUrl, int depth) {
+            lock.lock();
+            try {
+                lines.append(depth).append(' ').append(cleanUrl).append('\n');
+                if (++size >= batchSize) {
+                    write();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void flush() {
+            lock.lock();
+            try {
+                if (size > 0) {
+                    write();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Writes the buffer as a batch and counts it as sent. Called with the lock held.
+         */
+        private void write() {
+            Path targetInbox = inboxOf(target);
+            try {
+                Path temp = targetInbox.resolve(shard + "-" + nextBatch + ".tmp");
+                Files.writeString(temp, lines, StandardCharsets.UTF_8);
+                move(temp, targetInbox.resolve(shard + "-" + nextBatch + BATCH_SUFFIX));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to hand " + size + " URLs to shard " + target, e);
+            }
+            nextBatch++;
+            sentBatches.incrementAndGet();
+            lines.setLength(0);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package io.muzoo.ssc;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The SimHash class computes the 64-bit SimHash of the text of an HTML page, as used by
+ * Manku et al. to find near-duplicate web pages. Every word outside the markup is hashed,
+ * and each bit of the result is set if more words have that bit set than not, so pages
+ * that share most of their words have fingerprints that differ in only a few bits.
+ *
+ * The bytes are fed in as they are read, so the fingerprint is computed while the page
+ * streams through the link extractor. A word is a run of ASCII letters and digits, or of
+ * non-ASCII bytes, so the words of UTF-8 text in any script are hashed as a whole.
+ */
+public class SimHash {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int[] weights = new int[64];
+    private boolean inTag;
+    private long word = FNV_OFFSET_BASIS;
+    private int wordLength;
+    private int words;
+
+    /**
+     * Computes the SimHash of the given text.
+     *
+     * @param html the text, which may contain markup
+     * @return the fingerprint
+     */
+    public static long of(String html) {
+        SimHash simHash = new SimHash();
+        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        simHash.update(bytes, 0, bytes.length);
+        return simHash.value();
+    }
+
+    /**
+     * Returns the number of bits in which two fingerprints differ.
+     *
+     * @param a a fingerprint
+     * @param b another fingerprint
+     * @return the Hamming distance
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    /**
+     * Adds the given bytes of the page.
+     *
+     * @param bytes the buffer
+     * @param offset the offset of the first byte to add
+     * @param length the number of bytes to add
+     */
+    public void update(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = bytes[i] & 0xff;
+            if (inTag) {
+                inTag = b != '>';
+            } else if (b == '<') {
+                endWord();
+                inTag = true;
+            } else if (b >= 0x80 || (b >= '0' && b <= '9') || (b >= 'a' && b <= 'z')) {
+                addToWord(b);
+            } else if (b >= 'A' && b <= 'Z') {
+                addToWord(b + ('a' - 'A'));
+            } else {
+                endWord();
+            }
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the bytes added so far.
+     *
+     * @return the fingerprint
+     */
+    public long value() {
+        endWord();
+        long value = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                value |= 1L << bit;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of words added so far.
+     *
+     * @return the word count
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * Wraps a stream so that the bytes read from it are added to this fingerprint.
+     *
+     * @param in the stream of the page
+     * @return the wrapping stream
+     */
+    public InputStream tap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = in.read();
+                if (b != -1) {
+                    update(new byte[] {(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = in.read(b, off, len);
+                if (n > 0) {
+                    update(b, off, n);
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                // Skipped bytes are read, so that they count towards the fingerprint too
+                byte[] skipped = new byte[(int) Math.min(n, 8192)];
+                int read = n > 0 ? read(skipped, 0, skipped.length) : 0;
+                return Math.max(read, 0);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+
+    private void addToWord(int b) {
+        word = (word ^ b) * FNV_PRIME;
+        wordLength++;
+    }
+
+    private void endWord() {
+        if (wordLength == 0) {
+            return;
+        }
+        long hash = UrlFingerprint.mix(word);
+        for (int bit = 0; bit < 64; bit++) {
+            weights[bit] += (int) ((hash >>> bit) & 1) * 2 - 1;
+        }
+        words++;
+        word = FNV_OFFSET_BASIS;
+        wordLength = 0;
+    }
+}
@@ -0,0 +1,53 @@
+package io.muzoo.ssc;
+
+/**
+ * The StageStats interface reports the load of one stage of the crawl: how many workers
+ * it has, how full its input queue is, how much of the workers' time was spent working,
+ * and how long producers waited because the queue was full. A stage that is busy nearly
+ * all the time while the stage before it waits on its queue is the bottleneck.
+ */
+public interface StageStats {
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return the worker count
+     */
+    int getWorkers();
+
+    /**
+     * Returns the number of items waiting in the input queue.
+     *
+     * @return the queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the number of items the input queue holds before producers have to wait.
+     *
+     * @return the queue capacity
+     */
+    int getQueueCapacity();
+
+    /**
+     * Returns the number of items the workers finished.
+     *
+     * @return the processed item count
+     */
+    long getProcessed();
+
+    /**
+     * Returns the fraction of the workers' time spent on items since the stage started,
+     * up to the time it was closed.
+     *
+     * @return the utilization, from 0 to 1
+     */
+    double getUtilization();
+
+    /**
+     * Returns the total time producers waited for room in the input queue.
+     *
+     * @return the blocked time in nanoseconds
+     */
+    long getBlockedNanos();
+}
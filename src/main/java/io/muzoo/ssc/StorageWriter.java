@@ -0,0 +1,475 @@
+package io.muzoo.ssc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The StorageWriter class takes writing downloaded bodies off the fetching threads.
+ * Bodies are queued and written by dedicated writer threads, which take them in
+ * batches, so that a slow disk delays the writes instead of the downloads. The queue
+ * is bounded: when it is full, {@link #write(Path, byte[])} blocks, which slows the
+ * fetchers down to what the disk sustains. A body in a pooled buffer is released once
+ * it was written.
+ *
+ * Directories that were created once are remembered, so that a page does not cost a
+ * {@code createDirectories} call per write. How writes are made durable is chosen
+ * with {@link Durability}. Work that must follow the write of a queued file, such as
+ * replacing it with a hard link, is handed to {@link #whenWritten(Path, Runnable)}.
+ * As the store stage of the crawl, the writer reports its queue and the share of its
+ * threads' time spent writing as {@link StageStats}.
+ */
+public class StorageWriter implements StageStats, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(StorageWriter.class);
+    private static final int MAX_BATCH = 64;
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * How written files are made durable.
+     */
+    public enum Durability {
+        /** Leave flushing to the operating system. */
+        NONE,
+        /** Force the files written since the last sync to disk once per sync interval. */
+        PERIODIC,
+        /** Force every file to disk before it counts as written. */
+        PER_FILE
+    }
+
+    private final BlockingQueue<Write> queue;
+    private final int queueCapacity;
+    private final int writerThreads;
+    private final List<Thread> writers = new ArrayList<>();
+    private final Durability durability;
+    private final long syncIntervalNanos;
+    private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Write> queuedWrites = new ConcurrentHashMap<>();
+    private final Set<Path> unsyncedFiles = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final AtomicLong nextSync;
+    private final AtomicLong pending = new AtomicLong(); // Queued and not yet stored
+    private final ReentrantLock pendingLock = new ReentrantLock();
+    private final Condition allWritten = pendingLock.newCondition();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LongAdder filesWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final long startTime = System.nanoTime();
+    private volatile long stopTime;
+    private volatile boolean closed;
+
+    /**
+     * A body waiting to be written.
+     */
+    private static class Write {
+        final Path target;
+        final ByteBuffer data;
+        final BufferPool.Buffer pooled; // Null unless the body is in a pooled buffer
+        final long queuedAt;
+        List<Runnable> afterWrite; // Only changed while the write is in the queued writes
+
+        Write(Path target, ByteBuffer data, BufferPool.Buffer pooled, long queuedAt) {
+            this.target = target;
+            this.data = data;
+            this.pooled = pooled;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    /**
+     * Constructor to initialize the StorageWriter. Its writer threads run from {@link #start()}.
+     *
+     * @param writerThreads the number of writer threads
+     * @param queueCapacity the number of bodies that may wait to be written
+     * @param durability how the written files are made durable
+     * @param syncInterval how often files are forced to disk with {@link Durability#PERIODIC}
+     */
+    public StorageWriter(int writerThreads, int queueCapacity, Durability durability, Duration syncInterval) {
+        if (writerThreads < 1) {
+            throw new IllegalArgumentException("Writer threads must be at least 1: " + writerThreads);
+        }
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.queueCapacity = queueCapacity;
+        this.writerThreads = writerThreads;
+        this.durability = durability;
+        this.syncIntervalNanos = syncInterval.toNanos();
+        this.nextSync = new AtomicLong(System.nanoTime() + syncIntervalNanos);
+    }
+
+    /**
+     * Starts the writer threads.
+     *
+     * @return this writer
+     * @throws IllegalStateException if the writer was already started
+     */
+    public StorageWriter start() {
+        if (!writers.isEmpty()) {
+            throw new IllegalStateException("Storage writer is already started");
+        }
+        for (int i = 0; i < writerThreads; i++) {
+            Thread writer = new Thread(this::drain, "storage-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+        return this;
+    }
+
+    /**
+     * Creates a StorageWriter from the storage options of a crawl.
+     *
+     * @param config the crawl options
+     * @return the started writer
+     */
+    public static StorageWriter create(CrawlerConfig config) {
+        return new StorageWriter(config.getStorageWriterThreads(), config.getStorageQueueCapacity(),
+                config.getDurability(), config.getSyncInterval()).start();
+    }
+
+    /**
+     * Queues a body to be written to the given file, replacing its content. Blocks while
+     * the queue is full.
+     *
+     * @param target the file to write
+     * @param data the body; it must not be modified afterwards
+     * @throws IOException if the writer is closed or the thread is interrupted while waiting
+     */
+    public void write(Path target, byte[] data) throws IOException {
+        queue(new Write(target, ByteBuffer.wrap(data), null, System.nanoTime()));
+    }
+
+    /**
+     * Queues a body in a pooled buffer to be written to the given file, replacing its
+     * content. The writer takes over the caller's reference to the buffer and releases
+     * it once the body was written, or at once if it cannot be queued. Blocks while the
+     * queue is full.
+     *
+     * @param target the file to write
+     * @param data the body, from position 0 to its limit; it must not be modified afterwards
+     * @throws IOException if the writer is closed or the thread is interrupted while waiting
+     */
+    public void write(Path target, BufferPool.Buffer data) throws IOException {
+        try {
+            queue(new Write(target, data.contents(), data, System.nanoTime()));
+        } catch (IOException e) {
+            data.release();
+            throw e;
+        }
+    }
+
+    private void queue(Write write) throws IOException {
+        if (closed) {
+            throw new IOException("Storage writer is closed");
+        }
+        pending.incrementAndGet();
+        queuedWrites.put(write.target, write);
+        try {
+            if (!queue.offer(write)) {
+                queue.put(write);
+                blockedNanos.add(System.nanoTime() - write.queuedAt);
+            }
+        } catch (InterruptedException e) {
+            queuedWrites.remove(write.target, write);
+            stored();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to queue " + write.target, e);
+        }
+    }
+
+    private void stored() {
+        if (pending.decrementAndGet() == 0) {
+            pendingLock.lock();
+            try {
+                allWritten.signalAll();
+            } finally {
+                pendingLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Runs an action once the queued write of the given file is done, on the writer
+     * thread, or at once on the calling thread if no write of the file is queued. The
+     * action runs whether the write succeeded or not.
+     *
+     * @param target the file
+     * @param action the action
+     */
+    public void whenWritten(Path target, Runnable action) {
+        Write queued = queuedWrites.computeIfPresent(target, (path, write) -> {
+            if (write.afterWrite == null) {
+                write.afterWrite = new ArrayList<>(1);
+            }
+            write.afterWrite.add(action);
+            return write;
+        });
+        if (queued == null) {
+            action.run();
+        }
+    }
+
+    /**
+     * Waits until the queued write of the given file is done, if there is one.
+     *
+     * @param target the file
+     * @throws IOException if the thread is interrupted while waiting
+     */
+    public void awaitWritten(Path target) throws IOException {
+        CountDownLatch written = new CountDownLatch(1);
+        whenWritten(target, written::countDown);
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the write of " + target, e);
+        }
+    }
+
+    /**
+     * Waits until every body queued so far was written, and forces the periodically
+     * synced files to disk. The writer stays open for more writes.
+     *
+     * @throws IOException if the thread is interrupted while waiting
+     */
+    public void awaitWritten() throws IOException {
+        pendingLock.lock();
+        try {
+            while (pending.get() > 0) {
+                allWritten.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the storage writer", e);
+        } finally {
+            pendingLock.unlock();
+        }
+        syncUnsynced();
+    }
+
+    /**
+     * Creates the directory and its parents unless this writer already did.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory cannot be created
+     */
+    public void createDirectories(Path directory) throws IOException {
+        if (!createdDirectories.contains(directory)) {
+            Files.createDirectories(directory);
+            createdDirectories.add(directory);
+        }
+    }
+
+    /**
+     * Makes a file that was written directly, outside the queue, durable as configured.
+     * The channel must still be open.
+     *
+     * @param channel the channel the file was written through
+     * @param target the file
+     * @throws IOException if forcing the file to disk fails
+     */
+    public void written(FileChannel channel, Path target) throws IOException {
+        switch (durability) {
+            case PER_FILE:
+                channel.force(true);
+                break;
+            case PERIODIC:
+                unsyncedFiles.add(target);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int getWorkers() {
+        return writerThreads;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public long getProcessed() {
+        return filesWritten.sum();
+    }
+
+    @Override
+    public double getUtilization() {
+        long end = stopTime != 0 ? stopTime : System.nanoTime();
+        long elapsed = (end - startTime) * writerThreads;
+        return elapsed <= 0 ? 0 : Math.min(1, (double) busyNanos.sum() / elapsed);
+    }
+
+    @Override
+    public long getBlockedNanos() {
+        return blockedNanos.sum();
+    }
+
+    /**
+     * Returns the histogram of the time from queueing a body to having written it.
+     *
+     * @return the write latency histogram
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    public long getFilesWritten() {
+        return filesWritten.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getWriteFailures() {
+        return writeFailures.sum();
+    }
+
+    /**
+     * Writes every queued body, stops the writer threads and forces the remaining
+     * periodically synced files to disk.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing the storage writer", e);
+        }
+        stopTime = System.nanoTime();
+        // Bodies queued by a write that raced with close
+        Write write;
+        while ((write = queue.poll()) != null) {
+            store(write);
+        }
+        syncUnsynced();
+    }
+
+    private void drain() {
+        List<Write> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Write first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                return; // Only happens if the thread is interrupted from outside
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            long start = System.nanoTime();
+            for (Write write : batch) {
+                store(write);
+            }
+            batch.clear();
+            if (durability == Durability.PERIODIC) {
+                syncIfDue();
+            }
+            busyNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private void store(Write write) {
+        try (FileChannel channel = openForWrite(write.target)) {
+            ByteBuffer buffer = write.data;
+            int length = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            written(channel, write.target);
+            filesWritten.increment();
+            bytesWritten.add(length);
+        } catch (IOException e) {
+            writeFailures.increment();
+            logger.error("Failed to write {}", write.target, e);
+        } finally {
+            if (write.pooled != null) {
+                write.pooled.release();
+            }
+        }
+        writeLatency.record(System.nanoTime() - write.queuedAt);
+        queuedWrites.remove(write.target, write);
+        if (write.afterWrite != null) {
+            for (Runnable action : write.afterWrite) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to finish the write of {}", write.target, e);
+                }
+            }
+        }
+        stored();
+    }
+
+    private FileChannel openForWrite(Path target) throws IOException {
+        createDirectories(target.getParent());
+        Files.deleteIfExists(target); // May be a hard link to an identical page; never write through it
+        return FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+    }
+
+    private void syncIfDue() {
+        long due = nextSync.get();
+        if (System.nanoTime() - due >= 0 && nextSync.compareAndSet(due, System.nanoTime() + syncIntervalNanos)) {
+            syncUnsynced();
+        }
+    }
+
+    /**
+     * Forces the files written since the last sync to disk. One thread syncs at a time.
+     */
+    private void syncUnsynced() {
+        syncLock.lock();
+        try {
+            for (Path file : unsyncedFiles) {
+                unsyncedFiles.remove(file);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                } catch (IOException e) {
+                    writeFailures.increment();
+                    logger.error("Failed to sync {}", file, e);
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+}
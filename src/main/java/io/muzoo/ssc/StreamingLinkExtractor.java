@@ -0,0 +1,383 @@
+package io.muzoo.ssc;
+
+import org.jsoup.internal.StringUtil;
+import org.jsoup.parser.Parser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The StreamingLinkExtractor class finds links with a small HTML tokenizer instead of
+ * a document tree. It reads the page through a fixed-size buffer, recognises start tags,
+ * comments and raw-text elements such as {@code script} and {@code style}, and only
+ * keeps the attribute values of the elements it reports, so memory use does not grow
+ * with the size of the page.
+ *
+ * The first {@code <base href>} changes the URL that later links are resolved against,
+ * as it does in Jsoup; a link that appears before it is resolved against the page URL.
+ * URLs are resolved and entities decoded with Jsoup's own helpers, so both extractors
+ * report the same strings.
+ */
+public class StreamingLinkExtractor implements LinkExtractor {
+    private static final int BUFFER_SIZE = 8192;
+    private static final int SNIFF_LIMIT = 1024;
+    private static final Pattern META_CHARSET = Pattern.compile(
+            "<meta[^>]+charset\\s*=\\s*[\"']?\\s*([A-Za-z0-9_:.-]+)", Pattern.CASE_INSENSITIVE);
+
+    @Override
+    public void extractLinks(InputStream html, Charset charset, String pageUrl, Consumer<String> sink) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(html, BUFFER_SIZE);
+        Charset effectiveCharset = charset != null ? charset : detectCharset(in);
+        new Tokenizer(new InputStreamReader(in, effectiveCharset), pageUrl, sink).run();
+    }
+
+    /**
+     * Detects the charset of a document without a declared one from its byte order mark
+     * or a {@code <meta charset>} declaration in the first kilobyte, falling back to UTF-8.
+     * A UTF-8 byte order mark is skipped; UTF-16 decoders consume their own.
+     */
+    private static Charset detectCharset(BufferedInputStream in) throws IOException {
+        in.mark(SNIFF_LIMIT);
+        byte[] head = in.readNBytes(SNIFF_LIMIT);
+        in.reset();
+
+        if (head.length >= 3 && (head[0] & 0xff) == 0xef && (head[1] & 0xff) == 0xbb && (head[2] & 0xff) == 0xbf) {
+            in.skipNBytes(3);
+            return StandardCharsets.UTF_8;
+        }
+        if (head.length >= 2 && ((head[0] & 0xff) == 0xfe && (head[1] & 0xff) == 0xff
+                || (head[0] & 0xff) == 0xff && (head[1] & 0xff) == 0xfe)) {
+            return StandardCharsets.UTF_16;
+        }
+
+        Matcher matcher = META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1));
+        if (matcher.find()) {
+            try {
+                if (Charset.isSupported(matcher.group(1))) {
+                    return Charset.forName(matcher.group(1));
+                }
+            } catch (IllegalCharsetNameException e) {
+                // Fall back to the default below
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * A single-use tokenizer over one document. It follows the HTML tokenization rules
+     * closely enough to find the same elements as a full parser: tag and attribute names
+     * are case-insensitive, the first of duplicate attributes wins, and the content of
+     * comments and raw-text elements is skipped.
+     */
+    private static final class Tokenizer {
+        private static final int EOF = -1;
+        private static final int NONE = -2;
+
+        // Element kinds; an element may have several
+        private static final int HREF_ELEMENT = 1;
+        private static final int SRC_ELEMENT = 2;
+        private static final int BASE_ELEMENT = 4;
+        private static final int RAW_TEXT_ELEMENT = 8;
+
+        private final Reader reader;
+        private final Consumer<String> sink;
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private int pushedBack = NONE;
+
+        private String baseUrl;
+        private boolean baseFromDocument;
+
+        private final StringBuilder tagName = new StringBuilder();
+        private final StringBuilder attributeName = new StringBuilder();
+        private final StringBuilder value = new StringBuilder();
+
+        Tokenizer(Reader reader, String pageUrl, Consumer<String> sink) {
+            this.reader = reader;
+            this.baseUrl = pageUrl;
+            this.sink = sink;
+        }
+
+        void run() throws IOException {
+            int c;
+            while ((c = next()) != EOF) {
+                if (c == '<') {
+                    markup();
+                }
+            }
+        }
+
+        /**
+         * Handles whatever follows a {@code <}: a start tag, an end tag, a comment or
+         * another declaration. Anything else is text, and the character is given back.
+         */
+        private void markup() throws IOException {
+            int c = next();
+            if (isAsciiLetter(c)) {
+                startTag(c);
+            } else if (c == '!') {
+                declaration();
+            } else if (c == '/' || c == '?') {
+                skipPast('>'); // End tags and processing instructions carry no links
+            } else if (c != EOF) {
+                pushBack(c);
+            }
+        }
+
+        private void declaration() throws IOException {
+            int c = next();
+            if (c == '-') {
+                c = next();
+                if (c == '-') {
+                    comment();
+                    return;
+                }
+            }
+            if (c != '>' && c != EOF) {
+                skipPast('>'); // Doctype or bogus comment
+            }
+        }
+
+        /**
+         * Skips a comment up to the closing {@code -->}. The count starts at two for the
+         * opening dashes, so {@code <!-->} and {@code <!--->} end immediately as in browsers.
+         */
+        private void comment() throws IOException {
+            int dashes = 2;
+            int c;
+            while ((c = next()) != EOF) {
+                if (c == '-') {
+                    dashes++;
+                } else if (c == '>' && dashes >= 2) {
+                    return;
+                } else {
+                    dashes = 0;
+                }
+            }
+        }
+
+        private void startTag(int first) throws IOException {
+            tagName.setLength(0);
+            tagName.append(toLowerCase(first));
+            int c;
+            while ((c = next()) != EOF && !isWhitespace(c) && c != '/' && c != '>') {
+                tagName.append(toLowerCase(c));
+            }
+
+            int kind = kindOf(tagName);
+            boolean keepValues = (kind & (HREF_ELEMENT | SRC_ELEMENT | BASE_ELEMENT)) != 0;
+            String href = null;
+            String src = null;
+            boolean selfClosing = false;
+
+            while (true) {
+                while (isWhitespace(c) || c == '/') {
+                    selfClosing = c == '/';
+                    c = next();
+                }
+                if (c == '>' || c == EOF) {
+                    break;
+                }
+                selfClosing = false;
+
+                attributeName.setLength(0);
+                do {
+                    attributeName.append(toLowerCase(c));
+                    c = next();
+                } while (c != EOF && !isWhitespace(c) && c != '/' && c != '>' && c != '=');
+                while (isWhitespace(c)) {
+                    c = next();
+                }
+
+                boolean isHref = keepValues && equals(attributeName, "href");
+                boolean isSrc = keepValues && equals(attributeName, "src");
+                boolean capture = isHref && href == null || isSrc && src == null;
+                String attributeValue = "";
+                if (c == '=') {
+                    c = next();
+                    while (isWhitespace(c)) {
+                        c = next();
+                    }
+                    c = readValue(c, capture);
+                    if (capture) {
+                        attributeValue = decode(value);
+                    }
+                }
+                if (capture && isHref) {
+                    href = attributeValue;
+                } else if (capture) {
+                    src = attributeValue;
+                }
+            }
+            if (c == EOF) {
+                return; // A tag cut off by the end of the document is dropped
+            }
+
+            if ((kind & BASE_ELEMENT) != 0 && href != null && !baseFromDocument) {
+                String resolved = StringUtil.resolve(baseUrl, href);
+                if (!resolved.isEmpty()) {
+                    baseUrl = resolved;
+                    baseFromDocument = true;
+                }
+            } else if ((kind & HREF_ELEMENT) != 0 && href != null || (kind & SRC_ELEMENT) != 0 && src != null) {
+                emit(href, src);
+            }
+            if ((kind & RAW_TEXT_ELEMENT) != 0 && !selfClosing) {
+                skipRawText();
+            }
+        }
+
+        /**
+         * Reads an attribute value starting at {@code c}, copying it into {@code value}
+         * only if it is needed.
+         *
+         * @return the first character after the value
+         */
+        private int readValue(int c, boolean capture) throws IOException {
+            value.setLength(0);
+            if (c == '"' || c == '\'') {
+                int quote = c;
+                while ((c = next()) != EOF && c != quote) {
+                    if (capture) {
+                        value.append((char) c);
+                    }
+                }
+                return c == EOF ? EOF : next();
+            }
+            while (c != EOF && !isWhitespace(c) && c != '>') {
+                if (capture) {
+                    value.append((char) c);
+                }
+                c = next();
+            }
+            return c;
+        }
+
+        /**
+         * Reports the link of an element like the reference extractor does: the resolved
+         * {@code href} if it is not empty, otherwise the resolved {@code src}.
+         */
+        private void emit(String href, String src) {
+            String url = href != null ? StringUtil.resolve(baseUrl, href) : "";
+            if (url.isEmpty() && src != null) {
+                url = StringUtil.resolve(baseUrl, src);
+            }
+            if (!url.isEmpty()) {
+                sink.accept(url);
+            }
+        }
+
+        /**
+         * Skips the content of a raw-text element up to its end tag, which is matched
+         * case-insensitively and must be followed by whitespace, {@code /} or {@code >}.
+         */
+        private void skipRawText() throws IOException {
+            int c;
+            while ((c = next()) != EOF) {
+                if (c != '<') {
+                    continue;
+                }
+                c = next();
+                if (c != '/') {
+                    pushBack(c);
+                    continue;
+                }
+                int matched = 0;
+                while (matched < tagName.length() && (c = next()) != EOF && toLowerCase(c) == tagName.charAt(matched)) {
+                    matched++;
+                }
+                if (matched == tagName.length()) {
+                    c = next();
+                    if (isWhitespace(c) || c == '/' || c == '>') {
+                        if (c != '>') {
+                            skipPast('>');
+                        }
+                        return;
+                    }
+                }
+                if (c != EOF) {
+                    pushBack(c);
+                }
+            }
+        }
+
+        private void skipPast(char end) throws IOException {
+            int c;
+            while ((c = next()) != EOF && c != end) {
+                // Skip
+            }
+        }
+
+        private int next() throws IOException {
+            if (pushedBack != NONE) {
+                int c = pushedBack;
+                pushedBack = NONE;
+                return c;
+            }
+            if (position == limit) {
+                limit = reader.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return EOF;
+                }
+            }
+            return buffer[position++];
+        }
+
+        private void pushBack(int c) {
+            pushedBack = c;
+        }
+
+        private static String decode(StringBuilder value) {
+            String text = value.toString();
+            return text.indexOf('&') < 0 ? text : Parser.unescapeEntities(text, true);
+        }
+
+        private static int kindOf(StringBuilder tag) {
+            if (equals(tag, "a") || equals(tag, "link")) {
+                return HREF_ELEMENT;
+            }
+            if (equals(tag, "img") || equals(tag, "image")) {
+                return SRC_ELEMENT;
+            }
+            if (equals(tag, "script") || equals(tag, "iframe")) {
+                return SRC_ELEMENT | RAW_TEXT_ELEMENT;
+            }
+            if (equals(tag, "base")) {
+                return BASE_ELEMENT;
+            }
+            if (equals(tag, "style") || equals(tag, "title") || equals(tag, "textarea")
+                    || equals(tag, "xmp") || equals(tag, "noembed") || equals(tag, "noframes")) {
+                return RAW_TEXT_ELEMENT;
+            }
+            return 0;
+        }
+
+        private static boolean equals(StringBuilder name, String expected) {
+            return name.length() == expected.length() && expected.contentEquals(name);
+        }
+
+        private static boolean isAsciiLetter(int c) {
+            return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+        }
+
+        private static boolean isWhitespace(int c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+        }
+
+        private static char toLowerCase(int c) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : (char) c;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package io.muzoo.ssc;
+
+/**
+ * The UrlFingerprint class computes 64-bit fingerprints of URLs. The hash is
+ * FNV-1a over the UTF-16 characters followed by the MurmurHash3 finalizer, so
+ * that similar URLs (which differ only in a few trailing characters) still spread
+ * over all 64 bits. At ten million URLs the chance of any collision is about 3 in a million.
+ */
+public final class UrlFingerprint {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private UrlFingerprint() {
+    }
+
+    /**
+     * Computes the fingerprint of the given URL.
+     *
+     * @param url the URL to fingerprint
+     * @return the 64-bit fingerprint
+     */
+    public static long of(String url) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Applies the MurmurHash3 64-bit finalizer.
+     *
+     * @param hash the value to mix
+     * @return the mixed value
+     */
+    public static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,8 +1,6 @@
 package io.muzoo.ssc;
 
 import java.io.File;
-import java.net.URI;
-import java.net.URISyntaxException;
 
 /**
  * The UrlHandler class provides utility methods to process and manipulate URLs.
@@ -15,18 +13,14 @@ public class UrlHandler {
      * Cleans a given URL by removing query parameters and fragments.
      *
      * This method ensures that the resulting URL includes only the scheme,
-     * host, and path components.
+     * host, port (unless it is the default one), and path components, in the
+     * normalized form described by {@link UrlNormalizer}.
      *
      * @param url the URL to be cleaned
      * @return a cleaned URL string; returns an empty string if the URL is invalid
      */
     public String cleanUrl(String url) {
-        try {
-            URI uri = new URI(url.split("#")[0].split("\\?")[0]); // Strip query parameters and hashtags
-            return uri.getScheme() + "://" + uri.getHost() + uri.getPath();
-        } catch (URISyntaxException e) {
-            return ""; // Invalid URL
-        }
+        return UrlNormalizer.normalize(url);
     }
 
     /**
@@ -50,10 +44,14 @@ public class UrlHandler {
             outputDir += File.separator;
         }
 
+        // Drop the scheme; a port becomes part of the host directory name
+        String relativePath = cleanedUrl.substring(cleanedUrl.indexOf("://") + 3)
+                .replace(':', '_')
+                .replace("/", File.separator);
         if (cleanedUrl.endsWith("/")) {
-            return outputDir + cleanedUrl.replace("https://", "").replace("/", File.separator) + "index.html";
+            return outputDir + relativePath + "index.html";
         } else {
-            return outputDir + cleanedUrl.replace("https://", "").replace("/", File.separator);
+            return outputDir + relativePath;
         }
     }
 }
\ No newline at end of file
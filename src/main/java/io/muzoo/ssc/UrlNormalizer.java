@@ -0,0 +1,342 @@
+package io.muzoo.ssc;
+
+/**
+ * The UrlNormalizer class cleans and validates absolute http and https URLs in a single
+ * pass over their characters, without regular expressions or {@link java.net.URI}.
+ *
+ * A normalized URL has a lower-case scheme and host, no user info, no default port,
+ * no query and no fragment, a path of at least {@code /} with the dot segments removed
+ * (RFC 3986, section 5.2.4), percent-encoded unreserved characters decoded, the other
+ * percent-encodings in upper case, and non-ASCII characters encoded as UTF-8. URLs that
+ * {@code URI} would reject, and URLs of other schemes, normalize to an empty string.
+ */
+public final class UrlNormalizer {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final int MAX_PORT = 65535;
+
+    private UrlNormalizer() {
+    }
+
+    /**
+     * Normalizes the given URL. An URL that is already normalized is returned as is.
+     *
+     * @param url the absolute URL to normalize
+     * @return the normalized URL, or an empty string if the URL is invalid
+     */
+    public static String normalize(String url) {
+        int end = url.length();
+        for (int i = 0; i < end; i++) {
+            char c = url.charAt(i);
+            if (c == '#' || c == '?') {
+                end = i; // The query and the fragment are dropped
+                break;
+            }
+        }
+
+        // Scheme
+        int defaultPort;
+        int authorityStart;
+        if (url.regionMatches(true, 0, "http://", 0, 7)) {
+            defaultPort = 80;
+            authorityStart = 7;
+        } else if (url.regionMatches(true, 0, "https://", 0, 8)) {
+            defaultPort = 443;
+            authorityStart = 8;
+        } else {
+            return "";
+        }
+        if (authorityStart > end) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(end + 8);
+        out.append(defaultPort == 80 ? "http://" : "https://");
+
+        // Authority: the user info is dropped, the host is lower-cased and validated
+        int authorityEnd = authorityStart;
+        while (authorityEnd < end && url.charAt(authorityEnd) != '/') {
+            authorityEnd++;
+        }
+        int hostStart = url.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart < authorityStart) {
+            hostStart = authorityStart;
+        }
+        int hostEnd = hostStart < authorityEnd && url.charAt(hostStart) == '['
+                ? appendIpLiteral(url, hostStart, authorityEnd, out)
+                : appendHostName(url, hostStart, authorityEnd, out);
+        if (hostEnd < 0) {
+            return "";
+        }
+        if (hostEnd < authorityEnd) {
+            int port = parsePort(url, hostEnd, authorityEnd);
+            if (port == -2) {
+                return "";
+            }
+            if (port != -1 && port != defaultPort) {
+                out.append(':').append(port);
+            }
+        }
+
+        if (!appendPath(url, authorityEnd, end, out)) {
+            return "";
+        }
+        return out.length() == url.length() && url.contentEquals(out) ? url : out.toString();
+    }
+
+    /**
+     * Checks whether the given URL is a valid absolute http or https URL.
+     *
+     * @param url the URL to check
+     * @return true if the URL can be normalized
+     */
+    public static boolean isValid(String url) {
+        return !normalize(url).isEmpty();
+    }
+
+    /**
+     * Appends a host name or an IPv4 address. A host name consists of labels of letters,
+     * digits and inner hyphens; when there are several, the last must start with a letter.
+     *
+     * @return the end of the host, or -1 if it is invalid
+     */
+    private static int appendHostName(String url, int start, int limit, StringBuilder out) {
+        int i = start;
+        int labelStart = start;
+        int lastLabelStart = -1;
+        int labels = 0;
+        boolean allDigitsAndDots = true;
+        while (i < limit) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                break;
+            }
+            if (c == '.') {
+                if (i == labelStart || url.charAt(i - 1) == '-') {
+                    return -1; // Empty label or trailing hyphen
+                }
+                labelStart = i + 1;
+            } else if (isAlphaNumeric(c) || c == '-' && i > labelStart) {
+                if (i == labelStart) {
+                    lastLabelStart = i;
+                    labels++;
+                }
+                allDigitsAndDots &= c >= '0' && c <= '9';
+            } else {
+                return -1;
+            }
+            out.append(toLowerCase(c));
+            i++;
+        }
+        if (labels == 0 || i > labelStart && url.charAt(i - 1) == '-') {
+            return -1;
+        }
+        if (allDigitsAndDots && isIpv4Address(url, start, i)) {
+            return i;
+        }
+        if (labels > 1 && !isAlpha(url.charAt(lastLabelStart))) {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * Appends a bracketed IPv6 literal in lower case. Only the characters are checked;
+     * the grouping is left to the resolver.
+     *
+     * @return the end of the literal, or -1 if it is invalid
+     */
+    private static int appendIpLiteral(String url, int start, int limit, StringBuilder out) {
+        int close = url.indexOf(']', start);
+        if (close < 0 || close >= limit || close == start + 1) {
+            return -1;
+        }
+        boolean hasColon = false;
+        out.append('[');
+        for (int i = start + 1; i < close; i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                hasColon = true;
+            } else if (!isHexDigit(c) && c != '.') {
+                return -1;
+            }
+            out.append(toLowerCase(c));
+        }
+        out.append(']');
+        return hasColon ? close + 1 : -1;
+    }
+
+    private static boolean isIpv4Address(String url, int start, int end) {
+        int parts = 0;
+        int value = -1;
+        for (int i = start; i <= end; i++) {
+            char c = i < end ? url.charAt(i) : '.';
+            if (c == '.') {
+                if (value < 0 || value > 255) {
+                    return false;
+                }
+                parts++;
+                value = -1;
+            } else {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return false;
+                }
+            }
+        }
+        return parts == 4;
+    }
+
+    /**
+     * Parses the port that follows the host.
+     *
+     * @return the port, -1 if it is empty, or -2 if it is invalid
+     */
+    private static int parsePort(String url, int start, int end) {
+        if (url.charAt(start) != ':') {
+            return -2;
+        }
+        if (start + 1 == end) {
+            return -1;
+        }
+        int port = 0;
+        for (int i = start + 1; i < end; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                return -2;
+            }
+            port = port * 10 + (c - '0');
+            if (port > MAX_PORT) {
+                return -2;
+            }
+        }
+        return port;
+    }
+
+    /**
+     * Appends the normalized path. Each segment is copied with its percent-encodings
+     * normalized and then, if it is {@code .} or {@code ..}, removed again together with
+     * its parent, so the dot segments are resolved without a second pass.
+     *
+     * @return false if the path contains a character that is not allowed
+     */
+    private static boolean appendPath(String url, int start, int end, StringBuilder out) {
+        int pathStart = out.length();
+        int i = start;
+        do {
+            // Every segment, including the first, is preceded by a slash
+            int slash = out.length();
+            out.append('/');
+            if (i < end) {
+                i++; // Skip the slash of the input, if there is one
+            }
+            while (i < end && url.charAt(i) != '/') {
+                char c = url.charAt(i);
+                if (c == '%') {
+                    if (i + 2 >= end) {
+                        return false;
+                    }
+                    int high = hexValue(url.charAt(i + 1));
+                    int low = hexValue(url.charAt(i + 2));
+                    if (high < 0 || low < 0) {
+                        return false;
+                    }
+                    char decoded = (char) (high << 4 | low);
+                    if (isUnreserved(decoded)) {
+                        out.append(decoded);
+                    } else {
+                        appendEscaped(decoded, out);
+                    }
+                    i += 3;
+                } else if (c < 0x80) {
+                    if (!isUnreserved(c) && !isSubDelimiterOrColonOrAt(c)) {
+                        return false;
+                    }
+                    out.append(c);
+                    i++;
+                } else {
+                    int codePoint = url.codePointAt(i);
+                    if (Character.isSurrogate((char) codePoint)) {
+                        return false; // Unpaired surrogate
+                    }
+                    appendUtf8(codePoint, out);
+                    i += Character.charCount(codePoint);
+                }
+            }
+
+            int length = out.length() - slash - 1;
+            boolean dot = length == 1 && out.charAt(slash + 1) == '.';
+            boolean dotDot = length == 2 && out.charAt(slash + 1) == '.' && out.charAt(slash + 2) == '.';
+            if (dot || dotDot) {
+                int truncateTo = slash;
+                if (dotDot && slash > pathStart) {
+                    truncateTo = out.lastIndexOf("/", slash - 1);
+                }
+                out.setLength(truncateTo);
+                if (i >= end) {
+                    out.append('/'); // A trailing dot segment leaves a directory
+                }
+            }
+        } while (i < end);
+        return true;
+    }
+
+    private static void appendEscaped(int b, StringBuilder out) {
+        out.append('%').append(HEX_DIGITS[b >> 4 & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+
+    private static void appendUtf8(int codePoint, StringBuilder out) {
+        if (codePoint < 0x800) {
+            appendEscaped(0xc0 | codePoint >> 6, out);
+        } else if (codePoint < 0x10000) {
+            appendEscaped(0xe0 | codePoint >> 12, out);
+            appendEscaped(0x80 | codePoint >> 6 & 0x3f, out);
+        } else {
+            appendEscaped(0xf0 | codePoint >> 18, out);
+            appendEscaped(0x80 | codePoint >> 12 & 0x3f, out);
+            appendEscaped(0x80 | codePoint >> 6 & 0x3f, out);
+        }
+        appendEscaped(0x80 | codePoint & 0x3f, out);
+    }
+
+    private static boolean isUnreserved(char c) {
+        return isAlphaNumeric(c) || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static boolean isSubDelimiterOrColonOrAt(char c) {
+        switch (c) {
+            case '!': case '$': case '&': case '\'': case '(': case ')':
+            case '*': case '+': case ',': case ';': case '=': case ':': case '@':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isAlpha(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isAlphaNumeric(char c) {
+        return isAlpha(c) || c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return hexValue(c) >= 0;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static char toLowerCase(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,103 @@
+package io.muzoo.ssc;
+
+/**
+ * The VisitedSet interface records which URLs the crawler has already claimed.
+ * Implementations must be safe to share between crawler threads: {@link #add(String)}
+ * is the atomic claim, so exactly one caller sees {@code true} for a given URL.
+ */
+public interface VisitedSet {
+
+    /**
+     * The available implementations.
+     */
+    enum Type {
+        /** Full URL strings in a concurrent hash set. Exact, but large per entry. */
+        HASH,
+        /** 64-bit fingerprints in a lock-free open-addressing table. Compact, with a tiny collision probability. */
+        FINGERPRINT,
+        /** Fingerprints backed by the full URL strings, for crawls that cannot tolerate collisions. */
+        FINGERPRINT_VERIFIED
+    }
+
+    /**
+     * Adds the URL to the set if it is not already present.
+     *
+     * @param url the URL to add
+     * @return true if the URL was not in the set before this call
+     */
+    boolean add(String url);
+
+    /**
+     * Checks whether the URL has been added.
+     *
+     * @param url the URL to look up
+     * @return true if the URL is in the set
+     */
+    boolean contains(String url);
+
+    /**
+     * Adds the URL to the set if it is not already present, given its {@link UrlFingerprint},
+     * so that a set of fingerprints does not hash the URL again.
+     *
+     * @param url the URL to add
+     * @param fingerprint the fingerprint of the URL
+     * @return true if the URL was not in the set before this call
+     */
+    default boolean add(String url, long fingerprint) {
+        return add(url);
+    }
+
+    /**
+     * Checks whether the URL has been added, given its {@link UrlFingerprint}, so that a
+     * set of fingerprints does not hash the URL again.
+     *
+     * @param url the URL to look up
+     * @param fingerprint the fingerprint of the URL
+     * @return true if the URL is in the set
+     */
+    default boolean contains(String url, long fingerprint) {
+        return contains(url);
+    }
+
+    /**
+     * Returns the number of URLs in the set.
+     *
+     * @return the number of URLs added so far
+     */
+    long size();
+
+    /**
+     * Returns an estimate of the heap used by the set.
+     *
+     * @return the estimated memory footprint in bytes
+     */
+    long memoryBytes();
+
+    /**
+     * Returns the estimated memory footprint divided by the number of URLs.
+     *
+     * @return the estimated bytes per URL, or 0 if the set is empty
+     */
+    default double bytesPerUrl() {
+        long size = size();
+        return size == 0 ? 0 : (double) memoryBytes() / size;
+    }
+
+    /**
+     * Creates an empty visited set of the given type.
+     *
+     * @param type the implementation to create
+     * @return a new visited set
+     */
+    static VisitedSet create(Type type) {
+        switch (type) {
+            case HASH:
+                return new HashVisitedSet();
+            case FINGERPRINT_VERIFIED:
+                return new FingerprintVisitedSet(true);
+            case FINGERPRINT:
+            default:
+                return new FingerprintVisitedSet(false);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package io.muzoo.ssc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The WarcReader class reads the archives written by {@link WarcWriter}. The CDX index
+ * locates every response, so a body is read by decompressing just its record. The
+ * responses can be listed, looked up by URL, or exported as the file tree the crawler
+ * writes without an archive, with one file per URL at {@link UrlHandler#getFilePath}.
+ */
+public class WarcReader {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path archiveDir;
+    private Map<String, CdxEntry> latest;
+
+    /**
+     * Constructor to initialize the WarcReader for the archive in the given directory.
+     *
+     * @param archiveDir the directory of the segments and the index
+     */
+    public WarcReader(Path archiveDir) {
+        this.archiveDir = archiveDir;
+    }
+
+    /**
+     * Calls the consumer with every entry of the index, in the order the responses were
+     * archived. A URL that was crawled more than once has an entry per capture.
+     *
+     * @param consumer the consumer of the entries
+     * @throws IOException if the index cannot be read
+     */
+    public void forEach(Consumer<CdxEntry> consumer) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(archiveDir.resolve(WarcWriter.INDEX_FILE),
+                StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && !line.startsWith(CdxEntry.HEADER)) {
+                    consumer.accept(CdxEntry.parse(line));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the entry of the latest capture of a URL. The index is loaded on the first call.
+     *
+     * @param url the captured URL
+     * @return the entry, or null if the URL is not in the archive
+     * @throws IOException if the index cannot be read
+     */
+    public CdxEntry lookup(String url) throws IOException {
+        if (latest == null) {
+            Map<String, CdxEntry> entries = new LinkedHashMap<>();
+            forEach(entry -> entries.put(entry.getUrl(), entry));
+            latest = entries;
+        }
+        return latest.get(url);
+    }
+
+    /**
+     * Opens the body of an archived response.
+     *
+     * @param entry the index entry of the response
+     * @return the stream of the body; the caller closes it
+     * @throws IOException if the record cannot be read
+     */
+    public InputStream openPayload(CdxEntry entry) throws IOException {
+        return openPayload(archiveDir.resolve(entry.getFileName()), entry.getOffset(), entry.getLength());
+    }
+
+    /**
+     * Writes the latest capture of every archived URL to the file the crawler would have
+     * written it to without an archive.
+     *
+     * @param outputDir the directory of the file tree
+     * @return the number of files written
+     * @throws IOException if the archive cannot be read or a file cannot be written
+     */
+    public int export(String outputDir) throws IOException {
+        UrlHandler urlHandler = new UrlHandler();
+        Map<String, CdxEntry> entries = new LinkedHashMap<>();
+        forEach(entry -> entries.put(entry.getUrl(), entry));
+        int exported = 0;
+        for (CdxEntry entry : entries.values()) {
+            String filePath = urlHandler.getFilePath(entry.getUrl(), outputDir);
+            if (filePath.isEmpty()) {
+                continue;
+            }
+            Path target = Paths.get(filePath);
+            Files.createDirectories(target.getParent());
+            try (InputStream payload = openPayload(entry)) {
+                Files.copy(payload, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            exported++;
+        }
+        return exported;
+    }
+
+    /**
+     * Opens the body of the response record at the given offset of a segment. Only the
+     * record's own gzip member is read: the WARC headers and the HTTP headers are skipped,
+     * and the stream ends with the body.
+     *
+     * @param segment the segment file
+     * @param offset the offset of the record
+     * @param length the compressed length of the record
+     * @return the stream of the body; the caller closes it
+     * @throws IOException if the record cannot be read or is not a WARC record
+     */
+    static InputStream openPayload(Path segment, long offset, long length) throws IOException {
+        FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ);
+        try {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(new GZIPInputStream(
+                    new LimitedInputStream(Channels.newInputStream(channel), length), BUFFER_SIZE), BUFFER_SIZE);
+            long contentLength = -1;
+            for (String line : readHead(in).split("\r\n")) {
+                if (line.regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                    contentLength = Long.parseLong(line.substring(15).trim());
+                }
+            }
+            if (contentLength < 0) {
+                throw new IOException("Not a WARC record at " + offset + " of " + segment);
+            }
+            long httpHead = readHead(in).length();
+            return new LimitedInputStream(in, contentLength - httpHead);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a header block up to and including the empty line that ends it.
+     */
+    private static String readHead(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder(512);
+        int b;
+        while ((b = in.read()) != -1) {
+            head.append((char) b);
+            int length = head.length();
+            if (length >= 4 && head.charAt(length - 1) == '\n' && head.charAt(length - 2) == '\r'
+                    && head.charAt(length - 3) == '\n' && head.charAt(length - 4) == '\r') {
+                return head.toString();
+            }
+        }
+        throw new IOException("Header block is not terminated");
+    }
+
+    /**
+     * Reads at most a given number of bytes from a stream, and closes the stream when closed.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
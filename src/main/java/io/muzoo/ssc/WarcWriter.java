@@ -0,0 +1,288 @@
+package io.muzoo.ssc;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The WarcWriter class stores the crawled responses in WARC 1.1 archives instead of a
+ * file per URL. Every response is written as a {@code response} record holding the HTTP
+ * status line, headers and body, followed by the {@code request} record that asked for
+ * it. Each record is a separate gzip member, so that a record can be decompressed on
+ * its own from its offset.
+ *
+ * Records are appended to segment files named {@code crawl-<time>-<sequence>.warc.gz};
+ * once a segment reaches the maximum size, the next record starts a new one, which
+ * begins with a {@code warcinfo} record. The location of every response is appended to
+ * the CDX index {@value #INDEX_FILE} in the same directory; {@link WarcReader} uses it to
+ * read the responses back and to export them as a file tree.
+ */
+public class WarcWriter implements AutoCloseable {
+    public static final String INDEX_FILE = "index.cdx";
+    static final String SEGMENT_PREFIX = "crawl-";
+    static final String SEGMENT_SUFFIX = ".warc.gz";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter WARC_DATE =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter CDX_DATE =
+            DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneOffset.UTC);
+    private static final char[] BASE32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+
+    private final Path archiveDir;
+    private final long maxSegmentSize;
+    private final StorageWriter.Durability durability;
+    // Held while a record is written, which is file I/O; a lock does not pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final BufferedWriter index;
+    private final LongAdder records = new LongAdder();
+    private FileChannel segment;
+    private String segmentName;
+    private int sequence;
+
+    /**
+     * Constructor to initialize the WarcWriter. Segments and the index are created in the
+     * given directory; an existing index is appended to.
+     *
+     * @param archiveDir the directory of the segments and the index
+     * @param maxSegmentSize the size in bytes after which a new segment is started
+     * @param durability {@link StorageWriter.Durability#PER_FILE} forces every record to
+     *                   disk; otherwise segments are forced when they are completed
+     * @throws IOException if the directory or the index cannot be created
+     */
+    public WarcWriter(Path archiveDir, long maxSegmentSize, StorageWriter.Durability durability) throws IOException {
+        this.archiveDir = archiveDir;
+        this.maxSegmentSize = maxSegmentSize;
+        this.durability = durability;
+        Files.createDirectories(archiveDir);
+        Path indexFile = archiveDir.resolve(INDEX_FILE);
+        boolean newIndex = !Files.exists(indexFile);
+        this.index = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (newIndex) {
+            index.write(CdxEntry.HEADER);
+            index.newLine();
+        }
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            this.sequence = (int) files.filter(WarcWriter::isSegment).count();
+        }
+    }
+
+    /**
+     * Creates a WarcWriter from the archive options of a crawl.
+     *
+     * @param config the crawl options
+     * @return the writer
+     * @throws IOException if the directory or the index cannot be created
+     */
+    public static WarcWriter create(CrawlerConfig config) throws IOException {
+        return new WarcWriter(config.getArchiveDir(), config.getMaxSegmentSize(), config.getDurability());
+    }
+
+    static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Appends a response and the request that asked for it to the archive, and indexes
+     * the response.
+     *
+     * @param url the requested URL
+     * @param requestHead the request line and headers, ending with an empty line
+     * @param responseHead the status line and headers of the response, ending with an empty line
+     * @param statusCode the status code of the response
+     * @param mimeType the declared media type of the body, or null if none was sent
+     * @param payloadDigest the digest of the body as {@code sha1:BASE32}
+     * @param payload the body; exactly {@code payloadLength} bytes are read from it
+     * @param payloadLength the length of the body
+     * @return the index entry of the response record
+     * @throws IOException if the record cannot be written or the body is shorter than declared
+     */
+    public CdxEntry writeResponse(String url, byte[] requestHead, byte[] responseHead, int statusCode, String mimeType,
+                                  String payloadDigest, InputStream payload, long payloadLength) throws IOException {
+        Instant now = Instant.now();
+        String responseId = recordId();
+        lock.lock();
+        try {
+            if (segment == null || segment.position() >= maxSegmentSize) {
+                rotate(now);
+            }
+            long offset = segment.position();
+            long length;
+            try {
+                writeRecord("WARC-Type: response\r\n"
+                        + "WARC-Record-ID: " + responseId + "\r\n"
+                        + "WARC-Date: " + WARC_DATE.format(now) + "\r\n"
+                        + "WARC-Target-URI: " + url + "\r\n"
+                        + "WARC-Payload-Digest: " + payloadDigest + "\r\n"
+                        + "Content-Type: application/http;msgtype=response\r\n", responseHead, payload, payloadLength);
+                length = segment.position() - offset;
+                writeRecord("WARC-Type: request\r\n"
+                        + "WARC-Record-ID: " + recordId() + "\r\n"
+                        + "WARC-Date: " + WARC_DATE.format(now) + "\r\n"
+                        + "WARC-Target-URI: " + url + "\r\n"
+                        + "WARC-Concurrent-To: " + responseId + "\r\n"
+                        + "Content-Type: application/http;msgtype=request\r\n", requestHead,
+                        InputStream.nullInputStream(), 0);
+            } catch (IOException e) {
+                // Drop the partial records, so that the segment stays a sequence of complete members
+                segment.truncate(offset);
+                segment.position(offset);
+                throw e;
+            }
+            if (durability == StorageWriter.Durability.PER_FILE) {
+                segment.force(false);
+            }
+            records.increment();
+
+            CdxEntry entry = new CdxEntry(CDX_DATE.format(now), url, mimeType, statusCode, payloadDigest,
+                    length, offset, segmentName);
+            index.write(entry.toLine());
+            index.newLine();
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Opens the body of a response written by this writer.
+     *
+     * @param entry the index entry of the response
+     * @return the stream of the body; the caller closes it
+     * @throws IOException if the record cannot be read
+     */
+    public InputStream openPayload(CdxEntry entry) throws IOException {
+        return WarcReader.openPayload(archiveDir.resolve(entry.getFileName()), entry.getOffset(), entry.getLength());
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public Path getArchiveDir() {
+        return archiveDir;
+    }
+
+    /**
+     * Completes the current segment and the index.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closeSegment();
+            index.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void rotate(Instant now) throws IOException {
+        closeSegment();
+        index.flush(); // The index never points into a segment that is not complete
+        segmentName = String.format("%s%s-%05d%s", SEGMENT_PREFIX, CDX_DATE.format(now), sequence++, SEGMENT_SUFFIX);
+        segment = FileChannel.open(archiveDir.resolve(segmentName), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        byte[] fields = ("software: BasicWebCrawler\r\n"
+                + "format: WARC File Format 1.1\r\n"
+                + "conformsTo: http://iipc.github.io/warc-specifications/specifications/warc-format/warc-1.1/\r\n")
+                .getBytes(StandardCharsets.UTF_8);
+        writeRecord("WARC-Type: warcinfo\r\n"
+                + "WARC-Record-ID: " + recordId() + "\r\n"
+                + "WARC-Date: " + WARC_DATE.format(now) + "\r\n"
+                + "WARC-Filename: " + segmentName + "\r\n"
+                + "Content-Type: application/warc-fields\r\n", fields, InputStream.nullInputStream(), 0);
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment != null) {
+            if (durability != StorageWriter.Durability.NONE) {
+                segment.force(false);
+            }
+            segment.close();
+            segment = null;
+        }
+    }
+
+    /**
+     * Writes one record as a gzip member at the end of the current segment.
+     */
+    private void writeRecord(String headers, byte[] head, InputStream payload, long payloadLength) throws IOException {
+        GZIPOutputStream out = new GZIPOutputStream(new UnclosedOutputStream(Channels.newOutputStream(segment)),
+                BUFFER_SIZE);
+        out.write(("WARC/1.1\r\n" + headers + "Content-Length: " + (head.length + payloadLength) + "\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8));
+        out.write(head);
+        long copied = payload.transferTo(out);
+        if (copied != payloadLength) {
+            throw new IOException("Body has " + copied + " bytes instead of " + payloadLength);
+        }
+        out.write("\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        out.close(); // Writes the trailer and releases the deflater, but keeps the segment open
+    }
+
+    private static String recordId() {
+        return "<urn:uuid:" + UUID.randomUUID() + ">";
+    }
+
+    /**
+     * Encodes a digest in the unpadded base 32 alphabet of RFC 4648, as used by
+     * {@code WARC-Payload-Digest}.
+     *
+     * @param digest the digest bytes
+     * @return the encoded digest
+     */
+    static String base32(byte[] digest) {
+        StringBuilder encoded = new StringBuilder((digest.length * 8 + 4) / 5);
+        int buffer = 0;
+        int bits = 0;
+        for (byte b : digest) {
+            buffer = (buffer << 8) | (b & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                encoded.append(BASE32[(buffer >> (bits - 5)) & 31]);
+                bits -= 5;
+            }
+        }
+        if (bits > 0) {
+            encoded.append(BASE32[(buffer << (5 - bits)) & 31]);
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * Passes writes through to the segment but does not close it.
+     */
+    private static class UnclosedOutputStream extends FilterOutputStream {
+        UnclosedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
@@ -1,32 +1,108 @@
 package io.muzoo.ssc;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 
 /**
  * The WebCrawler class is responsible for crawling a website starting from a base URL.
  * It downloads content, saves it to the output directory, and logs progress.
- * It supports both iterative and recursive approaches for counting and exploring links.
+ *
+ * By default the crawl is a single pass: the total reported to the progress tracker
+ * grows as new links are discovered. When exact totals are requested, every link is
+ * discovered first and the pages saved during discovery are reused by the crawl.
+ * The crawl runs sequentially or, when a concurrency above one is configured, on
+ * virtual threads that share the downloader. With an {@link AsyncHttpDownloader}, the
+ * requests are in flight on the non-blocking client instead, and threads are only used
+ * to parse the responses that arrived. A pipelined crawl runs fetching and parsing as
+ * separate {@link PipelineStage}s, with the storage writer as the store stage, so that the
+ * stages overlap and the busiest one shows in the metrics.
+ *
+ * Waiting URLs are held in a {@link Frontier} that spills to disk past a configured
+ * size and takes them depth first, breadth first or by score. With a checkpoint directory
+ * every claimed and finished URL is recorded in a {@link CrawlJournal}, so that an
+ * interrupted crawl can be resumed. A crawl can be limited to a link depth, and its
+ * budgets of requests, bytes and time stop it early: no further request is started,
+ * the pages in flight are finished, and the URLs still waiting stay in the journal.
+ * With politeness enabled, the URLs pass from the frontier through a {@link HostScheduler},
+ * which decides when each host may be fetched.
+ *
+ * With deduplication enabled, a {@link ContentDeduplicator} recognizes bodies already
+ * crawled under another URL; they are not parsed again, and their files become hard
+ * links to the first copy. Links found on pages of a large cluster of near-duplicates
+ * are crawled after all others.
+ *
+ * A crawl can be sharded over several processes, each owning a partition of the URLs:
+ * links owned by another shard are handed to it through a {@link ShardExchange}, and the
+ * shards stop together once none of them has work left.
  */
 public class WebCrawler {
     private static final Logger logger = LoggerFactory.getLogger(WebCrawler.class);
+    private static final long IDLE_POLL_MILLIS = 50;
 
     private final String baseUrl;
     private final String outputDir;
-    private final HttpDownloader downloader;
+    private final Downloader downloader;
+    private final AsyncHttpDownloader asyncDownloader;
     private final ProgressTracker progressTracker;
     private final UrlHandler urlHandler;
-    private final Set<String> visitedUrls = new HashSet<>();
+    private final CrawlerConfig config;
+    private final VisitedSet visitedUrls;
+    private final Map<String, DownloadResult> prefetchedPages = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> prefetchedLinks = new ConcurrentHashMap<>();
+    private final LinkExtractor linkExtractor;
+    private final CssLinkExtractor cssLinkExtractor = new CssLinkExtractor();
+    private final ResourceStats resourceStats = new ResourceStats();
+    private final CrawlMetrics metrics = new CrawlMetrics();
+    private final ContentDeduplicator deduplicator;
+    private final Set<String> nearDuplicatePages = ConcurrentHashMap.newKeySet();
+    private final PendingUrls pendingUrls;
+    private final LinkFilter linkFilter;
+    private final AtomicLong startedPages = new AtomicLong();
+    private long crawlStart;
+    private volatile boolean budgetExhausted;
+    private CrawlJournal journal; // Only set while a journaled crawl runs
+    private MetadataIndex metadataIndex; // Only set while a crawl with a metadata index runs
+    private HostScheduler scheduler; // Only set while a polite crawl runs
+    private ShardExchange exchange; // Only set while a sharded crawl runs
+    private boolean growTotal = true;
+
+    /**
+     * A downloaded page on its way from the fetch stage to the parse stage.
+     */
+    private static class FetchedPage {
+        final String cleanUrl;
+        final DownloadResult result;
+
+        FetchedPage(String cleanUrl, DownloadResult result) {
+            this.cleanUrl = cleanUrl;
+            this.result = result;
+        }
+
+        @Override
+        public String toString() {
+            return cleanUrl;
+        }
+    }
 
 
     /**
@@ -38,204 +114,1102 @@ public class WebCrawler {
      * @param progressTracker the tracker for monitoring progress
      * @param urlHandler the handler for cleaning URLs and generating file paths
      */
-    public WebCrawler(String baseUrl, String outputDir, HttpDownloader downloader, ProgressTracker progressTracker, UrlHandler urlHandler) {
+    public WebCrawler(String baseUrl, String outputDir, Downloader downloader, ProgressTracker progressTracker, UrlHandler urlHandler) {
+        this(baseUrl, outputDir, downloader, progressTracker, urlHandler, CrawlerConfig.defaults());
+    }
+
+    /**
+     * Constructor to initialize the WebCrawler with necessary dependencies and crawl options.
+     *
+     * @param baseUrl the starting URL for the crawler
+     * @param outputDir the directory to save downloaded content
+     * @param downloader the downloader for handling HTTP requests
+     * @param progressTracker the tracker for monitoring progress
+     * @param urlHandler the handler for cleaning URLs and generating file paths
+     * @param config the crawl options
+     */
+    public WebCrawler(String baseUrl, String outputDir, Downloader downloader, ProgressTracker progressTracker,
+                      UrlHandler urlHandler, CrawlerConfig config) {
+        this(baseUrl, outputDir, downloader, null, progressTracker, urlHandler, config);
+    }
+
+    /**
+     * Constructor to initialize the WebCrawler with a non-blocking downloader and crawl options.
+     *
+     * @param baseUrl the starting URL for the crawler
+     * @param outputDir the directory to save downloaded content
+     * @param asyncDownloader the non-blocking downloader for handling HTTP requests
+     * @param progressTracker the tracker for monitoring progress
+     * @param urlHandler the handler for cleaning URLs and generating file paths
+     * @param config the crawl options
+     */
+    public WebCrawler(String baseUrl, String outputDir, AsyncHttpDownloader asyncDownloader,
+                      ProgressTracker progressTracker, UrlHandler urlHandler, CrawlerConfig config) {
+        this(baseUrl, outputDir, null, asyncDownloader, progressTracker, urlHandler, config);
+    }
+
+    private WebCrawler(String baseUrl, String outputDir, Downloader downloader, AsyncHttpDownloader asyncDownloader,
+                       ProgressTracker progressTracker, UrlHandler urlHandler, CrawlerConfig config) {
         this.baseUrl = baseUrl;
         this.outputDir = outputDir;
         this.downloader = downloader;
+        this.asyncDownloader = asyncDownloader;
         this.progressTracker = progressTracker;
         this.urlHandler = urlHandler;
+        this.config = config;
+        this.visitedUrls = VisitedSet.create(config.getVisitedSetType());
+        this.linkExtractor = LinkExtractor.create(config.getLinkExtractorType());
+        this.deduplicator = config.isDeduplicate() || config.getNearDuplicateClusterSize() > 0
+                ? new ContentDeduplicator(downloader != null ? downloader.getStorageWriter() : null) : null;
+        this.pendingUrls = config.getFrontierType() == Frontier.Type.PRIORITY || config.getMaxDepth() < Integer.MAX_VALUE
+                ? new PendingUrls() : null;
+        this.linkFilter = config.isLinkFilter() ? new LinkFilter(config.getExpectedLinks(),
+                config.getLinkFilterFalsePositiveRate(), visitedUrls, config.getVisitedSetType()) : null;
+        if (linkFilter != null) {
+            metrics.attachLinkFilter(linkFilter);
+        }
     }
 
     /**
-     * Starts the crawling process, including pre-counting total links and iterating through them.
+     * Starts the crawling process. In exact-total mode the links are counted first.
+     * With a concurrency above one, pages are fetched in parallel on virtual threads.
+     *
+     * When a checkpoint directory is configured, the crawl is journaled there, and a
+     * resumed crawl continues from the journal instead of the base URL. A resumed crawl
+     * skips the counting pass and grows its total as new links are discovered.
      */
     public void startCrawling() throws IOException {
         logger.info("Starting the web crawler...");
+        crawlStart = System.nanoTime();
+        startedPages.set(0);
+        budgetExhausted = false;
 
-        try {
-            // Pre-count total unique links (optional, based on requirements)
-            logger.info("Counting total links...");
-            int totalLinks = countTotalLinks(baseUrl);
-            progressTracker.setTotalUrls(totalLinks);
-            logger.info("Total links to crawl: {}", totalLinks);
+        Path checkpointDir = config.getCheckpointDir();
+        try (CrawlJournal journal = checkpointDir != null
+                ? CrawlJournal.open(checkpointDir, config.isResume(), config.getCheckpointInterval()) : null;
+             Frontier frontier = Frontier.create(config,
+                     checkpointDir != null ? checkpointDir.resolve("frontier") : null, pendingUrls);
+             ShardExchange exchange = config.isSharded() ? ShardExchange.create(config) : null) {
+            this.journal = journal;
+            this.exchange = exchange;
+            if (config.getMetadataIndexFile() != null) {
+                metadataIndex = MetadataIndex.load(config.getMetadataIndexFile(), baseUrl);
+                logger.info("Loaded metadata of {} pages from the previous crawl", metadataIndex.previousSize());
+            }
+            if (config.isPoliteness()) {
+                // Every shard fetches from every host unless hosts are partitioned, so the rate is shared
+                double hostRate = exchange != null && exchange.getPartition() == ShardExchange.Partition.URL
+                        ? config.getHostRequestsPerSecond() / exchange.getShards() : config.getHostRequestsPerSecond();
+                scheduler = new HostScheduler(hostRate, config.getMaxHostConcurrency());
+                applyCrawlDelay();
+            }
+            boolean resumed = config.isResume() && journal != null && restore(frontier);
+            growTotal = resumed || !config.isExactTotal();
+
+            if (!resumed && config.isExactTotal()) {
+                logger.info("Counting total links...");
+                int totalLinks = countTotalLinks(baseUrl);
+                progressTracker.setTotalUrls(totalLinks);
+                logger.info("Total links to crawl: {}", totalLinks);
+            }
+            if (!resumed) {
+                discover(baseUrl, frontier, false, 0);
+            }
 
             // Start the crawling process
-            iterativeCrawl(baseUrl);
+            if (exchange != null) {
+                shardedCrawl(frontier);
+            } else if (asyncDownloader != null) {
+                asyncCrawl(frontier);
+            } else if (config.isPipelined()) {
+                pipelinedCrawl(frontier);
+            } else if (config.getConcurrency() > 1) {
+                concurrentCrawl(frontier);
+            } else {
+                iterativeCrawl(frontier);
+            }
+            if (budgetExhausted) {
+                logger.info("{} URLs were left waiting{}", waitingUrls(frontier),
+                        journal != null ? "; resume the crawl to fetch them" : "");
+            }
+            if (journal != null) {
+                journal.checkpoint(progressTracker);
+            }
+            if (exchange != null) {
+                finishShard();
+            }
+            if (metadataIndex != null) {
+                if (budgetExhausted) {
+                    metadataIndex.keepAllPrevious(); // The pages left waiting were not dropped from the site
+                }
+                metadataIndex.save();
+                logger.info("Saved metadata of {} pages; {} were not modified", metadataIndex.size(),
+                        metrics.getNotModified());
+            }
+            logger.info("Visited {} URLs using {} bytes per URL", visitedUrls.size(),
+                    String.format("%.1f", visitedUrls.bytesPerUrl()));
+            if (linkFilter != null) {
+                logger.info("Link filter dropped {} repeated links ({}% of those checked); {} false positives"
+                        + " ({}%) in {} KB", linkFilter.getHits(),
+                        String.format("%.1f", linkFilter.getHitRate() * 100), linkFilter.getFalsePositives(),
+                        String.format("%.2f", linkFilter.getFalsePositiveRate() * 100),
+                        linkFilter.memoryBytes() / 1024);
+            }
+            if (frontier.getSpilledUrls() > 0) {
+                logger.info("Frontier spilled {} URLs to disk", frontier.getSpilledUrls());
+            }
+            if (frontier instanceof PriorityFrontier priorityFrontier) {
+                logger.info("Priority frontier promoted {} URLs that were linked again",
+                        priorityFrontier.getPromotions());
+            }
+            if (scheduler != null && scheduler.getThrottledResponses() > 0) {
+                logger.info("Servers throttled {} requests; {} were retried later", scheduler.getThrottledResponses(),
+                        scheduler.getRetriedUrls());
+            }
+            logger.info("Responses by type: {}", resourceStats.summary());
+            logger.info("Stored without parsing: {} responses ({} KB)", resourceStats.getUnparsedResponses(),
+                    resourceStats.getUnparsedBytes() / 1024);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Crawling was interrupted");
         } catch (Exception e) {
             logger.error("Error during crawling: ", e);
+        } finally {
+            // Pages counted up front but never crawled, because a budget ran out or the crawl failed
+            prefetchedPages.clear();
+            prefetchedLinks.clear();
+            this.journal = null;
+            this.metadataIndex = null;
+            this.scheduler = null;
+            this.exchange = null;
         }
     }
 
     /**
-     * Iteratively crawls links using a stack-based approach.
+     * Rebuilds the visited set, the frontier and the progress counters from the journal.
+     * URLs that were claimed but never finished are queued again at the depth they were
+     * found at, and so are downloaded pages whose file is missing, which a queued write
+     * lost when the crawl stopped. Pages written to an archive or a pack store have no
+     * file of their own and are not checked. The metadata index keeps the entries of the
+     * downloaded pages, which this run does not fetch again.
      *
-     * @param startUrl the starting URL for the crawling process
+     * @param frontier the frontier to queue the unfinished URLs in
+     * @return true if the journal held a crawl to resume; false if it was empty
      */
-    private void iterativeCrawl(String startUrl) {
-        Stack<String> stack = new Stack<>();
-        stack.push(startUrl);
-
-        while (!stack.isEmpty()) {
-            String url = stack.pop();
-            String cleanUrl = urlHandler.cleanUrl(url);
+    private boolean restore(Frontier frontier) throws IOException {
+        Properties checkpoint = journal.getLastCheckpoint();
+        if (checkpoint != null) {
+            logger.info("Resuming from the checkpoint of {}: {} downloaded, {} failed",
+                    new Date(Long.parseLong(checkpoint.getProperty("timestamp", "0"))),
+                    checkpoint.getProperty("downloaded"), checkpoint.getProperty("failed"));
+        }
 
-            if (cleanUrl.isEmpty() || visitedUrls.contains(cleanUrl) || !cleanUrl.startsWith(baseUrl)) {
-                continue; // Skip invalid, already visited, or out-of-domain URLs
+        // The first pass collects the finished URLs, the second queues the others
+        VisitedSet finished = VisitedSet.create(config.getVisitedSetType());
+        long[] counts = new long[3];
+        journal.replay((entry, url, depth) -> {
+            if (entry == CrawlJournal.Entry.DOWNLOADED && config.getArchiveDir() == null && config.getPackDir() == null) {
+                Path target = targetFile(url);
+                if (target != null && !Files.exists(target)) {
+                    return;
+                }
+            }
+            if (entry != CrawlJournal.Entry.QUEUED && finished.add(url)) {
+                counts[entry == CrawlJournal.Entry.DOWNLOADED ? 1 : 2]++;
+                if (entry == CrawlJournal.Entry.DOWNLOADED && metadataIndex != null) {
+                    metadataIndex.keepPrevious(url); // Not fetched again, so this run would drop its entry
+                }
             }
+        });
+        journal.replay((entry, url, depth) -> {
+            if (entry == CrawlJournal.Entry.QUEUED && visitedUrls.add(url)) {
+                counts[0]++;
+                if (!finished.contains(url)) {
+                    if (pendingUrls != null) {
+                        pendingUrls.add(url, depth); // Keeps the depth limit and the order of the priority frontier
+                    }
+                    frontier.push(url);
+                    metrics.frontierPushed();
+                }
+            }
+        });
+        if (counts[0] == 0) {
+            logger.info("Nothing to resume; starting a new crawl");
+            return false;
+        }
+        progressTracker.restore(counts[0], counts[1], counts[2]);
+        logger.info("Resumed crawl: {} URLs discovered, {} finished, {} queued again",
+                counts[0], counts[1] + counts[2], frontier.size());
+        return true;
+    }
+
+    /**
+     * Iteratively crawls links in the order of the frontier. URLs are cleaned and
+     * de-duplicated when they are discovered, so every URL in the frontier is fetched once.
+     *
+     * @param frontier the frontier holding the URLs to crawl
+     */
+    private void iterativeCrawl(Frontier frontier) throws InterruptedException {
+        String cleanUrl;
+        while (!budgetExhausted() && (cleanUrl = takeUrl(frontier)) != null) {
+            startedPages.incrementAndGet();
+            metrics.frontierPopped();
+            crawlPage(cleanUrl, download(cleanUrl), frontier);
+        }
+    }
 
-            visitedUrls.add(cleanUrl);
+    /**
+     * Crawls links in parallel, one virtual thread per page, with at most
+     * {@link CrawlerConfig#getConcurrency()} pages in flight.
+     *
+     * The frontier is shared by the workers and {@code visitedUrls} is a thread-safe visited set,
+     * so a URL is claimed by whichever thread adds it to the set first. The crawl ends
+     * when no URL is waiting in the frontier or being processed by a worker; a worker
+     * adds the links it discovers before it stops counting as pending. A link can be
+     * crawled, and stop counting, before the worker that found it counted it, so the
+     * count may drop to zero while that worker runs, and the crawl also waits for the
+     * workers; see {@link #hasWork(Semaphore, AtomicLong)}. When a budget runs out, no
+     * further page is started and the workers still running are waited for.
+     *
+     * @param frontier the frontier holding the URLs to crawl
+     * @throws InterruptedException if the calling thread is interrupted while waiting for work
+     */
+    private void concurrentCrawl(Frontier frontier) throws InterruptedException {
+        AtomicLong pending = new AtomicLong(waitingUrls(frontier));
+        Semaphore inFlight = new Semaphore(config.getConcurrency());
 
-            // Download the content
-            String content;
-            try {
-                content = downloader.download(cleanUrl);
-                progressTracker.incrementDownloadedUrls(cleanUrl);
-            } catch (IOException e) {
-                logger.error("Failed to download: {}", cleanUrl, e);
-                continue;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (hasWork(inFlight, pending)) {
+                inFlight.acquire();
+                if (budgetExhausted()) {
+                    inFlight.release();
+                    break;
+                }
+                String cleanUrl = pollUrl(frontier);
+                if (cleanUrl == null) {
+                    inFlight.release();
+                    continue; // Workers are still running; check again for new links or termination
+                }
+                startedPages.incrementAndGet();
+                metrics.frontierPopped();
+
+                executor.execute(() -> {
+                    try {
+                        pending.addAndGet(crawlPage(cleanUrl, download(cleanUrl), frontier));
+                    } catch (RuntimeException e) {
+                        logger.error("Unexpected error while crawling: {}", cleanUrl, e);
+                    } finally {
+                        inFlight.release();
+                        pending.decrementAndGet();
+                    }
+                });
             }
+        }
+    }
 
-            // Save the content
-            String filePath = urlHandler.getFilePath(cleanUrl, outputDir);
-            if (!filePath.isEmpty()) {
-                try {
-                    downloader.saveToFile(content, filePath);
-                } catch (IOException e) {
-                    logger.error("Failed to save file: {}", filePath, e);
+    /**
+     * Crawls this shard's partition of the URLs like {@link #concurrentCrawl(Frontier)},
+     * taking in the URLs other shards hand over. Buffered links for other shards are
+     * handed over at least every idle poll interval. When no URL is pending here, the
+     * shard is idle, and the crawl ends once every shard is idle with no batch in flight.
+     *
+     * @param frontier the frontier holding the URLs to crawl
+     * @throws InterruptedException if the calling thread is interrupted while waiting for work
+     * @throws IOException if the exchange directory cannot be read or written
+     */
+    private void shardedCrawl(Frontier frontier) throws InterruptedException, IOException {
+        AtomicLong pending = new AtomicLong(waitingUrls(frontier));
+        Semaphore inFlight = new Semaphore(config.getConcurrency());
+        long nextExchange = 0;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (true) {
+                if (pending.get() == 0 || System.nanoTime() >= nextExchange) {
+                    exchange.flush();
+                    exchange.receive((url, depth) -> {
+                        if (discover(url, frontier, false, depth)) {
+                            pending.incrementAndGet();
+                        }
+                    });
+                    nextExchange = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_POLL_MILLIS);
+                }
+                if (!hasWork(inFlight, pending)) {
+                    exchange.idle();
+                    if (exchange.isFinished()) {
+                        break;
+                    }
+                    Thread.sleep(IDLE_POLL_MILLIS);
                     continue;
                 }
+                inFlight.acquire();
+                String cleanUrl = pollUrl(frontier);
+                if (cleanUrl == null) {
+                    inFlight.release();
+                    continue; // Workers are still running; check again for new links or termination
+                }
+                startedPages.incrementAndGet();
+                metrics.frontierPopped();
+
+                executor.execute(() -> {
+                    try {
+                        pending.addAndGet(crawlPage(cleanUrl, download(cleanUrl), frontier));
+                    } catch (RuntimeException e) {
+                        logger.error("Unexpected error while crawling: {}", cleanUrl, e);
+                    } finally {
+                        inFlight.release();
+                        pending.decrementAndGet();
+                    }
+                });
             }
+        }
+    }
 
-            // Parse and add additional links to the stack
-            try {
-                Document doc = Jsoup.parse(content, cleanUrl);
-                Elements links = doc.select("a[href], img[src], link[href], script[src], iframe[src]");
-                for (Element link : links) {
-                    String nextUrl = link.absUrl("href");
-                    if (nextUrl.isEmpty()) {
-                        nextUrl = link.absUrl("src");
+    /**
+     * Checks whether a URL is waiting in the frontier or a worker is still running.
+     * Workers add the links they discovered to the pending count before they release
+     * their permit, so the permits are read first: once every permit is back, the
+     * pending count read after them holds every link pushed by the finished workers.
+     * Read the other way round, a worker could count its links and release its permit
+     * between the two reads, and the crawl would stop with those links in the frontier.
+     *
+     * @param inFlight the permits of the running workers
+     * @param pending the number of URLs waiting in the frontier or being crawled
+     * @return true if the crawl must go on
+     */
+    private boolean hasWork(Semaphore inFlight, AtomicLong pending) {
+        return inFlight.availablePermits() < config.getConcurrency() || pending.get() > 0;
+    }
+
+    /**
+     * Leaves this shard's report in the exchange directory, and logs the merged report
+     * once the first shard has written it.
+     */
+    private void finishShard() throws IOException, InterruptedException {
+        Properties report = new Properties();
+        report.setProperty("downloaded", String.valueOf(progressTracker.getDownloadedUrls()));
+        report.setProperty("failed", String.valueOf(progressTracker.getFailedUrls()));
+        report.setProperty("responses", String.valueOf(metrics.getResponses()));
+        report.setProperty("bytesIn", String.valueOf(metrics.getBytesIn()));
+        report.setProperty("elapsedMillis", String.valueOf(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - crawlStart)));
+        logger.info("Shard {} of {} handed {} URLs to other shards in {} batches and received {}",
+                exchange.getShard(), exchange.getShards(), exchange.getForwardedUrls(), exchange.getSentBatches(),
+                exchange.getReceivedUrls());
+        Path merged = exchange.finish(report);
+        if (merged != null) {
+            logger.info("Crawl report of all shards: {}", merged);
+        }
+    }
+
+    /**
+     * Crawls links through a fetch stage and a parse stage connected by a bounded queue.
+     * The calling thread moves URLs from the frontier into the fetch stage, whose
+     * {@link CrawlerConfig#getConcurrency()} virtual threads download the pages and queue
+     * them for the parse stage's platform threads, which discover the links.
+     *
+     * Every queue is bounded, so a slow parse stage blocks the fetchers, and blocked
+     * fetchers stop the calling thread from taking more URLs out of the frontier. The
+     * crawl ends when no URL is waiting in the frontier or travelling through the stages.
+     * The pages in the stages are counted apart, because a page may count its links only
+     * after one of them was crawled, and that count is read first, as in
+     * {@link #hasWork(Semaphore, AtomicLong)}. The stages are closed only after they have
+     * finished every queued page.
+     *
+     * @param frontier the frontier holding the URLs to crawl
+     * @throws InterruptedException if the calling thread is interrupted while waiting for work
+     */
+    private void pipelinedCrawl(Frontier frontier) throws InterruptedException {
+        AtomicLong pending = new AtomicLong(waitingUrls(frontier));
+        AtomicLong inStages = new AtomicLong(); // Pages between being polled and having their links counted
+        int queueCapacity = config.getStageQueueCapacity();
+
+        try (PipelineStage<FetchedPage> parse = new PipelineStage<FetchedPage>("parse", config.getParseThreads(),
+                queueCapacity, false, page -> {
+                    try {
+                        pending.addAndGet(crawlPage(page.cleanUrl, page.result, frontier));
+                    } finally {
+                        inStages.decrementAndGet();
+                        pending.decrementAndGet();
                     }
-                    if (!nextUrl.isEmpty() && isValidUrl(nextUrl)) {
-                        stack.push(nextUrl); // Add to stack for iterative crawling
+                }).start();
+             PipelineStage<String> fetch = new PipelineStage<String>("fetch", config.getConcurrency(), queueCapacity,
+                     true, cleanUrl -> {
+                         DownloadResult result = null;
+                         try {
+                             result = download(cleanUrl);
+                         } catch (RuntimeException e) {
+                             logger.error("Unexpected error while fetching: {}", cleanUrl, e);
+                         }
+                         parse.submit(new FetchedPage(cleanUrl, result));
+                     }).start()) {
+            metrics.attachStages(fetch, parse);
+            while ((inStages.get() > 0 || pending.get() > 0) && !budgetExhausted()) {
+                String cleanUrl = pollUrl(frontier);
+                if (cleanUrl == null) {
+                    continue; // Pages are still in the stages; check again for new links or termination
+                }
+                startedPages.incrementAndGet();
+                metrics.frontierPopped();
+                inStages.incrementAndGet();
+                fetch.submit(cleanUrl);
+            }
+        } finally {
+            logger.info("Pipeline stages: {}", metrics.stageSummary());
+        }
+    }
+
+    /**
+     * Crawls links with the non-blocking downloader, keeping at most
+     * {@link CrawlerConfig#getConcurrency()} pages between being polled from the frontier
+     * and having their links discovered.
+     *
+     * The calling thread only starts requests. Responses are written to disk by the I/O
+     * reactor, then parsed on a virtual thread, which queues the links it found and frees
+     * the permit. While every permit is taken, no URL leaves the frontier, so a slow parse
+     * or a slow server holds back new requests instead of letting responses pile up.
+     *
+     * @param frontier the frontier holding the URLs to crawl
+     * @throws InterruptedException if the calling thread is interrupted while waiting for work
+     */
+    private void asyncCrawl(Frontier frontier) throws InterruptedException {
+        AtomicLong pending = new AtomicLong(waitingUrls(frontier));
+        Semaphore inFlight = new Semaphore(config.getConcurrency());
+
+        try (ExecutorService parsers = Executors.newVirtualThreadPerTaskExecutor()) {
+            while (hasWork(inFlight, pending)) {
+                inFlight.acquire();
+                if (budgetExhausted()) {
+                    inFlight.release();
+                    break;
+                }
+                String cleanUrl = pollUrl(frontier);
+                if (cleanUrl == null) {
+                    inFlight.release();
+                    continue; // Requests are still in flight; check again for new links or termination
+                }
+                startedPages.incrementAndGet();
+                metrics.frontierPopped();
+
+                DownloadResult prefetched = prefetchedPages.remove(cleanUrl);
+                CompletableFuture<DownloadResult> download = prefetched != null
+                        ? CompletableFuture.completedFuture(prefetched) : fetchAsync(cleanUrl);
+                download.whenCompleteAsync((result, error) -> {
+                    try {
+                        pending.addAndGet(crawlPage(cleanUrl, result, frontier));
+                    } catch (RuntimeException e) {
+                        logger.error("Unexpected error while crawling: {}", cleanUrl, e);
+                    } finally {
+                        inFlight.release();
+                        pending.decrementAndGet();
                     }
+                }, parsers);
+            }
+        }
+    }
+
+    /**
+     * Marks a page as finished in the journal, after the links found on it were journaled,
+     * and writes a checkpoint if one is due.
+     *
+     * @param cleanUrl the cleaned URL of the page
+     * @param downloaded whether the page was downloaded
+     */
+    private void finish(String cleanUrl, boolean downloaded) {
+        if (journal == null) {
+            return;
+        }
+        journal.append(downloaded ? CrawlJournal.Entry.DOWNLOADED : CrawlJournal.Entry.FAILED, cleanUrl);
+        journal.checkpointIfDue(progressTracker);
+    }
+
+    /**
+     * Downloads and saves a single page, unless the counting pass already fetched it.
+     *
+     * @param cleanUrl the cleaned URL of the page
+     * @return the downloaded response, or null if the page could not be downloaded
+     */
+    private DownloadResult download(String cleanUrl) {
+        DownloadResult result = prefetchedPages.remove(cleanUrl);
+        return result != null ? result : fetch(cleanUrl);
+    }
+
+    /**
+     * Finishes a fetched page. Unless the scheduler queued it again to be retried, the
+     * page is counted and parsed, the links found on it are discovered, and it is marked
+     * as finished in the journal. The links of a page in a large near-duplicate cluster
+     * are deferred, and those of a page at the maximum depth are not followed. Either
+     * way, the body of the response is released.
+     *
+     * @param cleanUrl the cleaned URL of the page
+     * @param result the downloaded response, or null if the page could not be downloaded
+     * @param frontier the frontier to add the new links to
+     * @return the number of URLs that became pending: the new links, or one if the page was queued again
+     */
+    private int crawlPage(String cleanUrl, DownloadResult result, Frontier frontier) {
+        List<String> links;
+        try {
+            if (scheduler != null && scheduler.complete(cleanUrl, result)) {
+                metrics.frontierPushed();
+                return 1;
+            }
+            links = processPage(cleanUrl, result);
+        } finally {
+            if (result != null) {
+                result.release(); // The body was stored and parsed; its buffer can be reused
+            }
+        }
+        boolean deferred = links != null && !nearDuplicatePages.isEmpty() && nearDuplicatePages.remove(result.getUrl());
+        int depth = pendingUrls != null ? Math.max(pendingUrls.depthOf(cleanUrl), 0) + 1 : 0;
+        int discovered = 0;
+        if (links != null) {
+            for (String nextUrl : links) {
+                if (discover(nextUrl, frontier, deferred, depth)) {
+                    discovered++;
                 }
-            } catch (Exception e) {
-                logger.error("Failed to parse content from URL: {}", cleanUrl, e);
             }
         }
+        if (pendingUrls != null) {
+            pendingUrls.remove(cleanUrl);
+        }
+        finish(cleanUrl, links != null);
+        return discovered;
+    }
+
+    /**
+     * Takes the next URL to fetch, waiting up to the idle poll interval. With a scheduler,
+     * the waiting URLs of the frontier are moved to the per-host queues first, and the URL
+     * of a host that may be fetched now is returned.
+     *
+     * @param frontier the frontier holding the URLs to crawl
+     * @return the URL, or null if none is ready yet
+     */
+    private String pollUrl(Frontier frontier) throws InterruptedException {
+        if (scheduler == null) {
+            return frontier.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        String prefetched = fillScheduler(frontier::poll);
+        return prefetched != null ? prefetched : scheduler.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the next URL to fetch in a sequential crawl, waiting for its host if needed.
+     *
+     * @param frontier the frontier holding the URLs to crawl
+     * @return the URL, or null if no URL is left
+     */
+    private String takeUrl(Frontier frontier) throws InterruptedException {
+        return takeUrl(frontier::poll);
+    }
+
+    /**
+     * Takes the next URL to fetch from the given source of waiting URLs, waiting for its
+     * host if needed.
+     *
+     * @param waitingUrls returns the next waiting URL, or null if none is left
+     * @return the URL, or null if no URL is left
+     */
+    private String takeUrl(Supplier<String> waitingUrls) throws InterruptedException {
+        if (scheduler == null) {
+            return waitingUrls.get();
+        }
+        String cleanUrl = null;
+        while (cleanUrl == null) {
+            String prefetched = fillScheduler(waitingUrls);
+            if (prefetched != null) {
+                return prefetched;
+            }
+            if (scheduler.isEmpty()) {
+                return null;
+            }
+            cleanUrl = scheduler.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        return cleanUrl;
+    }
+
+    /**
+     * Moves waiting URLs to the scheduler while the scheduler holds fewer than the
+     * frontier's memory limit, so that the spilled part of the frontier stays on disk.
+     * A page the counting pass already fetched needs no request, so it is not paced again
+     * and is returned at once.
+     *
+     * @return the first waiting URL the counting pass fetched, or null if none was taken
+     */
+    private String fillScheduler(Supplier<String> waitingUrls) {
+        String cleanUrl;
+        while (scheduler.size() < config.getFrontierMemoryLimit() && (cleanUrl = waitingUrls.get()) != null) {
+            if (prefetchedPages.containsKey(cleanUrl)) {
+                return cleanUrl;
+            }
+            scheduler.add(cleanUrl);
+        }
+        return null;
+    }
+
+    private long waitingUrls(Frontier frontier) {
+        return frontier.size() + (scheduler != null ? scheduler.size() : 0);
+    }
+
+    /**
+     * Checks the budgets of the crawl before another page is started, and logs the first
+     * one that runs out.
+     *
+     * @return true if no further request may be started
+     */
+    private boolean budgetExhausted() {
+        if (budgetExhausted) {
+            return true;
+        }
+        String budget = null;
+        if (startedPages.get() >= config.getMaxPages()) {
+            budget = config.getMaxPages() + " pages";
+        } else if (metrics.getBytesIn() >= config.getMaxBytes()) {
+            budget = config.getMaxBytes() / 1024 + " KB";
+        } else if (config.getMaxDuration() != null
+                && System.nanoTime() - crawlStart >= config.getMaxDuration().toNanos()) {
+            budget = config.getMaxDuration().toSeconds() + " s";
+        }
+        if (budget == null) {
+            return false;
+        }
+        budgetExhausted = true;
+        logger.info("Crawl budget of {} reached; finishing the pages in flight", budget);
+        return true;
+    }
+
+    /**
+     * Reads the robots.txt of the base URL's host and makes the scheduler honor its
+     * {@code Crawl-delay}. A missing or unreadable robots.txt sets no delay.
+     */
+    private void applyCrawlDelay() {
+        String host = HostScheduler.hostOf(baseUrl);
+        String robotsUrl = baseUrl.substring(0, baseUrl.indexOf(host) + host.length()) + "/robots.txt";
+        Path robotsFile = null;
+        try {
+            robotsFile = Files.createTempFile("robots", ".txt");
+            DownloadResult result = asyncDownloader != null
+                    ? asyncDownloader.download(robotsUrl, robotsFile, null).join()
+                    : downloader.download(robotsUrl, robotsFile);
+            String robots = null;
+            try {
+                if (result.getStatusCode() == 200) {
+                    try (InputStream in = result.openBody()) { // The file may still be queued for writing
+                        robots = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                    }
+                }
+            } finally {
+                result.release();
+            }
+            if (robots != null) {
+                Duration crawlDelay = HostScheduler.parseCrawlDelay(robots);
+                if (crawlDelay != null) {
+                    scheduler.setCrawlDelay(host, crawlDelay);
+                    logger.info("Waiting {} ms between requests to {}, as asked by its robots.txt",
+                            crawlDelay.toMillis(), host);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to read {}: {}", robotsUrl, e.getMessage());
+        } finally {
+            if (robotsFile != null) {
+                try {
+                    Files.deleteIfExists(robotsFile);
+                } catch (IOException e) {
+                    logger.debug("Failed to delete {}", robotsFile, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts a fetched page and parses it, unless the counting pass already did. A page
+     * the server still throttled after the scheduler's last retry counts as failed.
+     *
+     * @param cleanUrl the cleaned URL of the page
+     * @param result the downloaded response, or null if the page could not be downloaded
+     * @return the links found on the page, or null if the page could not be downloaded
+     */
+    private List<String> processPage(String cleanUrl, DownloadResult result) {
+        if (result == null || result.isThrottled()) {
+            progressTracker.incrementFailedUrls(cleanUrl);
+            return null;
+        }
+        progressTracker.incrementDownloadedUrls(cleanUrl);
+
+        List<String> links = prefetchedLinks.remove(cleanUrl);
+        if (links != null) {
+            return links;
+        }
+        // Parse the additional links; only pages and style sheets can contain any
+        return extractLinksByType(result);
+    }
+
+    /**
+     * Streams the page at the given URL into its file under the output directory.
+     *
+     * @param cleanUrl the cleaned URL of the page
+     * @return the downloaded response, or null if the page could not be downloaded
+     */
+    private DownloadResult fetch(String cleanUrl) {
+        if (asyncDownloader != null) {
+            return fetchAsync(cleanUrl).join();
+        }
+        Path target = targetFile(cleanUrl);
+        if (target == null) {
+            return null;
+        }
+        PageMetadata previous = metadataIndex != null ? metadataIndex.getPrevious(cleanUrl) : null;
+        try {
+            return recordResponse(previous != null
+                    ? downloader.download(cleanUrl, target, previous)
+                    : downloader.download(cleanUrl, target));
+        } catch (IOException e) {
+            return recordFailure(cleanUrl, e);
+        }
+    }
+
+    /**
+     * Starts streaming the page at the given URL into its file with the non-blocking downloader.
+     *
+     * @param cleanUrl the cleaned URL of the page
+     * @return the future downloaded response, completed with null if the page could not be downloaded
+     */
+    private CompletableFuture<DownloadResult> fetchAsync(String cleanUrl) {
+        Path target = targetFile(cleanUrl);
+        if (target == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        PageMetadata previous = metadataIndex != null ? metadataIndex.getPrevious(cleanUrl) : null;
+        return asyncDownloader.download(cleanUrl, target, previous).handle((result, error) -> {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            return error == null ? recordResponse(result) : recordFailure(cleanUrl, error);
+        });
+    }
+
+    private Path targetFile(String cleanUrl) {
+        String filePath = urlHandler.getFilePath(cleanUrl, outputDir);
+        if (filePath.isEmpty()) {
+            logger.error("No file path for URL: {}", cleanUrl);
+            return null;
+        }
+        return Paths.get(filePath);
+    }
+
+    private DownloadResult recordResponse(DownloadResult result) {
+        if (!result.isNotModified() && !result.isThrottled()) {
+            resourceStats.record(result);
+        }
+        metrics.recordResponse(result);
+        return result;
+    }
+
+    private DownloadResult recordFailure(String cleanUrl, Throwable error) {
+        if (error instanceof BodyTooLargeException) {
+            logger.warn("Skipped oversized response: {}", error.getMessage());
+            resourceStats.recordOversized();
+        } else {
+            logger.error("Failed to download: {}", cleanUrl, error);
+        }
+        metrics.recordFailure();
+        return null;
     }
 
     /**
      * Counts the total number of unique links accessible from the given starting URL.
+     * The pages are saved and parsed as they are downloaded, and the links found on them
+     * are kept, so the crawl neither fetches nor parses them again. Their bodies are
+     * released at once, so the pass holds no buffer per page. With a scheduler, the
+     * requests are paced like those of a sequential crawl, and a page that is still
+     * throttled after its last retry is left for the crawl to fetch again.
      *
      * @param url The starting URL to begin counting links.
      * @return The total number of unique links discovered.
-     * @throws IOException If there is an issue downloading or parsing the content.
+     * @throws InterruptedException if the calling thread is interrupted while waiting for a host
      */
-    private int countTotalLinks(String url) throws IOException {
-        Set<String> allLinks = new HashSet<>();
-        exploreLinks(url, allLinks);
-        return allLinks.size();
+    private int countTotalLinks(String url) throws InterruptedException {
+        VisitedSet allLinks = VisitedSet.create(config.getVisitedSetType());
+        Deque<String> frontier = new ArrayDeque<>();
+        String startUrl = claim(url, allLinks);
+        if (startUrl == null) {
+            return 0;
+        }
+        frontier.push(startUrl);
+
+        String cleanUrl;
+        while ((cleanUrl = takeUrl(frontier::poll)) != null) {
+            DownloadResult result = fetch(cleanUrl);
+            if (scheduler != null && scheduler.complete(cleanUrl, result)) {
+                continue; // Queued again to be retried
+            }
+            if (result == null || result.isThrottled()) {
+                continue;
+            }
+            List<String> links = extractLinksByType(result);
+            result.release(); // Only the description and the links are kept until the crawl gets here
+            prefetchedPages.put(cleanUrl, result.withoutBody());
+            prefetchedLinks.put(cleanUrl, links);
+            for (String nextUrl : links) {
+                String nextCleanUrl = claim(nextUrl, allLinks);
+                if (nextCleanUrl != null) {
+                    frontier.push(nextCleanUrl);
+                }
+            }
+        }
+        return (int) allLinks.size();
     }
 
     /**
-     * Recursively explores links from the given URL, adds unique links to the set,
-     * and continues exploration for unvisited links.
+     * Adds a newly discovered URL to the frontier, journals it, counts it in the frontier
+     * depth and, unless the total was counted up front, grows the total reported by the
+     * progress tracker. A URL beyond the maximum depth is not claimed, so that a shorter
+     * path found later can still add it; another link to a URL already seen is passed on
+     * to the frontier, which may rank the URL by its links. With a link filter, a link
+     * seen before in the same form is dropped before it is cleaned. In a sharded crawl, a
+     * URL owned by another shard is handed over to it instead.
      *
-     * @param url The URL to explore.
-     * @param allLinks A set containing all the unique links discovered so far.
-     * @throws IOException If there is an issue downloading or parsing the content.
+     * @param deferred whether the URL is added with the lowest priority
+     * @param depth the number of links between the base URL and this one
+     * @return true if the URL was new and added to the frontier
      */
-    private void exploreLinks(String url, Set<String> allLinks) throws IOException {
+    private boolean discover(String url, Frontier frontier, boolean deferred, int depth) {
+        if (depth > config.getMaxDepth()) {
+            return false;
+        }
+        if (linkFilter != null && linkFilter.seen(url)) {
+            return false;
+        }
         String cleanUrl = urlHandler.cleanUrl(url);
-        if (cleanUrl.isEmpty() || allLinks.contains(cleanUrl) || !cleanUrl.startsWith(baseUrl)) {
-            return;
+        if (cleanUrl.isEmpty() || !cleanUrl.startsWith(baseUrl)) {
+            if (linkFilter != null) {
+                linkFilter.record(url, false);
+            }
+            return false;
+        }
+        if (exchange != null && !exchange.owns(cleanUrl)) {
+            // Claimed here too, so that each shard hands a URL over only once
+            if (visitedUrls.add(cleanUrl)) {
+                exchange.forward(cleanUrl, depth);
+            }
+            if (linkFilter != null) {
+                linkFilter.record(url, url.equals(cleanUrl));
+            }
+            return false;
+        }
+        boolean added = visitedUrls.add(cleanUrl);
+        if (linkFilter != null) {
+            linkFilter.record(url, url.equals(cleanUrl)); // After the claim, so that it can be confirmed
+        }
+        if (!added) {
+            frontier.linkedAgain(cleanUrl);
+            return false;
+        }
+        if (journal != null) {
+            journal.appendQueued(cleanUrl, depth);
+        }
+        if (pendingUrls != null) {
+            pendingUrls.add(cleanUrl, depth);
+        }
+        if (deferred) {
+            frontier.defer(cleanUrl);
+            metrics.recordDeferredLink();
+        } else if (scheduler != null && config.getFrontierType() != Frontier.Type.PRIORITY
+                && scheduler.size() < config.getFrontierMemoryLimit() && !prefetchedPages.containsKey(cleanUrl)) {
+            scheduler.add(cleanUrl);
+        } else {
+            frontier.push(cleanUrl);
+        }
+        metrics.frontierPushed();
+        if (growTotal) {
+            progressTracker.incrementDiscoveredUrls();
+        }
+        return true;
+    }
+
+    /**
+     * Cleans and validates the URL in one pass and claims it in the given set if it is
+     * in scope and has not been seen.
+     *
+     * @return the cleaned URL, or null if it is invalid, out of scope or already seen
+     */
+    private String claim(String url, VisitedSet seen) {
+        String cleanUrl = urlHandler.cleanUrl(url);
+        if (cleanUrl.isEmpty() || !cleanUrl.startsWith(baseUrl) || !seen.add(cleanUrl)) {
+            return null; // Skip invalid, already seen, or out-of-domain URLs
+        }
+        return cleanUrl;
+    }
+
+    /**
+     * Routes the downloaded response by its type: HTML goes through the HTML parser,
+     * CSS through the {@code url(...)} scanner, and other types are not parsed at all.
+     * The time spent parsing is recorded in the parse latency histogram. A page the
+     * server reported as not modified is not parsed either; the links stored for it
+     * by the previous crawl are returned instead, and neither is a duplicate of a body
+     * that was parsed already.
+     *
+     * @param result the downloaded response
+     * @return the links found in the response
+     */
+    private List<String> extractLinksByType(DownloadResult result) {
+        if (result.isNotModified()) {
+            return reuseLinks(result);
+        }
+        List<String> links;
+        long parseStart = System.nanoTime();
+        if (config.isDeduplicate() && isDuplicate(result)) {
+            links = Collections.emptyList(); // The links were found on the first copy
+        } else {
+            switch (result.getResourceType()) {
+                case HTML:
+                    links = extractLinks(result);
+                    metrics.recordParse(System.nanoTime() - parseStart);
+                    break;
+                case CSS:
+                    links = extractCssLinks(result);
+                    metrics.recordParse(System.nanoTime() - parseStart);
+                    break;
+                default:
+                    links = Collections.emptyList();
+                    break;
+            }
+        }
+        if (metadataIndex != null && result.getStatusCode() == 200) {
+            metadataIndex.put(result.getUrl(), new PageMetadata(result.getEtag(), result.getLastModified(),
+                    result.getContentHash(), result.getContentLength(), result.getMimeType(),
+                    result.getCharset() != null ? result.getCharset().name() : null, inScopeLinks(links)));
+        }
+        return links;
+    }
+
+    /**
+     * Checks whether the body of a response was already crawled under another URL. The
+     * file of a duplicate is replaced with a hard link to the first copy; if the storage
+     * writer has yet to write the file, that happens after the write.
+     *
+     * @param result the downloaded response
+     * @return true if the body is a duplicate
+     */
+    private boolean isDuplicate(DownloadResult result) {
+        Path firstCopy = deduplicator.firstCopyOf(result);
+        if (firstCopy == null) {
+            return false;
+        }
+        metrics.recordDuplicate(result.getResourceType().isParsed());
+        logger.debug("{} has the same content as {}", result.getUrl(), firstCopy);
+        Path copy = result.getPath();
+        long length = result.getContentLength();
+        Runnable link = () -> {
+            if (deduplicator.link(copy, firstCopy)) {
+                metrics.recordDuplicateLinked(length);
+            }
+        };
+        StorageWriter storage = downloader != null ? downloader.getStorageWriter() : null;
+        if (storage != null) {
+            storage.whenWritten(copy, link);
+        } else {
+            link.run();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the links stored for a page that the server reported as not modified, and
+     * carries its metadata over to the index of this crawl.
+     *
+     * @param result the 304 response
+     * @return the links found on the page by the previous crawl
+     */
+    private List<String> reuseLinks(DownloadResult result) {
+        PageMetadata previous = metadataIndex.getPrevious(result.getUrl());
+        metadataIndex.put(result.getUrl(), new PageMetadata(result.getEtag(), result.getLastModified(),
+                previous.getContentHash(), previous.getSize(), previous.getMimeType(), previous.getCharset(),
+                previous.getOutlinks()));
+        return previous.getOutlinks();
+    }
+
+    /**
+     * Cleans the links and keeps the distinct ones in scope, which are all the next crawl
+     * needs if the page does not change.
+     */
+    private List<String> inScopeLinks(List<String> links) {
+        Set<String> inScope = new LinkedHashSet<>();
+        for (String link : links) {
+            String cleanUrl = urlHandler.cleanUrl(link);
+            if (!cleanUrl.isEmpty() && cleanUrl.startsWith(baseUrl)) {
+                inScope.add(cleanUrl);
+            }
         }
-        allLinks.add(cleanUrl);
+        return new ArrayList<>(inScope);
+    }
 
-        // Download and parse the content
+    /**
+     * Scans the downloaded style sheet for referenced resources.
+     *
+     * @param styleSheet the downloaded style sheet
+     * @return the links found in the style sheet
+     */
+    private List<String> extractCssLinks(DownloadResult styleSheet) {
+        List<String> result = new ArrayList<>();
         try {
-            String content = downloader.download(cleanUrl);
-            Document doc = Jsoup.parse(content, cleanUrl);
-            Elements links = doc.select("a[href], img[src], link[href], script[src], iframe[src]");
-            for (Element link : links) {
-                String nextUrl = link.absUrl("href");
-                if (nextUrl.isEmpty()) {
-                    nextUrl = link.absUrl("src");
-                }
-                if (!nextUrl.isEmpty() && isValidUrl(nextUrl)) {
-                    exploreLinks(nextUrl, allLinks);
-                }
+            Charset charset = styleSheet.getCharset() != null ? styleSheet.getCharset() : StandardCharsets.UTF_8;
+            String css;
+            try (InputStream in = styleSheet.openBody()) {
+                css = new String(in.readAllBytes(), charset);
             }
+            result.addAll(cssLinkExtractor.extractLinks(css, styleSheet.getUrl()));
         } catch (IOException e) {
-            logger.error("Failed to explore links from URL: {}", cleanUrl, e);
-        }
-    }
-
-
-//    /**
-//     * Counts the total number of unique links starting from the base URL.
-//     *
-//     * @param url the URL to start counting links from
-//     * @return the total number of unique links
-//     * @throws IOException if an error occurs during the counting process
-//     */
-//    private int countTotalLinks(String url) throws IOException {
-//        Set<String> allLinks = Collections.synchronizedSet(new HashSet<>());
-//        Queue<String> queue = new LinkedList<>();
-//        queue.add(url);
-//
-//        while (!queue.isEmpty()) {
-//            String currentUrl = queue.poll();
-//            if (currentUrl == null || allLinks.contains(currentUrl)) {
-//                continue; // Skip null or already visited links
-//            }
-//            allLinks.add(currentUrl);
-//
-//            // Explore links for the current URL
-//            try {
-//                exploreLinks(currentUrl, allLinks, queue);
-//            } catch (IOException e) {
-//                logger.error("Failed to explore links from URL: {}", currentUrl, e);
-//            }
-//        }
-//        return allLinks.size();
-//    }
-//
-//    /**
-//     * Explores additional links from the given URL and adds them to the queue.
-//     *
-//     * @param url the URL to explore links from
-//     * @param allLinks the set of all discovered links
-//     * @param queue the queue to store links for further exploration
-//     * @throws IOException if an error occurs while downloading or parsing the content
-//     */
-//    private void exploreLinks(String url, Set<String> allLinks, Queue<String> queue) throws IOException {
-//        String cleanUrl = urlHandler.cleanUrl(url);
-//        if (cleanUrl.isEmpty() || allLinks.contains(cleanUrl) || !cleanUrl.startsWith(baseUrl)) {
-//            return;
-//        }
-//
-//        String content;
-//        try {
-//            content = downloader.download(cleanUrl);
-//        } catch (IOException e) {
-//            logger.error("Failed to download URL: {}", cleanUrl, e);
-//            return;
-//        }
-//
-//        Document doc = Jsoup.parse(content, cleanUrl);
-//        Elements links = doc.select("a[href], img[src], link[href], script[src], iframe[src]");
-//        for (Element link : links) {
-//            String nextUrl = link.absUrl("href");
-//            if (nextUrl.isEmpty()) {
-//                nextUrl = link.absUrl("src");
-//            }
-//            if (!nextUrl.isEmpty() && isValidUrl(nextUrl) && !allLinks.contains(nextUrl)) {
-//                queue.add(nextUrl);
-//            }
-//        }
-//    }
+            logger.error("Failed to parse style sheet from URL: {}", styleSheet.getUrl(), e);
+        }
+        return result;
+    }
+
+    /**
+     * Parses the downloaded page and returns the absolute URLs of all links it references.
+     * The page is streamed through the configured {@link LinkExtractor} and decoded
+     * with the charset the server declared or, failing that, the one declared in the page itself.
+     * When near-duplicates are looked for, the SimHash of the page is computed on the way.
+     *
+     * @param page the downloaded HTML page
+     * @return the links found on the page
+     */
+    private List<String> extractLinks(DownloadResult page) {
+        List<String> result = new ArrayList<>();
+        SimHash simHash = config.getNearDuplicateClusterSize() > 0 ? new SimHash() : null;
+        try (InputStream in = simHash != null ? simHash.tap(page.openBody()) : page.openBody()) {
+            linkExtractor.extractLinks(in, page.getCharset(), page.getUrl(), result::add);
+        } catch (Exception e) {
+            logger.error("Failed to parse content from URL: {}", page.getUrl(), e);
+            return result;
+        }
+        if (simHash != null) {
+            int clusterPages = deduplicator.addToCluster(simHash.value());
+            if (clusterPages > 0) {
+                metrics.recordNearDuplicate();
+            }
+            if (clusterPages >= config.getNearDuplicateClusterSize()) {
+                nearDuplicatePages.add(page.getUrl());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the per-type response counters of this crawl.
+     *
+     * @return the resource statistics
+     */
+    public ResourceStats getResourceStats() {
+        return resourceStats;
+    }
+
+    /**
+     * Returns the counters and latency histograms of this crawl.
+     *
+     * @return the crawl metrics
+     */
+    public CrawlMetrics getMetrics() {
+        return metrics;
+    }
 
     /**
      * Validates whether a URL is valid and belongs to the allowed protocol and domain.
@@ -244,13 +1218,7 @@ public class WebCrawler {
      * @return true if the URL is valid; false otherwise
      */
     public boolean isValidUrl(String url) {
-        try {
-            new URI(url).parseServerAuthority();
-            return url.startsWith("http") && !url.toLowerCase().startsWith("javascript:");
-        } catch (URISyntaxException e) {
-            logger.debug("Invalid URL: {}", url);
-            return false;
-        }
+        return UrlNormalizer.isValid(url);
     }
 }
 
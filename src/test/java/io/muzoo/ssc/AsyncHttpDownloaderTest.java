@@ -0,0 +1,102 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncHttpDownloaderTest {
+
+    @TempDir
+    Path outputDir;
+
+    @Test
+    public void testStreamsBodyToFile() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder().pages(20).pageSize(4096).build();
+             CloseableHttpAsyncClient client = AsyncHttpDownloader.createClient(CrawlerConfig.defaults())) {
+            String baseUrl = server.start();
+            AsyncHttpDownloader downloader = new AsyncHttpDownloader(client, Long.MAX_VALUE);
+
+            Path target = outputDir.resolve("pages").resolve("7.html");
+            DownloadResult result = downloader.download(baseUrl + "pages/7.html", target, null).join();
+
+            byte[] body = Files.readAllBytes(target);
+            CRC32C checksum = new CRC32C();
+            checksum.update(body);
+            assertEquals(200, result.getStatusCode());
+            assertTrue(result.isHtml());
+            assertEquals(body.length, result.getContentLength());
+            assertTrue(body.length >= 4096);
+            assertEquals(checksum.getValue(), result.getContentHash());
+            assertNotNull(result.getEtag());
+            assertEquals(404, downloader.download(baseUrl + "pages/20.html", outputDir.resolve("missing.html"), null)
+                    .join().getStatusCode());
+        }
+    }
+
+    @Test
+    public void testConditionalRequestReturnsStoredCopy() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder().pages(20).build();
+             CloseableHttpAsyncClient client = AsyncHttpDownloader.createClient(CrawlerConfig.defaults())) {
+            String baseUrl = server.start();
+            AsyncHttpDownloader downloader = new AsyncHttpDownloader(client, Long.MAX_VALUE);
+            Path target = outputDir.resolve("3.html");
+            DownloadResult first = downloader.download(baseUrl + "pages/3.html", target, null).join();
+            PageMetadata previous = new PageMetadata(first.getEtag(), null, first.getContentHash(),
+                    first.getContentLength(), first.getMimeType(), null, Collections.emptyList());
+
+            DownloadResult second = downloader.download(baseUrl + "pages/3.html", target, previous).join();
+
+            assertTrue(second.isNotModified());
+            assertEquals(first.getContentLength(), second.getContentLength());
+            assertEquals(first.getContentHash(), second.getContentHash());
+            assertEquals(1, server.getNotModifiedResponses());
+        }
+    }
+
+    @Test
+    public void testOversizedBodyIsRejected() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder().pages(20).pageSize(8192).build();
+             CloseableHttpAsyncClient client = AsyncHttpDownloader.createClient(CrawlerConfig.defaults())) {
+            String baseUrl = server.start();
+            AsyncHttpDownloader downloader = new AsyncHttpDownloader(client, 1024);
+            Path target = outputDir.resolve("big.html");
+
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> downloader.download(baseUrl + "pages/5.html", target, null).join());
+
+            assertInstanceOf(BodyTooLargeException.class, e.getCause());
+            assertFalse(Files.exists(target));
+        }
+    }
+
+    @Test
+    public void testCrawlerDownloadsWholeSite() throws IOException {
+        CrawlerConfig config = CrawlerConfig.builder().asyncFetch(true).concurrency(16).maxConnections(4).build();
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(200).fanOut(5).pageSize(2048).assetSize(512).errorRate(0.05).build();
+             CloseableHttpAsyncClient client = AsyncHttpDownloader.createClient(config)) {
+            String baseUrl = server.start();
+            ProgressTracker progressTracker = new ProgressTracker();
+            WebCrawler crawler = new WebCrawler(baseUrl, outputDir.toString(),
+                    new AsyncHttpDownloader(client, config.getMaxBodySize()), progressTracker, new UrlHandler(), config);
+
+            crawler.startCrawling();
+
+            int reachable = server.reachableUrls().size();
+            assertEquals(reachable, server.getRequests());
+            assertEquals(reachable, progressTracker.getTotalUrls());
+            assertEquals(reachable, progressTracker.getDownloadedUrls() + progressTracker.getFailedUrls());
+            assertEquals(0, progressTracker.getFailedUrls()); // Error pages are downloaded, not failed
+            assertEquals(reachable, crawler.getMetrics().getResponses());
+        }
+    }
+}
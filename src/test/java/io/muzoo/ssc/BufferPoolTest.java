@@ -0,0 +1,209 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BufferPoolTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBuffersAreServedFromTheSmallestClassAndReused() {
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+        BufferPool.Buffer first = pool.acquire(5000);
+        ByteBuffer buffer = first.buffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(8 * 1024, buffer.capacity());
+        assertEquals(5000, buffer.limit());
+        first.release();
+        assertEquals(8 * 1024, pool.getPooledBytes());
+
+        BufferPool.Buffer second = pool.acquire(8 * 1024);
+        assertSame(buffer, second.buffer());
+        assertEquals(0, second.buffer().position());
+        assertEquals(4 * 1024, pool.acquire(0).buffer().capacity());
+        assertEquals(BufferPool.MAX_SIZE, pool.acquire(BufferPool.MAX_SIZE).buffer().capacity());
+        assertEquals(4, pool.getAcquired());
+        assertEquals(3, pool.getAllocated());
+        assertEquals(0.25, pool.getReuseRatio());
+        assertEquals(3, pool.getOutstanding());
+
+        // Larger buffers are allocated for one use only
+        BufferPool.Buffer large = pool.acquire(BufferPool.MAX_SIZE + 1);
+        assertFalse(large.buffer().isDirect());
+        large.release();
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testPoolKeepsAtMostItsSize() {
+        BufferPool pool = new BufferPool(16 * 1024, false);
+        BufferPool.Buffer[] buffers = new BufferPool.Buffer[3];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire(8 * 1024);
+        }
+        for (BufferPool.Buffer buffer : buffers) {
+            buffer.release();
+        }
+        assertEquals(16 * 1024, pool.getPooledBytes());
+        assertEquals(0, pool.getOutstanding());
+
+        // A pool that keeps nothing hands out heap buffers of the exact size
+        BufferPool unpooled = new BufferPool(0, false);
+        BufferPool.Buffer buffer = unpooled.acquire(5000);
+        assertFalse(buffer.buffer().isDirect());
+        assertEquals(5000, buffer.buffer().capacity());
+        buffer.release();
+        assertEquals(0, unpooled.getPooledBytes());
+        assertThrows(IllegalArgumentException.class, () -> new BufferPool(-1, false));
+    }
+
+    @Test
+    public void testBufferReturnsToThePoolWhenTheLastOwnerReleasesIt() throws IOException {
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+        BufferPool.Buffer buffer = pool.acquire(3);
+        buffer.buffer().put(new byte[] {1, 2, 3}).flip();
+        buffer.retain();
+        buffer.release();
+        assertEquals(1, pool.getOutstanding());
+        try (InputStream in = buffer.newInputStream(); InputStream again = buffer.newInputStream()) {
+            assertEquals(1, in.read());
+            assertArrayEquals(new byte[] {1, 2, 3}, again.readAllBytes());
+            assertArrayEquals(new byte[] {2, 3}, in.readAllBytes());
+        }
+        buffer.release();
+        assertEquals(0, pool.getOutstanding());
+        assertThrows(IllegalStateException.class, buffer::release);
+        assertThrows(IllegalStateException.class, buffer::retain);
+    }
+
+    @Test
+    public void testGrowKeepsTheContent() {
+        BufferPool pool = new BufferPool(1024 * 1024, false);
+        BufferPool.Buffer small = pool.acquire(4 * 1024);
+        small.buffer().limit(small.buffer().capacity());
+        while (small.buffer().hasRemaining()) {
+            small.buffer().put((byte) small.buffer().position());
+        }
+        BufferPool.Buffer grown = pool.grow(small, 8 * 1024);
+        assertEquals(8 * 1024, grown.buffer().capacity());
+        assertEquals(4 * 1024, grown.buffer().position());
+        assertEquals(8 * 1024, grown.buffer().limit());
+        grown.buffer().flip();
+        assertEquals((byte) 4095, grown.buffer().get(4095));
+        assertEquals(1, pool.getOutstanding());
+        assertEquals(4 * 1024, pool.getPooledBytes());
+    }
+
+    @Test
+    public void testLeakDetectionReportsUnreleasedBuffers() throws InterruptedException {
+        BufferPool pool = new BufferPool(1024 * 1024, true);
+        pool.acquire(1000).release();
+        pool.acquire(1000); // Dropped without being released
+        for (int i = 0; i < 100 && pool.getLeaks() == 0; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertEquals(1, pool.getLeaks());
+    }
+
+    @Test
+    public void testCrawlReleasesEveryBuffer() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(80).fanOut(4).pageSize(6 * 1024).assetSize(1024).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).bufferLeakDetection(true).build();
+            BufferPool pool = BufferPool.create(config);
+            try (StorageWriter writer = new StorageWriter(2, 8, StorageWriter.Durability.NONE, Duration.ofSeconds(5)).start()) {
+                WebCrawler crawler = new WebCrawler(baseUrl, tempDir.resolve("site").toString(),
+                        new HttpDownloader(client, config.getMaxBodySize(), writer, null, null, pool),
+                        new ProgressTracker(), new UrlHandler(), config);
+                crawler.getMetrics().attachBufferPool(pool);
+                crawler.startCrawling();
+                writer.awaitWritten();
+                assertEquals(reachable, writer.getFilesWritten());
+                assertTrue(crawler.getMetrics().toJson(new ProgressTracker()).contains("\"outstanding\": 0,"));
+            }
+            assertEquals(reachable, server.getRequests());
+            assertEquals(reachable, pool.getAcquired());
+            assertEquals(0, pool.getOutstanding());
+            assertEquals(0, pool.getLeaks());
+            assertTrue(pool.getAllocated() < reachable / 4); // At most a few buffers per concurrent download
+
+            String page = Path.of("127.0.0.1_" + baseUrl.replaceAll(".*:(\\d+)/", "$1"), "pages", "5.html").toString();
+            assertTrue(Files.size(tempDir.resolve("site").resolve(page)) > 6 * 1024);
+        }
+    }
+
+    @Test
+    public void testCountingPassKeepsNoBodies() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(60).fanOut(3).pageSize(6 * 1024).assetSize(1024).build();
+             CloseableHttpClient client = HttpClients.createDefault();
+             StorageWriter writer = new StorageWriter(1, 4, StorageWriter.Durability.NONE,
+                     Duration.ofSeconds(5)).start()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().exactTotal(true).bufferLeakDetection(true).build();
+            BufferPool pool = BufferPool.create(config);
+            WebCrawler crawler = new WebCrawler(baseUrl, tempDir.resolve("site").toString(),
+                    new HttpDownloader(client, config.getMaxBodySize(), writer, null, null, pool),
+                    new ProgressTracker(), new UrlHandler(), config);
+            crawler.startCrawling();
+            writer.awaitWritten();
+
+            // Each counted body was released once its links were found, so a few buffers went round
+            assertEquals(reachable, server.getRequests());
+            assertEquals(reachable, writer.getFilesWritten());
+            assertEquals(0, pool.getOutstanding());
+            assertTrue(pool.getAllocated() < reachable / 4, "Allocated: " + pool.getAllocated());
+        }
+    }
+
+    @Test
+    public void testPackedCrawlReleasesEveryBuffer() throws IOException {
+        Path packDir = tempDir.resolve("packs");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(20).fanOut(3).pageSize(300 * 1024).assetSize(512).build();
+             CloseableHttpClient client = HttpClients.createDefault();
+             PackStore store = new PackStore(packDir, 4 * 1024 * 1024, StorageWriter.Durability.NONE)) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).packDir(packDir)
+                    .bufferLeakDetection(true).build();
+            BufferPool pool = BufferPool.create(config);
+            new WebCrawler(baseUrl, tempDir.resolve("unused").toString(),
+                    new HttpDownloader(client, config.getMaxBodySize(), null, null, store, pool),
+                    new ProgressTracker(), new UrlHandler(), config).startCrawling();
+
+            // The large pages were spooled through a full buffer, the assets held in one
+            assertEquals(reachable, server.getRequests());
+            assertEquals(reachable, store.size());
+            assertEquals(0, pool.getOutstanding());
+            assertTrue(store.get(baseUrl + "pages/1.html").remaining() >= 300 * 1024);
+            assertEquals(512, store.get(server.reachableUrls().stream()
+                    .filter(url -> url.endsWith(".png")).findFirst().orElseThrow()).remaining());
+        }
+    }
+
+    @Test
+    public void testBufferOptionsAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().bufferPoolSize(-1));
+        assertEquals(32L * 1024 * 1024, CrawlerConfig.defaults().getBufferPoolSize());
+        assertFalse(CrawlerConfig.defaults().isBufferLeakDetection());
+    }
+}
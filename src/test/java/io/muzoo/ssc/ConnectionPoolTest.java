@@ -0,0 +1,62 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConnectionPoolTest {
+
+    @TempDir
+    Path outputDir;
+
+    @Test
+    public void testPoolSizeFollowsConcurrency() {
+        assertEquals(5, CrawlerConfig.defaults().getMaxConnections());
+        assertEquals(16, CrawlerConfig.builder().concurrency(16).build().getMaxConnections());
+        CrawlerConfig config = CrawlerConfig.builder().concurrency(16).maxConnections(32).maxConnectionsPerRoute(4).build();
+        assertEquals(32, config.getMaxConnections());
+        assertEquals(4, config.getMaxConnectionsPerRoute());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().connectTimeout(Duration.ZERO));
+    }
+
+    @Test
+    public void testSequentialRequestsReuseOneConnection() throws IOException {
+        CrawlerConfig config = CrawlerConfig.builder().maxConnections(3).build();
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder().pages(20).build();
+             ConnectionPool pool = new ConnectionPool(config)) {
+            String baseUrl = server.start();
+            HttpDownloader downloader = new HttpDownloader(pool.getHttpClient());
+            for (int i = 1; i < 20; i++) { // Page 0 is the root
+                assertEquals(200, downloader.download(baseUrl + "pages/" + i + ".html",
+                        outputDir.resolve(i + ".html")).getStatusCode());
+            }
+
+            assertEquals(1, pool.getConnectionsOpened());
+            assertEquals(0, pool.getStats().getLeased());
+            assertEquals(1, pool.getStats().getAvailable());
+            assertEquals(3, pool.getStats().getMax());
+        }
+    }
+
+    @Test
+    public void testMetricsReportPoolStats() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder().pages(30).fanOut(3).build();
+             ConnectionPool pool = new ConnectionPool(CrawlerConfig.builder().concurrency(4).build())) {
+            String baseUrl = server.start();
+            WebCrawler crawler = new WebCrawler(baseUrl, outputDir.toString(), new HttpDownloader(pool.getHttpClient()),
+                    new ProgressTracker(), new UrlHandler(), CrawlerConfig.builder().concurrency(4).build());
+            crawler.getMetrics().attachConnectionPool(pool);
+            crawler.startCrawling();
+
+            CrawlMetrics metrics = crawler.getMetrics();
+            assertTrue(metrics.getConnectionsOpened() >= 1 && metrics.getConnectionsOpened() <= 5);
+            assertTrue(metrics.getRequestsPerConnection() > 1);
+            assertTrue(metrics.toJson(new ProgressTracker()).contains("\"connections\": {\"opened\": "));
+        }
+    }
+}
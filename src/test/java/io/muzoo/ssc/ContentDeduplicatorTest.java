@@ -0,0 +1,193 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentDeduplicatorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private DownloadResult stored(String name, byte[] body, long contentHash) throws IOException {
+        Path file = tempDir.resolve(name);
+        Files.write(file, body);
+        return new DownloadResult("http://example.com/" + name, 200, "text/html", StandardCharsets.UTF_8, file,
+                body.length, 0, 0, null, null, contentHash);
+    }
+
+    private static long crc(byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        return crc.getValue();
+    }
+
+    private static String words(Random random, int count) {
+        String[] vocabulary = {"crawl", "page", "link", "host", "queue", "fetch", "parse", "store", "index", "frontier",
+                "cache", "pool", "socket", "header", "body", "token", "shard", "budget", "filter", "batch"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(vocabulary[random.nextInt(vocabulary.length)]).append(random.nextInt(1000)).append(' ');
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void testIdenticalBodiesAreLinked() throws IOException {
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        byte[] body = "<html><body>same page</body></html>".getBytes(StandardCharsets.UTF_8);
+        DownloadResult first = stored("index.html", body, crc(body));
+        DownloadResult second = stored("docs.html", body, crc(body));
+
+        assertNull(deduplicator.firstCopyOf(first));
+        assertNull(deduplicator.firstCopyOf(first)); // The first copy is not a duplicate of itself
+        assertEquals(first.getPath(), deduplicator.firstCopyOf(second));
+
+        assertTrue(deduplicator.link(second.getPath(), first.getPath()));
+        assertTrue(Files.isSameFile(first.getPath(), second.getPath()));
+        assertArrayEquals(body, Files.readAllBytes(second.getPath()));
+        assertFalse(Files.exists(tempDir.resolve("docs.html.link")));
+    }
+
+    @Test
+    public void testChecksumCollisionIsNotADuplicate() throws IOException {
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        byte[] a = "first body".getBytes(StandardCharsets.UTF_8);
+        byte[] b = "other body".getBytes(StandardCharsets.UTF_8);
+        assertNull(deduplicator.firstCopyOf(stored("a.html", a, 7)));
+        assertNull(deduplicator.firstCopyOf(stored("b.html", b, 7)));
+        assertNull(deduplicator.firstCopyOf(stored("empty.html", new byte[0], crc(new byte[0]))));
+    }
+
+    @Test
+    public void testIncompleteCopyIsNotLinked() throws IOException {
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        Path original = Files.writeString(tempDir.resolve("a.html"), "complete body");
+        Path copy = Files.writeString(tempDir.resolve("b.html"), "compl");
+        assertFalse(deduplicator.link(copy, original));
+        assertFalse(deduplicator.link(tempDir.resolve("missing.html"), original));
+        assertEquals("compl", Files.readString(copy));
+    }
+
+    @Test
+    public void testSimHashIgnoresMarkupAndTracksWordOverlap() {
+        Random random = new Random(7);
+        String text = words(random, 400);
+        long base = SimHash.of("<p class=\"a\">" + text + "</p>");
+        assertEquals(base, SimHash.of("<div><span>" + text.toUpperCase() + "</span></div>"));
+
+        long edited = SimHash.of(text + words(random, 3));
+        long unrelated = SimHash.of(words(random, 400));
+        assertTrue(SimHash.distance(base, edited) <= ContentDeduplicator.NEAR_DUPLICATE_DISTANCE);
+        assertTrue(SimHash.distance(base, unrelated) > 10);
+    }
+
+    @Test
+    public void testNearDuplicatesJoinOneCluster() {
+        ContentDeduplicator deduplicator = new ContentDeduplicator();
+        long simHash = 0x0123_4567_89ab_cdefL;
+        assertEquals(0, deduplicator.addToCluster(simHash));
+        assertEquals(1, deduplicator.addToCluster(simHash ^ 0b101)); // Two bits apart
+        assertEquals(2, deduplicator.addToCluster(simHash ^ (1L << 63) ^ (1L << 40) ^ 1));
+        assertEquals(0, deduplicator.addToCluster(~simHash));
+    }
+
+    @Test
+    public void testCrawlSkipsAliasedPages() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(60).fanOut(3).pageSize(8 * 1024).assetSize(512).aliasRate(0.5).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).deduplicate(true)
+                    .storageWriterThreads(0).build();
+            WebCrawler crawler = new WebCrawler(baseUrl, tempDir.resolve("site").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), config);
+            crawler.startCrawling();
+
+            // Every URL is still fetched, but each aliased page is parsed and stored once
+            assertEquals(reachable, server.getRequests());
+            CrawlMetrics metrics = crawler.getMetrics();
+            assertTrue(metrics.getDuplicates() > 10, "Duplicates: " + metrics.getDuplicates());
+            assertEquals(metrics.getDuplicates(), metrics.getParsesSaved());
+            assertTrue(metrics.getDuplicateBytesSaved() >= metrics.getDuplicates() * 8 * 1024);
+            assertTrue(metrics.getParseLatency().getCount() <= reachable - metrics.getDuplicates());
+            assertTrue(metrics.toJson(new ProgressTracker()).contains("\"dedup\": {\"duplicates\": "));
+        }
+    }
+
+    @Test
+    public void testQueuedDuplicatesAreLinkedOnceWritten() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(60).fanOut(3).pageSize(8 * 1024).assetSize(512).aliasRate(0.5).build();
+             CloseableHttpClient client = HttpClients.createDefault();
+             StorageWriter writer = new StorageWriter(2, 8, StorageWriter.Durability.NONE,
+                     Duration.ofSeconds(5)).start()) {
+            String baseUrl = server.start();
+            Path siteDir = tempDir.resolve("site");
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).deduplicate(true).build();
+            WebCrawler crawler = new WebCrawler(baseUrl, siteDir.toString(),
+                    new HttpDownloader(client, config.getMaxBodySize(), writer),
+                    new ProgressTracker(), new UrlHandler(), config);
+            crawler.startCrawling();
+            writer.awaitWritten();
+
+            // Every duplicate body went through the writer, and its file became a link afterwards
+            CrawlMetrics metrics = crawler.getMetrics();
+            assertTrue(metrics.getDuplicates() > 10, "Duplicates: " + metrics.getDuplicates());
+            assertTrue(metrics.getDuplicateBytesSaved() >= metrics.getDuplicates() * 8 * 1024);
+            try (var files = Files.walk(siteDir)) {
+                assertTrue(files.filter(Files::isRegularFile).filter(ContentDeduplicatorTest::isLinked).count()
+                        > metrics.getDuplicates());
+            }
+        }
+    }
+
+    private static boolean isLinked(Path file) {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink") > 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Test
+    public void testLinksOfNearDuplicatesAreDeferred() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(60).fanOut(3).pageSize(8 * 1024).assetSize(512).aliasRate(0.5).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().nearDuplicateClusterSize(1).build();
+            WebCrawler crawler = new WebCrawler(baseUrl, tempDir.resolve("site").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), config);
+            crawler.startCrawling();
+
+            // The second copy of an aliased page joins the cluster of the first, and its links wait
+            assertEquals(reachable, server.getRequests());
+            CrawlMetrics metrics = crawler.getMetrics();
+            assertTrue(metrics.getNearDuplicates() > 10, "Near-duplicates: " + metrics.getNearDuplicates());
+            assertTrue(metrics.getDeferredLinks() > 0);
+            assertEquals(0, metrics.getDuplicates());
+        }
+    }
+
+    @Test
+    public void testDeduplicationNeedsTheFileTree() {
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder()
+                .deduplicate(true).packDir(tempDir).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().nearDuplicateClusterSize(-1));
+    }
+}
@@ -0,0 +1,115 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CrawlJournalTest {
+
+    @TempDir
+    Path stateDir;
+
+    private static List<String> replay(CrawlJournal journal) throws IOException {
+        List<String> lines = new ArrayList<>();
+        journal.replay((entry, url, depth) -> lines.add(entry + " " + url));
+        return lines;
+    }
+
+    @Test
+    public void testReplaysAppendedLines() throws IOException {
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, false, Duration.ofMinutes(1))) {
+            journal.append(CrawlJournal.Entry.QUEUED, "https://example.com/");
+            journal.append(CrawlJournal.Entry.QUEUED, "https://example.com/a");
+            journal.append(CrawlJournal.Entry.DOWNLOADED, "https://example.com/");
+            journal.append(CrawlJournal.Entry.FAILED, "https://example.com/a");
+        }
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, true, Duration.ofMinutes(1))) {
+            assertEquals(List.of("QUEUED https://example.com/", "QUEUED https://example.com/a",
+                    "DOWNLOADED https://example.com/", "FAILED https://example.com/a"), replay(journal));
+        }
+    }
+
+    @Test
+    public void testNewCrawlClearsJournal() throws IOException {
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, false, Duration.ofMinutes(1))) {
+            journal.append(CrawlJournal.Entry.QUEUED, "https://example.com/");
+            journal.checkpoint(new ProgressTracker());
+        }
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, false, Duration.ofMinutes(1))) {
+            assertTrue(replay(journal).isEmpty());
+            assertNull(journal.getLastCheckpoint());
+        }
+    }
+
+    @Test
+    public void testDropsTornLine() throws IOException {
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, false, Duration.ofMinutes(1))) {
+            journal.append(CrawlJournal.Entry.QUEUED, "https://example.com/");
+        }
+        Path journalFile = stateDir.resolve(CrawlJournal.JOURNAL_FILE);
+        Files.writeString(journalFile, "Q https://exa", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, true, Duration.ofMinutes(1))) {
+            journal.append(CrawlJournal.Entry.DOWNLOADED, "https://example.com/");
+            assertEquals(List.of("QUEUED https://example.com/", "DOWNLOADED https://example.com/"), replay(journal));
+        }
+    }
+
+    @Test
+    public void testValidLengthStopsAtGarbage() throws IOException {
+        Path journalFile = stateDir.resolve(CrawlJournal.JOURNAL_FILE);
+        Files.write(journalFile, "Q https://example.com/\n\0\0\0\nQ https://example.com/a\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals("Q https://example.com/\n".length(), CrawlJournal.validLength(journalFile));
+    }
+
+    @Test
+    public void testQueuedUrlsKeepTheirDepth() throws IOException {
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, false, Duration.ofMinutes(1))) {
+            journal.appendQueued("https://example.com/", 0);
+            journal.appendQueued("https://example.com/a/b", 12);
+            journal.append(CrawlJournal.Entry.DOWNLOADED, "https://example.com/");
+        }
+        Path journalFile = stateDir.resolve(CrawlJournal.JOURNAL_FILE);
+        long valid = Files.size(journalFile);
+        Files.writeString(journalFile, "Q https://example.com/c \n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        assertEquals(valid, CrawlJournal.validLength(journalFile)); // A depth cut off by a crash
+
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, true, Duration.ofMinutes(1))) {
+            List<String> lines = new ArrayList<>();
+            journal.replay((entry, url, depth) -> lines.add(entry + " " + url + " " + depth));
+            assertEquals(List.of("QUEUED https://example.com/ 0", "QUEUED https://example.com/a/b 12",
+                    "DOWNLOADED https://example.com/ 0"), lines);
+        }
+        Files.writeString(journalFile, "D https://example.com/ 3\n", StandardCharsets.UTF_8);
+        assertEquals(0, CrawlJournal.validLength(journalFile)); // Only a queued URL carries a depth
+    }
+
+    @Test
+    public void testCheckpointSavesCounters() throws IOException {
+        ProgressTracker progressTracker = new ProgressTracker();
+        progressTracker.restore(10, 4, 1);
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, false, Duration.ZERO)) {
+            journal.append(CrawlJournal.Entry.QUEUED, "https://example.com/");
+            assertTrue(journal.checkpointIfDue(progressTracker));
+        }
+        try (CrawlJournal journal = CrawlJournal.open(stateDir, true, Duration.ZERO)) {
+            Properties checkpoint = journal.getLastCheckpoint();
+            assertEquals("10", checkpoint.getProperty("discovered"));
+            assertEquals("4", checkpoint.getProperty("downloaded"));
+            assertEquals("1", checkpoint.getProperty("failed"));
+            assertEquals(Files.size(stateDir.resolve(CrawlJournal.JOURNAL_FILE)),
+                    Long.parseLong(checkpoint.getProperty("journalBytes")));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CrawlMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static DownloadResult response(int statusCode, long length, long fetchMillis) {
+        return new DownloadResult("http://example.com/", statusCode, "text/html", null, Path.of("index.html"), length,
+                TimeUnit.MILLISECONDS.toNanos(fetchMillis), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testRecordsResponsesAndStatusCodes() {
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.recordResponse(response(200, 1000, 10));
+        metrics.recordResponse(response(200, 500, 20));
+        metrics.recordResponse(response(404, 100, 5));
+        metrics.recordFailure();
+
+        assertEquals(3, metrics.getResponses());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(1600, metrics.getBytesIn());
+        assertEquals(Map.of("200", 2L, "404", 1L), metrics.getStatusCodes());
+        assertEquals(3, metrics.getFetchLatency().getCount());
+        assertEquals(20, metrics.getFetchP99Millis(), 0.001);
+        assertEquals(3, metrics.getStoreLatency().getCount());
+    }
+
+    @Test
+    public void testFrontierDepth() {
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.frontierPushed();
+        metrics.frontierPushed();
+        metrics.frontierPopped();
+        assertEquals(1, metrics.getFrontierDepth());
+    }
+
+    @Test
+    public void testPagesPerSecondCountsCompleteSeconds() throws InterruptedException {
+        CrawlMetrics metrics = new CrawlMetrics();
+        for (int i = 0; i < 20; i++) {
+            metrics.recordResponse(response(200, 10, 1));
+        }
+        assertEquals(0, metrics.getPagesPerSecond());
+
+        Thread.sleep(1100);
+        double rate = metrics.getPagesPerSecond();
+        assertTrue(rate > 0 && rate <= 20, "Unexpected rate: " + rate);
+    }
+
+    @Test
+    public void testJsonSnapshot() {
+        CrawlMetrics metrics = new CrawlMetrics();
+        ProgressTracker progressTracker = new ProgressTracker();
+        progressTracker.setTotalUrls(3);
+        progressTracker.incrementDownloadedUrls("http://example.com/");
+        metrics.recordResponse(response(200, 1000, 10));
+        metrics.recordParse(TimeUnit.MILLISECONDS.toNanos(2));
+
+        String json = metrics.toJson(progressTracker);
+
+        assertTrue(json.startsWith("{") && json.trim().endsWith("}"));
+        assertTrue(json.contains("\"discovered\": 3,"));
+        assertTrue(json.contains("\"downloaded\": 1,"));
+        assertTrue(json.contains("\"bytesIn\": 1000,"));
+        assertTrue(json.contains("\"statusCodes\": {\"200\": 1},"));
+        assertTrue(json.contains("\"parse\": {\"count\": 1,"));
+        assertFalse(json.contains(",\n}"), "Trailing comma in " + json);
+    }
+
+    @Test
+    public void testReporterWritesSnapshotAndRegistersMBean() throws Exception {
+        Path metricsFile = tempDir.resolve("metrics.json");
+        CrawlerConfig config = CrawlerConfig.builder()
+                .progressInterval(Duration.ofMillis(50)).metricsFile(metricsFile).build();
+        CrawlMetrics metrics = new CrawlMetrics();
+        ProgressTracker progressTracker = new ProgressTracker();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(MetricsReporter.OBJECT_NAME);
+
+        MetricsReporter reporter = new MetricsReporter(metrics, progressTracker, config);
+        assertFalse(server.isRegistered(name));
+        reporter.start();
+        try {
+            metrics.recordResponse(response(200, 42, 3));
+            assertTrue(server.isRegistered(name));
+            assertEquals(1L, server.getAttribute(name, "Responses"));
+        } finally {
+            reporter.close();
+        }
+
+        assertFalse(server.isRegistered(name));
+        String json = Files.readString(metricsFile);
+        assertTrue(json.contains("\"responses\": 1,"));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count(), "Temporary snapshot files were left behind");
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CssLinkExtractorTest {
+
+    @Test
+    public void testExtractsUrlValuesAndImports() {
+        CssLinkExtractor extractor = new CssLinkExtractor();
+        String css = "@import \"reset.css\";\n"
+                + "body { background: url(images/bg.png) }\n"
+                + "@font-face { src: url('../fonts/a.woff2') format('woff2'), url( \"https://cdn.example.com/a.ttf\" ); }";
+
+        List<String> links = extractor.extractLinks(css, "https://example.com/docs/css/style.css");
+
+        assertEquals(List.of(
+                "https://example.com/docs/css/images/bg.png",
+                "https://example.com/docs/fonts/a.woff2",
+                "https://cdn.example.com/a.ttf",
+                "https://example.com/docs/css/reset.css"), links);
+    }
+
+    @Test
+    public void testSkipsDataUris() {
+        CssLinkExtractor extractor = new CssLinkExtractor();
+        String css = ".icon { background: url(data:image/png;base64,iVBORw0KGgo=) }";
+        assertTrue(extractor.extractLinks(css, "https://example.com/style.css").isEmpty());
+    }
+}
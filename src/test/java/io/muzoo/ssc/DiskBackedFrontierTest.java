@@ -0,0 +1,130 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskBackedFrontierTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testStaysOnHeapBelowLimit() throws IOException {
+        try (DiskBackedFrontier frontier = new DiskBackedFrontier(tempDir, 10)) {
+            frontier.push("a");
+            frontier.push("b");
+            assertEquals(2, frontier.size());
+            assertEquals("b", frontier.poll()); // Depth first, like the stack it replaces
+            assertEquals("a", frontier.poll());
+            assertNull(frontier.poll());
+            assertEquals(0, frontier.getSpilledUrls());
+        }
+    }
+
+    @Test
+    public void testDeferredUrlsComeLast() throws IOException {
+        try (DiskBackedFrontier frontier = new DiskBackedFrontier(tempDir, 10)) {
+            frontier.push("a");
+            frontier.defer("late");
+            frontier.push("b");
+            assertEquals(3, frontier.size());
+            assertEquals("b", frontier.poll());
+            assertEquals("a", frontier.poll());
+            assertEquals("late", frontier.poll());
+        }
+    }
+
+    @Test
+    public void testSpillsAndReadsBackEveryUrl() throws IOException {
+        Set<String> polled = new HashSet<>();
+        try (DiskBackedFrontier frontier = new DiskBackedFrontier(tempDir, 100)) {
+            for (int i = 0; i < 1000; i++) {
+                frontier.push("https://example.com/" + i);
+            }
+            assertEquals(1000, frontier.size());
+            assertEquals(900, frontier.getSpilledUrls());
+            assertTrue(segmentCount() > 0);
+
+            String url;
+            while ((url = frontier.poll()) != null) {
+                assertTrue(polled.add(url), "Polled twice: " + url);
+                if (polled.size() % 7 == 0) {
+                    frontier.push("https://example.com/late" + polled.size());
+                }
+            }
+            assertTrue(frontier.isEmpty());
+        }
+        assertEquals(1000 + 1000 / 7 + 1000 / 7 / 7 + 2, polled.size(), 3);
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    public void testFifoKeepsOrderAcrossSpill() throws IOException {
+        try (DiskBackedFrontier frontier = new DiskBackedFrontier(tempDir, 10, true)) {
+            for (int i = 0; i < 25; i++) {
+                frontier.push("https://example.com/" + i);
+            }
+            assertEquals(15, frontier.getSpilledUrls());
+            for (int i = 0; i < 12; i++) {
+                assertEquals("https://example.com/" + i, frontier.poll());
+            }
+            // URLs pushed while older ones wait on disk go behind them, even with room on the heap
+            frontier.push("https://example.com/late");
+            frontier.defer("https://example.com/deferred");
+            for (int i = 12; i < 25; i++) {
+                assertEquals("https://example.com/" + i, frontier.poll());
+            }
+            assertEquals("https://example.com/late", frontier.poll());
+            assertEquals("https://example.com/deferred", frontier.poll());
+            assertNull(frontier.poll());
+        }
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    public void testCloseDeletesSegments() throws IOException {
+        try (DiskBackedFrontier frontier = new DiskBackedFrontier(tempDir, 1)) {
+            frontier.push("a");
+            frontier.push("b");
+            frontier.push("c");
+            assertTrue(segmentCount() > 0);
+        }
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    public void testPollWaitsForConcurrentPush() throws Exception {
+        try (DiskBackedFrontier frontier = new DiskBackedFrontier(null, 4);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            assertNull(frontier.poll(10, TimeUnit.MILLISECONDS));
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                executor.execute(() -> frontier.push("https://example.com/" + n));
+            }
+            Set<String> polled = new HashSet<>();
+            String url;
+            while (polled.size() < 100 && (url = frontier.poll(5, TimeUnit.SECONDS)) != null) {
+                polled.add(url);
+            }
+            assertEquals(100, polled.size());
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FingerprintVisitedSetTest {
+
+    @Test
+    public void testAddAndContains() {
+        FingerprintVisitedSet set = new FingerprintVisitedSet();
+        assertFalse(set.contains("https://example.com/a"));
+        assertTrue(set.add("https://example.com/a"));
+        assertFalse(set.add("https://example.com/a"));
+        assertTrue(set.contains("https://example.com/a"));
+        assertFalse(set.contains("https://example.com/b"));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void testGivenFingerprintsMatchTheUrls() {
+        FingerprintVisitedSet set = new FingerprintVisitedSet();
+        String url = "https://example.com/a";
+        assertTrue(set.add(url, UrlFingerprint.of(url)));
+        assertTrue(set.contains(url));
+        assertFalse(set.add(url));
+        assertTrue(set.contains("https://example.com/b#x", UrlFingerprint.of(url))); // Trusts the fingerprint
+
+        // A set with its own fingerprints ignores the given one
+        FingerprintVisitedSet custom = new FingerprintVisitedSet(16, false, u -> 42L);
+        custom.add(url);
+        assertTrue(custom.contains("https://example.com/b", 7L));
+    }
+
+    @Test
+    public void testGrowsPastInitialCapacity() {
+        FingerprintVisitedSet set = new FingerprintVisitedSet(16, false);
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(set.add("https://example.com/page" + i));
+        }
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(set.contains("https://example.com/page" + i));
+            assertFalse(set.add("https://example.com/page" + i));
+        }
+        assertEquals(100_000, set.size());
+        assertTrue(set.capacity() >= 100_000);
+        assertTrue(set.bytesPerUrl() < 24);
+    }
+
+    @Test
+    public void testFullSetRejectsUrlsWithoutClaimingThem() {
+        FingerprintVisitedSet set = new FingerprintVisitedSet(16, false, UrlFingerprint::of, 32);
+        for (int i = 0; i < 32; i++) {
+            assertTrue(set.add("https://example.com/page" + i));
+        }
+        assertEquals(32, set.capacity());
+        assertThrows(IllegalStateException.class, () -> set.add("https://example.com/page32"));
+        assertFalse(set.contains("https://example.com/page32"));
+        assertEquals(32, set.size());
+        assertFalse(set.add("https://example.com/page0"));
+    }
+
+    @Test
+    public void testConcurrentAddsClaimEachUrlOnce() throws Exception {
+        FingerprintVisitedSet set = new FingerprintVisitedSet(16, false);
+        int threads = 8;
+        int urls = 50_000;
+        List<Future<Integer>> results = new ArrayList<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    int claimed = 0;
+                    for (int i = 0; i < urls; i++) {
+                        if (set.add("https://example.com/page" + i)) {
+                            claimed++;
+                        }
+                    }
+                    return claimed;
+                }));
+            }
+            int totalClaimed = 0;
+            for (Future<Integer> result : results) {
+                totalClaimed += result.get();
+            }
+            assertEquals(urls, totalClaimed);
+            assertEquals(urls, set.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnverifiedSetTreatsCollidingUrlsAsOne() {
+        FingerprintVisitedSet set = new FingerprintVisitedSet(16, false, url -> 42L);
+        assertTrue(set.add("https://example.com/a"));
+        assertFalse(set.add("https://example.com/b"));
+    }
+
+    @Test
+    public void testVerifiedSetResolvesCollisions() {
+        FingerprintVisitedSet set = new FingerprintVisitedSet(16, true, url -> 42L);
+        assertTrue(set.add("https://example.com/a"));
+        assertTrue(set.add("https://example.com/b"));
+        assertFalse(set.add("https://example.com/a"));
+        assertTrue(set.contains("https://example.com/b"));
+        assertFalse(set.contains("https://example.com/c"));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testCrawlsKeepExactUrlsByDefault() {
+        // Fingerprints are opt-in, so colliding URLs are both crawled unless asked otherwise
+        assertEquals(VisitedSet.Type.HASH, CrawlerConfig.defaults().getVisitedSetType());
+        VisitedSet set = VisitedSet.create(CrawlerConfig.defaults().getVisitedSetType());
+        assertTrue(set.add("https://example.com/a", 42L));
+        assertTrue(set.add("https://example.com/b", 42L));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void testFingerprintsClashingWithMarkersAreStillStored() {
+        FingerprintVisitedSet set = new FingerprintVisitedSet(16, false, url -> 0L);
+        assertTrue(set.add("https://example.com/a"));
+        assertTrue(set.contains("https://example.com/a"));
+    }
+}
@@ -0,0 +1,254 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class HostSchedulerTest {
+
+    @TempDir
+    Path outputDir;
+
+    @Test
+    public void testHostOf() {
+        assertEquals("example.com", HostScheduler.hostOf("https://Example.com/a/b?c"));
+        assertEquals("127.0.0.1:8080", HostScheduler.hostOf("http://127.0.0.1:8080"));
+        assertEquals("example.com", HostScheduler.hostOf("http://example.com?q#f"));
+    }
+
+    @Test
+    public void testParseCrawlDelay() {
+        assertEquals(Duration.ofMillis(2500), HostScheduler.parseCrawlDelay(
+                "User-agent: Googlebot\nCrawl-delay: 9\n\nUser-agent: *\nDisallow: /private\nCrawl-delay: 2.5 # slow\n"));
+        assertEquals(Duration.ofSeconds(1), HostScheduler.parseCrawlDelay(
+                "User-agent: bingbot\nUser-agent: *\nCrawl-delay: 1\n"));
+        assertNull(HostScheduler.parseCrawlDelay("User-agent: Googlebot\nCrawl-delay: 9\n"));
+        assertNull(HostScheduler.parseCrawlDelay("User-agent: *\nCrawl-delay: soon\n"));
+    }
+
+    @Test
+    public void testRetryAfter() {
+        assertEquals(Duration.ofSeconds(120), HostScheduler.retryAfter("120"));
+        assertEquals(Duration.ZERO, HostScheduler.retryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        assertNull(HostScheduler.retryAfter("later"));
+        assertNull(HostScheduler.retryAfter(null));
+    }
+
+    @Test
+    public void testRateLimitSpacesRequests() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(20, 8); // A burst of 20, then one every 50 ms
+        for (int i = 0; i < 22; i++) {
+            scheduler.add("http://a.test/" + i);
+        }
+        for (int i = 0; i < 20; i++) {
+            String url = scheduler.poll(0, TimeUnit.MILLISECONDS);
+            assertNotNull(url);
+            scheduler.complete(url, ok(url, 1));
+        }
+        assertNull(scheduler.poll(10, TimeUnit.MILLISECONDS));
+
+        long start = System.nanoTime();
+        assertNotNull(scheduler.poll(1, TimeUnit.SECONDS));
+        assertNotNull(scheduler.poll(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(60));
+    }
+
+    @Test
+    public void testCrawlDelayReplacesFasterRate() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0, 4);
+        scheduler.setCrawlDelay("a.test", Duration.ofMillis(100));
+        scheduler.add("http://a.test/1");
+        scheduler.add("http://a.test/2");
+
+        String first = scheduler.poll(0, TimeUnit.MILLISECONDS);
+        scheduler.complete(first, ok(first, 1));
+        assertNull(scheduler.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals("http://a.test/2", scheduler.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConcurrencyLimitBlocksUntilCompletion() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0, 1);
+        scheduler.add("http://a.test/1");
+        scheduler.add("http://a.test/2");
+
+        String first = scheduler.poll(0, TimeUnit.MILLISECONDS);
+        assertNull(scheduler.poll(20, TimeUnit.MILLISECONDS));
+        assertFalse(scheduler.complete(first, ok(first, 1)));
+        assertEquals("http://a.test/2", scheduler.poll(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testAdditiveIncreaseMultiplicativeDecrease() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0, 16);
+        assertEquals(4, scheduler.getConcurrencyLimit("a.test"));
+        for (int i = 0; i < 40; i++) {
+            scheduler.add("http://a.test/" + i);
+            String url = scheduler.poll(0, TimeUnit.MILLISECONDS);
+            scheduler.complete(url, ok(url, 1));
+        }
+        int grown = scheduler.getConcurrencyLimit("a.test");
+        assertTrue(grown >= 8, "Limit did not grow: " + grown);
+
+        scheduler.add("http://a.test/busy");
+        String url = scheduler.poll(0, TimeUnit.MILLISECONDS);
+        assertTrue(scheduler.complete(url, throttled(url, "0")));
+        assertEquals(grown / 2, scheduler.getConcurrencyLimit("a.test"));
+        assertEquals(1, scheduler.getThrottledResponses());
+        assertEquals(1, scheduler.getRetriedUrls());
+    }
+
+    @Test
+    public void testRetryAfterHoldsBackOnlyThatHost() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0, 4);
+        scheduler.add("http://a.test/1");
+        String url = scheduler.poll(0, TimeUnit.MILLISECONDS);
+        assertTrue(scheduler.complete(url, throttled(url, "60")));
+        scheduler.add("http://b.test/1");
+
+        assertEquals("http://b.test/1", scheduler.poll(0, TimeUnit.MILLISECONDS));
+        assertNull(scheduler.poll(20, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.size());
+    }
+
+    @Test
+    public void testThrottledUrlIsGivenUpAfterMaxAttempts() throws InterruptedException {
+        HostScheduler scheduler = new HostScheduler(0, 4);
+        scheduler.add("http://a.test/1");
+        for (int attempt = 1; attempt < HostScheduler.MAX_ATTEMPTS; attempt++) {
+            String url = scheduler.poll(1, TimeUnit.SECONDS);
+            assertTrue(scheduler.complete(url, throttled(url, "0")));
+        }
+        String url = scheduler.poll(1, TimeUnit.SECONDS);
+        assertFalse(scheduler.complete(url, throttled(url, "0")));
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    public void testPoliteCrawlStaysWithinServerLimit() throws IOException {
+        CrawlerConfig config = CrawlerConfig.builder().concurrency(16).politeness(true)
+                .hostRequestsPerSecond(0).build();
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(150).fanOut(4).pageSize(1024).assetSize(256).latency(5, 20).rateLimit(4, 0).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            ProgressTracker progressTracker = new ProgressTracker();
+            WebCrawler crawler = new WebCrawler(baseUrl, outputDir.toString(), new HttpDownloader(client),
+                    progressTracker, new UrlHandler(), config);
+
+            crawler.startCrawling();
+
+            int reachable = server.reachableUrls().size();
+            assertEquals(reachable, progressTracker.getDownloadedUrls());
+            assertEquals(reachable, crawler.getMetrics().getStatusCodes().get("200")); // Every 429 was retried
+            assertTrue(server.getThrottledResponses() > 0);
+        }
+    }
+
+    @Test
+    public void testUrlThrottledUntilTheLastAttemptFails() throws IOException {
+        HttpDownloader downloader = Mockito.mock(HttpDownloader.class);
+        when(downloader.download(anyString(), any(Path.class))).thenAnswer(invocation -> {
+            String url = invocation.getArgument(0);
+            if (url.endsWith("/busy")) {
+                return throttled(url, "0");
+            }
+            String html = url.equals("https://example.com/")
+                    ? "<html><a href=\"/busy\">Busy</a><a href=\"/ok\">OK</a></html>" : "<html></html>";
+            Path target = invocation.getArgument(1);
+            Files.createDirectories(target.getParent());
+            Files.writeString(target, html);
+            return new DownloadResult(url, 200, "text/html", StandardCharsets.UTF_8, target, html.length());
+        });
+        ProgressTracker progressTracker = new ProgressTracker();
+        CrawlerConfig config = CrawlerConfig.builder().politeness(true).hostRequestsPerSecond(0).build();
+        WebCrawler crawler = new WebCrawler("https://example.com/", outputDir.toString(), downloader,
+                progressTracker, new UrlHandler(), config);
+
+        crawler.startCrawling();
+
+        verify(downloader, times(HostScheduler.MAX_ATTEMPTS)).download(eq("https://example.com/busy"), any(Path.class));
+        assertEquals(2, progressTracker.getDownloadedUrls());
+        assertEquals(1, progressTracker.getFailedUrls());
+    }
+
+    @Test
+    public void testPoliteCrawlHonorsCrawlDelay() throws IOException {
+        CrawlerConfig config = CrawlerConfig.builder().concurrency(8).politeness(true).build();
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(3).fanOut(2).assets(0, 0, 0, 1).crawlDelay(0.15).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            ProgressTracker progressTracker = new ProgressTracker();
+            WebCrawler crawler = new WebCrawler(baseUrl, outputDir.toString(), new HttpDownloader(client),
+                    progressTracker, new UrlHandler(), config);
+
+            long start = System.nanoTime();
+            crawler.startCrawling();
+
+            assertEquals(3, progressTracker.getDownloadedUrls());
+            assertEquals(1, server.getPeakActiveRequests());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300)); // Slower than 10 per second
+        }
+    }
+
+    @Test
+    public void testCountingPassHonorsCrawlDelay() throws IOException {
+        CrawlerConfig config = CrawlerConfig.builder().politeness(true).exactTotal(true).build();
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(3).fanOut(2).assets(0, 0, 0, 1).crawlDelay(0.15).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            HttpDownloader httpDownloader = new HttpDownloader(client);
+            List<Long> pageRequests = new CopyOnWriteArrayList<>();
+            Downloader downloader = new Downloader() {
+                @Override
+                public DownloadResult download(String url, Path target, PageMetadata previous) throws IOException {
+                    if (!url.endsWith("/robots.txt")) {
+                        pageRequests.add(System.nanoTime());
+                    }
+                    return httpDownloader.download(url, target, previous);
+                }
+
+                @Override
+                public DownloadResult revalidate(String url, Path target, PageMetadata stored) throws IOException {
+                    return httpDownloader.revalidate(url, target, stored);
+                }
+            };
+            ProgressTracker progressTracker = new ProgressTracker();
+            WebCrawler crawler = new WebCrawler(baseUrl, outputDir.toString(), downloader, progressTracker,
+                    new UrlHandler(), config);
+
+            crawler.startCrawling();
+
+            // Every page is requested by the counting pass, which waits for the host like the crawl
+            assertEquals(3, progressTracker.getDownloadedUrls());
+            assertEquals(3, pageRequests.size());
+            for (int i = 1; i < pageRequests.size(); i++) {
+                assertTrue(pageRequests.get(i) - pageRequests.get(i - 1) >= TimeUnit.MILLISECONDS.toNanos(140));
+            }
+        }
+    }
+
+    private static DownloadResult ok(String url, long millis) {
+        return new DownloadResult(url, 200, "text/html", null, null, 0, TimeUnit.MILLISECONDS.toNanos(millis), 0);
+    }
+
+    private static DownloadResult throttled(String url, String retryAfter) {
+        return new DownloadResult(url, 429, null, null, null, 0, 0, 0, null, null, 0, retryAfter);
+    }
+}
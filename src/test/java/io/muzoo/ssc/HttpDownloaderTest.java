@@ -8,9 +8,15 @@ import org.apache.hc.core5.http.protocol.HttpContext;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import com.sun.net.httpserver.HttpServer;
+
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -70,4 +76,154 @@ public class HttpDownloaderTest {
             Files.deleteIfExists(tempDir);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testDownloadStreamsBinaryBodyToFile() throws IOException {
+        byte[] body = new byte[300_000];
+        new Random(42).nextBytes(body);
+        HttpServer server = serve("/logo.png", "image/png", body);
+        Path tempDir = Files.createTempDirectory("testDownloadBinary");
+        Path target = tempDir.resolve("nested/logo.png");
+
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            HttpDownloader downloader = new HttpDownloader(httpClient);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/logo.png";
+            DownloadResult result = downloader.download(url, target);
+
+            assertEquals(200, result.getStatusCode());
+            assertEquals("image/png", result.getMimeType());
+            assertEquals(body.length, result.getContentLength());
+            assertFalse(result.isHtml());
+            assertArrayEquals(body, Files.readAllBytes(target));
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(target);
+            Files.deleteIfExists(target.getParent());
+            Files.deleteIfExists(tempDir);
+        }
+    }
+
+    @Test
+    public void testDownloadReportsDeclaredCharset() throws IOException {
+        byte[] body = "<html>caf\u00e9</html>".getBytes(StandardCharsets.ISO_8859_1);
+        HttpServer server = serve("/", "text/html; charset=ISO-8859-1", body);
+        Path target = Files.createTempFile("testDownloadCharset", ".html");
+
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            HttpDownloader downloader = new HttpDownloader(httpClient);
+            DownloadResult result = downloader.download("http://localhost:" + server.getAddress().getPort() + "/", target);
+
+            assertTrue(result.isHtml());
+            assertEquals(StandardCharsets.ISO_8859_1, result.getCharset());
+            assertArrayEquals(body, Files.readAllBytes(target));
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(target);
+        }
+    }
+
+    @Test
+    public void testDownloadAbortsOversizedBody() throws IOException {
+        byte[] body = new byte[200_000];
+        HttpServer server = serve("/big.pdf", "application/pdf", body);
+        Path target = Files.createTempDirectory("testDownloadOversized").resolve("big.pdf");
+
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            HttpDownloader downloader = new HttpDownloader(httpClient, 100_000);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/big.pdf";
+            assertThrows(BodyTooLargeException.class, () -> downloader.download(url, target));
+            assertFalse(Files.exists(target));
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(target.getParent());
+        }
+    }
+
+    @Test
+    public void testDownloadAbortsOversizedBodyWithoutContentLength() throws IOException {
+        byte[] body = new byte[200_000];
+        HttpServer server = serve("/stream", "application/octet-stream", body, 0);
+        Path target = Files.createTempDirectory("testDownloadOversizedChunked").resolve("stream");
+
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            HttpDownloader downloader = new HttpDownloader(httpClient, 100_000);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/stream";
+            assertThrows(BodyTooLargeException.class, () -> downloader.download(url, target));
+            assertFalse(Files.exists(target));
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(target.getParent());
+        }
+    }
+
+    @Test
+    public void testDownloadDeletesTruncatedBody() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/cut", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, 0);
+            exchange.getResponseBody().write(new byte[100_000]);
+            exchange.getResponseBody().flush();
+            throw new IOException("Connection dropped"); // The server closes the connection mid-body
+        });
+        server.start();
+        Path target = Files.createTempDirectory("testDownloadTruncated").resolve("cut");
+
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            HttpDownloader downloader = new HttpDownloader(httpClient, 1_000_000);
+            String url = "http://localhost:" + server.getAddress().getPort() + "/cut";
+            assertThrows(IOException.class, () -> downloader.download(url, target));
+            assertFalse(Files.exists(target));
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(target.getParent());
+        }
+    }
+
+    @Test
+    public void testThrottledResponseKeepsTheStoredCopy() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/busy", exchange -> {
+            byte[] body = "<html>Slow down</html>".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html");
+            exchange.getResponseHeaders().add("Retry-After", "5");
+            exchange.sendResponseHeaders(429, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        Path target = Files.createTempFile("testDownloadThrottled", ".html");
+        Files.writeString(target, "<html>Stored</html>");
+
+        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+            HttpDownloader downloader = new HttpDownloader(httpClient);
+            DownloadResult result = downloader.download("http://localhost:" + server.getAddress().getPort() + "/busy", target);
+
+            assertTrue(result.isThrottled());
+            assertEquals("5", result.getRetryAfter());
+            assertEquals(0, result.getContentLength());
+            assertEquals("<html>Stored</html>", Files.readString(target));
+        } finally {
+            server.stop(0);
+            Files.deleteIfExists(target);
+        }
+    }
+
+    private static HttpServer serve(String path, String contentType, byte[] body) throws IOException {
+        return serve(path, contentType, body, body.length);
+    }
+
+    private static HttpServer serve(String path, String contentType, byte[] body, long declaredLength) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(path, exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, declaredLength);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+}
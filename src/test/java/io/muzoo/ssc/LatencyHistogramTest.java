@@ -0,0 +1,59 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long micros = 0; micros < 100_000; micros++) {
+            int bucket = LatencyHistogram.bucketOf(micros);
+            assertTrue(micros < LatencyHistogram.upperBoundMicros(bucket), "Value above its bucket: " + micros);
+            assertTrue(bucket == 0 || micros >= LatencyHistogram.upperBoundMicros(bucket - 1),
+                    "Value below its bucket: " + micros);
+        }
+    }
+
+    @Test
+    public void testBucketRelativeErrorIsBounded() {
+        for (long micros = 4; micros < 10_000_000; micros = micros * 3 / 2 + 1) {
+            long upperBound = LatencyHistogram.upperBoundMicros(LatencyHistogram.bucketOf(micros));
+            assertTrue(upperBound <= micros * 1.25 + 1, "Bucket too wide for " + micros + ": " + upperBound);
+        }
+    }
+
+    @Test
+    public void testVeryLongDurationsGoToLastBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.DAYS.toNanos(30));
+        assertEquals(1, histogram.getCount());
+        assertEquals(TimeUnit.DAYS.toMillis(30), histogram.getPercentileMillis(100), 1);
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMeanMillis(), 0.001);
+        assertEquals(100, histogram.getMaxMillis(), 0.001);
+        assertEquals(50, histogram.getPercentileMillis(50), 50 * 0.25);
+        assertEquals(99, histogram.getPercentileMillis(99), 99 * 0.25);
+        assertEquals(100, histogram.getPercentileMillis(100), 0.001);
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMeanMillis());
+        assertEquals(0, histogram.getPercentileMillis(99));
+    }
+}
@@ -0,0 +1,112 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the streaming extractor against the Jsoup reference on edge cases and on the
+ * pages under {@code src/test/resources/corpus}.
+ */
+public class LinkExtractorTest {
+    private static final String PAGE_URL = "https://example.com/docs/page.html";
+
+    private final LinkExtractor reference = new JsoupLinkExtractor();
+    private final LinkExtractor streaming = new StreamingLinkExtractor();
+
+    @Test
+    public void testExtractsLinkElements() throws IOException {
+        String html = "<html><head><link rel=stylesheet href=\"style.css\"><script src=\"app.js\"></script></head>"
+                + "<body><a href=\"/about\">About</a><img src=\"img/logo.png\"><iframe src=\"https://video.example.org/e/1\"></iframe>"
+                + "<a name=\"anchor-only\">x</a><div href=\"ignored.html\"></div></body></html>";
+
+        assertEquals(List.of(
+                "https://example.com/docs/style.css",
+                "https://example.com/docs/app.js",
+                "https://example.com/about",
+                "https://example.com/docs/img/logo.png",
+                "https://video.example.org/e/1"), extract(streaming, html, StandardCharsets.UTF_8));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "<A HREF=\"Upper.html\">x</A><IMG SRC=upper.png>",
+            "<a href=unquoted.html>x</a><a href='single.html'>y</a><a href = \"spaced.html\" >z</a>",
+            "<a href=\"\">self</a><a href>bare</a><a href=\"  padded.html  \">p</a>",
+            "<a href=\"caf&eacute;.html?a=1&amp;b=2&c=3\">entities</a><a href=\"&#x2F;root\">numeric</a>",
+            "<a href=\"first.html\" href=\"second.html\">duplicate</a>",
+            "<img href=\"both-href.html\" src=\"both-src.png\"><script src=\"s.js\" href=\"h.js\"></script>",
+            "<!-- <a href=\"commented.html\"> --><!--><a href=\"after-empty-comment.html\">x</a><!---->",
+            "<!DOCTYPE html><?xml version=\"1.0\"?><![CDATA[ <a href=\"cdata.html\"> ]]><a href=\"after.html\">x</a>",
+            "<script>var a = '<a href=\"in-script.html\">'; if (a < b) {}</script><a href=\"after-script.html\">x</a>",
+            "<SCRIPT src=x.js>document.write('<img src=\"in-script.png\">')</SCRIPT ><a href=y.html>y</a>",
+            "<style>a::after { content: '<a href=\"in-style.html\">' }</style><title><a href=\"in-title.html\"></title>",
+            "<textarea><a href=\"in-textarea.html\"></textarea><a href=\"after-textarea.html\">x</a>",
+            "<script src=\"self-closing.js\"/><a href=\"after-self-closing.html\">x</a>",
+            "<base href=\"https://cdn.example.net/assets/\"><a href=\"relative.html\">x</a><base href=\"/ignored/\"><a href=\"second.html\">y</a>",
+            "<a href=\"mailto:me@example.com\">m</a><a href=\"javascript:void(0)\">j</a><a href=\"#frag\">f</a><a href=\"//other.example.org/x\">o</a>",
+            "<a href=\"a.html\"title=\"no-space\">x</a><a/href=\"slash.html\">y</a><a href=\"unterminated.html",
+            "<svg><a href=\"in-svg.html\"><rect/></a></svg><image src=\"image-tag.png\">",
+            "a < b and c <d> <a href=\"after-text.html\">x</a> </ a> <a\thref=\"tab.html\">t</a>"
+    })
+    public void testMatchesReferenceOnEdgeCases(String html) throws IOException {
+        assertEquals(extract(reference, html, StandardCharsets.UTF_8), extract(streaming, html, StandardCharsets.UTF_8), html);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"javadoc-package.html", "blog-index.html", "wiki-article.html"})
+    public void testMatchesReferenceOnCorpus(String name) throws IOException {
+        byte[] page = readCorpus(name);
+        String url = "https://example.com/corpus/" + name;
+
+        List<String> expected = extract(reference, page, null, url);
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, extract(streaming, page, null, url));
+    }
+
+    @Test
+    public void testLinksBeforeBaseResolveAgainstPageUrl() throws IOException {
+        // Jsoup resolves every link against the final base; the stream has already emitted the first one
+        String html = "<a href=\"before-base.html\">x</a><base href=\"/moved/\"><a href=\"after-base.html\">y</a>";
+
+        assertEquals(List.of(
+                "https://example.com/docs/before-base.html",
+                "https://example.com/moved/after-base.html"), extract(streaming, html, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testDetectsCharsetFromMetaWhenNotDeclared() throws IOException {
+        String html = "<html><head><meta charset=\"ISO-8859-1\"></head><body><a href=\"café.html\">x</a></body></html>";
+        byte[] bytes = html.getBytes(StandardCharsets.ISO_8859_1);
+
+        assertEquals(List.of("https://example.com/docs/café.html"), extract(streaming, bytes, null, PAGE_URL));
+        assertEquals(extract(reference, bytes, null, PAGE_URL), extract(streaming, bytes, null, PAGE_URL));
+    }
+
+    private static List<String> extract(LinkExtractor extractor, String html, Charset charset) throws IOException {
+        return extract(extractor, html.getBytes(charset), charset, PAGE_URL);
+    }
+
+    private static List<String> extract(LinkExtractor extractor, byte[] html, Charset charset, String url) throws IOException {
+        List<String> links = new ArrayList<>();
+        extractor.extractLinks(new ByteArrayInputStream(html), charset, url, links::add);
+        return links;
+    }
+
+    static byte[] readCorpus(String name) throws IOException {
+        try (InputStream in = LinkExtractorTest.class.getResourceAsStream("/corpus/" + name)) {
+            assertNotNull(in, "Missing corpus page: " + name);
+            return in.readAllBytes();
+        }
+    }
+}
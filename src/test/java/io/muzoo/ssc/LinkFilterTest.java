@@ -0,0 +1,135 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkFilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testBloomFilterHasNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        int changed = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.put(UrlFingerprint.of("https://example.com/page" + i))) {
+                changed++;
+            }
+        }
+        assertTrue(changed > 98_000, "Changed: " + changed); // The others were false positives already
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(filter.mightContain(UrlFingerprint.of("https://example.com/page" + i)));
+            assertFalse(filter.put(UrlFingerprint.of("https://example.com/page" + i)));
+        }
+        assertEquals(7, filter.getHashCount());
+    }
+
+    @Test
+    public void testBloomFilterMeetsItsFalsePositiveRate() {
+        for (double rate : new double[] {0.01, 0.001}) {
+            BloomFilter filter = new BloomFilter(200_000, rate);
+            for (int i = 0; i < 200_000; i++) {
+                filter.put(UrlFingerprint.of("https://example.com/section/" + (i % 97) + "/page" + i + ".html"));
+            }
+            int falsePositives = 0;
+            int probes = 200_000;
+            for (int i = 0; i < probes; i++) {
+                if (filter.mightContain(UrlFingerprint.of("https://example.com/other/" + i + ".html"))) {
+                    falsePositives++;
+                }
+            }
+            assertTrue(falsePositives < probes * rate * 1.3, rate + ": " + falsePositives);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(0, 0.01));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(1000, 1));
+    }
+
+    @Test
+    public void testConcurrentPutsAreAllVisible() throws Exception {
+        BloomFilter filter = new BloomFilter(80_000, 0.01);
+        int threads = 8;
+        List<Future<?>> results = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                int offset = t * 10_000;
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        filter.put(UrlFingerprint.of("https://example.com/page" + (offset + i)));
+                    }
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        for (int i = 0; i < threads * 10_000; i++) {
+            assertTrue(filter.mightContain(UrlFingerprint.of("https://example.com/page" + i)), "Missing page" + i);
+        }
+    }
+
+    @Test
+    public void testLinkFilterConfirmsAndCounts() {
+        VisitedSet visitedUrls = VisitedSet.create(VisitedSet.Type.HASH);
+        LinkFilter filter = new LinkFilter(1000, 0.01, visitedUrls, VisitedSet.Type.HASH);
+        assertFalse(filter.seen("https://example.com/a"));
+        visitedUrls.add("https://example.com/a");
+        filter.record("https://example.com/a", true);
+        filter.record("https://example.com/b#top", false);
+        assertEquals(1, filter.size()); // The claimed URL is confirmed by the visited set
+
+        assertTrue(filter.seen("https://example.com/a"));
+        assertTrue(filter.seen("https://example.com/b#top"));
+        assertFalse(filter.seen("https://example.com/a#top")); // Only the same form is dropped
+        assertFalse(filter.seen("https://example.com/b"));
+
+        assertEquals(2, filter.getHits());
+        assertEquals(3, filter.getMisses() + filter.getFalsePositives());
+        assertEquals(0.4, filter.getHitRate());
+        assertTrue(filter.memoryBytes() > 0);
+    }
+
+    @Test
+    public void testFilteredCrawlVisitsEveryPage() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(200).fanOut(4).pageSize(1024).assets(1, 1, 3, 8).assetSize(256).aliasRate(0.2).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).linkFilter(true).expectedLinks(10_000).build();
+            WebCrawler crawler = new WebCrawler(baseUrl, tempDir.resolve("site").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), config);
+            crawler.startCrawling();
+
+            // The shared assets and navigation links repeat on every page and are dropped unseen
+            assertEquals(server.reachableUrls().size(), server.getRequests());
+            CrawlMetrics metrics = crawler.getMetrics();
+            assertEquals(server.reachableUrls().size(), metrics.getResponses());
+            assertTrue(metrics.getLinkFilterHitRate() > 0.5, "Hit rate: " + metrics.getLinkFilterHitRate());
+            assertTrue(metrics.toJson(new ProgressTracker()).contains("\"linkFilter\": {\"hits\": "));
+        }
+    }
+
+    @Test
+    public void testLinkFilterOptionsAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().expectedLinks(0));
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().linkFilterFalsePositiveRate(0));
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().linkFilter(true)
+                .frontierType(Frontier.Type.PRIORITY).build());
+        assertFalse(CrawlerConfig.defaults().isLinkFilter());
+    }
+}
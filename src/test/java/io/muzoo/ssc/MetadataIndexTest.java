@@ -0,0 +1,97 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataIndexTest {
+    private static final String BASE_URL = "https://example.com/docs/";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testMissingFileIsEmpty() throws IOException {
+        MetadataIndex index = MetadataIndex.load(tempDir.resolve("metadata.idx"), BASE_URL);
+        assertEquals(0, index.previousSize());
+        assertNull(index.getPrevious(BASE_URL));
+    }
+
+    @Test
+    public void testSaveAndLoadRoundTrip() throws IOException {
+        Path file = tempDir.resolve("metadata.idx");
+        MetadataIndex index = MetadataIndex.load(file, BASE_URL);
+        index.put(BASE_URL, new PageMetadata("\"abc\"", "Mon, 01 Jan 2024 00:00:00 GMT", 42, 1234, "text/html",
+                "UTF-8", List.of(BASE_URL + "a.html", BASE_URL + "css/site.css")));
+        index.put(BASE_URL + "logo.png", new PageMetadata(null, null, 7, 99, null, null, List.of()));
+        index.save();
+
+        MetadataIndex loaded = MetadataIndex.load(file, BASE_URL);
+        assertEquals(2, loaded.previousSize());
+        assertEquals(0, loaded.size());
+        PageMetadata page = loaded.getPrevious(BASE_URL);
+        assertEquals("\"abc\"", page.getEtag());
+        assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", page.getLastModified());
+        assertEquals(42, page.getContentHash());
+        assertEquals(1234, page.getSize());
+        assertEquals("text/html", page.getMimeType());
+        assertEquals("UTF-8", page.getCharset());
+        assertEquals(List.of(BASE_URL + "a.html", BASE_URL + "css/site.css"), page.getOutlinks());
+        assertTrue(page.hasValidators());
+        assertFalse(loaded.getPrevious(BASE_URL + "logo.png").hasValidators());
+    }
+
+    @Test
+    public void testSaveKeepsOnlyEntriesOfThisCrawl() throws IOException {
+        Path file = tempDir.resolve("metadata.idx");
+        MetadataIndex first = MetadataIndex.load(file, BASE_URL);
+        first.put(BASE_URL + "old.html", new PageMetadata("\"1\"", null, 1, 1, null, null, List.of()));
+        first.put(BASE_URL + "kept.html", new PageMetadata("\"2\"", null, 2, 2, null, null, List.of()));
+        first.save();
+
+        MetadataIndex second = MetadataIndex.load(file, BASE_URL);
+        second.put(BASE_URL + "kept.html", second.getPrevious(BASE_URL + "kept.html"));
+        second.save();
+
+        MetadataIndex third = MetadataIndex.load(file, BASE_URL);
+        assertEquals(1, third.previousSize());
+        assertNull(third.getPrevious(BASE_URL + "old.html"));
+    }
+
+    @Test
+    public void testCarriedOverEntriesDoNotReplaceNewOnes() throws IOException {
+        Path file = tempDir.resolve("metadata.idx");
+        MetadataIndex first = MetadataIndex.load(file, BASE_URL);
+        for (String page : List.of("a.html", "b.html", "c.html")) {
+            first.put(BASE_URL + page, new PageMetadata("\"1\"", null, 1, 1, null, null, List.of()));
+        }
+        first.save();
+
+        MetadataIndex second = MetadataIndex.load(file, BASE_URL);
+        second.put(BASE_URL + "a.html", new PageMetadata("\"2\"", null, 2, 2, null, null, List.of()));
+        second.keepPrevious(BASE_URL + "a.html");
+        second.keepPrevious(BASE_URL + "b.html");
+        second.keepPrevious(BASE_URL + "missing.html");
+        assertEquals(2, second.size());
+        second.keepAllPrevious();
+        assertEquals(3, second.size());
+        second.save();
+
+        MetadataIndex third = MetadataIndex.load(file, BASE_URL);
+        assertEquals("\"2\"", third.getPrevious(BASE_URL + "a.html").getEtag());
+        assertEquals("\"1\"", third.getPrevious(BASE_URL + "c.html").getEtag());
+    }
+
+    @Test
+    public void testRejectsForeignFile() throws IOException {
+        Path file = tempDir.resolve("metadata.idx");
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(IOException.class, () -> MetadataIndex.load(file, BASE_URL));
+    }
+}
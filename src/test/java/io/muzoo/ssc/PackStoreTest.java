@@ -0,0 +1,158 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String text(ByteBuffer buffer) {
+        return buffer == null ? null : StandardCharsets.UTF_8.decode(buffer.duplicate()).toString();
+    }
+
+    private static long packFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".pack")).count();
+        }
+    }
+
+    @Test
+    public void testBodiesAreReadBackAsSlices() throws IOException {
+        try (PackStore store = new PackStore(tempDir, 1 << 20, StorageWriter.Durability.NONE)) {
+            store.put("http://example.com/a.html", "first".getBytes(StandardCharsets.UTF_8));
+            store.put("http://example.com/b.html", "second".getBytes(StandardCharsets.UTF_8));
+
+            ByteBuffer body = store.get("http://example.com/a.html");
+            assertTrue(body.isReadOnly());
+            assertEquals("first", text(body));
+            try (InputStream in = store.open("http://example.com/b.html")) {
+                assertEquals("second", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+            assertNull(store.get("http://example.com/c.html"));
+            assertThrows(NoSuchFileException.class, () -> store.open("http://example.com/c.html"));
+            assertEquals(2, store.size());
+            assertEquals(11, store.getLiveBytes());
+        }
+    }
+
+    @Test
+    public void testPacksRotateAndForEachVisitsLatestBodies() throws IOException {
+        try (PackStore store = new PackStore(tempDir, 200, StorageWriter.Durability.PER_FILE)) {
+            for (int i = 0; i < 20; i++) {
+                store.put("http://example.com/" + i + ".html", ("page " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            store.put("http://example.com/3.html", "page 3 again".getBytes(StandardCharsets.UTF_8));
+
+            assertTrue(store.getPackCount() > 2);
+            Map<String, String> bodies = new LinkedHashMap<>();
+            store.forEach((url, body) -> bodies.put(url, text(body)));
+            assertEquals(20, bodies.size());
+            assertEquals("page 3 again", bodies.get("http://example.com/3.html"));
+            assertEquals("page 19", bodies.get("http://example.com/19.html"));
+        }
+    }
+
+    @Test
+    public void testCompactionDropsSupersededBodies() throws IOException {
+        byte[] large = new byte[10_000];
+        try (PackStore store = new PackStore(tempDir, 25_000, StorageWriter.Durability.NONE)) {
+            for (int crawl = 0; crawl < 3; crawl++) {
+                for (int i = 0; i < 5; i++) {
+                    large[0] = (byte) crawl;
+                    store.put("http://example.com/" + i + ".html", large);
+                }
+            }
+            ByteBuffer before = store.get("http://example.com/4.html");
+            long packed = store.getPackedBytes();
+            store.compact();
+
+            assertTrue(store.getPackedBytes() < packed / 2);
+            assertEquals(50_000, store.getLiveBytes());
+            assertEquals(store.getPackCount(), packFiles(tempDir));
+            assertEquals(2, store.get("http://example.com/0.html").get(0));
+            assertEquals(2, before.get(0)); // Slices taken before the compaction stay readable
+            store.put("http://example.com/5.html", large);
+        }
+
+        try (PackStore reopened = new PackStore(tempDir, 25_000, StorageWriter.Durability.NONE)) {
+            assertEquals(6, reopened.size());
+            assertEquals(10_000, reopened.get("http://example.com/5.html").remaining());
+        }
+    }
+
+    @Test
+    public void testReopenScansPacksAndCutsTornRecord() throws IOException {
+        try (PackStore store = new PackStore(tempDir, 1 << 20, StorageWriter.Durability.NONE)) {
+            store.put("http://example.com/a.html", "first".getBytes(StandardCharsets.UTF_8));
+        }
+        // Records appended after the index was saved, then a crash in the middle of a record
+        PackStore store = new PackStore(tempDir, 1 << 20, StorageWriter.Durability.NONE);
+        store.put("http://example.com/b.html", "second".getBytes(StandardCharsets.UTF_8));
+        store.put("http://example.com/c.html", "third".getBytes(StandardCharsets.UTF_8));
+        Path pack = tempDir.resolve("pack-00001.pack");
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+
+        try (PackStore reopened = new PackStore(tempDir, 1 << 20, StorageWriter.Durability.NONE)) {
+            assertEquals("first", text(reopened.get("http://example.com/a.html")));
+            assertEquals("second", text(reopened.get("http://example.com/b.html")));
+            assertNull(reopened.get("http://example.com/c.html"));
+            reopened.put("http://example.com/c.html", "third".getBytes(StandardCharsets.UTF_8));
+        }
+        Files.delete(tempDir.resolve(PackStore.INDEX_FILE));
+        try (PackStore rescanned = new PackStore(tempDir, 1 << 20, StorageWriter.Durability.NONE)) {
+            assertEquals(3, rescanned.size());
+            assertEquals("third", text(rescanned.get("http://example.com/c.html")));
+        }
+    }
+
+    @Test
+    public void testCrawlStoresBodiesInPacks() throws IOException {
+        Path packDir = tempDir.resolve("packs");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(30).fanOut(3).pageSize(300 * 1024).assetSize(512).build();
+             CloseableHttpClient client = HttpClients.createDefault();
+             PackStore store = new PackStore(packDir, 4 * 1024 * 1024, StorageWriter.Durability.NONE)) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).packDir(packDir).build();
+            new WebCrawler(baseUrl, tempDir.resolve("unused").toString(),
+                    new HttpDownloader(client, config.getMaxBodySize(), store),
+                    new ProgressTracker(), new UrlHandler(), config).startCrawling();
+
+            // Links of the large pages were read back from the packs
+            assertEquals(reachable, server.getRequests());
+            assertEquals(reachable, store.size());
+            assertFalse(Files.exists(tempDir.resolve("unused")));
+            assertTrue(store.getPackCount() > 1);
+            assertTrue(store.get(baseUrl + "pages/1.html").remaining() >= 300 * 1024);
+        }
+    }
+
+    @Test
+    public void testArchiveAndPackStoreAreExclusive() {
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder()
+                .archiveDir(tempDir.resolve("archive")).packDir(tempDir.resolve("packs")).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().maxPackSize(1L << 31));
+    }
+}
@@ -0,0 +1,155 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelineStageTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testCloseFinishesQueuedItems() throws InterruptedException {
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+        PipelineStage<Integer> stage = new PipelineStage<Integer>("test", 2, 100, true, handled::add).start();
+        for (int i = 0; i < 50; i++) {
+            stage.submit(i);
+        }
+        stage.awaitTermination();
+
+        assertEquals(50, handled.size());
+        assertEquals(50, stage.getProcessed());
+        assertEquals(0, stage.getQueueDepth());
+        assertThrows(IllegalStateException.class, () -> stage.submit(50));
+    }
+
+    @Test
+    public void testWorkersRunFromStart() throws InterruptedException {
+        List<Integer> handled = new CopyOnWriteArrayList<>();
+        PipelineStage<Integer> stage = new PipelineStage<Integer>("later", 1, 10, true, handled::add);
+        stage.submit(1);
+        Thread.sleep(150);
+        assertTrue(handled.isEmpty(), "No worker should run before start()");
+
+        stage.start();
+        assertThrows(IllegalStateException.class, stage::start);
+        stage.awaitTermination();
+        assertEquals(List.of(1), handled);
+    }
+
+    @Test
+    public void testFullQueueBlocksTheProducer() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (PipelineStage<Integer> stage = new PipelineStage<Integer>("slow", 1, 2, false, item -> {
+            started.countDown();
+            release.await();
+        }).start()) {
+            stage.submit(1);
+            started.await(); // Taken by the worker, which now waits
+            stage.submit(2);
+            stage.submit(3);
+            assertEquals(2, stage.getQueueDepth());
+            assertEquals(stage.getQueueCapacity(), stage.getQueueDepth());
+
+            Thread producer = Thread.ofVirtual().start(() -> {
+                try {
+                    stage.submit(4);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.join(200);
+            assertTrue(producer.isAlive(), "The producer should wait for room in the queue");
+
+            release.countDown();
+            producer.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(producer.isAlive());
+            assertTrue(stage.getBlockedNanos() >= TimeUnit.MILLISECONDS.toNanos(150));
+        }
+    }
+
+    @Test
+    public void testInterruptedCloseKeepsTheInterrupt() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineStage<Integer> stage = new PipelineStage<Integer>("held", 1, 2, true, item -> release.await()).start();
+        stage.submit(1);
+        Thread.currentThread().interrupt();
+        stage.close();
+        assertTrue(Thread.interrupted(), "close() should keep the interrupt flag");
+
+        release.countDown();
+        stage.awaitTermination();
+        assertEquals(1, stage.getProcessed());
+    }
+
+    @Test
+    public void testUtilizationAndFailingItems() throws InterruptedException {
+        PipelineStage<Integer> stage = new PipelineStage<Integer>("busy", 1, 10, false, item -> {
+            if (item % 2 == 0) {
+                throw new IllegalStateException("Item " + item);
+            }
+            Thread.sleep(50);
+        }).start();
+        for (int i = 0; i < 6; i++) {
+            stage.submit(i);
+        }
+        stage.awaitTermination();
+
+        // Failing items do not stop the worker; the sleeps keep it busy most of the time
+        assertEquals(6, stage.getProcessed());
+        assertEquals(1, stage.getWorkers());
+        assertTrue(stage.getUtilization() > 0.5, "Utilization: " + stage.getUtilization());
+        double closedUtilization = stage.getUtilization();
+        Thread.sleep(20);
+        assertEquals(closedUtilization, stage.getUtilization());
+    }
+
+    @Test
+    public void testPipelinedCrawlVisitsEveryPage() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(150).fanOut(4).pageSize(4096).assetSize(256).latency(2, 8).build();
+             CloseableHttpClient client = HttpClients.createDefault();
+             StorageWriter storageWriter = new StorageWriter(2, 16, StorageWriter.Durability.NONE,
+                     Duration.ofSeconds(5)).start()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().pipelined(true).concurrency(8).parseThreads(2)
+                    .stageQueueCapacity(4).build();
+            WebCrawler crawler = new WebCrawler(baseUrl, tempDir.resolve("site").toString(),
+                    new HttpDownloader(client, config.getMaxBodySize(), storageWriter),
+                    new ProgressTracker(), new UrlHandler(), config);
+            crawler.getMetrics().attachStorageWriter(storageWriter);
+            crawler.startCrawling();
+
+            assertEquals(reachable, server.getRequests());
+            CrawlMetrics metrics = crawler.getMetrics();
+            assertEquals(reachable, metrics.getResponses());
+            assertEquals(0, metrics.getFetchQueueDepth());
+            assertTrue(metrics.getFetchUtilization() > 0);
+            assertTrue(metrics.getStoreUtilization() > 0);
+            assertTrue(metrics.stageSummary().startsWith("fetch 8 workers"));
+            assertTrue(metrics.toJson(new ProgressTracker()).contains("\"parse\": {\"workers\": 2, \"queueDepth\": 0,"
+                    + " \"queueCapacity\": 4, \"processed\": " + reachable + ","));
+        }
+    }
+
+    @Test
+    public void testPipelineNeedsTheBlockingDownloader() {
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().pipelined(true).asyncFetch(true).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().parseThreads(0));
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().stageQueueCapacity(0));
+    }
+}
@@ -0,0 +1,253 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PriorityFrontierTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static void queue(Frontier frontier, PendingUrls pendingUrls, String url, int depth) {
+        pendingUrls.add(url, depth);
+        frontier.push(url);
+    }
+
+    @Test
+    public void testShallowUrlsComeFirst() throws IOException {
+        PendingUrls pendingUrls = new PendingUrls();
+        try (PriorityFrontier frontier = new PriorityFrontier(tempDir, 100, pendingUrls, List.of())) {
+            queue(frontier, pendingUrls, "http://example.com/deep", 2);
+            queue(frontier, pendingUrls, "http://example.com/", 0);
+            queue(frontier, pendingUrls, "http://example.com/a", 1);
+            queue(frontier, pendingUrls, "http://example.com/b", 1);
+
+            assertEquals(4, frontier.size());
+            assertEquals("http://example.com/", frontier.poll());
+            assertEquals("http://example.com/a", frontier.poll()); // Same level: in the order queued
+            assertEquals("http://example.com/b", frontier.poll());
+            assertEquals("http://example.com/deep", frontier.poll());
+            assertNull(frontier.poll());
+            assertEquals(2, pendingUrls.depthOf("http://example.com/deep"));
+        }
+    }
+
+    @Test
+    public void testInLinksPromoteWaitingUrls() throws IOException {
+        PendingUrls pendingUrls = new PendingUrls();
+        try (PriorityFrontier frontier = new PriorityFrontier(tempDir, 100, pendingUrls, List.of())) {
+            queue(frontier, pendingUrls, "http://example.com/popular", 3);
+            queue(frontier, pendingUrls, "http://example.com/other", 2);
+            for (int i = 0; i < 3; i++) {
+                frontier.linkedAgain("http://example.com/popular");
+            }
+
+            // Four links take it up two levels, ahead of the page one level shallower
+            assertEquals(4, pendingUrls.inLinksOf("http://example.com/popular"));
+            assertEquals(2, frontier.getPromotions());
+            assertEquals(2, frontier.size());
+            assertEquals("http://example.com/popular", frontier.poll());
+            frontier.linkedAgain("http://example.com/popular"); // Taken already
+            assertEquals("http://example.com/other", frontier.poll());
+            assertNull(frontier.poll()); // The copies left at the old levels are stale
+            assertEquals(0, frontier.size());
+        }
+    }
+
+    @Test
+    public void testBoostsAndDeferredUrls() throws IOException {
+        PendingUrls pendingUrls = new PendingUrls();
+        List<PriorityFrontier.Boost> boosts = List.of(new PriorityFrontier.Boost("/docs/", 2),
+                new PriorityFrontier.Boost("\\.pdf$", -5));
+        try (PriorityFrontier frontier = new PriorityFrontier(null, 100, pendingUrls, boosts)) {
+            frontier.defer("http://example.com/duplicate");
+            queue(frontier, pendingUrls, "http://example.com/manual.pdf", 1);
+            queue(frontier, pendingUrls, "http://example.com/blog/1", 1);
+            queue(frontier, pendingUrls, "http://example.com/docs/a/b", 2);
+
+            assertEquals(0, frontier.levelOf("http://example.com/docs/", 1, 1));
+            assertEquals(PriorityFrontier.LEVELS - 2, frontier.levelOf("http://example.com/x", 100, 1));
+            assertEquals("http://example.com/docs/a/b", frontier.poll());
+            assertEquals("http://example.com/blog/1", frontier.poll());
+            assertEquals("http://example.com/manual.pdf", frontier.poll());
+            assertEquals("http://example.com/duplicate", frontier.poll());
+        }
+    }
+
+    @Test
+    public void testLargeFrontierSpillsAndKeepsOrder() throws IOException {
+        int urls = 300_000;
+        PendingUrls pendingUrls = new PendingUrls();
+        Random random = new Random(42);
+        try (PriorityFrontier frontier = new PriorityFrontier(tempDir, 3200, pendingUrls, List.of())) {
+            for (int i = 0; i < urls; i++) {
+                queue(frontier, pendingUrls, "https://example.com/section/" + i + "/page.html", random.nextInt(10));
+            }
+            assertEquals(urls, frontier.size());
+            assertTrue(frontier.getSpilledUrls() > urls * 9L / 10);
+            assertTrue(pendingUrls.memoryBytes() <= urls * 48L, "Table: " + pendingUrls.memoryBytes());
+
+            int previousDepth = 0;
+            String url;
+            int polled = 0;
+            while ((url = frontier.poll()) != null) {
+                int depth = pendingUrls.depthOf(url);
+                assertTrue(depth >= previousDepth, url);
+                previousDepth = depth;
+                pendingUrls.remove(url);
+                polled++;
+            }
+            assertEquals(urls, polled);
+            assertEquals(0, pendingUrls.size());
+        }
+    }
+
+    @Test
+    public void testPendingUrlsSurviveRemovalsInTheirProbeSequence() {
+        PendingUrls pendingUrls = new PendingUrls();
+        for (int i = 0; i < 50_000; i++) {
+            pendingUrls.add("u" + i, i % 1000);
+        }
+        for (int i = 0; i < 50_000; i += 2) {
+            pendingUrls.remove("u" + i);
+        }
+        assertEquals(25_000, pendingUrls.size());
+        for (int i = 0; i < 50_000; i++) {
+            assertEquals(i % 2 == 0 ? -1 : Math.min(i % 1000, PendingUrls.MAX_DEPTH), pendingUrls.depthOf("u" + i));
+        }
+    }
+
+    @Test
+    public void testMaxDepthLimitsTheCrawl() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(200).fanOut(3).pageSize(1024).assetSize(256).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            CrawlerConfig config = CrawlerConfig.builder().frontierType(Frontier.Type.FIFO).maxDepth(2).build();
+            Path site = tempDir.resolve("site");
+            new WebCrawler(baseUrl, site.toString(), new HttpDownloader(client), new ProgressTracker(),
+                    new UrlHandler(), config).startCrawling();
+
+            // Pages 4 to 12 are two links from the root; their children are not fetched
+            Path pages;
+            try (Stream<Path> hosts = Files.list(site)) {
+                pages = hosts.findFirst().orElseThrow().resolve("pages");
+            }
+            assertTrue(Files.exists(pages.resolve("12.html")));
+            assertFalse(Files.exists(pages.resolve("13.html")));
+            assertTrue(server.getRequests() < server.reachableUrls().size());
+        }
+    }
+
+    @Test
+    public void testResumedCrawlKeepsTheMaxDepth() throws IOException {
+        Path stateDir = tempDir.resolve("state");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(200).fanOut(3).pageSize(1024).assetSize(256).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            Path site = tempDir.resolve("site");
+            CrawlerConfig budgeted = CrawlerConfig.builder().frontierType(Frontier.Type.PRIORITY).maxDepth(2)
+                    .checkpointDir(stateDir).maxPages(5).build();
+            new WebCrawler(baseUrl, site.toString(), new HttpDownloader(client), new ProgressTracker(),
+                    new UrlHandler(), budgeted).startCrawling();
+            assertEquals(5, server.getRequests());
+
+            // The queued URLs come back at the depth they were found at, not as new roots
+            CrawlerConfig resumed = CrawlerConfig.builder().frontierType(Frontier.Type.PRIORITY).maxDepth(2)
+                    .checkpointDir(stateDir).resume(true).build();
+            new WebCrawler(baseUrl, site.toString(), new HttpDownloader(client), new ProgressTracker(),
+                    new UrlHandler(), resumed).startCrawling();
+            Path pages;
+            try (Stream<Path> hosts = Files.list(site)) {
+                pages = hosts.findFirst().orElseThrow().resolve("pages");
+            }
+            assertTrue(Files.exists(pages.resolve("12.html")));
+            assertFalse(Files.exists(pages.resolve("13.html")));
+        }
+    }
+
+    @Test
+    public void testPriorityCrawlVisitsEveryPage() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(120).fanOut(4).pageSize(1024).assetSize(256).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).frontierType(Frontier.Type.PRIORITY)
+                    .priorityBoost("/assets/", -3).politeness(true).hostRequestsPerSecond(0).build();
+            WebCrawler crawler = new WebCrawler(baseUrl, tempDir.resolve("site").toString(),
+                    new HttpDownloader(client), new ProgressTracker(), new UrlHandler(), config);
+            crawler.startCrawling();
+
+            assertEquals(server.reachableUrls().size() + 1, server.getRequests()); // And the robots.txt
+            assertEquals(server.reachableUrls().size(), crawler.getMetrics().getResponses());
+        }
+    }
+
+    @Test
+    public void testPageBudgetStopsTheCrawlAndResumeFinishesIt() throws IOException {
+        Path stateDir = tempDir.resolve("state");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(100).fanOut(4).pageSize(1024).assetSize(256).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig budgeted = CrawlerConfig.builder().concurrency(4).frontierType(Frontier.Type.PRIORITY)
+                    .checkpointDir(stateDir).maxPages(25).build();
+            new WebCrawler(baseUrl, tempDir.resolve("site").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), budgeted).startCrawling();
+            assertEquals(25, server.getRequests());
+
+            // The URLs still waiting were journaled, so the resumed crawl fetches the rest
+            CrawlerConfig resumed = CrawlerConfig.builder().concurrency(4).frontierType(Frontier.Type.PRIORITY)
+                    .checkpointDir(stateDir).resume(true).build();
+            new WebCrawler(baseUrl, tempDir.resolve("site").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), resumed).startCrawling();
+            assertEquals(reachable, server.getRequests());
+        }
+    }
+
+    @Test
+    public void testByteAndTimeBudgetsStopTheCrawl() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(200).fanOut(4).pageSize(16 * 1024).assetSize(256).latency(5, 5).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig bytes = CrawlerConfig.builder().maxBytes(100 * 1024).build();
+            new WebCrawler(baseUrl, tempDir.resolve("bytes").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), bytes).startCrawling();
+            long afterBytes = server.getRequests();
+            assertTrue(afterBytes < reachable / 2, "Requests: " + afterBytes);
+
+            CrawlerConfig time = CrawlerConfig.builder().concurrency(2).maxDuration(Duration.ofMillis(200)).build();
+            long start = System.nanoTime();
+            new WebCrawler(baseUrl, tempDir.resolve("time").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), time).startCrawling();
+            assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+            assertTrue(server.getRequests() - afterBytes < reachable, "Requests: " + server.getRequests());
+        }
+    }
+
+    @Test
+    public void testBudgetOptionsAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().maxPages(0));
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().maxDepth(-1));
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().maxDuration(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().exactTotal(true).maxPages(10).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().priorityBoost("/docs/", 1).build());
+        assertFalse(CrawlerConfig.defaults().isBounded());
+    }
+}
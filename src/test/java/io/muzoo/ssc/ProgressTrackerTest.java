@@ -10,7 +10,7 @@ public class ProgressTrackerTest {
     public void testSetTotalUrls() {
         ProgressTracker tracker = new ProgressTracker();
         tracker.setTotalUrls(100);
-        assertEquals(100, tracker.totalUrls);
+        assertEquals(100, tracker.getTotalUrls());
     }
 
     @Test
@@ -19,8 +19,24 @@ public class ProgressTrackerTest {
         tracker.setTotalUrls(10);
         tracker.incrementDownloadedUrls("http://example.com/1");
         tracker.incrementDownloadedUrls("http://example.com/2");
-        assertEquals(2, tracker.downloadedUrls);
-        assertEquals("http://example.com/2", tracker.currentUrl);
+        assertEquals(2, tracker.getDownloadedUrls());
+        assertEquals("http://example.com/2", tracker.getCurrentUrl());
+    }
+
+    @Test
+    public void testDiscoveredUrlsGrowTotalAndPending() {
+        ProgressTracker tracker = new ProgressTracker();
+        tracker.incrementDiscoveredUrls();
+        tracker.incrementDiscoveredUrls();
+        tracker.incrementDiscoveredUrls();
+        assertEquals(3, tracker.getTotalUrls());
+        assertEquals(3, tracker.getPendingUrls());
+        assertEquals(-1, tracker.getEtaSeconds());
+
+        tracker.incrementDownloadedUrls("http://example.com/1");
+        tracker.incrementFailedUrls("http://example.com/2");
+        assertEquals(1, tracker.getPendingUrls());
+        assertTrue(tracker.getEtaSeconds() >= 0);
     }
 
     @Test
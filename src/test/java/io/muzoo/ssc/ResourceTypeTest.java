@@ -0,0 +1,39 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResourceTypeTest {
+
+    @Test
+    public void testResourceTypeRouting() {
+        assertEquals(ResourceType.HTML, ResourceType.of("text/html", "https://example.com/a"));
+        assertEquals(ResourceType.CSS, ResourceType.of("text/css", "https://example.com/a"));
+        assertEquals(ResourceType.IMAGE, ResourceType.of("image/png", "https://example.com/a"));
+        assertEquals(ResourceType.SCRIPT, ResourceType.of("application/javascript", "https://example.com/a.js"));
+        assertEquals(ResourceType.CSS, ResourceType.of(null, "https://example.com/style.css"));
+        assertEquals(ResourceType.HTML, ResourceType.of(null, "https://example.com/docs/"));
+        assertEquals(ResourceType.FONT, ResourceType.of("application/octet-stream", "https://example.com/a.woff2"));
+        assertTrue(ResourceType.CSS.isParsed());
+        assertFalse(ResourceType.IMAGE.isParsed());
+    }
+
+    @Test
+    public void testUrlsWithoutAnExtensionArePages() {
+        assertEquals(ResourceType.HTML, ResourceType.of(null, "https://example.com"));
+        assertEquals(ResourceType.HTML, ResourceType.of(null, "https://www.example.co.uk"));
+        assertEquals(ResourceType.HTML, ResourceType.of(null, "https://example.com?lang=en.gb"));
+        assertEquals(ResourceType.HTML, ResourceType.of(null, "https://example.com/docs/intro"));
+        assertEquals(ResourceType.HTML,
+                ResourceType.of("application/octet-stream", "https://example.com/search?q=a.b"));
+        assertEquals(ResourceType.HTML, ResourceType.of(null, "https://example.com/about#v1.2"));
+    }
+
+    @Test
+    public void testExtensionIgnoresTheQuery() {
+        assertEquals(ResourceType.CSS, ResourceType.of(null, "https://example.com/style.css?v=3"));
+        assertEquals(ResourceType.IMAGE, ResourceType.of(null, "https://example.com/logo.PNG#top"));
+        assertEquals(ResourceType.OTHER, ResourceType.of(null, "https://example.com/report.pdf"));
+    }
+}
@@ -0,0 +1,232 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.utils.DateUtils;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResponseCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static DownloadResult result(String url, byte[] body, long freshUntil) {
+        return new DownloadResult(url, 200, "text/html", StandardCharsets.UTF_8, Path.of("unused"), body.length, 0, 0,
+                "\"v1\"", null, Arrays.hashCode(body)).withBody(body).withFreshUntil(freshUntil);
+    }
+
+    private static byte[] body(int length, int seed) {
+        byte[] body = new byte[length];
+        Arrays.fill(body, (byte) seed);
+        return body;
+    }
+
+    private static BasicHttpResponse response(String... headers) {
+        BasicHttpResponse response = new BasicHttpResponse(200);
+        for (int i = 0; i < headers.length; i += 2) {
+            response.addHeader(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    private void crawl(String baseUrl, Path outputDir, Downloader downloader) throws IOException {
+        new WebCrawler(baseUrl, outputDir.toString(), downloader, new ProgressTracker(), new UrlHandler(),
+                CrawlerConfig.builder().concurrency(4).build()).startCrawling();
+    }
+
+    @Test
+    public void testFreshnessFollowsTheCacheHeaders() {
+        long now = 1_700_000_000_000L;
+        assertEquals(now + 60_000, HttpDownloader.freshUntil(response("Cache-Control", "public, max-age=60"), now));
+        assertEquals(now + 50_000, HttpDownloader.freshUntil(response("Cache-Control", "max-age=60", "Age", "10"), now));
+        assertEquals(0, HttpDownloader.freshUntil(response("Cache-Control", "max-age=60", "Age", "90"), now));
+        assertEquals(0, HttpDownloader.freshUntil(response("Cache-Control", "no-cache, max-age=60"), now));
+        assertEquals(DownloadResult.NOT_STORABLE,
+                HttpDownloader.freshUntil(response("Cache-Control", "max-age=60, no-store"), now));
+        assertEquals(0, HttpDownloader.freshUntil(response(), now));
+        assertEquals(0, HttpDownloader.freshUntil(response("Expires", "0"), now));
+
+        // Expires is taken relative to the server's Date, and max-age wins over it
+        Date date = new Date(now - 3_600_000); // The server's clock is an hour behind
+        String expires = DateUtils.formatDate(new Date(date.getTime() + 120_000));
+        assertEquals(now + 120_000, HttpDownloader.freshUntil(
+                response("Date", DateUtils.formatDate(date), "Expires", expires), now));
+        assertEquals(now + 10_000, HttpDownloader.freshUntil(
+                response("Date", DateUtils.formatDate(date), "Expires", expires, "Cache-Control", "max-age=10"), now));
+    }
+
+    @Test
+    public void testMemoryTierEvictsTheLeastRecentlyUsedBodies() throws IOException {
+        ResponseCache cache = new ResponseCache(tempDir, 8 * 1024); // Bodies up to 1 KB are held in memory
+        for (int i = 0; i < 10; i++) {
+            cache.put(result("http://example.com/" + i, body(1000, i), Long.MAX_VALUE));
+            cache.get("http://example.com/0"); // Keeps the first body the most recently used
+        }
+        assertTrue(cache.getMemoryBytes() <= 8 * 1024);
+        assertEquals(10, cache.getStored());
+        assertEquals(10, cache.getMemoryHits());
+
+        assertArrayEquals(body(1000, 0), cache.get("http://example.com/0").getBody());
+        assertEquals(0, cache.getDiskHits());
+        ResponseCache.Entry evicted = cache.get("http://example.com/1"); // Read back from disk
+        assertEquals(1, cache.getDiskHits());
+        assertArrayEquals(body(1000, 1), evicted.getBody());
+        assertEquals("text/html", evicted.getMimeType());
+        assertEquals("UTF-8", evicted.getCharset());
+        assertEquals("\"v1\"", evicted.getEtag());
+        assertNull(cache.get("http://example.com/missing"));
+    }
+
+    @Test
+    public void testLargeBodiesAreKeptOnDiskOnly() throws IOException {
+        ResponseCache cache = new ResponseCache(tempDir, 8 * 1024);
+        byte[] large = body(100_000, 7);
+        cache.put(result("http://example.com/large.png", large, 0));
+
+        ResponseCache.Entry entry = cache.get("http://example.com/large.png");
+        assertNull(entry.getBody());
+        assertEquals(large.length, entry.getLength());
+        assertEquals(0, cache.getMemoryBytes());
+        try (InputStream in = cache.openBody(entry)) {
+            assertArrayEquals(large, in.readAllBytes());
+        }
+    }
+
+    @Test
+    public void testEntriesAndTheirFreshnessSurviveARestart() throws IOException {
+        long now = System.currentTimeMillis();
+        ResponseCache cache = new ResponseCache(tempDir, 0);
+        ResponseCache.Entry entry = cache.put(result("http://example.com/", body(10, 1), now - 1));
+        assertFalse(entry.isFresh(now));
+        cache.refresh(entry, now + 60_000);
+        assertTrue(entry.isFresh(now));
+
+        ResponseCache reopened = new ResponseCache(tempDir, 1024);
+        ResponseCache.Entry restored = reopened.get("http://example.com/");
+        assertTrue(restored.isFresh(now));
+        assertArrayEquals(body(10, 1), restored.getBody());
+    }
+
+    @Test
+    public void testFreshResponsesAreServedWithoutRequests() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(60).fanOut(4).pageSize(2048).assetSize(512).maxAge(3600).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            ResponseCache cache = new ResponseCache(tempDir.resolve("cache"), 1024 * 1024);
+            crawl(baseUrl, tempDir.resolve("first"), new CachingHttpDownloader(new HttpDownloader(client), cache, false));
+            int reachable = server.reachableUrls().size();
+            assertEquals(reachable, server.getRequests());
+            assertEquals(reachable, cache.getMisses());
+            assertEquals(reachable, cache.getStored());
+
+            // A new run, with a new memory tier, answers every request from disk
+            ResponseCache reopened = new ResponseCache(tempDir.resolve("cache"), 1024 * 1024);
+            crawl(baseUrl, tempDir.resolve("second"), new CachingHttpDownloader(new HttpDownloader(client), reopened, false));
+            assertEquals(reachable, server.getRequests());
+            assertEquals(reachable, reopened.getHits());
+            assertEquals(reachable, reopened.getDiskHits());
+            assertEquals(1.0, reopened.getHitRatio());
+            assertTrue(reopened.getBytesSaved() > 0);
+
+            String page = Path.of("127.0.0.1_" + baseUrl.replaceAll(".*:(\\d+)/", "$1"), "pages", "5.html").toString();
+            assertEquals(Files.readString(tempDir.resolve("first").resolve(page)),
+                    Files.readString(tempDir.resolve("second").resolve(page)));
+        }
+    }
+
+    @Test
+    public void testStaleResponsesAreRevalidated() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(40).fanOut(4).pageSize(2048).assetSize(512).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            ResponseCache cache = new ResponseCache(tempDir.resolve("cache"), 1024 * 1024);
+            CachingHttpDownloader downloader = new CachingHttpDownloader(new HttpDownloader(client), cache, false);
+            crawl(baseUrl, tempDir.resolve("first"), downloader);
+            int reachable = server.reachableUrls().size();
+
+            server.modify("/pages/3.html");
+            crawl(baseUrl, tempDir.resolve("second"), downloader);
+            assertEquals(2 * reachable, server.getRequests());
+            assertEquals(reachable - 1, server.getNotModifiedResponses());
+            assertEquals(reachable - 1, cache.getRevalidated());
+            assertEquals(0, cache.getHits());
+            assertEquals(reachable + 1, cache.getMisses());
+
+            String page = Path.of("127.0.0.1_" + baseUrl.replaceAll(".*:(\\d+)/", "$1"), "pages").toString();
+            assertTrue(Files.readString(tempDir.resolve("second").resolve(page).resolve("3.html")).contains("revised"));
+            assertTrue(Files.exists(tempDir.resolve("second").resolve(page).resolve("4.html")));
+        }
+    }
+
+    @Test
+    public void testFailedRefreshStillServesTheCachedBody() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(20).fanOut(3).pageSize(1024).assetSize(256).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            Path cacheDir = tempDir.resolve("cache");
+            ResponseCache cache = new ResponseCache(cacheDir, 1024 * 1024);
+            CachingHttpDownloader downloader = new CachingHttpDownloader(new HttpDownloader(client), cache, false);
+            crawl(baseUrl, tempDir.resolve("first"), downloader);
+            int reachable = server.reachableUrls().size();
+
+            // Entry files that can no longer be written; the bodies are still held in memory
+            try (var files = Files.walk(cacheDir)) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) {
+                    Files.delete(file);
+                    Files.createDirectory(file);
+                }
+            }
+            crawl(baseUrl, tempDir.resolve("second"), downloader);
+            assertEquals(reachable, cache.getRevalidated());
+            String page = Path.of("127.0.0.1_" + baseUrl.replaceAll(".*:(\\d+)/", "$1"), "pages", "4.html").toString();
+            assertEquals(Files.readString(tempDir.resolve("first").resolve(page)),
+                    Files.readString(tempDir.resolve("second").resolve(page)));
+        }
+    }
+
+    @Test
+    public void testReplayOnlyNeverUsesTheNetwork() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(30).fanOut(3).pageSize(1024).assetSize(256).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            ResponseCache cache = new ResponseCache(tempDir.resolve("cache"), 1024 * 1024);
+            crawl(baseUrl, tempDir.resolve("first"), new CachingHttpDownloader(new HttpDownloader(client), cache, false));
+            long requests = server.getRequests();
+
+            CachingHttpDownloader replay = new CachingHttpDownloader(new HttpDownloader(client), cache, true);
+            crawl(baseUrl, tempDir.resolve("second"), replay); // Stale entries are served all the same
+            assertEquals(requests, server.getRequests());
+            assertEquals(requests, cache.getHits());
+            assertThrows(IOException.class,
+                    () -> replay.download(baseUrl + "pages/missing.html", tempDir.resolve("missing.html")));
+            assertEquals(requests, server.getRequests());
+        }
+    }
+
+    @Test
+    public void testResponseCacheOptionsAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().replayOnly(true).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().responseCacheDir(tempDir)
+                .asyncFetch(true).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().responseCacheDir(tempDir)
+                .packDir(tempDir.resolve("packs")).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().responseCacheMemory(-1));
+        assertNull(CrawlerConfig.defaults().getResponseCacheDir());
+    }
+}
@@ -0,0 +1,204 @@
+package io.muzoo.ssc;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardExchangeTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Runs one shard of a crawl in its own JVM: base URL, output directory, exchange directory, shard, shard count.
+     */
+    public static class ShardProcess {
+        public static void main(String[] args) {
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4)
+                    .shard(Integer.parseInt(args[3]), Integer.parseInt(args[4])).exchangeDir(Path.of(args[2])).build();
+            new CrawlerManager(args[0], args[1], config).runCrawler();
+        }
+    }
+
+    private static String ownedUrl(ShardExchange.Partition partition, int shard, int shards, int from) {
+        for (int i = from; ; i++) {
+            String url = "http://example.com/pages/" + i + ".html";
+            if (partition.shardOf(url, shards) == shard) {
+                return url;
+            }
+        }
+    }
+
+    @Test
+    public void testPartitionsSpreadUrlsOrKeepHostsTogether() {
+        int[] counts = new int[4];
+        for (int i = 0; i < 40_000; i++) {
+            counts[ShardExchange.Partition.URL.shardOf("http://example.com/pages/" + i + ".html", 4)]++;
+        }
+        for (int count : counts) {
+            assertEquals(10_000, count, 500);
+        }
+        int hostShard = ShardExchange.Partition.HOST.shardOf("http://example.com/", 4);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(hostShard, ShardExchange.Partition.HOST.shardOf("http://example.com/pages/" + i + ".html", 4));
+        }
+    }
+
+    @Test
+    public void testBatchesReachTheOwningShard() throws IOException {
+        try (ShardExchange first = new ShardExchange(tempDir, 0, 2, ShardExchange.Partition.URL, 3);
+             ShardExchange second = new ShardExchange(tempDir, 1, 2, ShardExchange.Partition.URL, 3)) {
+            Map<String, Integer> received = new HashMap<>();
+            int from = 0;
+            for (int i = 0; i < 4; i++) {
+                String url = ownedUrl(ShardExchange.Partition.URL, 1, 2, from);
+                from = Integer.parseInt(url.replaceAll("\\D", "")) + 1;
+                assertFalse(first.owns(url));
+                assertTrue(second.owns(url));
+                first.forward(url, i);
+            }
+            assertEquals(1, first.getSentBatches()); // The fourth URL waits for a full batch or a flush
+            assertEquals(3, second.receive(received::put));
+            first.flush();
+            assertEquals(1, second.receive(received::put));
+            assertEquals(0, second.receive(received::put));
+
+            assertEquals(4, received.size());
+            assertTrue(received.containsValue(3));
+            assertEquals(4, first.getForwardedUrls());
+            assertEquals(4, second.getReceivedUrls());
+            assertEquals(2, second.getReceivedBatches());
+        }
+    }
+
+    @Test
+    public void testCrawlEndsOnlyWhenEveryShardIsIdleAndNothingIsInFlight() throws IOException {
+        try (ShardExchange first = new ShardExchange(tempDir, 0, 2, ShardExchange.Partition.URL, 100);
+             ShardExchange second = new ShardExchange(tempDir, 1, 2, ShardExchange.Partition.URL, 100)) {
+            first.forward(ownedUrl(ShardExchange.Partition.URL, 1, 2, 0), 1);
+            first.idle(); // Hands the URL over
+            assertFalse(first.isFinished()); // The second shard is still busy
+
+            second.idle();
+            assertFalse(second.isFinished()); // The batch was sent but not received
+            assertFalse(first.isFinished());
+
+            assertEquals(1, second.receive((url, depth) -> { }));
+            assertFalse(second.isFinished());
+            second.idle();
+            assertTrue(second.isFinished());
+            assertTrue(first.isFinished());
+        }
+        // A shard of another crawl cannot start in the same directory
+        assertThrows(IllegalStateException.class,
+                () -> new ShardExchange(tempDir, 0, 2, ShardExchange.Partition.URL, 100));
+    }
+
+    @Test
+    public void testMergedReportSumsTheShards() {
+        Properties[] reports = new Properties[2];
+        for (int i = 0; i < 2; i++) {
+            reports[i] = new Properties();
+            reports[i].setProperty("downloaded", String.valueOf(10 + i));
+            reports[i].setProperty("elapsedMillis", String.valueOf(1000 * (i + 1)));
+        }
+        String json = ShardExchange.mergeReports(reports);
+        assertTrue(json.contains("\"shards\": 2,"));
+        assertTrue(json.contains("\"downloaded\": 21,"));
+        assertTrue(json.contains("\"elapsedMillis\": 2000,")); // The slowest shard
+        assertTrue(json.contains("{\"shard\": 1, \"downloaded\": 11, \"failed\": 0,"));
+    }
+
+    @Test
+    public void testShardsInOneProcessFetchEveryPageOnce() throws Exception {
+        int shards = 3;
+        Path exchangeDir = tempDir.resolve("exchange");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(150).fanOut(4).pageSize(1024).assetSize(256).latency(1, 4).build()) {
+            String baseUrl = server.start();
+            List<Thread> crawlers = new ArrayList<>();
+            List<ConnectionPool> pools = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                CrawlerConfig config = CrawlerConfig.builder().concurrency(4).linkFilter(i == 0)
+                        .shard(i, shards).exchangeDir(exchangeDir).exchangeBatchSize(8).build();
+                ConnectionPool pool = new ConnectionPool(config); // One per shard, as each process would have
+                pools.add(pool);
+                WebCrawler crawler = new WebCrawler(baseUrl, tempDir.resolve("site").toString(),
+                        new HttpDownloader(pool.getHttpClient()), new ProgressTracker(), new UrlHandler(), config);
+                crawlers.add(Thread.ofPlatform().start(() -> {
+                    try {
+                        crawler.startCrawling();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            for (Thread crawler : crawlers) {
+                crawler.join(TimeUnit.SECONDS.toMillis(60));
+                assertFalse(crawler.isAlive());
+            }
+            for (ConnectionPool pool : pools) {
+                pool.close();
+            }
+
+            int reachable = server.reachableUrls().size();
+            assertEquals(reachable, server.getRequests());
+            String report = Files.readString(exchangeDir.resolve(ShardExchange.REPORT_FILE));
+            assertTrue(report.contains("\"downloaded\": " + reachable + ","), report);
+        }
+    }
+
+    @Test
+    public void testShardsInSeparateProcessesFetchEveryPageOnce() throws Exception {
+        int shards = 2;
+        Path exchangeDir = tempDir.resolve("exchange");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(100).fanOut(4).pageSize(1024).assetSize(256).build()) {
+            String baseUrl = server.start();
+            String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+            List<Process> processes = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ShardProcess.class.getName(), baseUrl, tempDir.resolve("site").toString(),
+                        exchangeDir.toString(), String.valueOf(i), String.valueOf(shards))
+                        .redirectErrorStream(true).redirectOutput(tempDir.resolve("shard-" + i + ".log").toFile())
+                        .start());
+            }
+            for (Process process : processes) {
+                if (!process.waitFor(90, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                    fail("A shard did not finish");
+                }
+                assertEquals(0, process.exitValue());
+            }
+
+            int reachable = server.reachableUrls().size();
+            assertEquals(reachable, server.getRequests());
+            String report = Files.readString(exchangeDir.resolve(ShardExchange.REPORT_FILE));
+            assertTrue(report.contains("\"downloaded\": " + reachable + ","), report);
+            assertTrue(report.contains("\"shards\": 2,"));
+        }
+    }
+
+    @Test
+    public void testShardingOptionsAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().shard(2, 2));
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().shard(0, 2).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().shard(0, 2)
+                .exchangeDir(tempDir).maxPages(10).build());
+        assertThrows(IllegalArgumentException.class, () -> CrawlerConfig.builder().shard(0, 2)
+                .exchangeDir(tempDir).asyncFetch(true).build());
+        assertFalse(CrawlerConfig.defaults().isSharded());
+    }
+}
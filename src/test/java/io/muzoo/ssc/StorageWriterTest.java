@@ -0,0 +1,131 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StorageWriterTest {
+
+    @TempDir
+    Path outputDir;
+
+    @Test
+    public void testCloseWritesQueuedBodies() throws IOException {
+        StorageWriter writer = new StorageWriter(2, 4, StorageWriter.Durability.NONE, Duration.ofSeconds(5)).start();
+        for (int i = 0; i < 100; i++) {
+            writer.write(outputDir.resolve("dir" + (i % 3)).resolve(i + ".html"),
+                    ("page " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        writer.close();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("page " + i, Files.readString(outputDir.resolve("dir" + (i % 3)).resolve(i + ".html")));
+        }
+        assertEquals(100, writer.getFilesWritten());
+        assertEquals(100, writer.getWriteLatency().getCount());
+        assertEquals(0, writer.getQueueDepth());
+        assertThrows(IOException.class, () -> writer.write(outputDir.resolve("late.html"), new byte[1]));
+    }
+
+    @Test
+    public void testAwaitWrittenLeavesWriterOpen() throws IOException {
+        try (StorageWriter writer = new StorageWriter(2, 4, StorageWriter.Durability.PERIODIC,
+                Duration.ofSeconds(5)).start()) {
+            for (int i = 0; i < 20; i++) {
+                writer.write(outputDir.resolve(i + ".html"), ("page " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            writer.awaitWritten();
+            assertEquals(20, writer.getFilesWritten());
+            assertEquals("page 19", Files.readString(outputDir.resolve("19.html")));
+
+            writer.write(outputDir.resolve("late.html"), new byte[1]);
+            writer.awaitWritten();
+            assertEquals(21, writer.getFilesWritten());
+            assertThrows(IllegalStateException.class, writer::start);
+        }
+    }
+
+    @Test
+    public void testDurabilityModesWriteTheSameFiles() throws IOException {
+        for (StorageWriter.Durability durability : StorageWriter.Durability.values()) {
+            Path target = outputDir.resolve(durability.name()).resolve("page.html");
+            try (StorageWriter writer = new StorageWriter(1, 8, durability, Duration.ofMillis(1)).start()) {
+                writer.write(target, "first".getBytes(StandardCharsets.UTF_8));
+                writer.write(target, "second".getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals("second", Files.readString(target));
+        }
+    }
+
+    @Test
+    public void testFailedWriteIsCounted() throws IOException {
+        Path file = Files.writeString(outputDir.resolve("file"), "not a directory");
+        StorageWriter writer = new StorageWriter(1, 8, StorageWriter.Durability.NONE, Duration.ofSeconds(5)).start();
+        writer.write(file.resolve("page.html"), new byte[1]);
+        writer.close();
+
+        assertEquals(1, writer.getWriteFailures());
+        assertEquals(0, writer.getFilesWritten());
+    }
+
+    @Test
+    public void testCrawlStoresPagesThroughWriter() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder().pages(60).fanOut(3).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).build();
+            WebCrawler crawler;
+            try (StorageWriter writer = new StorageWriter(2, 2, StorageWriter.Durability.PERIODIC,
+                    Duration.ofMillis(10)).start()) {
+                crawler = new WebCrawler(baseUrl, outputDir.toString(),
+                        new HttpDownloader(client, config.getMaxBodySize(), writer),
+                        new ProgressTracker(), new UrlHandler(), config);
+                crawler.getMetrics().attachStorageWriter(writer);
+                crawler.startCrawling();
+                writer.awaitWritten();
+
+                assertEquals(reachable, writer.getFilesWritten());
+                assertTrue(crawler.getMetrics().toJson(new ProgressTracker()).contains("\"write\": {\"count\": "));
+            }
+
+            // Links were extracted from the queued bodies, so every page was found
+            assertEquals(reachable, server.getRequests());
+            try (var files = Files.walk(outputDir)) {
+                assertEquals(reachable, files.filter(Files::isRegularFile).count());
+            }
+        }
+    }
+
+    @Test
+    public void testResumeFetchesPagesWhoseFileIsMissing() throws IOException {
+        Path stateDir = outputDir.resolve("state");
+        Path siteDir = outputDir.resolve("site");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder().pages(30).fanOut(3).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            new WebCrawler(baseUrl, siteDir.toString(), new HttpDownloader(client), new ProgressTracker(),
+                    new UrlHandler(), CrawlerConfig.builder().checkpointDir(stateDir).build()).startCrawling();
+
+            // A write that was still queued when the crawl stopped
+            Path lost = Path.of(new UrlHandler().getFilePath(baseUrl + "pages/1.html", siteDir.toString()));
+            Files.delete(lost);
+            new WebCrawler(baseUrl, siteDir.toString(), new HttpDownloader(client), new ProgressTracker(),
+                    new UrlHandler(), CrawlerConfig.builder().checkpointDir(stateDir).resume(true).build())
+                    .startCrawling();
+
+            assertEquals(reachable + 1, server.getRequests());
+            assertTrue(Files.exists(lost));
+        }
+    }
+}
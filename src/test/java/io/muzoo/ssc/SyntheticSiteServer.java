@@ -0,0 +1,680 @@
+package io.muzoo.ssc;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SyntheticSiteServer class serves a generated web site on the loopback interface,
+ * so that whole crawls can be run and measured without network access.
+ *
+ * The site is a tree of pages: the root is {@code /}, page {@code i} is
+ * {@code /pages/i.html}, and its children are pages {@code i * fanOut + 1} to
+ * {@code i * fanOut + fanOut}, up to the configured page count and depth. Every page
+ * links back to the root and to its parent, and references style sheets, scripts and
+ * images drawn from a shared pool; style sheets reference an image in turn. Responses
+ * are generated on the fly and depend only on the path and the seed, including which
+ * paths fail and how long each response is delayed.
+ *
+ * A fraction of the pages can also be served as {@code /pages/i/index.html}, with the same
+ * body as {@code /pages/i.html}, and linked from the parent under both paths, like
+ * the aliases that real sites serve the same content under.
+ *
+ * Successful responses carry an ETag, and a request whose {@code If-None-Match}
+ * matches it gets 304 Not Modified. {@link #modify(String)} changes the body and the
+ * ETag of a path, to simulate an edit between two crawls. With a maximum age they
+ * also carry {@code Cache-Control: max-age}, so that clients may reuse them.
+ *
+ * The server can also behave like a rate-limited production site: it answers 429 Too
+ * Many Requests with a {@code Retry-After} header while more than a given number of
+ * requests are in flight, and it can publish a {@code Crawl-delay} in {@code /robots.txt}.
+ */
+public class SyntheticSiteServer implements AutoCloseable {
+    private static final double Z_99 = 2.326; // The 99th percentile of the standard normal distribution
+
+    static {
+        // Without TCP_NODELAY small responses wait for the client's delayed ACK, about 40 ms each;
+        // the JDK server reads this property once, when its first instance is created
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Builder config;
+    private final long fingerprintSeed;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder pageResponses = new LongAdder();
+    private final LongAdder errorResponses = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+    private final LongAdder notModifiedResponses = new LongAdder();
+    private final LongAdder throttledResponses = new LongAdder();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger peakActiveRequests = new AtomicInteger();
+    private final Set<String> modifiedPaths = ConcurrentHashMap.newKeySet();
+    private long[] latencies = new long[1024];
+    private int latencyCount;
+
+    private SyntheticSiteServer(Builder builder) {
+        this.config = builder.copy();
+        this.fingerprintSeed = UrlFingerprint.mix(builder.seed);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Starts the server on an ephemeral port. Requests are handled on virtual threads,
+     * so delayed responses do not hold up others.
+     *
+     * @return the URL of the root page
+     * @throws IOException if the server cannot be bound
+     */
+    public String start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return getBaseUrl();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        int active = activeRequests.incrementAndGet();
+        peakActiveRequests.accumulateAndGet(active, Math::max);
+        try (exchange) {
+            requests.increment();
+            String path = exchange.getRequestURI().getPath();
+            if (config.maxActiveRequests > 0 && active > config.maxActiveRequests) {
+                throttledResponses.increment();
+                exchange.getResponseHeaders().set("Retry-After", Integer.toString(config.retryAfterSeconds));
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            if (path.equals("/robots.txt") && config.crawlDelaySeconds > 0) {
+                byte[] body = ("User-agent: *\nCrawl-delay: " + config.crawlDelaySeconds + "\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                return;
+            }
+            sleep(latencyMillis(path));
+
+            int status = 200;
+            String contentType;
+            byte[] body;
+            if (fails(path)) {
+                status = 500;
+                contentType = "text/plain; charset=UTF-8";
+                body = "Internal Server Error".getBytes(StandardCharsets.UTF_8);
+                errorResponses.increment();
+            } else if (pageId(path) >= 0) {
+                contentType = "text/html; charset=UTF-8";
+                body = page(pageId(path)).getBytes(StandardCharsets.UTF_8);
+                pageResponses.increment();
+            } else if (path.startsWith("/assets/css/") && assetId(path) >= 0) {
+                contentType = "text/css; charset=UTF-8";
+                body = styleSheet(assetId(path)).getBytes(StandardCharsets.UTF_8);
+            } else if (path.startsWith("/assets/js/") && assetId(path) >= 0) {
+                contentType = "application/javascript";
+                body = script(assetId(path)).getBytes(StandardCharsets.UTF_8);
+            } else if (path.startsWith("/assets/img/") && assetId(path) >= 0) {
+                contentType = "image/png";
+                body = image(assetId(path));
+            } else {
+                status = 404;
+                contentType = "text/plain; charset=UTF-8";
+                body = "Not Found".getBytes(StandardCharsets.UTF_8);
+                errorResponses.increment();
+            }
+
+            if (status == 200) {
+                boolean modified = modifiedPaths.contains(path);
+                if (modified) {
+                    body = concat(body, "\n<!-- revised -->\n".getBytes(StandardCharsets.UTF_8));
+                }
+                String etag = "\"" + Long.toHexString(UrlFingerprint.mix(fingerprintSeed ^ UrlFingerprint.of(path))
+                        + (modified ? 1 : 0)) + "\"";
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (config.maxAgeSeconds > 0) {
+                    exchange.getResponseHeaders().set("Cache-Control", "max-age=" + config.maxAgeSeconds);
+                }
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    notModifiedResponses.increment();
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bytesSent.add(body.length);
+        } finally {
+            activeRequests.decrementAndGet();
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns every URL a complete crawl from the root reaches, taking the failing
+     * paths into account: a failed page contributes no links.
+     *
+     * @return the reachable URLs
+     */
+    public Set<String> reachableUrls() {
+        Set<String> seen = new HashSet<>();
+        Deque<String> frontier = new ArrayDeque<>();
+        seen.add("/");
+        frontier.push("/");
+        while (!frontier.isEmpty()) {
+            String path = frontier.pop();
+            for (String link : links(path)) {
+                if (seen.add(link)) {
+                    frontier.push(link);
+                }
+            }
+        }
+        Set<String> urls = new HashSet<>();
+        for (String path : seen) {
+            urls.add(getBaseUrl() + path.substring(1));
+        }
+        return urls;
+    }
+
+    private List<String> links(String path) {
+        List<String> links = new ArrayList<>();
+        if (fails(path)) {
+            return links;
+        }
+        int id = pageId(path);
+        if (id >= 0) {
+            links.add(pagePath(0));
+            if (id > 0) {
+                links.add(pagePath(parent(id)));
+            }
+            for (int child : children(id)) {
+                links.add(pagePath(child));
+                if (aliased(child)) {
+                    links.add(aliasPath(child));
+                }
+            }
+            for (int slot = 0; slot < config.stylesheetsPerPage; slot++) {
+                links.add("/assets/css/" + asset(id, slot) + ".css");
+            }
+            for (int slot = 0; slot < config.scriptsPerPage; slot++) {
+                links.add("/assets/js/" + asset(id, 100 + slot) + ".js");
+            }
+            for (int slot = 0; slot < config.imagesPerPage; slot++) {
+                links.add("/assets/img/" + asset(id, 200 + slot) + ".png");
+            }
+        } else if (path.startsWith("/assets/css/")) {
+            links.add("/assets/img/" + assetId(path) + ".png");
+        }
+        return links;
+    }
+
+    private String page(int id) {
+        StringBuilder html = new StringBuilder(config.pageSize + 256);
+        html.append("<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>Page ").append(id).append("</title>\n");
+        for (int slot = 0; slot < config.stylesheetsPerPage; slot++) {
+            html.append("<link rel=\"stylesheet\" href=\"/assets/css/").append(asset(id, slot)).append(".css\">\n");
+        }
+        for (int slot = 0; slot < config.scriptsPerPage; slot++) {
+            html.append("<script src=\"/assets/js/").append(asset(id, 100 + slot)).append(".js\"></script>\n");
+        }
+        html.append("</head><body>\n<h1>Page ").append(id).append("</h1>\n<nav><a href=\"/\">Home</a>");
+        if (id > 0) {
+            html.append(" | <a href=\"").append(pagePath(parent(id))).append("\">Up</a>");
+        }
+        html.append("</nav>\n<ul>\n");
+        for (int child : children(id)) {
+            html.append("<li><a href=\"").append(pagePath(child)).append("\">Page ").append(child).append("</a></li>\n");
+            if (aliased(child)) {
+                html.append("<li><a href=\"").append(aliasPath(child)).append("\">Page ").append(child)
+                        .append(" (index)</a></li>\n");
+            }
+        }
+        html.append("</ul>\n");
+        for (int slot = 0; slot < config.imagesPerPage; slot++) {
+            html.append("<img src=\"/assets/img/").append(asset(id, 200 + slot)).append(".png\" alt=\"\">\n");
+        }
+        Random random = new Random(config.seed * 31 + id);
+        while (html.length() < config.pageSize) {
+            html.append("<p>");
+            for (int word = 0; word < 40; word++) {
+                html.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            html.append("</p>\n");
+        }
+        return html.append("</body></html>\n").toString();
+    }
+
+    private String styleSheet(int id) {
+        StringBuilder css = new StringBuilder("body { background: url(../img/").append(id).append(".png) }\n");
+        while (css.length() < config.assetSize) {
+            css.append(".c").append(css.length()).append(" { margin: 0 auto; padding: 4px; }\n");
+        }
+        return css.toString();
+    }
+
+    private String script(int id) {
+        StringBuilder js = new StringBuilder("var asset = ").append(id).append(";\n");
+        while (js.length() < config.assetSize) {
+            js.append("function f").append(js.length()).append("(a, b) { return a < b ? a : b; }\n");
+        }
+        return js.toString();
+    }
+
+    private byte[] image(int id) {
+        byte[] bytes = new byte[config.assetSize];
+        new Random(config.seed * 17 + id).nextBytes(bytes);
+        return bytes;
+    }
+
+    private List<Integer> children(int id) {
+        List<Integer> children = new ArrayList<>();
+        if (depth(id) >= config.depth) {
+            return children;
+        }
+        for (long child = (long) id * config.fanOut + 1; child <= (long) id * config.fanOut + config.fanOut; child++) {
+            if (child < config.pages) {
+                children.add((int) child);
+            }
+        }
+        return children;
+    }
+
+    private int parent(int id) {
+        return (id - 1) / config.fanOut;
+    }
+
+    private int depth(int id) {
+        int depth = 0;
+        while (id > 0) {
+            id = parent(id);
+            depth++;
+        }
+        return depth;
+    }
+
+    private int asset(int pageId, int slot) {
+        return (int) Long.remainderUnsigned(UrlFingerprint.mix(fingerprintSeed ^ ((long) pageId << 16 | slot)), config.assetPoolSize);
+    }
+
+    private static String pagePath(int id) {
+        return id == 0 ? "/" : "/pages/" + id + ".html";
+    }
+
+    private static String aliasPath(int id) {
+        return "/pages/" + id + "/index.html";
+    }
+
+    private boolean aliased(int id) {
+        return config.aliasRate > 0 && uniform(pagePath(id), 3) < config.aliasRate;
+    }
+
+    private int pageId(String path) {
+        if (path.equals("/")) {
+            return 0;
+        }
+        if (!path.startsWith("/pages/") || !path.endsWith(".html")) {
+            return -1;
+        }
+        if (path.endsWith("/index.html")) {
+            int id = parseId(path, "/pages/".length(), path.length() - "/index.html".length());
+            return id > 0 && id < config.pages && aliased(id) ? id : -1;
+        }
+        int id = parseId(path, "/pages/".length(), path.length() - ".html".length());
+        return id > 0 && id < config.pages ? id : -1;
+    }
+
+    private int assetId(String path) {
+        int id = parseId(path, path.lastIndexOf('/') + 1, path.lastIndexOf('.'));
+        return id < config.assetPoolSize ? id : -1;
+    }
+
+    private static int parseId(String path, int start, int end) {
+        if (end <= start || end - start > 9) {
+            return -1;
+        }
+        int id = 0;
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * Maps a path to a uniformly distributed number in [0, 1) that depends only on the
+     * path and the seed.
+     */
+    private double uniform(String path, long salt) {
+        long hash = UrlFingerprint.mix(UrlFingerprint.of(path) ^ fingerprintSeed ^ salt);
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    private boolean fails(String path) {
+        return !path.equals("/") && uniform(path, 1) < config.errorRate;
+    }
+
+    /**
+     * Draws the delay of a response from a log-normal distribution with the configured
+     * median and 99th percentile.
+     */
+    private long latencyMillis(String path) {
+        if (config.latencyMedianMillis <= 0) {
+            return 0;
+        }
+        double sigma = Math.log((double) config.latencyP99Millis / config.latencyMedianMillis) / Z_99;
+        Random random = new Random(UrlFingerprint.mix(UrlFingerprint.of(path) ^ fingerprintSeed ^ 2));
+        return Math.round(config.latencyMedianMillis * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized void recordLatency(long nanos) {
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = nanos;
+    }
+
+    /**
+     * Returns a percentile of the time the server took to answer, from accepting the
+     * request to writing the last byte of the response.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in milliseconds, or 0 if no request was served
+     */
+    public synchronized double getLatencyPercentileMillis(double percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * latencyCount) - 1;
+        return sorted[Math.max(0, Math.min(index, latencyCount - 1))] / 1_000_000.0;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getPageResponses() {
+        return pageResponses.sum();
+    }
+
+    public long getErrorResponses() {
+        return errorResponses.sum();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    public long getNotModifiedResponses() {
+        return notModifiedResponses.sum();
+    }
+
+    public long getThrottledResponses() {
+        return throttledResponses.sum();
+    }
+
+    /**
+     * Returns the largest number of requests that were being handled at the same time.
+     */
+    public int getPeakActiveRequests() {
+        return peakActiveRequests.get();
+    }
+
+    /**
+     * Changes the body and the ETag of the given path, as if it had been edited.
+     *
+     * @param path the path, starting with a slash
+     */
+    public void modify(String path) {
+        modifiedPaths.add(path);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static final String[] WORDS = {
+            "crawler", "page", "link", "index", "stream", "buffer", "thread", "queue", "socket", "header",
+            "latency", "document", "anchor", "resource", "charset", "request", "response", "virtual", "pool", "cache"
+    };
+
+    /**
+     * Builder for {@link SyntheticSiteServer}.
+     */
+    public static class Builder {
+        private int pages = 1000;
+        private int fanOut = 8;
+        private int depth = Integer.MAX_VALUE;
+        private int pageSize = 16 * 1024;
+        private int stylesheetsPerPage = 1;
+        private int scriptsPerPage = 1;
+        private int imagesPerPage = 2;
+        private int assetPoolSize = 64;
+        private int assetSize = 8 * 1024;
+        private long latencyMedianMillis = 0;
+        private long latencyP99Millis = 0;
+        private double errorRate = 0;
+        private long seed = 42;
+        private int maxActiveRequests = 0;
+        private int retryAfterSeconds = 0;
+        private double crawlDelaySeconds = 0;
+        private double aliasRate = 0;
+        private long maxAgeSeconds = 0;
+
+        private Builder() {
+        }
+
+        public Builder pages(int pages) {
+            if (pages < 1) {
+                throw new IllegalArgumentException("Page count must be at least 1: " + pages);
+            }
+            this.pages = pages;
+            return this;
+        }
+
+        public Builder fanOut(int fanOut) {
+            if (fanOut < 1) {
+                throw new IllegalArgumentException("Fan-out must be at least 1: " + fanOut);
+            }
+            this.fanOut = fanOut;
+            return this;
+        }
+
+        public Builder depth(int depth) {
+            if (depth < 0) {
+                throw new IllegalArgumentException("Depth must not be negative: " + depth);
+            }
+            this.depth = depth;
+            return this;
+        }
+
+        public Builder pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * Sets how many assets of each kind every page references, and how many distinct
+         * assets of each kind there are.
+         */
+        public Builder assets(int stylesheetsPerPage, int scriptsPerPage, int imagesPerPage, int assetPoolSize) {
+            if (assetPoolSize < 1) {
+                throw new IllegalArgumentException("Asset pool size must be at least 1: " + assetPoolSize);
+            }
+            this.stylesheetsPerPage = stylesheetsPerPage;
+            this.scriptsPerPage = scriptsPerPage;
+            this.imagesPerPage = imagesPerPage;
+            this.assetPoolSize = assetPoolSize;
+            return this;
+        }
+
+        public Builder assetSize(int assetSize) {
+            this.assetSize = assetSize;
+            return this;
+        }
+
+        /**
+         * Delays responses by a log-normally distributed time with the given median and
+         * 99th percentile. A median of zero disables the delay.
+         */
+        public Builder latency(long medianMillis, long p99Millis) {
+            if (medianMillis > 0 && p99Millis < medianMillis) {
+                throw new IllegalArgumentException("The 99th percentile must not be below the median: " + p99Millis);
+            }
+            this.latencyMedianMillis = medianMillis;
+            this.latencyP99Millis = p99Millis;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of paths, other than the root, that answer with status 500.
+         */
+        public Builder errorRate(double errorRate) {
+            if (errorRate < 0 || errorRate > 1) {
+                throw new IllegalArgumentException("Error rate must be between 0 and 1: " + errorRate);
+            }
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Answers 429 Too Many Requests, with the given {@code Retry-After} in seconds,
+         * to requests that arrive while the given number of requests is being handled.
+         * Zero disables the limit.
+         */
+        public Builder rateLimit(int maxActiveRequests, int retryAfterSeconds) {
+            if (maxActiveRequests < 0 || retryAfterSeconds < 0) {
+                throw new IllegalArgumentException("Rate limit must not be negative: " + maxActiveRequests);
+            }
+            this.maxActiveRequests = maxActiveRequests;
+            this.retryAfterSeconds = retryAfterSeconds;
+            return this;
+        }
+
+        /**
+         * Serves a {@code /robots.txt} asking every crawler to wait the given number of
+         * seconds between requests. Zero serves no robots.txt.
+         */
+        public Builder crawlDelay(double crawlDelaySeconds) {
+            this.crawlDelaySeconds = crawlDelaySeconds;
+            return this;
+        }
+
+        /**
+         * Sets the fraction of pages, other than the root, that are also served and linked
+         * as {@code /pages/i/index.html} with the same body.
+         */
+        public Builder aliasRate(double aliasRate) {
+            if (aliasRate < 0 || aliasRate > 1) {
+                throw new IllegalArgumentException("Alias rate must be between 0 and 1: " + aliasRate);
+            }
+            this.aliasRate = aliasRate;
+            return this;
+        }
+
+        /**
+         * Lets clients reuse successful responses for the given number of seconds. Zero
+         * sends no {@code Cache-Control}.
+         */
+        public Builder maxAge(long maxAgeSeconds) {
+            if (maxAgeSeconds < 0) {
+                throw new IllegalArgumentException("Maximum age must not be negative: " + maxAgeSeconds);
+            }
+            this.maxAgeSeconds = maxAgeSeconds;
+            return this;
+        }
+
+        public SyntheticSiteServer build() {
+            return new SyntheticSiteServer(this);
+        }
+
+        private Builder copy() {
+            Builder copy = new Builder();
+            copy.pages = pages;
+            copy.fanOut = fanOut;
+            copy.depth = depth;
+            copy.pageSize = pageSize;
+            copy.stylesheetsPerPage = stylesheetsPerPage;
+            copy.scriptsPerPage = scriptsPerPage;
+            copy.imagesPerPage = imagesPerPage;
+            copy.assetPoolSize = assetPoolSize;
+            copy.assetSize = assetSize;
+            copy.latencyMedianMillis = latencyMedianMillis;
+            copy.latencyP99Millis = latencyP99Millis;
+            copy.errorRate = errorRate;
+            copy.seed = seed;
+            copy.maxActiveRequests = maxActiveRequests;
+            copy.retryAfterSeconds = retryAfterSeconds;
+            copy.crawlDelaySeconds = crawlDelaySeconds;
+            copy.aliasRate = aliasRate;
+            copy.maxAgeSeconds = maxAgeSeconds;
+            return copy;
+        }
+    }
+}
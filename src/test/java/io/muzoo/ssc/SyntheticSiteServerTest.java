@@ -0,0 +1,179 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SyntheticSiteServerTest {
+
+    @TempDir
+    Path outputDir;
+
+    @Test
+    public void testServesDeterministicContent() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder().pages(50).pageSize(4096).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            HttpDownloader downloader = new HttpDownloader(client);
+
+            DownloadResult first = downloader.download(baseUrl + "pages/7.html", outputDir.resolve("a.html"));
+            DownloadResult second = downloader.download(baseUrl + "pages/7.html", outputDir.resolve("b.html"));
+
+            assertEquals(200, first.getStatusCode());
+            assertTrue(first.isHtml());
+            assertTrue(first.getContentLength() >= 4096);
+            assertArrayEquals(Files.readAllBytes(first.getPath()), Files.readAllBytes(second.getPath()));
+            assertEquals(404, downloader.download(baseUrl + "pages/50.html", outputDir.resolve("c.html")).getStatusCode());
+        }
+    }
+
+    @Test
+    public void testReachableUrlsFollowTreeAndAssets() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(100).fanOut(3).depth(2).assets(1, 0, 1, 4).build()) {
+            String baseUrl = server.start();
+            Set<String> urls = server.reachableUrls();
+
+            // 1 + 3 + 9 pages within depth 2, at most 4 style sheets and 4 images
+            assertTrue(urls.contains(baseUrl + "pages/12.html"));
+            assertFalse(urls.contains(baseUrl + "pages/13.html"));
+            assertTrue(urls.size() > 13 && urls.size() <= 21, "Unexpected size: " + urls.size());
+        }
+    }
+
+    @Test
+    public void testCrawlerDownloadsWholeSite() throws IOException {
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(200).fanOut(5).pageSize(2048).assetSize(512).errorRate(0.05).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            ProgressTracker progressTracker = new ProgressTracker();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).build();
+            WebCrawler crawler = new WebCrawler(baseUrl, outputDir.toString(), new HttpDownloader(client),
+                    progressTracker, new UrlHandler(), config);
+
+            crawler.startCrawling();
+
+            int reachable = server.reachableUrls().size();
+            assertEquals(reachable, server.getRequests());
+            assertEquals(reachable, progressTracker.getTotalUrls());
+            assertTrue(server.getErrorResponses() > 0);
+            assertTrue(Files.exists(outputDir.resolve("127.0.0.1_" + baseUrl.replaceAll(".*:(\\d+)/$", "$1"))
+                    .resolve("index.html")));
+        }
+    }
+
+    @Test
+    public void testResumeFetchesOnlyUnfinishedUrls() throws IOException {
+        Path stateDir = outputDir.resolve("state");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(60).fanOut(3).pageSize(1024).assetSize(256).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder()
+                    .checkpointDir(stateDir).frontierMemoryLimit(8).build();
+            new WebCrawler(baseUrl, outputDir.resolve("site").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), config).startCrawling();
+            assertEquals(reachable, server.getRequests());
+
+            // Simulate a crash: keep the first half of the journal and tear the next line
+            Path journalFile = stateDir.resolve(CrawlJournal.JOURNAL_FILE);
+            List<String> lines = Files.readAllLines(journalFile);
+            List<String> kept = lines.subList(0, lines.size() / 2);
+            Set<String> finished = new HashSet<>();
+            for (String line : kept) {
+                if (!line.startsWith("Q")) {
+                    finished.add(line.substring(2));
+                }
+            }
+            Files.writeString(journalFile, String.join("\n", kept) + "\n" + lines.get(kept.size()).substring(0, 5));
+
+            ProgressTracker progressTracker = new ProgressTracker();
+            CrawlerConfig resumeConfig = CrawlerConfig.builder()
+                    .checkpointDir(stateDir).frontierMemoryLimit(8).resume(true).build();
+            new WebCrawler(baseUrl, outputDir.resolve("site").toString(), new HttpDownloader(client),
+                    progressTracker, new UrlHandler(), resumeConfig).startCrawling();
+
+            assertTrue(finished.size() > 0);
+            assertEquals(reachable + reachable - finished.size(), server.getRequests());
+            assertEquals(reachable, progressTracker.getTotalUrls());
+            assertEquals(reachable, progressTracker.getDownloadedUrls() + progressTracker.getFailedUrls());
+        }
+    }
+
+    @Test
+    public void testRecrawlSkipsUnchangedPages() throws IOException {
+        Path indexFile = outputDir.resolve("metadata.idx");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(60).fanOut(3).pageSize(2048).assetSize(512).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().metadataIndexFile(indexFile).build();
+            new WebCrawler(baseUrl, outputDir.resolve("site").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), config).startCrawling();
+            long firstBytes = server.getBytesSent();
+            assertEquals(reachable, server.getRequests());
+            assertTrue(Files.exists(indexFile));
+
+            server.modify("/pages/1.html");
+            WebCrawler recrawler = new WebCrawler(baseUrl, outputDir.resolve("site").toString(),
+                    new HttpDownloader(client), new ProgressTracker(), new UrlHandler(), config);
+            recrawler.startCrawling();
+
+            assertEquals(2L * reachable, server.getRequests());
+            assertEquals(reachable - 1, server.getNotModifiedResponses());
+            assertEquals(reachable - 1, recrawler.getMetrics().getNotModified());
+            assertTrue(server.getBytesSent() - firstBytes < firstBytes / 10);
+            assertTrue(Files.readString(outputDir.resolve("site").resolve(
+                    "127.0.0.1_" + baseUrl.replaceAll(".*:(\\d+)/$", "$1")).resolve("pages").resolve("1.html"))
+                    .contains("revised"));
+        }
+    }
+
+    @Test
+    public void testBudgetedAndResumedCrawlsKeepTheMetadataOfEarlierRuns() throws IOException {
+        Path indexFile = outputDir.resolve("metadata.idx");
+        Path stateDir = outputDir.resolve("state");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(60).fanOut(3).pageSize(2048).assetSize(512).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            String site = outputDir.resolve("site").toString();
+            new WebCrawler(baseUrl, site, new HttpDownloader(client), new ProgressTracker(), new UrlHandler(),
+                    CrawlerConfig.builder().metadataIndexFile(indexFile).build()).startCrawling();
+            assertEquals(reachable, MetadataIndex.load(indexFile, baseUrl).previousSize());
+
+            // A crawl cut short by a budget keeps the entries of the pages it did not get to
+            new WebCrawler(baseUrl, site, new HttpDownloader(client), new ProgressTracker(), new UrlHandler(),
+                    CrawlerConfig.builder().metadataIndexFile(indexFile).checkpointDir(stateDir).maxPages(10).build())
+                    .startCrawling();
+            assertEquals(reachable, MetadataIndex.load(indexFile, baseUrl).previousSize());
+
+            // Resuming it keeps the entries of the pages the first run finished
+            new WebCrawler(baseUrl, site, new HttpDownloader(client), new ProgressTracker(), new UrlHandler(),
+                    CrawlerConfig.builder().metadataIndexFile(indexFile).checkpointDir(stateDir).resume(true).build())
+                    .startCrawling();
+            assertEquals(2L * reachable, server.getRequests());
+            assertEquals(reachable, MetadataIndex.load(indexFile, baseUrl).previousSize());
+
+            // So the next crawl can still ask about every page conditionally
+            long notModified = server.getNotModifiedResponses();
+            new WebCrawler(baseUrl, site, new HttpDownloader(client), new ProgressTracker(), new UrlHandler(),
+                    CrawlerConfig.builder().metadataIndexFile(indexFile).build()).startCrawling();
+            assertEquals(notModified + reachable, server.getNotModifiedResponses());
+        }
+    }
+}
@@ -57,4 +57,19 @@ public class UrlHandlerTest {
         String expected = "output" + File.separator + "example.com" + File.separator + "file.txt";
         assertEquals(expected, handler.getFilePath(url, outputDir));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCleanUrlKeepsNonDefaultPort() {
+        UrlHandler handler = new UrlHandler();
+        assertEquals("http://localhost:8080/docs/", handler.cleanUrl("http://localhost:8080/docs/?page=2"));
+        assertEquals("https://example.com/docs/", handler.cleanUrl("https://example.com:443/docs/"));
+    }
+
+    @Test
+    public void testGetFilePathWithPort() {
+        UrlHandler handler = new UrlHandler();
+        String url = "http://localhost:8080/docs/";
+        String expected = "output" + File.separator + "localhost_8080" + File.separator + "docs" + File.separator + "index.html";
+        assertEquals(expected, handler.getFilePath(url, "output"));
+    }
+}
@@ -0,0 +1,143 @@
+package io.muzoo.ssc;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WarcWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static CdxEntry write(WarcWriter writer, String url, String body) throws IOException {
+        byte[] payload = body.getBytes(StandardCharsets.UTF_8);
+        return writer.writeResponse(url, "GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII),
+                "HTTP/1.1 200 OK\r\nContent-Type: text/html\r\n\r\n".getBytes(StandardCharsets.US_ASCII),
+                200, "text/html", "sha1:X", new ByteArrayInputStream(payload), payload.length);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<Path> segments(Path archiveDir) throws IOException {
+        try (Stream<Path> files = Files.list(archiveDir)) {
+            return files.filter(WarcWriter::isSegment).sorted().toList();
+        }
+    }
+
+    @Test
+    public void testRecordsAreReadBackByOffset() throws IOException {
+        Path archiveDir = tempDir.resolve("archive");
+        try (WarcWriter writer = new WarcWriter(archiveDir, 1 << 20, StorageWriter.Durability.NONE)) {
+            CdxEntry first = write(writer, "http://example.com/a.html", "first page");
+            write(writer, "http://example.com/b.html", "second page");
+            assertEquals("first page", read(writer.openPayload(first)));
+        }
+
+        WarcReader reader = new WarcReader(archiveDir);
+        assertEquals("second page", read(reader.openPayload(reader.lookup("http://example.com/b.html"))));
+        assertNull(reader.lookup("http://example.com/c.html"));
+
+        // One warcinfo, then a response and a request per page, each a gzip member of its own
+        List<Path> segments = segments(archiveDir);
+        assertEquals(1, segments.size());
+        String content;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(segments.get(0)))) {
+            content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals(5, content.split("WARC/1.1\r\n", -1).length - 1);
+        assertTrue(content.startsWith("WARC/1.1\r\nWARC-Type: warcinfo\r\n"));
+        assertTrue(content.contains("WARC-Type: request\r\n"));
+    }
+
+    @Test
+    public void testSegmentsRotateAtMaximumSize() throws IOException {
+        Path archiveDir = tempDir.resolve("archive");
+        try (WarcWriter writer = new WarcWriter(archiveDir, 600, StorageWriter.Durability.PER_FILE)) {
+            for (int i = 0; i < 20; i++) {
+                write(writer, "http://example.com/" + i + ".html", "page " + i);
+            }
+        }
+
+        assertTrue(segments(archiveDir).size() > 2);
+        WarcReader reader = new WarcReader(archiveDir);
+        List<CdxEntry> entries = new ArrayList<>();
+        reader.forEach(entries::add);
+        assertEquals(20, entries.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("page " + i, read(reader.openPayload(entries.get(i))));
+        }
+    }
+
+    @Test
+    public void testCdxLineRoundTrip() {
+        CdxEntry entry = new CdxEntry("20261018120000", "http://www.Example.com:8080/a/B?c=d", null, 404,
+                "sha1:ABC", 120, 4096, "crawl-1.warc.gz");
+        assertEquals("com,example:8080)/a/b?c=d", entry.getUrlKey());
+
+        CdxEntry parsed = CdxEntry.parse(entry.toLine());
+        assertEquals(entry.toLine(), parsed.toLine());
+        assertNull(parsed.getMimeType());
+        assertEquals(404, parsed.getStatusCode());
+        assertEquals(4096, parsed.getOffset());
+    }
+
+    @Test
+    public void testBase32MatchesWarcDigests() throws NoSuchAlgorithmException {
+        // The payload digest of an empty body, as found in WARC files
+        assertEquals("3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ",
+                WarcWriter.base32(MessageDigest.getInstance("SHA-1").digest(new byte[0])));
+    }
+
+    @Test
+    public void testExportMatchesFileTreeCrawl() throws IOException {
+        Path archiveDir = tempDir.resolve("archive");
+        try (SyntheticSiteServer server = SyntheticSiteServer.builder()
+                .pages(40).fanOut(3).pageSize(300 * 1024).assetSize(512).build();
+             CloseableHttpClient client = HttpClients.createDefault()) {
+            String baseUrl = server.start();
+            int reachable = server.reachableUrls().size();
+            CrawlerConfig config = CrawlerConfig.builder().concurrency(4).build();
+            new WebCrawler(baseUrl, tempDir.resolve("tree").toString(), new HttpDownloader(client),
+                    new ProgressTracker(), new UrlHandler(), config).startCrawling();
+
+            try (WarcWriter archive = new WarcWriter(archiveDir, 64 * 1024, StorageWriter.Durability.NONE)) {
+                new WebCrawler(baseUrl, tempDir.resolve("unused").toString(),
+                        new HttpDownloader(client, config.getMaxBodySize(), archive),
+                        new ProgressTracker(), new UrlHandler(), config).startCrawling();
+                assertEquals(reachable, archive.getRecords());
+            }
+            // Links of the large pages were read back from the archive
+            assertEquals(2L * reachable, server.getRequests());
+            assertFalse(Files.exists(tempDir.resolve("unused")));
+            assertTrue(segments(archiveDir).size() > 1);
+
+            assertEquals(reachable, new WarcReader(archiveDir).export(tempDir.resolve("export").toString()));
+            try (Stream<Path> files = Files.walk(tempDir.resolve("tree"))) {
+                for (Path file : files.filter(Files::isRegularFile).toList()) {
+                    Path exported = tempDir.resolve("export").resolve(tempDir.resolve("tree").relativize(file));
+                    assertEquals(-1, Files.mismatch(file, exported), file.toString());
+                }
+            }
+        }
+    }
+}
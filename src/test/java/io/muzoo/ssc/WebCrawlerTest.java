@@ -2,17 +2,29 @@ package io.muzoo.ssc;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 public class WebCrawlerTest {
 
+    @TempDir
+    Path outputDir;
+
     private WebCrawler webCrawler;
     private HttpDownloader downloaderMock;
     private ProgressTracker progressTrackerMock;
@@ -35,15 +47,17 @@ public class WebCrawlerTest {
     @Test
     public void testStartCrawling() throws IOException {
         when(urlHandlerMock.cleanUrl("https://example.com")).thenReturn("https://example.com");
-        when(downloaderMock.download("https://example.com")).thenReturn("<html><a href=\"https://example.com/page1\">Page 1</a></html>");
+        when(urlHandlerMock.getFilePath("https://example.com", "output")).thenReturn(outputDir.resolve("index.html").toString());
+        stubPage("https://example.com", "<html><a href=\"https://example.com/page1\">Page 1</a></html>");
         webCrawler.startCrawling();
-        verify(downloaderMock, atLeastOnce()).download("https://example.com");
+        verify(downloaderMock, atLeastOnce()).download(eq("https://example.com"), any(Path.class));
     }
 
     @Test
     public void testIterativeCrawl() throws IOException {
         when(urlHandlerMock.cleanUrl("https://example.com")).thenReturn("https://example.com");
-        when(downloaderMock.download("https://example.com")).thenReturn("<html><a href=\"https://example.com/page1\">Page 1</a></html>");
+        when(urlHandlerMock.getFilePath("https://example.com", "output")).thenReturn(outputDir.resolve("index.html").toString());
+        stubPage("https://example.com", "<html><a href=\"https://example.com/page1\">Page 1</a></html>");
         webCrawler.startCrawling();
         verify(progressTrackerMock, atLeastOnce()).incrementDownloadedUrls(anyString());
     }
@@ -51,7 +65,8 @@ public class WebCrawlerTest {
     @Test
     public void testCountTotalLinks() throws IOException {
         when(urlHandlerMock.cleanUrl("https://example.com")).thenReturn("https://example.com");
-        when(downloaderMock.download("https://example.com")).thenReturn("<html><a href=\"https://example.com/page1\">Page 1</a></html>");
+        when(urlHandlerMock.getFilePath("https://example.com", "output")).thenReturn(outputDir.resolve("index.html").toString());
+        stubPage("https://example.com", "<html><a href=\"https://example.com/page1\">Page 1</a></html>");
         Set<String> links = new HashSet<>();
         webCrawler.startCrawling();
         assertEquals(1, links.size());
@@ -61,11 +76,175 @@ public class WebCrawlerTest {
     public void testExploreLinks() throws IOException {
         Set<String> links = new HashSet<>();
         when(urlHandlerMock.cleanUrl("https://example.com")).thenReturn("https://example.com");
-        when(downloaderMock.download("https://example.com")).thenReturn("<html><a href=\"https://example.com/page1\">Page 1</a></html>");
+        when(urlHandlerMock.getFilePath("https://example.com", "output")).thenReturn(outputDir.resolve("index.html").toString());
+        stubPage("https://example.com", "<html><a href=\"https://example.com/page1\">Page 1</a></html>");
         webCrawler.startCrawling();
         assertEquals(0, links.size());
     }
 
+    @Test
+    public void testSinglePassDownloadsEachPageOnce() throws IOException {
+        ProgressTracker progressTracker = new ProgressTracker();
+        WebCrawler crawler = new WebCrawler("https://example.com/", outputDir.toString(), downloaderMock, progressTracker, new UrlHandler());
+        stubPage("https://example.com/", "<html><a href=\"https://example.com/page1\">Page 1</a></html>");
+        stubPage("https://example.com/page1", "<html><a href=\"https://example.com/\">Home</a></html>");
+
+        crawler.startCrawling();
+
+        verify(downloaderMock, times(1)).download(eq("https://example.com/"), any(Path.class));
+        verify(downloaderMock, times(1)).download(eq("https://example.com/page1"), any(Path.class));
+        assertEquals(2, progressTracker.getTotalUrls());
+        assertEquals(2, progressTracker.getDownloadedUrls());
+        assertEquals(0, progressTracker.getPendingUrls());
+    }
+
+    @Test
+    public void testExactTotalReusesCountedContent() throws IOException {
+        ProgressTracker progressTracker = new ProgressTracker();
+        CrawlerConfig config = CrawlerConfig.builder().exactTotal(true).nearDuplicateClusterSize(2).build();
+        WebCrawler crawler = new WebCrawler("https://example.com/", outputDir.toString(), downloaderMock, progressTracker, new UrlHandler(), config);
+        stubPage("https://example.com/", "<html><a href=\"https://example.com/page1\">Page 1</a></html>");
+        stubPage("https://example.com/page1", "<html></html>");
+
+        crawler.startCrawling();
+
+        verify(downloaderMock, times(1)).download(eq("https://example.com/"), any(Path.class));
+        verify(downloaderMock, times(1)).download(eq("https://example.com/page1"), any(Path.class));
+        assertEquals(2, progressTracker.getTotalUrls());
+        assertEquals(2, progressTracker.getDownloadedUrls());
+        // The links found while counting are reused, so no page is parsed twice or seen as its own near-duplicate
+        assertEquals(2, crawler.getMetrics().getParseLatency().getCount());
+        assertEquals(0, crawler.getMetrics().getNearDuplicates());
+    }
+
+    @Test
+    public void testLinksAreNotExtractedFromNonHtmlContent() throws IOException {
+        ProgressTracker progressTracker = new ProgressTracker();
+        WebCrawler crawler = new WebCrawler("https://example.com/", outputDir.toString(), downloaderMock, progressTracker, new UrlHandler());
+        stubPage("https://example.com/", "<html><img src=\"https://example.com/logo.png\"></html>");
+        when(downloaderMock.download(eq("https://example.com/logo.png"), any(Path.class))).thenAnswer(invocation ->
+                writePage(invocation.getArgument(0), invocation.getArgument(1), "image/png",
+                        "<a href=\"https://example.com/never\">"));
+
+        crawler.startCrawling();
+
+        verify(downloaderMock, never()).download(eq("https://example.com/never"), any(Path.class));
+        assertEquals(2, progressTracker.getDownloadedUrls());
+    }
+
+    @Test
+    public void testStyleSheetLinksAreFollowed() throws IOException {
+        ProgressTracker progressTracker = new ProgressTracker();
+        WebCrawler crawler = new WebCrawler("https://example.com/", outputDir.toString(), downloaderMock, progressTracker, new UrlHandler());
+        stubPage("https://example.com/", "<html><link rel=\"stylesheet\" href=\"style.css\"></html>");
+        when(downloaderMock.download(eq("https://example.com/style.css"), any(Path.class))).thenAnswer(invocation ->
+                writePage(invocation.getArgument(0), invocation.getArgument(1), "text/css",
+                        "body { background: url(img/bg.png) }"));
+        when(downloaderMock.download(eq("https://example.com/img/bg.png"), any(Path.class))).thenAnswer(invocation ->
+                writePage(invocation.getArgument(0), invocation.getArgument(1), "image/png", "PNG"));
+
+        crawler.startCrawling();
+
+        verify(downloaderMock, times(1)).download(eq("https://example.com/img/bg.png"), any(Path.class));
+        ResourceStats stats = crawler.getResourceStats();
+        assertEquals(1, stats.getResponses(ResourceType.HTML));
+        assertEquals(1, stats.getResponses(ResourceType.CSS));
+        assertEquals(1, stats.getResponses(ResourceType.IMAGE));
+        assertEquals(1, stats.getUnparsedResponses());
+    }
+
+    @Test
+    public void testOversizedResponsesAreCounted() throws IOException {
+        ProgressTracker progressTracker = new ProgressTracker();
+        WebCrawler crawler = new WebCrawler("https://example.com/", outputDir.toString(), downloaderMock, progressTracker, new UrlHandler());
+        stubPage("https://example.com/", "<html><a href=\"big.pdf\">Big</a></html>");
+        when(downloaderMock.download(eq("https://example.com/big.pdf"), any(Path.class)))
+                .thenThrow(new BodyTooLargeException("https://example.com/big.pdf", 10));
+
+        crawler.startCrawling();
+
+        assertEquals(1, crawler.getResourceStats().getOversized());
+        assertEquals(1, progressTracker.getFailedUrls());
+    }
+
+    @Test
+    public void testConcurrentCrawlVisitsEveryPageOnceWithinConcurrencyLimit() throws IOException {
+        ProgressTracker progressTracker = new ProgressTracker();
+        CrawlerConfig config = CrawlerConfig.builder().concurrency(4).build();
+        WebCrawler crawler = new WebCrawler("https://example.com/", outputDir.toString(), downloaderMock, progressTracker, new UrlHandler(), config);
+
+        StringBuilder index = new StringBuilder("<html>");
+        for (int i = 0; i < 20; i++) {
+            index.append("<a href=\"https://example.com/page").append(i).append("\">Page</a>");
+        }
+        index.append("</html>");
+
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(downloaderMock.download(anyString(), any(Path.class))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            String url = invocation.getArgument(0);
+            String html = url.equals("https://example.com/") ? index.toString() : "<html><a href=\"https://example.com/\">Home</a></html>";
+            return writePage(url, invocation.getArgument(1), "text/html", html);
+        });
+
+        crawler.startCrawling();
+
+        verify(downloaderMock, times(21)).download(anyString(), any(Path.class));
+        verify(downloaderMock, times(1)).download(eq("https://example.com/page7"), any(Path.class));
+        assertEquals(21, progressTracker.getTotalUrls());
+        assertEquals(21, progressTracker.getDownloadedUrls());
+        assertTrue(maxInFlight.get() <= 4);
+        assertTrue(maxInFlight.get() > 1);
+    }
+
+    @Test
+    public void testConcurrentCrawlsNeverStopWithLinksLeft() throws IOException {
+        // Now and then a worker stalls, longer than the idle poll, after it pushed some of its
+        // links, so those links are crawled and finished before their page has counted them
+        UrlHandler slowUrlHandler = new UrlHandler() {
+            @Override
+            public String cleanUrl(String url) {
+                if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(60));
+                }
+                return super.cleanUrl(url);
+            }
+        };
+        int hubs = 8;
+        int leaves = 8; // Per hub; every leaf links back to the home page
+        for (boolean pipelined : new boolean[]{false, true}) {
+            for (int round = 0; round < 5; round++) {
+                HttpDownloader downloader = Mockito.mock(HttpDownloader.class);
+                when(downloader.download(anyString(), any(Path.class))).thenAnswer(invocation -> {
+                    String url = invocation.getArgument(0);
+                    StringBuilder html = new StringBuilder("<html>");
+                    if (url.equals("https://example.com/")) {
+                        for (int i = 0; i < hubs; i++) {
+                            html.append("<a href=\"https://example.com/hub").append(i).append("\">Hub</a>");
+                        }
+                    } else if (!url.contains("-leaf")) {
+                        for (int i = 0; i < leaves; i++) {
+                            html.append("<a href=\"").append(url).append("-leaf").append(i).append("\">Leaf</a>");
+                        }
+                    } else {
+                        html.append("<a href=\"https://example.com/\">Home</a>");
+                    }
+                    return writePage(url, invocation.getArgument(1), "text/html", html.append("</html>").toString());
+                });
+                ProgressTracker progressTracker = new ProgressTracker();
+                CrawlerConfig config = CrawlerConfig.builder().concurrency(64).pipelined(pipelined).parseThreads(4).build();
+                new WebCrawler("https://example.com/", outputDir.resolve(pipelined + "-" + round).toString(), downloader,
+                        progressTracker, slowUrlHandler, config).startCrawling();
+
+                assertEquals(1 + hubs + hubs * leaves, progressTracker.getDownloadedUrls(),
+                        "Pipelined " + pipelined + ", round " + round);
+            }
+        }
+    }
+
     @Test
     public void testIsValidUrl() {
         String validUrl = "https://example.com";
@@ -73,4 +252,15 @@ public class WebCrawlerTest {
         assertEquals(true, webCrawler.isValidUrl(validUrl));
         assertEquals(false, webCrawler.isValidUrl(invalidUrl));
     }
-}
\ No newline at end of file
+
+    private void stubPage(String url, String html) throws IOException {
+        when(downloaderMock.download(eq(url), any(Path.class))).thenAnswer(invocation ->
+                writePage(url, invocation.getArgument(1), "text/html", html));
+    }
+
+    private static DownloadResult writePage(String url, Path target, String mimeType, String body) throws IOException {
+        Files.createDirectories(target.getParent());
+        Files.writeString(target, body);
+        return new DownloadResult(url, 200, mimeType, StandardCharsets.UTF_8, target, body.length());
+    }
+}